@@ -4,13 +4,17 @@ import android.test.AndroidTestCase;
 
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import com.securecomcode.messaging.crypto.MasterSecret;
 import org.whispersystems.textsecure.api.TextSecureMessageSender;
+import org.whispersystems.textsecure.api.push.DeliveryReceipt;
 import org.whispersystems.textsecure.api.push.PushAddress;
 import org.whispersystems.textsecure.api.push.exceptions.NotFoundException;
 import org.whispersystems.textsecure.api.push.exceptions.PushNetworkException;
 
 import java.io.IOException;
+import java.util.List;
 
 import dagger.Module;
 import dagger.ObjectGraph;
@@ -20,6 +24,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static com.securecomcode.messaging.dependencies.TextSecureCommunicationModule.TextSecureMessageSenderFactory;
 
 public class DeliveryReceiptJobTest extends AndroidTestCase {
@@ -79,6 +84,79 @@ public class DeliveryReceiptJobTest extends AndroidTestCase {
     }
   }
 
+  public void testCoalescing() throws IOException {
+    TextSecureMessageSender textSecureMessageSender = mock(TextSecureMessageSender.class);
+    long                    timestamp               = System.currentTimeMillis();
+    ObjectGraph             objectGraph             = ObjectGraph.create(new TestModule(textSecureMessageSender));
+
+    DeliveryReceiptJob first  = new DeliveryReceiptJob(getContext(), "+14152222222", timestamp, "bar");
+    DeliveryReceiptJob second = new DeliveryReceiptJob(getContext(), "+14153333333", timestamp + 1, "bar");
+
+    objectGraph.inject(first);
+    objectGraph.inject(second);
+
+    first.onAdded();
+    second.onAdded();
+
+    first.onRun();
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(textSecureMessageSender).sendDeliveryReceipts(captor.capture(), eq("bar"),
+                                                         any(TextSecureMessageSender.ReceiptListener.class));
+
+    assertEquals(2, captor.getValue().size());
+    assertEquals(new DeliveryReceipt("+14152222222", timestamp), captor.getValue().get(0));
+    assertEquals(new DeliveryReceipt("+14153333333", timestamp + 1), captor.getValue().get(1));
+
+    second.onRun();
+
+    verifyNoMoreInteractions(textSecureMessageSender);
+  }
+
+  public void testPartialFailureRequeuesUnsentReceipts() throws IOException {
+    TextSecureMessageSender textSecureMessageSender = mock(TextSecureMessageSender.class);
+    long                    timestamp               = System.currentTimeMillis();
+    ObjectGraph             objectGraph             = ObjectGraph.create(new TestModule(textSecureMessageSender));
+
+    DeliveryReceiptJob first  = new DeliveryReceiptJob(getContext(), "+14152222222", timestamp, "baz");
+    DeliveryReceiptJob second = new DeliveryReceiptJob(getContext(), "+14153333333", timestamp + 1, "baz");
+    DeliveryReceiptJob third  = new DeliveryReceiptJob(getContext(), "+14154444444", timestamp + 2, "baz");
+
+    objectGraph.inject(first);
+    objectGraph.inject(second);
+    objectGraph.inject(third);
+
+    first.onAdded();
+    second.onAdded();
+    third.onAdded();
+
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        List<DeliveryReceipt>                   receipts = (List<DeliveryReceipt>)invocation.getArguments()[0];
+        TextSecureMessageSender.ReceiptListener listener = (TextSecureMessageSender.ReceiptListener)invocation.getArguments()[2];
+
+        listener.onReceiptSent(receipts.get(0));
+        listener.onReceiptSent(receipts.get(1));
+
+        throw new PushNetworkException("network error");
+      }
+    }).when(textSecureMessageSender).sendDeliveryReceipts(any(List.class), eq("baz"),
+                                                          any(TextSecureMessageSender.ReceiptListener.class));
+
+    first.onRun();
+    second.onRun();
+    third.onRun();
+
+    ArgumentCaptor<PushAddress> captor = ArgumentCaptor.forClass(PushAddress.class);
+    verify(textSecureMessageSender).sendDeliveryReceipts(any(List.class), eq("baz"),
+                                                         any(TextSecureMessageSender.ReceiptListener.class));
+    verify(textSecureMessageSender).sendDeliveryReceipt(captor.capture(), eq(timestamp + 2));
+    verifyNoMoreInteractions(textSecureMessageSender);
+
+    assertTrue(captor.getValue().getNumber().equals("+14154444444"));
+  }
+
   @Module(injects = DeliveryReceiptJob.class)
   public static class TestModule {
 
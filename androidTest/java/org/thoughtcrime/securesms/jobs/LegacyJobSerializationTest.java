@@ -0,0 +1,249 @@
+package com.securecomcode.messaging.jobs;
+
+import android.test.AndroidTestCase;
+
+import com.securecomcode.messaging.jobs.persistence.EncryptingJobSerializer;
+import org.whispersystems.jobqueue.Job;
+
+import java.io.IOException;
+
+/**
+ * Rows written by the Java serializer before any of the job classes pinned their
+ * serialVersionUIDs, which must keep loading for jobs still queued across an upgrade.
+ */
+public class LegacyJobSerializationTest extends AndroidTestCase {
+
+  private static final String ATTACHMENT_DOWNLOAD_JOB =
+      "rO0ABXNyADZjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5BdHRhY2htZW50RG93bmxvYWRK"
+      + "b2JltFcnnUX3NQIAAUoACW1lc3NhZ2VJZHhyADBjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9i"
+      + "cy5NYXN0ZXJTZWNyZXRKb2IT5Z7kFCE2+QIAAHhyACtjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcu"
+      + "am9icy5Db250ZXh0Sm9ixIKQaz5DEm4CAAB4cgAfb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpv"
+      + "Yis9ZwgPPW0DAgABTAAKcGFyYW1ldGVyc3QAK0xvcmcvd2hpc3BlcnN5c3RlbXMvam9icXVldWUvSm9i"
+      + "UGFyYW1ldGVyczt4cHNyAClvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9iUGFyYW1ldGVyc3nz"
+      + "UN4y/UKdAgAEWgAMaXNQZXJzaXN0ZW50SQAKcmV0cnlDb3VudEwAB2dyb3VwSWR0ABJMamF2YS9sYW5n"
+      + "L1N0cmluZztMAAxyZXF1aXJlbWVudHN0ABBMamF2YS91dGlsL0xpc3Q7eHABAAAAZHBzcgAUamF2YS51"
+      + "dGlsLkxpbmtlZExpc3QMKVNdSmCIIgMAAHhwdwQAAAACc3IARWNvbS5zZWN1cmVjb21jb2RlLm1lc3Nh"
+      + "Z2luZy5qb2JzLnJlcXVpcmVtZW50cy5NYXN0ZXJTZWNyZXRSZXF1aXJlbWVudEtVfR63h4FdAgAAeHBz"
+      + "cgA7b3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLnJlcXVpcmVtZW50cy5OZXR3b3JrUmVxdWlyZW1l"
+      + "bnTMN41l0oEDtAIAAHhweAAAAAAAAAAB";
+
+  private static final String AVATAR_DOWNLOAD_JOB =
+      "rO0ABXNyADJjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5BdmF0YXJEb3dubG9hZEpvYntf"
+      + "y4g4ca1GAgABWwAHZ3JvdXBJZHQAAltCeHIAMGNvbS5zZWN1cmVjb21jb2RlLm1lc3NhZ2luZy5qb2Jz"
+      + "Lk1hc3RlclNlY3JldEpvYhPlnuQUITb5AgAAeHIAK2NvbS5zZWN1cmVjb21jb2RlLm1lc3NhZ2luZy5q"
+      + "b2JzLkNvbnRleHRKb2LEgpBrPkMSbgIAAHhyAB9vcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9i"
+      + "Kz1nCA89bQMCAAFMAApwYXJhbWV0ZXJzdAArTG9yZy93aGlzcGVyc3lzdGVtcy9qb2JxdWV1ZS9Kb2JQ"
+      + "YXJhbWV0ZXJzO3hwc3IAKW9yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5Kb2JQYXJhbWV0ZXJzefNQ"
+      + "3jL9Qp0CAARaAAxpc1BlcnNpc3RlbnRJAApyZXRyeUNvdW50TAAHZ3JvdXBJZHQAEkxqYXZhL2xhbmcv"
+      + "U3RyaW5nO0wADHJlcXVpcmVtZW50c3QAEExqYXZhL3V0aWwvTGlzdDt4cAEAAABkcHNyABRqYXZhLnV0"
+      + "aWwuTGlua2VkTGlzdAwpU11KYIgiAwAAeHB3BAAAAAJzcgBFY29tLnNlY3VyZWNvbWNvZGUubWVzc2Fn"
+      + "aW5nLmpvYnMucmVxdWlyZW1lbnRzLk1hc3RlclNlY3JldFJlcXVpcmVtZW50S1V9HreHgV0CAAB4cHNy"
+      + "ADtvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUucmVxdWlyZW1lbnRzLk5ldHdvcmtSZXF1aXJlbWVu"
+      + "dMw3jWXSgQO0AgAAeHB4dXIAAltCrPMX+AYIVOACAAB4cAAAAAIBAg==";
+
+  private static final String CREATE_SIGNED_PRE_KEY_JOB =
+      "rO0ABXNyADZjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5DcmVhdGVTaWduZWRQcmVLZXlK"
+      + "b2IWvIEpd2vbSAIAAHhyACtjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5Db250ZXh0Sm9i"
+      + "xIKQaz5DEm4CAAB4cgAfb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpvYis9ZwgPPW0DAgABTAAK"
+      + "cGFyYW1ldGVyc3QAK0xvcmcvd2hpc3BlcnN5c3RlbXMvam9icXVldWUvSm9iUGFyYW1ldGVyczt4cHNy"
+      + "AClvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9iUGFyYW1ldGVyc3nzUN4y/UKdAgAEWgAMaXNQ"
+      + "ZXJzaXN0ZW50SQAKcmV0cnlDb3VudEwAB2dyb3VwSWR0ABJMamF2YS9sYW5nL1N0cmluZztMAAxyZXF1"
+      + "aXJlbWVudHN0ABBMamF2YS91dGlsL0xpc3Q7eHABAAAAZHQAFUNyZWF0ZVNpZ25lZFByZUtleUpvYnNy"
+      + "ABRqYXZhLnV0aWwuTGlua2VkTGlzdAwpU11KYIgiAwAAeHB3BAAAAAFzcgA7b3JnLndoaXNwZXJzeXN0"
+      + "ZW1zLmpvYnF1ZXVlLnJlcXVpcmVtZW50cy5OZXR3b3JrUmVxdWlyZW1lbnTMN41l0oEDtAIAAHhweA==";
+
+  private static final String DELIVERY_RECEIPT_JOB =
+      "rO0ABXNyADNjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5EZWxpdmVyeVJlY2VpcHRKb2IX"
+      + "RAeUcLXPCAIAA0oACXRpbWVzdGFtcEwAC2Rlc3RpbmF0aW9udAASTGphdmEvbGFuZy9TdHJpbmc7TAAF"
+      + "cmVsYXlxAH4AAXhyACtjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5Db250ZXh0Sm9ixIKQ"
+      + "az5DEm4CAAB4cgAfb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpvYis9ZwgPPW0DAgABTAAKcGFy"
+      + "YW1ldGVyc3QAK0xvcmcvd2hpc3BlcnN5c3RlbXMvam9icXVldWUvSm9iUGFyYW1ldGVyczt4cHNyAClv"
+      + "cmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9iUGFyYW1ldGVyc3nzUN4y/UKdAgAEWgAMaXNQZXJz"
+      + "aXN0ZW50SQAKcmV0cnlDb3VudEwAB2dyb3VwSWRxAH4AAUwADHJlcXVpcmVtZW50c3QAEExqYXZhL3V0"
+      + "aWwvTGlzdDt4cAEAAAAycHNyABRqYXZhLnV0aWwuTGlua2VkTGlzdAwpU11KYIgiAwAAeHB3BAAAAAFz"
+      + "cgA7b3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLnJlcXVpcmVtZW50cy5OZXR3b3JrUmVxdWlyZW1l"
+      + "bnTMN41l0oEDtAIAAHhweAAAAUonYuQAdAAMKzE0MTUyMjIyMjIydAADZm9v";
+
+  private static final String MMS_DOWNLOAD_JOB =
+      "rO0ABXNyAC9jb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5NbXNEb3dubG9hZEpvYqZ02r2k"
+      + "5Of3AgADWgAJYXV0b21hdGljSgAJbWVzc2FnZUlkSgAIdGhyZWFkSWR4cgAwY29tLnNlY3VyZWNvbWNv"
+      + "ZGUubWVzc2FnaW5nLmpvYnMuTWFzdGVyU2VjcmV0Sm9iE+We5BQhNvkCAAB4cgArY29tLnNlY3VyZWNv"
+      + "bWNvZGUubWVzc2FnaW5nLmpvYnMuQ29udGV4dEpvYsSCkGs+QxJuAgAAeHIAH29yZy53aGlzcGVyc3lz"
+      + "dGVtcy5qb2JxdWV1ZS5Kb2IrPWcIDz1tAwIAAUwACnBhcmFtZXRlcnN0ACtMb3JnL3doaXNwZXJzeXN0"
+      + "ZW1zL2pvYnF1ZXVlL0pvYlBhcmFtZXRlcnM7eHBzcgApb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVl"
+      + "LkpvYlBhcmFtZXRlcnN581DeMv1CnQIABFoADGlzUGVyc2lzdGVudEkACnJldHJ5Q291bnRMAAdncm91"
+      + "cElkdAASTGphdmEvbGFuZy9TdHJpbmc7TAAMcmVxdWlyZW1lbnRzdAAQTGphdmEvdXRpbC9MaXN0O3hw"
+      + "AQAAAGR0AA1tbXMtb3BlcmF0aW9uc3IAFGphdmEudXRpbC5MaW5rZWRMaXN0DClTXUpgiCIDAAB4cHcE"
+      + "AAAAAnNyAEVjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5yZXF1aXJlbWVudHMuTWFzdGVy"
+      + "U2VjcmV0UmVxdWlyZW1lbnRLVX0et4eBXQIAAHhwc3IAO29yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1"
+      + "ZS5yZXF1aXJlbWVudHMuTmV0d29ya1JlcXVpcmVtZW50zDeNZdKBA7QCAAB4cHgBAAAAAAAAAAEAAAAA"
+      + "AAAAAg==";
+
+  private static final String MMS_RECEIVE_JOB =
+      "rO0ABXNyAC5jb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5NbXNSZWNlaXZlSm9iwj4M3M6J"
+      + "LtgCAAFbAARkYXRhdAACW0J4cgArY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuQ29udGV4"
+      + "dEpvYsSCkGs+QxJuAgAAeHIAH29yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5Kb2IrPWcIDz1tAwIA"
+      + "AUwACnBhcmFtZXRlcnN0ACtMb3JnL3doaXNwZXJzeXN0ZW1zL2pvYnF1ZXVlL0pvYlBhcmFtZXRlcnM7"
+      + "eHBzcgApb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpvYlBhcmFtZXRlcnN581DeMv1CnQIABFoA"
+      + "DGlzUGVyc2lzdGVudEkACnJldHJ5Q291bnRMAAdncm91cElkdAASTGphdmEvbGFuZy9TdHJpbmc7TAAM"
+      + "cmVxdWlyZW1lbnRzdAAQTGphdmEvdXRpbC9MaXN0O3hwAQAAAGRwc3IAFGphdmEudXRpbC5MaW5rZWRM"
+      + "aXN0DClTXUpgiCIDAAB4cHcEAAAAAHh1cgACW0Ks8xf4BghU4AIAAHhwAAAAAgEC";
+
+  private static final String MMS_SEND_JOB =
+      "rO0ABXNyACtjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5NbXNTZW5kSm9iNajFGlMTwSMC"
+      + "AAFKAAltZXNzYWdlSWR4cgAwY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuTWFzdGVyU2Vj"
+      + "cmV0Sm9iE+We5BQhNvkCAAB4cgArY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuQ29udGV4"
+      + "dEpvYsSCkGs+QxJuAgAAeHIAH29yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5Kb2IrPWcIDz1tAwIA"
+      + "AUwACnBhcmFtZXRlcnN0ACtMb3JnL3doaXNwZXJzeXN0ZW1zL2pvYnF1ZXVlL0pvYlBhcmFtZXRlcnM7"
+      + "eHBzcgApb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpvYlBhcmFtZXRlcnN581DeMv1CnQIABFoA"
+      + "DGlzUGVyc2lzdGVudEkACnJldHJ5Q291bnRMAAdncm91cElkdAASTGphdmEvbGFuZy9TdHJpbmc7TAAM"
+      + "cmVxdWlyZW1lbnRzdAAQTGphdmEvdXRpbC9MaXN0O3hwAQAAAGR0AA1tbXMtb3BlcmF0aW9uc3IAFGph"
+      + "dmEudXRpbC5MaW5rZWRMaXN0DClTXUpgiCIDAAB4cHcEAAAAAnNyADtvcmcud2hpc3BlcnN5c3RlbXMu"
+      + "am9icXVldWUucmVxdWlyZW1lbnRzLk5ldHdvcmtSZXF1aXJlbWVudMw3jWXSgQO0AgAAeHBzcgBFY29t"
+      + "LnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMucmVxdWlyZW1lbnRzLk1hc3RlclNlY3JldFJlcXVp"
+      + "cmVtZW50S1V9HreHgV0CAAB4cHgAAAAAAAAAAQ==";
+
+  private static final String PUSH_DECRYPT_JOB =
+      "rO0ABXNyAC9jb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5QdXNoRGVjcnlwdEpvYpC7nphB"
+      + "0vIcAgABSgAJbWVzc2FnZUlkeHIAMGNvbS5zZWN1cmVjb21jb2RlLm1lc3NhZ2luZy5qb2JzLk1hc3Rl"
+      + "clNlY3JldEpvYhPlnuQUITb5AgAAeHIAK2NvbS5zZWN1cmVjb21jb2RlLm1lc3NhZ2luZy5qb2JzLkNv"
+      + "bnRleHRKb2LEgpBrPkMSbgIAAHhyAB9vcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9iKz1nCA89"
+      + "bQMCAAFMAApwYXJhbWV0ZXJzdAArTG9yZy93aGlzcGVyc3lzdGVtcy9qb2JxdWV1ZS9Kb2JQYXJhbWV0"
+      + "ZXJzO3hwc3IAKW9yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5Kb2JQYXJhbWV0ZXJzefNQ3jL9Qp0C"
+      + "AARaAAxpc1BlcnNpc3RlbnRJAApyZXRyeUNvdW50TAAHZ3JvdXBJZHQAEkxqYXZhL2xhbmcvU3RyaW5n"
+      + "O0wADHJlcXVpcmVtZW50c3QAEExqYXZhL3V0aWwvTGlzdDt4cAEAAABkcHNyABRqYXZhLnV0aWwuTGlu"
+      + "a2VkTGlzdAwpU11KYIgiAwAAeHB3BAAAAAFzcgBFY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpv"
+      + "YnMucmVxdWlyZW1lbnRzLk1hc3RlclNlY3JldFJlcXVpcmVtZW50S1V9HreHgV0CAAB4cHgAAAAAAAAA"
+      + "AQ==";
+
+  private static final String PUSH_GROUP_SEND_JOB =
+      "rO0ABXNyADFjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5QdXNoR3JvdXBTZW5kSm9iNtvU"
+      + "uLJ2ZL4CAAFKAAltZXNzYWdlSWR4cgAsY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuUHVz"
+      + "aFNlbmRKb2LPWONEPVQwsgIAAHhyADBjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5NYXN0"
+      + "ZXJTZWNyZXRKb2IT5Z7kFCE2+QIAAHhyACtjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5D"
+      + "b250ZXh0Sm9ixIKQaz5DEm4CAAB4cgAfb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpvYis9ZwgP"
+      + "PW0DAgABTAAKcGFyYW1ldGVyc3QAK0xvcmcvd2hpc3BlcnN5c3RlbXMvam9icXVldWUvSm9iUGFyYW1l"
+      + "dGVyczt4cHNyAClvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9iUGFyYW1ldGVyc3nzUN4y/UKd"
+      + "AgAEWgAMaXNQZXJzaXN0ZW50SQAKcmV0cnlDb3VudEwAB2dyb3VwSWR0ABJMamF2YS9sYW5nL1N0cmlu"
+      + "ZztMAAxyZXF1aXJlbWVudHN0ABBMamF2YS91dGlsL0xpc3Q7eHABAAAABXQADCsxNDE1MjIyMjIyMnNy"
+      + "ABRqYXZhLnV0aWwuTGlua2VkTGlzdAwpU11KYIgiAwAAeHB3BAAAAAJzcgBFY29tLnNlY3VyZWNvbWNv"
+      + "ZGUubWVzc2FnaW5nLmpvYnMucmVxdWlyZW1lbnRzLk1hc3RlclNlY3JldFJlcXVpcmVtZW50S1V9HreH"
+      + "gV0CAAB4cHNyADtvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUucmVxdWlyZW1lbnRzLk5ldHdvcmtS"
+      + "ZXF1aXJlbWVudMw3jWXSgQO0AgAAeHB4AAAAAAAAAAE=";
+
+  private static final String PUSH_MEDIA_SEND_JOB =
+      "rO0ABXNyADFjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5QdXNoTWVkaWFTZW5kSm9igWoa"
+      + "BtVSxJsCAAFKAAltZXNzYWdlSWR4cgAsY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuUHVz"
+      + "aFNlbmRKb2LPWONEPVQwsgIAAHhyADBjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5NYXN0"
+      + "ZXJTZWNyZXRKb2IT5Z7kFCE2+QIAAHhyACtjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5D"
+      + "b250ZXh0Sm9ixIKQaz5DEm4CAAB4cgAfb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpvYis9ZwgP"
+      + "PW0DAgABTAAKcGFyYW1ldGVyc3QAK0xvcmcvd2hpc3BlcnN5c3RlbXMvam9icXVldWUvSm9iUGFyYW1l"
+      + "dGVyczt4cHNyAClvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9iUGFyYW1ldGVyc3nzUN4y/UKd"
+      + "AgAEWgAMaXNQZXJzaXN0ZW50SQAKcmV0cnlDb3VudEwAB2dyb3VwSWR0ABJMamF2YS9sYW5nL1N0cmlu"
+      + "ZztMAAxyZXF1aXJlbWVudHN0ABBMamF2YS91dGlsL0xpc3Q7eHABAAAABXQADCsxNDE1MjIyMjIyMnNy"
+      + "ABRqYXZhLnV0aWwuTGlua2VkTGlzdAwpU11KYIgiAwAAeHB3BAAAAAJzcgBFY29tLnNlY3VyZWNvbWNv"
+      + "ZGUubWVzc2FnaW5nLmpvYnMucmVxdWlyZW1lbnRzLk1hc3RlclNlY3JldFJlcXVpcmVtZW50S1V9HreH"
+      + "gV0CAAB4cHNyADtvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUucmVxdWlyZW1lbnRzLk5ldHdvcmtS"
+      + "ZXF1aXJlbWVudMw3jWXSgQO0AgAAeHB4AAAAAAAAAAE=";
+
+  private static final String PUSH_RECEIVE_JOB =
+      "rO0ABXNyAC9jb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5QdXNoUmVjZWl2ZUpvYp2JZSLO"
+      + "w9FOAgABTAAEZGF0YXQAEkxqYXZhL2xhbmcvU3RyaW5nO3hyACtjb20uc2VjdXJlY29tY29kZS5tZXNz"
+      + "YWdpbmcuam9icy5Db250ZXh0Sm9ixIKQaz5DEm4CAAB4cgAfb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1"
+      + "ZXVlLkpvYis9ZwgPPW0DAgABTAAKcGFyYW1ldGVyc3QAK0xvcmcvd2hpc3BlcnN5c3RlbXMvam9icXVl"
+      + "dWUvSm9iUGFyYW1ldGVyczt4cHNyAClvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9iUGFyYW1l"
+      + "dGVyc3nzUN4y/UKdAgAEWgAMaXNQZXJzaXN0ZW50SQAKcmV0cnlDb3VudEwAB2dyb3VwSWRxAH4AAUwA"
+      + "DHJlcXVpcmVtZW50c3QAEExqYXZhL3V0aWwvTGlzdDt4cAEAAABkcHNyABRqYXZhLnV0aWwuTGlua2Vk"
+      + "TGlzdAwpU11KYIgiAwAAeHB3BAAAAAB4dAAEZGF0YQ==";
+
+  private static final String PUSH_TEXT_SEND_JOB =
+      "rO0ABXNyADBjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5QdXNoVGV4dFNlbmRKb2KFh4j2"
+      + "o397GAIAAUoACW1lc3NhZ2VJZHhyACxjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5QdXNo"
+      + "U2VuZEpvYs9Y40Q9VDCyAgAAeHIAMGNvbS5zZWN1cmVjb21jb2RlLm1lc3NhZ2luZy5qb2JzLk1hc3Rl"
+      + "clNlY3JldEpvYhPlnuQUITb5AgAAeHIAK2NvbS5zZWN1cmVjb21jb2RlLm1lc3NhZ2luZy5qb2JzLkNv"
+      + "bnRleHRKb2LEgpBrPkMSbgIAAHhyAB9vcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9iKz1nCA89"
+      + "bQMCAAFMAApwYXJhbWV0ZXJzdAArTG9yZy93aGlzcGVyc3lzdGVtcy9qb2JxdWV1ZS9Kb2JQYXJhbWV0"
+      + "ZXJzO3hwc3IAKW9yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5Kb2JQYXJhbWV0ZXJzefNQ3jL9Qp0C"
+      + "AARaAAxpc1BlcnNpc3RlbnRJAApyZXRyeUNvdW50TAAHZ3JvdXBJZHQAEkxqYXZhL2xhbmcvU3RyaW5n"
+      + "O0wADHJlcXVpcmVtZW50c3QAEExqYXZhL3V0aWwvTGlzdDt4cAEAAAAFdAAMKzE0MTUyMjIyMjIyc3IA"
+      + "FGphdmEudXRpbC5MaW5rZWRMaXN0DClTXUpgiCIDAAB4cHcEAAAAAnNyAEVjb20uc2VjdXJlY29tY29k"
+      + "ZS5tZXNzYWdpbmcuam9icy5yZXF1aXJlbWVudHMuTWFzdGVyU2VjcmV0UmVxdWlyZW1lbnRLVX0et4eB"
+      + "XQIAAHhwc3IAO29yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5yZXF1aXJlbWVudHMuTmV0d29ya1Jl"
+      + "cXVpcmVtZW50zDeNZdKBA7QCAAB4cHgAAAAAAAAAAQ==";
+
+  private static final String SMS_DECRYPT_JOB =
+      "rO0ABXNyAC5jb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5TbXNEZWNyeXB0Sm9iIwfUWJpl"
+      + "NiICAAFKAAltZXNzYWdlSWR4cgAwY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuTWFzdGVy"
+      + "U2VjcmV0Sm9iE+We5BQhNvkCAAB4cgArY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuQ29u"
+      + "dGV4dEpvYsSCkGs+QxJuAgAAeHIAH29yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5Kb2IrPWcIDz1t"
+      + "AwIAAUwACnBhcmFtZXRlcnN0ACtMb3JnL3doaXNwZXJzeXN0ZW1zL2pvYnF1ZXVlL0pvYlBhcmFtZXRl"
+      + "cnM7eHBzcgApb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpvYlBhcmFtZXRlcnN581DeMv1CnQIA"
+      + "BFoADGlzUGVyc2lzdGVudEkACnJldHJ5Q291bnRMAAdncm91cElkdAASTGphdmEvbGFuZy9TdHJpbmc7"
+      + "TAAMcmVxdWlyZW1lbnRzdAAQTGphdmEvdXRpbC9MaXN0O3hwAQAAAGRwc3IAFGphdmEudXRpbC5MaW5r"
+      + "ZWRMaXN0DClTXUpgiCIDAAB4cHcEAAAAAXNyAEVjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9i"
+      + "cy5yZXF1aXJlbWVudHMuTWFzdGVyU2VjcmV0UmVxdWlyZW1lbnRLVX0et4eBXQIAAHhweAAAAAAAAAAB";
+
+  private static final String SMS_RECEIVE_JOB =
+      "rO0ABXNyAC5jb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5TbXNSZWNlaXZlSm9i6uzPYUZl"
+      + "M3QCAAFbAARwZHVzdAATW0xqYXZhL2xhbmcvT2JqZWN0O3hyACtjb20uc2VjdXJlY29tY29kZS5tZXNz"
+      + "YWdpbmcuam9icy5Db250ZXh0Sm9ixIKQaz5DEm4CAAB4cgAfb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1"
+      + "ZXVlLkpvYis9ZwgPPW0DAgABTAAKcGFyYW1ldGVyc3QAK0xvcmcvd2hpc3BlcnN5c3RlbXMvam9icXVl"
+      + "dWUvSm9iUGFyYW1ldGVyczt4cHNyAClvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuSm9iUGFyYW1l"
+      + "dGVyc3nzUN4y/UKdAgAEWgAMaXNQZXJzaXN0ZW50SQAKcmV0cnlDb3VudEwAB2dyb3VwSWR0ABJMamF2"
+      + "YS9sYW5nL1N0cmluZztMAAxyZXF1aXJlbWVudHN0ABBMamF2YS91dGlsL0xpc3Q7eHABAAAAZHBzcgAU"
+      + "amF2YS51dGlsLkxpbmtlZExpc3QMKVNdSmCIIgMAAHhwdwQAAAAAeHVyABNbTGphdmEubGFuZy5PYmpl"
+      + "Y3Q7kM5YnxBzKWwCAAB4cAAAAAF1cgACW0Ks8xf4BghU4AIAAHhwAAAAAgEC";
+
+  private static final String SMS_SEND_JOB =
+      "rO0ABXNyACtjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5TbXNTZW5kSm9ib2IkLTzOhAQC"
+      + "AAFKAAltZXNzYWdlSWR4cgAwY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuTWFzdGVyU2Vj"
+      + "cmV0Sm9iE+We5BQhNvkCAAB4cgArY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuQ29udGV4"
+      + "dEpvYsSCkGs+QxJuAgAAeHIAH29yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5Kb2IrPWcIDz1tAwIA"
+      + "AUwACnBhcmFtZXRlcnN0ACtMb3JnL3doaXNwZXJzeXN0ZW1zL2pvYnF1ZXVlL0pvYlBhcmFtZXRlcnM7"
+      + "eHBzcgApb3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpvYlBhcmFtZXRlcnN581DeMv1CnQIABFoA"
+      + "DGlzUGVyc2lzdGVudEkACnJldHJ5Q291bnRMAAdncm91cElkdAASTGphdmEvbGFuZy9TdHJpbmc7TAAM"
+      + "cmVxdWlyZW1lbnRzdAAQTGphdmEvdXRpbC9MaXN0O3hwAQAAAGR0AAwrMTQxNTIyMjIyMjJzcgAUamF2"
+      + "YS51dGlsLkxpbmtlZExpc3QMKVNdSmCIIgMAAHhwdwQAAAACc3IARWNvbS5zZWN1cmVjb21jb2RlLm1l"
+      + "c3NhZ2luZy5qb2JzLnJlcXVpcmVtZW50cy5NYXN0ZXJTZWNyZXRSZXF1aXJlbWVudEtVfR63h4FdAgAA"
+      + "eHBzcgBAY29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMucmVxdWlyZW1lbnRzLlNlcnZpY2VS"
+      + "ZXF1aXJlbWVudJIJFQxCat+fAgAAeHB4AAAAAAAAAAE=";
+
+  private static final String SMS_SENT_JOB =
+      "rO0ABXNyACtjb20uc2VjdXJlY29tY29kZS5tZXNzYWdpbmcuam9icy5TbXNTZW50Sm9ijyiCbYlhCZQC"
+      + "AANKAAltZXNzYWdlSWRJAAZyZXN1bHRMAAZhY3Rpb250ABJMamF2YS9sYW5nL1N0cmluZzt4cgAwY29t"
+      + "LnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuTWFzdGVyU2VjcmV0Sm9iE+We5BQhNvkCAAB4cgAr"
+      + "Y29tLnNlY3VyZWNvbWNvZGUubWVzc2FnaW5nLmpvYnMuQ29udGV4dEpvYsSCkGs+QxJuAgAAeHIAH29y"
+      + "Zy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5Kb2IrPWcIDz1tAwIAAUwACnBhcmFtZXRlcnN0ACtMb3Jn"
+      + "L3doaXNwZXJzeXN0ZW1zL2pvYnF1ZXVlL0pvYlBhcmFtZXRlcnM7eHBzcgApb3JnLndoaXNwZXJzeXN0"
+      + "ZW1zLmpvYnF1ZXVlLkpvYlBhcmFtZXRlcnN581DeMv1CnQIABFoADGlzUGVyc2lzdGVudEkACnJldHJ5"
+      + "Q291bnRMAAdncm91cElkcQB+AAFMAAxyZXF1aXJlbWVudHN0ABBMamF2YS91dGlsL0xpc3Q7eHABAAAA"
+      + "ZHBzcgAUamF2YS51dGlsLkxpbmtlZExpc3QMKVNdSmCIIgMAAHhwdwQAAAABc3IARWNvbS5zZWN1cmVj"
+      + "b21jb2RlLm1lc3NhZ2luZy5qb2JzLnJlcXVpcmVtZW50cy5NYXN0ZXJTZWNyZXRSZXF1aXJlbWVudEtV"
+      + "fR63h4FdAgAAeHB4AAAAAAAAAAEAAAAAdAAGYWN0aW9u";
+
+  public void testLoadsBaselineJavaRows() throws IOException {
+    assertLoads(AttachmentDownloadJob.class, ATTACHMENT_DOWNLOAD_JOB);
+    assertLoads(AvatarDownloadJob.class,     AVATAR_DOWNLOAD_JOB);
+    assertLoads(CreateSignedPreKeyJob.class, CREATE_SIGNED_PRE_KEY_JOB);
+    assertLoads(DeliveryReceiptJob.class,    DELIVERY_RECEIPT_JOB);
+    assertLoads(MmsDownloadJob.class,        MMS_DOWNLOAD_JOB);
+    assertLoads(MmsReceiveJob.class,         MMS_RECEIVE_JOB);
+    assertLoads(MmsSendJob.class,            MMS_SEND_JOB);
+    assertLoads(PushDecryptJob.class,        PUSH_DECRYPT_JOB);
+    assertLoads(PushGroupSendJob.class,      PUSH_GROUP_SEND_JOB);
+    assertLoads(PushMediaSendJob.class,      PUSH_MEDIA_SEND_JOB);
+    assertLoads(PushReceiveJob.class,        PUSH_RECEIVE_JOB);
+    assertLoads(PushTextSendJob.class,       PUSH_TEXT_SEND_JOB);
+    assertLoads(SmsDecryptJob.class,         SMS_DECRYPT_JOB);
+    assertLoads(SmsReceiveJob.class,         SMS_RECEIVE_JOB);
+    assertLoads(SmsSendJob.class,            SMS_SEND_JOB);
+    assertLoads(SmsSentJob.class,            SMS_SENT_JOB);
+  }
+
+  private void assertLoads(Class<? extends Job> jobClass, String row) throws IOException {
+    Job job = new EncryptingJobSerializer().deserialize(null, false, row);
+
+    assertEquals(jobClass, job.getClass());
+    assertTrue(job.isPersistent());
+  }
+}
@@ -0,0 +1,84 @@
+package org.whispersystems.jobqueue;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.jobqueue.jobs.TestJob;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JobConsumerPoolTest extends AndroidTestCase {
+
+  public void testGrowsWithBacklogAndShrinksWhenIdle() throws InterruptedException {
+    final CountDownLatch release  = new CountDownLatch(1);
+    final CountDownLatch started  = new CountDownLatch(3);
+    final CountDownLatch finished = new CountDownLatch(10);
+
+    JobQueue        jobQueue = new JobQueue();
+    JobConsumerPool pool     = new JobConsumerPool("TestConsumer", jobQueue, null, new JobMetrics(), 0, 3, 100);
+
+    assertEquals(0, pool.getConsumerCount());
+
+    for (int i=0;i<10;i++) {
+      jobQueue.add(new TestJob(JobParameters.newBuilder().withPriority(JobPriority.HIGH).create(), new Runnable() {
+        @Override
+        public void run() {
+          started.countDown();
+
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+
+          finished.countDown();
+        }
+      }));
+    }
+
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertEquals(3, pool.getConsumerCount());
+
+    release.countDown();
+
+    assertTrue(finished.await(5, TimeUnit.SECONDS));
+
+    for (int i=0;i<50 && pool.getConsumerCount() > 0;i++) {
+      Thread.sleep(50);
+    }
+
+    assertEquals(0, pool.getConsumerCount());
+
+    final CountDownLatch ranAgain = new CountDownLatch(1);
+
+    jobQueue.add(new TestJob(JobParameters.newBuilder().create(), new Runnable() {
+      @Override
+      public void run() {
+        ranAgain.countDown();
+      }
+    }));
+
+    assertTrue(ranAgain.await(5, TimeUnit.SECONDS));
+  }
+
+  public void testRunsJobsQueuedBeforePoolExists() throws InterruptedException {
+    final CountDownLatch ran      = new CountDownLatch(1);
+    JobQueue             jobQueue = new JobQueue();
+
+    jobQueue.add(new TestJob(JobParameters.newBuilder().create(), new Runnable() {
+      @Override
+      public void run() {
+        ran.countDown();
+      }
+    }));
+
+    new JobConsumerPool("TestConsumer", jobQueue, null, new JobMetrics(), 0, 3, 100);
+
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+  }
+
+  public void testStartsMinimumConsumers() {
+    JobConsumerPool pool = new JobConsumerPool("TestConsumer", new JobQueue(), null, new JobMetrics(), 2, 3, 0);
+    assertEquals(2, pool.getConsumerCount());
+  }
+}
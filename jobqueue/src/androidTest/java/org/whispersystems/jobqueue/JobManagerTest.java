@@ -145,6 +145,58 @@ public class JobManagerTest extends AndroidTestCase {
     assertTrue(PersistentResult.getInstance().isRan());
   }
 
+  public void testLazyRestoredJobWaitsForRequirement() throws InterruptedException {
+    PersistentMockRequirement requirement = new PersistentMockRequirement();
+    PersistentTestJob         testJob     = new PersistentTestJob(requirement);
+    JobManager                jobManager  = JobManager.newBuilder(getContext())
+                                                      .withName("lazy-restore-test")
+                                                      .withJobSerializer(new JavaJobSerializer())
+                                                      .withConsumerThreads(1)
+                                                      .build();
+
+    PersistentResult.getInstance().reset();
+    PersistentRequirement.getInstance().setPresent(false);
+
+    jobManager.add(testJob);
+
+    assertTrue(PersistentResult.getInstance().isAdded());
+    assertTrue(!PersistentResult.getInstance().isRan());
+
+    jobManager = JobManager.newBuilder(getContext())
+                           .withName("lazy-restore-test")
+                           .withJobSerializer(new JavaJobSerializer())
+                           .withConsumerThreads(1)
+                           .build();
+
+    assertTrue(!PersistentResult.getInstance().isRan());
+
+    PersistentRequirement.getInstance().setPresent(true);
+    jobManager.onRequirementStatusChanged();
+
+    assertTrue(PersistentResult.getInstance().isRan());
+  }
+
+  public void testGroupCommitJobExecution() throws InterruptedException {
+    PersistentMockRequirement requirement = new PersistentMockRequirement();
+    PersistentTestJob         testJob     = new PersistentTestJob(requirement);
+    JobManager                jobManager  = JobManager.newBuilder(getContext())
+                                                      .withName("group-commit-test")
+                                                      .withJobSerializer(new JavaJobSerializer())
+                                                      .withGroupCommit(10, 50)
+                                                      .withConsumerThreads(1)
+                                                      .build();
+
+    PersistentResult.getInstance().reset();
+    PersistentRequirement.getInstance().setPresent(true);
+
+    jobManager.add(testJob);
+
+    assertTrue(PersistentResult.getInstance().isAdded());
+    assertTrue(PersistentResult.getInstance().isRan());
+    assertTrue(testJob.getPersistentId() > 0);
+    assertTrue(jobManager.getGroupCommitStatistics().getCommitCount() >= 1);
+  }
+
   public void testEncryptedJobExecuton() throws InterruptedException {
     EncryptionKeys            keys        = new EncryptionKeys(new byte[30]);
     PersistentMockRequirement requirement = new PersistentMockRequirement();
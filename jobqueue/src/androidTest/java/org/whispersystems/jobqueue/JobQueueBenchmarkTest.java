@@ -0,0 +1,121 @@
+package org.whispersystems.jobqueue;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.jobqueue.jobs.TestJob;
+import org.whispersystems.jobqueue.requirements.Requirement;
+import org.whispersystems.jobqueue.util.Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JobQueueBenchmarkTest extends AndroidTestCase {
+
+  private static final int WARMUP_ITERATIONS   = 3;
+  private static final int MEASURED_ITERATIONS = 5;
+  private static final int JOB_COUNT           = 5000;
+  private static final int GROUP_COUNT         = 50;
+  private static final int CONSUMERS           = 4;
+
+  private static final JobPriority[] PRIORITIES = JobPriority.values();
+
+  public void testQueueThroughput() throws Exception {
+    final JobQueue  jobQueue = new JobQueue();
+    final List<Job> jobs     = new ArrayList<>(JOB_COUNT);
+
+    Benchmark.Result result = new Benchmark("JobQueue add/getNext/setFinished", WARMUP_ITERATIONS,
+                                            MEASURED_ITERATIONS, JOB_COUNT).run(new Benchmark.Operation() {
+      @Override
+      public void setUp() {
+        jobs.clear();
+
+        for (int i=0;i<JOB_COUNT;i++) {
+          jobs.add(new TestJob(createParameters(i)));
+        }
+      }
+
+      @Override
+      public void run(int count) {
+        for (Job job : jobs) {
+          jobQueue.add(job);
+        }
+
+        for (int i=0;i<count;i++) {
+          jobQueue.setFinished(jobQueue.getNext());
+        }
+      }
+    });
+
+    assertTrue(result.getMinOperationsPerSecond() > 0);
+    assertEquals(0, jobQueue.getStatistics().getQueueDepth(JobPriority.NORMAL));
+  }
+
+  public void testConsumerPoolThroughput() throws Exception {
+    final JobQueue   jobQueue = new JobQueue();
+    final JobMetrics metrics  = new JobMetrics();
+
+    new JobConsumerPool("BenchmarkConsumer", jobQueue, null, metrics, 0, CONSUMERS, 1000);
+
+    Benchmark.Result result = new Benchmark("JobConsumerPool end to end", WARMUP_ITERATIONS,
+                                            MEASURED_ITERATIONS, JOB_COUNT).run(new Benchmark.Operation() {
+      @Override
+      public void setUp() {}
+
+      @Override
+      public void run(int count) throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(count);
+
+        Runnable countDown = new Runnable() {
+          @Override
+          public void run() {
+            finished.countDown();
+          }
+        };
+
+        for (int i=0;i<count;i++) {
+          jobQueue.add(new TestJob(createParameters(i), countDown));
+        }
+
+        assertTrue(finished.await(60, TimeUnit.SECONDS));
+      }
+    });
+
+    assertTrue(result.getMinOperationsPerSecond() > 0);
+
+    JobClassMetrics testJobMetrics = metrics.getSnapshot().get(TestJob.class.getName());
+    long            expected       = (long)(WARMUP_ITERATIONS + MEASURED_ITERATIONS) * JOB_COUNT;
+
+    for (int i=0;i<50 && metrics.getSnapshot().get(TestJob.class.getName()).getSucceededCount() < expected;i++) {
+      Thread.sleep(10);
+      testJobMetrics = metrics.getSnapshot().get(TestJob.class.getName());
+    }
+
+    assertEquals(expected, testJobMetrics.getStartedCount());
+    assertEquals(expected, testJobMetrics.getSucceededCount());
+    assertEquals(expected, testJobMetrics.getAttemptCount());
+    assertEquals(0, testJobMetrics.getRetryCount());
+    assertEquals(expected, testJobMetrics.getWaitTimes().getCount());
+    assertEquals(expected, testJobMetrics.getRunTimes().getCount());
+    assertTrue(testJobMetrics.getWaitTimes().getPercentileMillis(50) <= testJobMetrics.getWaitTimes().getPercentileMillis(99));
+    assertTrue(testJobMetrics.getWaitTimes().getPercentileMillis(100) <= testJobMetrics.getWaitTimes().getMaxMillis());
+  }
+
+  private static JobParameters createParameters(int index) {
+    JobParameters.Builder builder = JobParameters.newBuilder()
+                                                 .withPriority(PRIORITIES[index % PRIORITIES.length]);
+
+    if (index % 2 == 0)  builder.withGroupId("group-" + (index % GROUP_COUNT));
+    if (index % 10 == 0) builder.withRequirement(new PresentRequirement());
+
+    return builder.create();
+  }
+
+  private static class PresentRequirement implements Requirement {
+    @Override
+    public boolean isPresent() {
+      return true;
+    }
+  }
+}
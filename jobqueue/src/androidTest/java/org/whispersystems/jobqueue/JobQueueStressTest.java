@@ -0,0 +1,211 @@
+package org.whispersystems.jobqueue;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.whispersystems.jobqueue.requirements.Requirement;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JobQueueStressTest extends AndroidTestCase {
+
+  private static final String TAG = JobQueueStressTest.class.getSimpleName();
+
+  private static final int JOB_COUNT     = 5000;
+  private static final int GROUP_COUNT   = 50;
+  private static final int BLOCKED_EVERY = 10;
+  private static final int CONSUMERS     = 5;
+
+  public void testIndexedQueueAgainstLinearScan() throws InterruptedException {
+    final JobQueue           indexed = new JobQueue();
+    final LinearScanJobQueue linear  = new LinearScanJobQueue();
+
+    Result indexedResult = runWorkload(new Queue() {
+      public void add(Job job) { indexed.add(job); }
+      public Job  getNext() { return indexed.getNext(); }
+      public void setGroupIdAvailable(String groupId) { indexed.setGroupIdAvailable(groupId); }
+      public void onRequirementStatusChanged() { indexed.onRequirementStatusChanged(); }
+    });
+
+    Result linearResult = runWorkload(new Queue() {
+      public void add(Job job) { linear.add(job); }
+      public Job  getNext() { return linear.getNext(); }
+      public void setGroupIdAvailable(String groupId) { linear.setGroupIdAvailable(groupId); }
+      public void onRequirementStatusChanged() { linear.onRequirementStatusChanged(); }
+    });
+
+    Log.w(TAG, "Indexed: " + indexedResult);
+    Log.w(TAG, "Linear:  " + linearResult);
+
+    assertTrue(indexedResult.requirementChecks < linearResult.requirementChecks);
+  }
+
+  private Result runWorkload(final Queue queue) throws InterruptedException {
+    final AtomicLong                               checks   = new AtomicLong(0);
+    final AtomicBoolean                            present  = new AtomicBoolean(false);
+    final AtomicBoolean                            overlap  = new AtomicBoolean(false);
+    final ConcurrentHashMap<String, AtomicBoolean> running  = new ConcurrentHashMap<>();
+    final CountDownLatch                           finished = new CountDownLatch(JOB_COUNT);
+    final List<Thread>                             threads  = new LinkedList<>();
+
+    for (int i=0;i<GROUP_COUNT;i++) {
+      running.put("group-" + i, new AtomicBoolean(false));
+    }
+
+    for (int i=0;i<CONSUMERS;i++) {
+      Thread consumer = new Thread() {
+        @Override
+        public void run() {
+          while (true) {
+            Job job = queue.getNext();
+
+            if (job instanceof StopJob) return;
+
+            try {
+              job.onRun();
+            } catch (Exception e) {
+              throw new AssertionError(e);
+            }
+
+            if (job.getGroupId() != null) {
+              if (!running.get(job.getGroupId()).compareAndSet(true, false)) overlap.set(true);
+              queue.setGroupIdAvailable(job.getGroupId());
+            }
+
+            finished.countDown();
+          }
+        }
+      };
+
+      threads.add(consumer);
+      consumer.start();
+    }
+
+    long startTime = System.nanoTime();
+
+    for (int i=0;i<JOB_COUNT;i++) {
+      JobParameters.Builder builder = JobParameters.newBuilder();
+
+      if (i % 2 == 0)             builder.withGroupId("group-" + (i % GROUP_COUNT));
+      if (i % BLOCKED_EVERY == 0) builder.withRequirement(new CountingRequirement(present, checks));
+      else                        builder.withRequirement(new CountingRequirement(null, checks));
+
+      queue.add(new StressJob(builder.create(), running, overlap));
+    }
+
+    present.set(true);
+    queue.onRequirementStatusChanged();
+
+    assertTrue(finished.await(60, TimeUnit.SECONDS));
+
+    long elapsed = System.nanoTime() - startTime;
+
+    for (int i=0;i<CONSUMERS;i++) {
+      queue.add(new StopJob());
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertFalse(overlap.get());
+
+    return new Result(TimeUnit.NANOSECONDS.toMillis(elapsed), checks.get());
+  }
+
+  private interface Queue {
+    public void add(Job job);
+    public Job  getNext();
+    public void setGroupIdAvailable(String groupId);
+    public void onRequirementStatusChanged();
+  }
+
+  private static class Result {
+    private final long elapsedMillis;
+    private final long requirementChecks;
+
+    private Result(long elapsedMillis, long requirementChecks) {
+      this.elapsedMillis     = elapsedMillis;
+      this.requirementChecks = requirementChecks;
+    }
+
+    @Override
+    public String toString() {
+      return elapsedMillis + "ms, " + requirementChecks + " requirement checks";
+    }
+  }
+
+  private static class CountingRequirement implements Requirement {
+    private final AtomicBoolean present;
+    private final AtomicLong    checks;
+
+    private CountingRequirement(AtomicBoolean present, AtomicLong checks) {
+      this.present = present;
+      this.checks  = checks;
+    }
+
+    @Override
+    public boolean isPresent() {
+      checks.incrementAndGet();
+      return present == null || present.get();
+    }
+  }
+
+  private static class StressJob extends Job {
+    private final ConcurrentHashMap<String, AtomicBoolean> running;
+    private final AtomicBoolean                            overlap;
+
+    private StressJob(JobParameters parameters,
+                      ConcurrentHashMap<String, AtomicBoolean> running,
+                      AtomicBoolean overlap)
+    {
+      super(parameters);
+      this.running = running;
+      this.overlap = overlap;
+    }
+
+    @Override
+    public void onRun() {
+      if (getGroupId() != null && !running.get(getGroupId()).compareAndSet(false, true)) {
+        overlap.set(true);
+      }
+    }
+
+    @Override
+    public void onAdded() {}
+
+    @Override
+    public boolean onShouldRetry(Exception exception) {
+      return false;
+    }
+
+    @Override
+    public void onCanceled() {}
+  }
+
+  private static class StopJob extends Job {
+    private StopJob() {
+      super(JobParameters.newBuilder().create());
+    }
+
+    @Override
+    public void onAdded() {}
+
+    @Override
+    public void onRun() {}
+
+    @Override
+    public boolean onShouldRetry(Exception exception) {
+      return false;
+    }
+
+    @Override
+    public void onCanceled() {}
+  }
+}
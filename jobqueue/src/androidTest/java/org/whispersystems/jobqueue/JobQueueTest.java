@@ -0,0 +1,169 @@
+package org.whispersystems.jobqueue;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.jobqueue.jobs.TestJob;
+import org.whispersystems.jobqueue.requirements.Requirement;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JobQueueTest extends AndroidTestCase {
+
+  public void testOnlyAffectedWaitListIsChecked() {
+    AtomicBoolean networkPresent = new AtomicBoolean(false);
+    AtomicBoolean secretPresent  = new AtomicBoolean(false);
+    AtomicInteger networkChecks  = new AtomicInteger(0);
+    AtomicInteger secretChecks   = new AtomicInteger(0);
+    JobQueue      jobQueue       = new JobQueue();
+
+    TestJob networkJob = new TestJob(JobParameters.newBuilder()
+                                                  .withRequirement(new NetworkLikeRequirement(networkPresent, networkChecks))
+                                                  .create());
+    TestJob secretJob  = new TestJob(JobParameters.newBuilder()
+                                                  .withRequirement(new SecretLikeRequirement(secretPresent, secretChecks))
+                                                  .create());
+
+    jobQueue.add(networkJob);
+    jobQueue.add(secretJob);
+
+    assertEquals(1, networkChecks.get());
+    assertEquals(1, secretChecks.get());
+
+    for (int i=0;i<10;i++) {
+      jobQueue.onRequirementStatusChanged(NetworkLikeRequirement.class);
+    }
+
+    assertEquals(11, networkChecks.get());
+    assertEquals(1, secretChecks.get());
+
+    secretPresent.set(true);
+    jobQueue.onRequirementStatusChanged(SecretLikeRequirement.class);
+
+    assertSame(secretJob, jobQueue.getNext());
+    assertEquals(11, networkChecks.get());
+
+    networkPresent.set(true);
+    jobQueue.onRequirementStatusChanged();
+
+    assertSame(networkJob, jobQueue.getNext());
+  }
+
+  public void testDelayedJobWaitsUntilDue() {
+    JobQueue jobQueue   = new JobQueue();
+    TestJob  delayedJob = new TestJob(JobParameters.newBuilder().withGroupId("group").create());
+    TestJob  groupJob   = new TestJob(JobParameters.newBuilder().withGroupId("group").create());
+    TestJob  otherJob   = new TestJob();
+
+    jobQueue.add(delayedJob);
+    assertSame(delayedJob, jobQueue.getNext());
+
+    long nextRunTime = System.currentTimeMillis() + 200;
+
+    delayedJob.setNextRunTime(nextRunTime);
+    jobQueue.push(delayedJob);
+    jobQueue.setGroupIdAvailable("group");
+
+    jobQueue.add(groupJob);
+    jobQueue.add(otherJob);
+
+    assertSame(otherJob, jobQueue.getNext());
+    assertSame(delayedJob, jobQueue.getNext());
+    assertTrue(System.currentTimeMillis() >= nextRunTime);
+
+    jobQueue.setGroupIdAvailable("group");
+
+    assertSame(groupJob, jobQueue.getNext());
+  }
+
+  public void testWeightedPriorities() {
+    JobQueue jobQueue = new JobQueue();
+
+    for (int i=0;i<26;i++) {
+      jobQueue.add(new TestJob(JobParameters.newBuilder().withPriority(JobPriority.LOW).create()));
+      jobQueue.add(new TestJob(JobParameters.newBuilder().withPriority(JobPriority.HIGH).create()));
+    }
+
+    int high = 0;
+
+    for (int i=0;i<10;i++) {
+      if (jobQueue.getNext().getPriority() == JobPriority.HIGH) high++;
+    }
+
+    assertEquals(9, high);
+    assertEquals(17, jobQueue.getStatistics().getQueueDepth(JobPriority.HIGH));
+    assertEquals(25, jobQueue.getStatistics().getQueueDepth(JobPriority.LOW));
+  }
+
+  public void testConsumerReservedForHighPriority() {
+    JobQueue jobQueue = new JobQueue();
+    jobQueue.setConsumerCount(2);
+
+    TestJob lowJob    = new TestJob(JobParameters.newBuilder().withPriority(JobPriority.LOW).create());
+    TestJob normalJob = new TestJob(JobParameters.newBuilder().withPriority(JobPriority.NORMAL).create());
+    TestJob highJob   = new TestJob(JobParameters.newBuilder().withPriority(JobPriority.HIGH).create());
+
+    jobQueue.add(lowJob);
+    jobQueue.add(normalJob);
+
+    Job first = jobQueue.getNext();
+
+    jobQueue.add(highJob);
+
+    assertSame(highJob, jobQueue.getNext());
+
+    jobQueue.setFinished(first);
+
+    assertNotSame(first, jobQueue.getNext());
+  }
+
+  public void testGroupsTakeTurns() {
+    JobQueue jobQueue = new JobQueue();
+
+    for (int i=0;i<3;i++) {
+      jobQueue.add(new TestJob(JobParameters.newBuilder().withGroupId("backlog").create()));
+    }
+
+    TestJob otherJob = new TestJob(JobParameters.newBuilder().withGroupId("other").create());
+    jobQueue.add(otherJob);
+
+    Job backlogJob = jobQueue.getNext();
+    assertEquals("backlog", backlogJob.getGroupId());
+
+    jobQueue.setFinished(backlogJob);
+
+    assertSame(otherJob, jobQueue.getNext());
+  }
+
+  private static class NetworkLikeRequirement implements Requirement {
+    private final AtomicBoolean present;
+    private final AtomicInteger checks;
+
+    private NetworkLikeRequirement(AtomicBoolean present, AtomicInteger checks) {
+      this.present = present;
+      this.checks  = checks;
+    }
+
+    @Override
+    public boolean isPresent() {
+      checks.incrementAndGet();
+      return present.get();
+    }
+  }
+
+  private static class SecretLikeRequirement implements Requirement {
+    private final AtomicBoolean present;
+    private final AtomicInteger checks;
+
+    private SecretLikeRequirement(AtomicBoolean present, AtomicInteger checks) {
+      this.present = present;
+      this.checks  = checks;
+    }
+
+    @Override
+    public boolean isPresent() {
+      checks.incrementAndGet();
+      return present.get();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.whispersystems.jobqueue.jobs;
+
+import org.whispersystems.jobqueue.Job;
+import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
+import org.whispersystems.jobqueue.persistence.SchemaJobSerializer;
+import org.whispersystems.jobqueue.requirements.Requirement;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class SchemaTestJob extends Job {
+
+  public static final JobSchema<SchemaTestJob> SCHEMA = new JobSchema<SchemaTestJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(SchemaTestJob job, DataOutput out) throws IOException {
+      SchemaJobSerializer.writeString(out, job.destination);
+      out.writeLong(job.timestamp);
+      SchemaJobSerializer.writeString(out, job.relay);
+    }
+
+    @Override
+    public SchemaTestJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new SchemaTestJob(parameters,
+                               SchemaJobSerializer.readString(in),
+                               in.readLong(),
+                               SchemaJobSerializer.readString(in));
+    }
+  };
+
+  private final String destination;
+  private final long   timestamp;
+  private final String relay;
+
+  public SchemaTestJob(Requirement requirement, String destination, long timestamp, String relay) {
+    this(JobParameters.newBuilder()
+                      .withRequirement(requirement)
+                      .withPersistence()
+                      .withRetryCount(50)
+                      .withBackoff(1000, 60000)
+                      .withPriority(JobPriority.HIGH)
+                      .withGroupId(destination)
+                      .create(), destination, timestamp, relay);
+  }
+
+  private SchemaTestJob(JobParameters parameters, String destination, long timestamp, String relay) {
+    super(parameters);
+    this.destination = destination;
+    this.timestamp   = timestamp;
+    this.relay       = relay;
+  }
+
+  public String getDestination() {
+    return destination;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getRelay() {
+    return relay;
+  }
+
+  @Override
+  public void onAdded() {}
+
+  @Override
+  public void onRun() {}
+
+  @Override
+  public boolean onShouldRetry(Exception exception) {
+    return false;
+  }
+
+  @Override
+  public void onCanceled() {}
+}
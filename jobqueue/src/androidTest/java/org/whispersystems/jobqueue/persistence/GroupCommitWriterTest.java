@@ -0,0 +1,52 @@
+package org.whispersystems.jobqueue.persistence;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.jobqueue.Job;
+import org.whispersystems.jobqueue.jobs.SchemaTestJob;
+import org.whispersystems.jobqueue.util.InMemoryJobTable;
+import org.whispersystems.jobqueue.util.PersistentMockRequirement;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GroupCommitWriterTest extends AndroidTestCase {
+
+  public void testFailedCommitFailsEveryStore() throws Exception {
+    SchemaJobSerializer serializer = new SchemaJobSerializer().registerRequirement(1, PersistentMockRequirement.class)
+                                                              .registerJob(1, SchemaTestJob.class, SchemaTestJob.SCHEMA);
+    PersistentStorage   storage    = new PersistentStorage(null, new FailingJobTable(), serializer, null, 4, 5);
+
+    final CountDownLatch failed = new CountDownLatch(3);
+    final AtomicInteger  stored = new AtomicInteger(0);
+
+    PersistentStorage.StoreListener listener = new PersistentStorage.StoreListener() {
+      @Override
+      public void onStored(Job job) {
+        stored.incrementAndGet();
+      }
+
+      @Override
+      public void onStoreFailed(Job job) {
+        failed.countDown();
+      }
+    };
+
+    for (int i=0;i<3;i++) {
+      storage.store(new SchemaTestJob(new PersistentMockRequirement(), "+15555555555", i, "relay"), listener);
+    }
+
+    assertTrue(failed.await(5, TimeUnit.SECONDS));
+    assertEquals(0, stored.get());
+    assertEquals(0, storage.getGroupCommitStatistics().getCommitCount());
+  }
+
+  private static class FailingJobTable extends InMemoryJobTable {
+    @Override
+    public synchronized List<Long> commit(List<JobRecord> inserted, List<Long> removedIds) {
+      throw new RuntimeException("disk I/O error");
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package org.whispersystems.jobqueue.persistence;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.jobqueue.Job;
+import org.whispersystems.jobqueue.jobs.SchemaTestJob;
+import org.whispersystems.jobqueue.util.Benchmark;
+import org.whispersystems.jobqueue.util.InMemoryJobTable;
+import org.whispersystems.jobqueue.util.PersistentMockRequirement;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PersistentStorageBenchmarkTest extends AndroidTestCase {
+
+  private static final int WARMUP_ITERATIONS   = 3;
+  private static final int MEASURED_ITERATIONS = 5;
+  private static final int JOB_COUNT           = 2000;
+  private static final int PAGE_SIZE           = 50;
+
+  private SchemaJobSerializer serializer;
+
+  @Override
+  public void setUp() {
+    serializer = new SchemaJobSerializer().registerRequirement(1, PersistentMockRequirement.class)
+                                          .registerJob(1, SchemaTestJob.class, SchemaTestJob.SCHEMA);
+  }
+
+  public void testStoreLoadRemove() throws Exception {
+    runStoreLoadRemove("PersistentStorage store/load/remove", 1, 0);
+  }
+
+  public void testGroupCommitStoreLoadRemove() throws Exception {
+    InMemoryJobTable table = runStoreLoadRemove("PersistentStorage group commit store/load/remove", 32, 5);
+
+    assertTrue(table.getCommitCount() < (long)(WARMUP_ITERATIONS + MEASURED_ITERATIONS) * JOB_COUNT * 2);
+  }
+
+  private InMemoryJobTable runStoreLoadRemove(String name, int maxBatchSize, long windowMillis)
+      throws Exception
+  {
+    final InMemoryJobTable  table   = new InMemoryJobTable();
+    final PersistentStorage storage = new PersistentStorage(null, table, serializer, null,
+                                                            maxBatchSize, windowMillis);
+
+    Benchmark.Result result = new Benchmark(name, WARMUP_ITERATIONS, MEASURED_ITERATIONS, JOB_COUNT).run(new Benchmark.Operation() {
+      @Override
+      public void setUp() {}
+
+      @Override
+      public void run(int count) throws Exception {
+        final CountDownLatch stored = new CountDownLatch(count);
+
+        PersistentStorage.StoreListener listener = new PersistentStorage.StoreListener() {
+          @Override
+          public void onStored(Job job) {
+            stored.countDown();
+          }
+
+          @Override
+          public void onStoreFailed(Job job) {
+            throw new AssertionError("Store failed");
+          }
+        };
+
+        for (int i=0;i<count;i++) {
+          storage.store(new SchemaTestJob(new PersistentMockRequirement(), "+1555555" + (i % 100),
+                                          i, "relay"), listener);
+        }
+
+        assertTrue(stored.await(60, TimeUnit.SECONDS));
+
+        long                   lastId = 0;
+        long                   maxId  = storage.getMaxId();
+        int                    loaded = 0;
+        PersistentStorage.Page page;
+
+        do {
+          page = storage.getUnencryptedPage(lastId, maxId, PAGE_SIZE);
+
+          for (Job job : page.getJobs()) {
+            Job restored = ((UnloadedJob)job).load();
+            storage.remove(restored.getPersistentId());
+            loaded++;
+          }
+
+          lastId = page.getLastId();
+        } while (!page.isLast());
+
+        assertEquals(count, loaded);
+      }
+    });
+
+    assertTrue(result.getMinOperationsPerSecond() > 0);
+
+    for (int i=0;i<50 && table.size() > 0;i++) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(0, table.size());
+    return table;
+  }
+}
@@ -0,0 +1,121 @@
+package org.whispersystems.jobqueue.persistence;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.whispersystems.jobqueue.Job;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.jobs.PersistentTestJob;
+import org.whispersystems.jobqueue.jobs.SchemaTestJob;
+import org.whispersystems.jobqueue.util.PersistentMockRequirement;
+
+import java.io.IOException;
+
+public class SchemaJobSerializerTest extends AndroidTestCase {
+
+  private static final String TAG = SchemaJobSerializerTest.class.getSimpleName();
+
+  private static final int ITERATIONS = 10000;
+
+  // A PersistentTestJob as the Java serializer wrote it before Job gained any new members.
+  private static final String BASELINE_JAVA_ROW =
+      "rO0ABXNyADJvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUuam9icy5QZXJzaXN0ZW50VGVzdEpvYtD0"
+      + "ZsLC6wVpAgAAeHIAH29yZy53aGlzcGVyc3lzdGVtcy5qb2JxdWV1ZS5Kb2IrPWcIDz1tAwIAAUwACnBh"
+      + "cmFtZXRlcnN0ACtMb3JnL3doaXNwZXJzeXN0ZW1zL2pvYnF1ZXVlL0pvYlBhcmFtZXRlcnM7eHBzcgAp"
+      + "b3JnLndoaXNwZXJzeXN0ZW1zLmpvYnF1ZXVlLkpvYlBhcmFtZXRlcnN581DeMv1CnQIABFoADGlzUGVy"
+      + "c2lzdGVudEkACnJldHJ5Q291bnRMAAdncm91cElkdAASTGphdmEvbGFuZy9TdHJpbmc7TAAMcmVxdWly"
+      + "ZW1lbnRzdAAQTGphdmEvdXRpbC9MaXN0O3hwAQAAAGRwc3IAFGphdmEudXRpbC5MaW5rZWRMaXN0DClT"
+      + "XUpgiCIDAAB4cHcEAAAAAXNyADpvcmcud2hpc3BlcnN5c3RlbXMuam9icXVldWUudXRpbC5QZXJzaXN0"
+      + "ZW50TW9ja1JlcXVpcmVtZW50pq1i6VrYFI4CAAB4cHg=";
+
+  private SchemaJobSerializer schemaSerializer;
+  private JavaJobSerializer   javaSerializer;
+
+  @Override
+  public void setUp() {
+    schemaSerializer = new SchemaJobSerializer().registerRequirement(1, PersistentMockRequirement.class)
+                                                .registerJob(1, SchemaTestJob.class, SchemaTestJob.SCHEMA);
+    javaSerializer   = new JavaJobSerializer();
+  }
+
+  public void testRoundTrip() throws IOException {
+    SchemaTestJob job      = createJob();
+    byte[]        bytes    = schemaSerializer.serializeToBytes(job);
+    SchemaTestJob restored = (SchemaTestJob)schemaSerializer.deserialize(null, false, bytes);
+
+    assertEquals(job.getDestination(), restored.getDestination());
+    assertEquals(job.getTimestamp(), restored.getTimestamp());
+    assertEquals(job.getRelay(), restored.getRelay());
+    assertEquals(job.getGroupId(), restored.getGroupId());
+    assertEquals(job.getRetryCount(), restored.getRetryCount());
+    assertEquals(job.getBackoffMillis(), restored.getBackoffMillis());
+    assertEquals(job.getMaxBackoffMillis(), restored.getMaxBackoffMillis());
+    assertEquals(job.getPriority(), restored.getPriority());
+    assertTrue(restored.isPersistent());
+    assertEquals(1, restored.getRequirements().size());
+    assertTrue(restored.getRequirements().get(0) instanceof PersistentMockRequirement);
+  }
+
+  public void testReadsLegacyFormat() throws IOException {
+    String legacy   = javaSerializer.serialize(createJob());
+    Job    restored = schemaSerializer.deserialize(null, false, legacy);
+
+    assertEquals(createJob().getDestination(), ((SchemaTestJob)restored).getDestination());
+  }
+
+  public void testReadsBaselineJavaRow() throws IOException {
+    Job restored = schemaSerializer.deserialize(null, false, BASELINE_JAVA_ROW);
+
+    assertTrue(restored instanceof PersistentTestJob);
+    assertTrue(restored.isPersistent());
+    assertEquals(JobPriority.NORMAL, restored.getPriority());
+    assertEquals(1, restored.getRequirements().size());
+    assertTrue(restored.getRequirements().get(0) instanceof PersistentMockRequirement);
+  }
+
+  public void testUnregisteredJobFallsBack() throws IOException {
+    byte[] bytes = schemaSerializer.serializeToBytes(new PersistentTestJob(new PersistentMockRequirement()));
+    assertTrue(schemaSerializer.deserialize(null, false, bytes) instanceof PersistentTestJob);
+  }
+
+  public void testBenchmark() throws IOException {
+    SchemaTestJob job = createJob();
+
+    String javaSerialized   = javaSerializer.serialize(job);
+    byte[] schemaSerialized = schemaSerializer.serializeToBytes(job);
+
+    long startTime = System.nanoTime();
+    for (int i=0;i<ITERATIONS;i++) javaSerializer.serialize(job);
+    long javaSerializeNanos = System.nanoTime() - startTime;
+
+    startTime = System.nanoTime();
+    for (int i=0;i<ITERATIONS;i++) javaSerializer.deserialize(null, false, javaSerialized);
+    long javaDeserializeNanos = System.nanoTime() - startTime;
+
+    startTime = System.nanoTime();
+    for (int i=0;i<ITERATIONS;i++) schemaSerializer.serializeToBytes(job);
+    long schemaSerializeNanos = System.nanoTime() - startTime;
+
+    startTime = System.nanoTime();
+    for (int i=0;i<ITERATIONS;i++) schemaSerializer.deserialize(null, false, schemaSerialized);
+    long schemaDeserializeNanos = System.nanoTime() - startTime;
+
+    Log.w(TAG, "Java:   " + javaSerialized.length() + " bytes, " +
+               getOpsPerSecond(javaSerializeNanos) + " serialize/s, " +
+               getOpsPerSecond(javaDeserializeNanos) + " deserialize/s");
+    Log.w(TAG, "Schema: " + schemaSerialized.length + " bytes, " +
+               getOpsPerSecond(schemaSerializeNanos) + " serialize/s, " +
+               getOpsPerSecond(schemaDeserializeNanos) + " deserialize/s");
+
+    assertTrue(schemaSerialized.length < javaSerialized.length());
+  }
+
+  private long getOpsPerSecond(long elapsedNanos) {
+    return ITERATIONS * 1000000000L / Math.max(elapsedNanos, 1);
+  }
+
+  private SchemaTestJob createJob() {
+    return new SchemaTestJob(new PersistentMockRequirement(), "+14155551212",
+                             1418000000000L, "textsecure");
+  }
+}
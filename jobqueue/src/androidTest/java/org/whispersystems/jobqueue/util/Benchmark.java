@@ -0,0 +1,104 @@
+package org.whispersystems.jobqueue.util;
+
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small JMH-style harness: the operation is run for a number of untimed warmup iterations,
+ * so that the JIT has settled, and then for a number of timed ones.  Each iteration runs the
+ * operation a fixed number of times.
+ */
+public class Benchmark {
+
+  private static final String TAG = Benchmark.class.getSimpleName();
+
+  public interface Operation {
+    /**
+     * Called before every iteration, outside of the timed section.
+     */
+    public void setUp() throws Exception;
+
+    /**
+     * Perform the operation count times.
+     */
+    public void run(int count) throws Exception;
+  }
+
+  private final String name;
+  private final int    warmupIterations;
+  private final int    measuredIterations;
+  private final int    operationsPerIteration;
+
+  public Benchmark(String name, int warmupIterations, int measuredIterations, int operationsPerIteration) {
+    this.name                   = name;
+    this.warmupIterations       = warmupIterations;
+    this.measuredIterations     = measuredIterations;
+    this.operationsPerIteration = operationsPerIteration;
+  }
+
+  public Result run(Operation operation) throws Exception {
+    for (int i=0;i<warmupIterations;i++) {
+      operation.setUp();
+      operation.run(operationsPerIteration);
+    }
+
+    long[] elapsed = new long[measuredIterations];
+
+    for (int i=0;i<measuredIterations;i++) {
+      operation.setUp();
+
+      long startTime = System.nanoTime();
+      operation.run(operationsPerIteration);
+      elapsed[i] = System.nanoTime() - startTime;
+    }
+
+    Result result = new Result(name, operationsPerIteration, elapsed);
+    Log.w(TAG, result.toString());
+
+    return result;
+  }
+
+  public static class Result {
+    private final String name;
+    private final int    operationsPerIteration;
+    private final long[] elapsedNanos;
+
+    private Result(String name, int operationsPerIteration, long[] elapsedNanos) {
+      this.name                   = name;
+      this.operationsPerIteration = operationsPerIteration;
+      this.elapsedNanos           = elapsedNanos;
+    }
+
+    public double getMeanOperationsPerSecond() {
+      double total = 0;
+
+      for (long elapsed : elapsedNanos) {
+        total += getOperationsPerSecond(elapsed);
+      }
+
+      return total / elapsedNanos.length;
+    }
+
+    public double getMinOperationsPerSecond() {
+      double min = Double.MAX_VALUE;
+
+      for (long elapsed : elapsedNanos) {
+        min = Math.min(min, getOperationsPerSecond(elapsed));
+      }
+
+      return min;
+    }
+
+    private double getOperationsPerSecond(long elapsed) {
+      return operationsPerIteration / (Math.max(1, elapsed) / (double)TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %.0f ops/s mean, %.0f ops/s min over %d iterations of %d",
+                           name, getMeanOperationsPerSecond(), getMinOperationsPerSecond(),
+                           elapsedNanos.length, operationsPerIteration);
+    }
+  }
+}
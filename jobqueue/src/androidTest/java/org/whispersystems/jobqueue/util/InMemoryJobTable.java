@@ -0,0 +1,93 @@
+package org.whispersystems.jobqueue.util;
+
+import org.whispersystems.jobqueue.persistence.JobRecord;
+import org.whispersystems.jobqueue.persistence.JobTable;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link JobTable} that keeps its records in memory, standing in for SQLite when
+ * {@link org.whispersystems.jobqueue.persistence.PersistentStorage} runs on the JVM.
+ */
+public class InMemoryJobTable implements JobTable {
+
+  private final TreeMap<Long, JobRecord> records = new TreeMap<>();
+
+  private long nextId      = 1;
+  private long commitCount = 0;
+
+  @Override
+  public synchronized List<Long> commit(List<JobRecord> inserted, List<Long> removedIds) {
+    List<Long> ids = new ArrayList<>(inserted.size());
+
+    for (JobRecord record : inserted) {
+      long id = nextId++;
+
+      records.put(id, new JobRecord(id, record.getItem(), record.getData(), record.isEncrypted(),
+                                    record.isLazy(), record.getGroupId(), record.getPriority(),
+                                    record.isCpuBound(), record.getRunIteration(),
+                                    record.getNextRunTime()));
+      ids.add(id);
+    }
+
+    for (long id : removedIds) {
+      records.remove(id);
+    }
+
+    commitCount++;
+    return ids;
+  }
+
+  @Override
+  public synchronized void remove(long id) {
+    records.remove(id);
+    commitCount++;
+  }
+
+  @Override
+  public synchronized void updateSchedule(long id, int runIteration, long nextRunTime) {
+    JobRecord record = records.get(id);
+
+    if (record != null) {
+      records.put(id, new JobRecord(id, record.getItem(), record.getData(), record.isEncrypted(),
+                                    record.isLazy(), record.getGroupId(), record.getPriority(),
+                                    record.isCpuBound(), runIteration, nextRunTime));
+    }
+  }
+
+  @Override
+  public synchronized List<JobRecord> getPage(boolean encrypted, long afterId, long maxId, int limit) {
+    List<JobRecord> results = new LinkedList<>();
+
+    if (afterId >= maxId) {
+      return results;
+    }
+
+    for (Map.Entry<Long, JobRecord> entry : records.subMap(afterId, false, maxId, true).entrySet()) {
+      if (results.size() >= limit) break;
+      if (entry.getValue().isEncrypted() == encrypted) results.add(entry.getValue());
+    }
+
+    return results;
+  }
+
+  @Override
+  public synchronized long getMaxId() {
+    return records.isEmpty() ? 0 : records.lastKey();
+  }
+
+  public synchronized int size() {
+    return records.size();
+  }
+
+  /**
+   * @return The number of transactions written, counting each commit and each lone remove.
+   */
+  public synchronized long getCommitCount() {
+    return commitCount;
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue;
+
+/**
+ * A histogram of millisecond durations, bucketed by powers of two.  Bucket 0 counts
+ * durations of 0ms, and bucket i counts durations from 2^(i-1)ms up to 2^i - 1ms, so
+ * percentiles are accurate to within a factor of two.
+ */
+public class Histogram {
+
+  private static final int BUCKET_COUNT = 64;
+
+  private final long[] buckets;
+
+  private long count;
+  private long sum;
+  private long max;
+
+  Histogram() {
+    this.buckets = new long[BUCKET_COUNT];
+  }
+
+  private Histogram(Histogram histogram) {
+    this.buckets = histogram.buckets.clone();
+    this.count   = histogram.count;
+    this.sum     = histogram.sum;
+    this.max     = histogram.max;
+  }
+
+  void record(long millis) {
+    millis = Math.max(0, millis);
+
+    buckets[BUCKET_COUNT - Long.numberOfLeadingZeros(millis)]++;
+    count++;
+    sum += millis;
+    max  = Math.max(max, millis);
+  }
+
+  Histogram copy() {
+    return new Histogram(this);
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getTotalMillis() {
+    return sum;
+  }
+
+  public long getMaxMillis() {
+    return max;
+  }
+
+  public double getMeanMillis() {
+    if (count == 0) return 0;
+    else            return (double)sum / count;
+  }
+
+  /**
+   * @param percentile A percentile between 0 and 100.
+   * @return The upper bound of the bucket that the given percentile falls in, or 0 if
+   * nothing has been recorded.
+   */
+  public long getPercentileMillis(double percentile) {
+    long rank  = (long)Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+    long total = 0;
+
+    for (int i=0;i<BUCKET_COUNT;i++) {
+      total += buckets[i];
+
+      if (total >= rank && total > 0) {
+        return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+      }
+    }
+
+    return 0;
+  }
+
+  @Override
+  public String toString() {
+    return "count: " + count + ", mean: " + getMeanMillis() + "ms" +
+           ", p50: " + getPercentileMillis(50) + "ms" +
+           ", p99: " + getPercentileMillis(99) + "ms" +
+           ", max: " + max + "ms";
+  }
+}
@@ -27,10 +27,14 @@ import java.util.List;
  */
 public abstract class Job implements Serializable {
 
+  private static final long serialVersionUID = 3115759801523334403L;
+
   private final JobParameters parameters;
 
   private transient long persistentId;
   private transient int  runIteration;
+  private transient long nextRunTime;
+  private transient long queueWaitMillis;
 
   public Job(JobParameters parameters) {
     this.parameters = parameters;
@@ -41,11 +45,18 @@ public abstract class Job implements Serializable {
   }
 
   public boolean isRequirementsMet() {
+    return getUnmetRequirement() == null;
+  }
+
+  /**
+   * @return The first of this job's requirements that isn't present, or null if they all are.
+   */
+  public Requirement getUnmetRequirement() {
     for (Requirement requirement : parameters.getRequirements()) {
-      if (!requirement.isPresent()) return false;
+      if (!requirement.isPresent()) return requirement;
     }
 
-    return true;
+    return null;
   }
 
   public String getGroupId() {
@@ -84,6 +95,45 @@ public abstract class Job implements Serializable {
     this.runIteration = runIteration;
   }
 
+  public boolean isCpuBound() {
+    return parameters.isCpuBound();
+  }
+
+  public JobPriority getPriority() {
+    return parameters.getPriority();
+  }
+
+  public long getBackoffMillis() {
+    return parameters.getBackoffMillis();
+  }
+
+  public long getMaxBackoffMillis() {
+    return parameters.getMaxBackoffMillis();
+  }
+
+  /**
+   * @return The time, in milliseconds since the epoch, before which this job shouldn't be run,
+   * or 0 if it may be run at any time.
+   */
+  public long getNextRunTime() {
+    return nextRunTime;
+  }
+
+  public void setNextRunTime(long nextRunTime) {
+    this.nextRunTime = nextRunTime;
+  }
+
+  /**
+   * @return How long this job waited in the queue before it was last started.
+   */
+  long getQueueWaitMillis() {
+    return queueWaitMillis;
+  }
+
+  void setQueueWaitMillis(long queueWaitMillis) {
+    this.queueWaitMillis = queueWaitMillis;
+  }
+
   /**
    * Called after a job has been added to the JobManager queue.  If it's a persistent job,
    * the state has been persisted to disk before this method is called.
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue;
+
+/**
+ * A snapshot of the counters and latency histograms that {@link JobMetrics} keeps for one
+ * {@link Job} class.
+ */
+public class JobClassMetrics {
+
+  private final String jobClass;
+
+  private long started;
+  private long succeeded;
+  private long failed;
+  private long deferred;
+  private long delayed;
+  private long attempts;
+
+  private final Histogram waitTimes;
+  private final Histogram runTimes;
+  private final Histogram storeTimes;
+  private final Histogram loadTimes;
+
+  JobClassMetrics(String jobClass) {
+    this.jobClass   = jobClass;
+    this.waitTimes  = new Histogram();
+    this.runTimes   = new Histogram();
+    this.storeTimes = new Histogram();
+    this.loadTimes  = new Histogram();
+  }
+
+  private JobClassMetrics(JobClassMetrics metrics) {
+    this.jobClass   = metrics.jobClass;
+    this.started    = metrics.started;
+    this.succeeded  = metrics.succeeded;
+    this.failed     = metrics.failed;
+    this.deferred   = metrics.deferred;
+    this.delayed    = metrics.delayed;
+    this.attempts   = metrics.attempts;
+    this.waitTimes  = metrics.waitTimes.copy();
+    this.runTimes   = metrics.runTimes.copy();
+    this.storeTimes = metrics.storeTimes.copy();
+    this.loadTimes  = metrics.loadTimes.copy();
+  }
+
+  void onStarted(long waitMillis) {
+    started++;
+    waitTimes.record(waitMillis);
+  }
+
+  void onFinished(JobMetrics.Outcome outcome, int attempts, long runMillis) {
+    this.attempts += attempts;
+    runTimes.record(runMillis);
+
+    switch (outcome) {
+      case SUCCESS:  succeeded++; break;
+      case FAILURE:  failed++;    break;
+      case DEFERRED: deferred++;  break;
+      case DELAYED:  delayed++;   break;
+    }
+  }
+
+  void onStored(long storeMillis) {
+    storeTimes.record(storeMillis);
+  }
+
+  void onLoaded(long loadMillis) {
+    loadTimes.record(loadMillis);
+  }
+
+  JobClassMetrics copy() {
+    return new JobClassMetrics(this);
+  }
+
+  /**
+   * @return The name of the job class.
+   */
+  public String getJobClass() {
+    return jobClass;
+  }
+
+  public long getStartedCount() {
+    return started;
+  }
+
+  public long getSucceededCount() {
+    return succeeded;
+  }
+
+  /**
+   * @return The number of runs that gave up, either because the job ran out of retries or
+   * because it refused to retry.
+   */
+  public long getFailedCount() {
+    return failed;
+  }
+
+  /**
+   * @return The number of runs that stopped because a requirement went missing.
+   */
+  public long getDeferredCount() {
+    return deferred;
+  }
+
+  /**
+   * @return The number of runs that stopped to back off before the next retry.
+   */
+  public long getDelayedCount() {
+    return delayed;
+  }
+
+  /**
+   * @return The number of times the job's onRun() was called.
+   */
+  public long getAttemptCount() {
+    return attempts;
+  }
+
+  /**
+   * @return The number of onRun() calls that were retries of an earlier attempt in the same run.
+   */
+  public long getRetryCount() {
+    return attempts - runTimes.getCount();
+  }
+
+  /**
+   * @return How long jobs waited in the queue, from being queued or becoming due to being started.
+   */
+  public Histogram getWaitTimes() {
+    return waitTimes;
+  }
+
+  /**
+   * @return How long each run took, across all of its attempts.
+   */
+  public Histogram getRunTimes() {
+    return runTimes;
+  }
+
+  /**
+   * @return How long persistent jobs took to be durably stored, including any group commit window.
+   */
+  public Histogram getStoreTimes() {
+    return storeTimes;
+  }
+
+  /**
+   * @return How long lazily restored jobs took to be deserialized.
+   */
+  public Histogram getLoadTimes() {
+    return loadTimes;
+  }
+
+  @Override
+  public String toString() {
+    return jobClass + " started: " + started + ", succeeded: " + succeeded +
+           ", failed: " + failed + ", deferred: " + deferred + ", delayed: " + delayed +
+           ", retries: " + getRetryCount() +
+           ", wait: [" + waitTimes + "], run: [" + runTimes + "]";
+  }
+}
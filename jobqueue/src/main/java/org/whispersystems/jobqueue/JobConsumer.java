@@ -18,37 +18,63 @@ package org.whispersystems.jobqueue;
 
 import android.util.Log;
 
+import org.whispersystems.jobqueue.JobMetrics.Outcome;
 import org.whispersystems.jobqueue.persistence.PersistentStorage;
+import org.whispersystems.jobqueue.persistence.UnloadedJob;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 class JobConsumer extends Thread {
 
   private static final String TAG = JobConsumer.class.getSimpleName();
 
-  enum JobResult {
-    SUCCESS,
-    FAILURE,
-    DEFERRED
-  }
-
+  private final Random            random = new Random();
   private final JobQueue          jobQueue;
   private final PersistentStorage persistentStorage;
+  private final JobMetrics        metrics;
+  private final long              idleTimeoutMillis;
 
-  public JobConsumer(String name, JobQueue jobQueue, PersistentStorage persistentStorage) {
+  public JobConsumer(String name, JobQueue jobQueue, PersistentStorage persistentStorage,
+                     JobMetrics metrics, long idleTimeoutMillis)
+  {
     super(name);
     this.jobQueue          = jobQueue;
     this.persistentStorage = persistentStorage;
+    this.metrics           = metrics;
+    this.idleTimeoutMillis = idleTimeoutMillis;
   }
 
   @Override
   public void run() {
     while (true) {
-      Job       job    = jobQueue.getNext();
-      JobResult result = runJob(job);
+      Job job = jobQueue.getNext(idleTimeoutMillis);
+
+      if (job == null) {
+        return;
+      }
+
+      long waitMillis = job.getQueueWaitMillis();
+
+      if (job instanceof UnloadedJob && (job = load((UnloadedJob)job)) == null) {
+        continue;
+      }
+
+      metrics.onJobStarted(job, waitMillis);
+
+      Outcome result = runJob(job);
+
+      if (result == Outcome.DEFERRED) {
+        jobQueue.push(job);
+      } else if (result == Outcome.DELAYED) {
+        if (job.isPersistent()) {
+          persistentStorage.updateSchedule(job.getPersistentId(), job.getRunIteration(), job.getNextRunTime());
+        }
 
-      if (result == JobResult.DEFERRED) {
         jobQueue.push(job);
       } else {
-        if (result == JobResult.FAILURE) {
+        if (result == Outcome.FAILURE) {
           job.onCanceled();
         }
 
@@ -57,34 +83,81 @@ class JobConsumer extends Thread {
         }
       }
 
-      if (job.getGroupId() != null) {
-        jobQueue.setGroupIdAvailable(job.getGroupId());
+      jobQueue.setFinished(job);
+    }
+  }
+
+  private Job load(UnloadedJob unloadedJob) {
+    try {
+      long startTime = System.nanoTime();
+      Job  job       = unloadedJob.load();
+
+      metrics.onJobLoaded(job, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+      if (job.isRequirementsMet()) {
+        return job;
       }
+
+      jobQueue.push(job);
+    } catch (IOException e) {
+      Log.w(TAG, e);
     }
+
+    jobQueue.setFinished(unloadedJob);
+    return null;
   }
 
-  private JobResult runJob(Job job) {
-    int retryCount   = job.getRetryCount();
-    int runIteration = job.getRunIteration();
+  private Outcome runJob(Job job) {
+    long    startTime    = System.nanoTime();
+    int     retryCount   = job.getRetryCount();
+    int     runIteration = job.getRunIteration();
+    int     attempts     = 0;
+    Outcome result       = Outcome.FAILURE;
 
     for (;runIteration<retryCount;runIteration++) {
+      attempts++;
+
       try {
         job.onRun();
-        return JobResult.SUCCESS;
+        result = Outcome.SUCCESS;
+        break;
       } catch (Exception exception) {
         Log.w(TAG, exception);
         if (exception instanceof RuntimeException) {
           throw (RuntimeException)exception;
         } else if (!job.onShouldRetry(exception)) {
-          return JobResult.FAILURE;
+          break;
         } else if (!job.isRequirementsMet()) {
           job.setRunIteration(runIteration+1);
-          return JobResult.DEFERRED;
+          result = Outcome.DEFERRED;
+          break;
+        } else if (job.getBackoffMillis() > 0 && runIteration + 1 < retryCount) {
+          job.setRunIteration(runIteration+1);
+          job.setNextRunTime(System.currentTimeMillis() + getBackoffDelay(job, runIteration));
+          result = Outcome.DELAYED;
+          break;
         }
       }
     }
 
-    return JobResult.FAILURE;
+    metrics.onJobFinished(job, result, attempts, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    return result;
+  }
+
+  /**
+   * The job's backoff, doubled for every earlier failure and capped at its maximum.  Half of
+   * it is fixed, and the other half is random.
+   */
+  private long getBackoffDelay(Job job, int failures) {
+    long delay = job.getBackoffMillis();
+
+    for (int i=0;i<failures && delay < job.getMaxBackoffMillis();i++) {
+      delay *= 2;
+    }
+
+    delay = Math.min(delay, Math.max(job.getBackoffMillis(), job.getMaxBackoffMillis()));
+
+    return delay / 2 + (long)(random.nextDouble() * (delay / 2));
   }
 
 }
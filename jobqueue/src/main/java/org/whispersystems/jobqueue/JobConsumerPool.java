@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue;
+
+import org.whispersystems.jobqueue.persistence.PersistentStorage;
+
+/**
+ * An elastic set of {@link JobConsumer}s for one {@link JobQueue}.
+ *
+ * The queue asks for a consumer whenever a job becomes ready and none is waiting for one,
+ * so the pool grows toward its maximum while there's a backlog.  A consumer that has found
+ * no work for the idle timeout exits, down to the pool's minimum.  Both callbacks are made
+ * with the queue's lock held, so the consumer count never disagrees with the queue about
+ * whether anyone is left to take a job.
+ */
+class JobConsumerPool implements JobQueue.ConsumerListener {
+
+  private final String            name;
+  private final JobQueue          jobQueue;
+  private final PersistentStorage persistentStorage;
+  private final JobMetrics        metrics;
+  private final int               minConsumers;
+  private final int               maxConsumers;
+  private final long              idleTimeoutMillis;
+
+  private int consumers;
+  private int consumersCreated;
+
+  JobConsumerPool(String name, JobQueue jobQueue, PersistentStorage persistentStorage,
+                  JobMetrics metrics, int minConsumers, int maxConsumers, long idleTimeoutMillis)
+  {
+    this.name              = name;
+    this.jobQueue          = jobQueue;
+    this.persistentStorage = persistentStorage;
+    this.metrics           = metrics;
+    this.minConsumers      = minConsumers;
+    this.maxConsumers      = Math.max(1, maxConsumers);
+    this.idleTimeoutMillis = idleTimeoutMillis;
+
+    jobQueue.setConsumerCount(this.maxConsumers);
+
+    for (int i=0;i<Math.min(minConsumers, this.maxConsumers);i++) {
+      onConsumerNeeded();
+    }
+
+    jobQueue.setConsumerListener(this);
+  }
+
+  @Override
+  public synchronized void onConsumerNeeded() {
+    if (consumers < maxConsumers) {
+      consumers++;
+      new JobConsumer(name + "-" + consumersCreated++, jobQueue, persistentStorage,
+                      metrics, idleTimeoutMillis).start();
+    }
+  }
+
+  @Override
+  public synchronized boolean onConsumerIdle() {
+    if (consumers > minConsumers) {
+      consumers--;
+      return true;
+    }
+
+    return false;
+  }
+
+  synchronized int getConsumerCount() {
+    return consumers;
+  }
+}
@@ -20,17 +20,19 @@ import android.content.Context;
 import android.util.Log;
 
 import org.whispersystems.jobqueue.dependencies.DependencyInjector;
+import org.whispersystems.jobqueue.persistence.GroupCommitStatistics;
 import org.whispersystems.jobqueue.persistence.JobSerializer;
 import org.whispersystems.jobqueue.persistence.PersistentStorage;
+import org.whispersystems.jobqueue.requirements.Requirement;
 import org.whispersystems.jobqueue.requirements.RequirementListener;
 import org.whispersystems.jobqueue.requirements.RequirementProvider;
 
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -40,24 +42,37 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class JobManager implements RequirementListener {
 
-  private final JobQueue      jobQueue           = new JobQueue();
+  private static final int LOAD_PAGE_SIZE = 50;
+
+  private final JobQueue      ioJobQueue         = new JobQueue();
+  private final JobQueue      cpuJobQueue        = new JobQueue();
+  private final JobMetrics    metrics            = new JobMetrics();
   private final Executor      eventExecutor      = Executors.newSingleThreadExecutor();
   private final AtomicBoolean hasLoadedEncrypted = new AtomicBoolean(false);
 
   private final PersistentStorage         persistentStorage;
   private final List<RequirementProvider> requirementProviders;
   private final DependencyInjector        dependencyInjector;
+  private final JobConsumerPool           ioConsumerPool;
+  private final JobConsumerPool           cpuConsumerPool;
 
   private JobManager(Context context, String name,
                      List<RequirementProvider> requirementProviders,
                      DependencyInjector dependencyInjector,
-                     JobSerializer jobSerializer, int consumers)
+                     JobSerializer jobSerializer,
+                     int ioConsumers, int cpuConsumers,
+                     long consumerIdleTimeoutMillis,
+                     int maxCommitBatchSize, long commitWindowMillis)
   {
-    this.persistentStorage    = new PersistentStorage(context, name, jobSerializer, dependencyInjector);
+    this.persistentStorage    = new PersistentStorage(context, name, jobSerializer, dependencyInjector,
+                                                      maxCommitBatchSize, commitWindowMillis);
     this.requirementProviders = requirementProviders;
     this.dependencyInjector   = dependencyInjector;
 
-    eventExecutor.execute(new LoadTask(null));
+    this.ioConsumerPool  = new JobConsumerPool("JobConsumer", ioJobQueue, persistentStorage, metrics,
+                                               1, ioConsumers, consumerIdleTimeoutMillis);
+    this.cpuConsumerPool = new JobConsumerPool("CpuJobConsumer", cpuJobQueue, persistentStorage, metrics,
+                                               0, cpuConsumers, consumerIdleTimeoutMillis);
 
     if (requirementProviders != null && !requirementProviders.isEmpty()) {
       for (RequirementProvider provider : requirementProviders) {
@@ -65,9 +80,7 @@ public class JobManager implements RequirementListener {
       }
     }
 
-    for (int i=0;i<consumers;i++) {
-      new JobConsumer("JobConsumer-" + i, jobQueue, persistentStorage).start();
-    }
+    eventExecutor.execute(new LoadTask(null));
   }
 
   /**
@@ -101,6 +114,44 @@ public class JobManager implements RequirementListener {
     }
   }
 
+  /**
+   * @return The batch size and commit latency counters for persistent jobs, or null if
+   * group commit isn't enabled.
+   */
+  public GroupCommitStatistics getGroupCommitStatistics() {
+    return persistentStorage.getGroupCommitStatistics();
+  }
+
+  /**
+   * @return The queue depth and wait time counters for each {@link JobPriority}.
+   */
+  public JobQueueStatistics getQueueStatistics() {
+    return JobQueueStatistics.combine(ioJobQueue.getStatistics(), cpuJobQueue.getStatistics());
+  }
+
+  /**
+   * @return The per-job-class counters and latency histograms.  Take a snapshot with
+   * {@link JobMetrics#getSnapshot()}, or register a {@link JobMetricsListener} to follow
+   * them as they're recorded.
+   */
+  public JobMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return The number of consumer threads currently running I/O-bound jobs, or waiting for them.
+   */
+  public int getIoConsumerCount() {
+    return ioConsumerPool.getConsumerCount();
+  }
+
+  /**
+   * @return The number of consumer threads currently running CPU-bound jobs, or waiting for them.
+   */
+  public int getCpuConsumerCount() {
+    return cpuConsumerPool.getConsumerCount();
+  }
+
   /**
    * Queue a {@link org.whispersystems.jobqueue.Job} to be executed.
    *
@@ -110,20 +161,24 @@ public class JobManager implements RequirementListener {
     eventExecutor.execute(new Runnable() {
       @Override
       public void run() {
-        try {
-          if (job.isPersistent()) {
-            persistentStorage.store(job);
-          }
-
-          if (dependencyInjector != null) {
-            dependencyInjector.injectDependencies(job);
-          }
-
-          job.onAdded();
-          jobQueue.add(job);
-        } catch (IOException e) {
-          Log.w("JobManager", e);
-          job.onCanceled();
+        if (job.isPersistent()) {
+          final long startTime = System.nanoTime();
+
+          persistentStorage.store(job, new PersistentStorage.StoreListener() {
+            @Override
+            public void onStored(Job job) {
+              metrics.onJobStored(job, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+              eventExecutor.execute(new AddTask(job));
+            }
+
+            @Override
+            public void onStoreFailed(Job job) {
+              Log.w("JobManager", "Failed to store job: " + job.getClass().getSimpleName());
+              job.onCanceled();
+            }
+          });
+        } else {
+          new AddTask(job).run();
         }
       }
     });
@@ -134,11 +189,46 @@ public class JobManager implements RequirementListener {
     eventExecutor.execute(new Runnable() {
       @Override
       public void run() {
-        jobQueue.onRequirementStatusChanged();
+        ioJobQueue.onRequirementStatusChanged();
+        cpuJobQueue.onRequirementStatusChanged();
       }
     });
   }
 
+  @Override
+  public void onRequirementStatusChanged(final Class<? extends Requirement> requirementType) {
+    eventExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        ioJobQueue.onRequirementStatusChanged(requirementType);
+        cpuJobQueue.onRequirementStatusChanged(requirementType);
+      }
+    });
+  }
+
+  private JobQueue getJobQueue(Job job) {
+    return job.isCpuBound() ? cpuJobQueue : ioJobQueue;
+  }
+
+  private class AddTask implements Runnable {
+
+    private final Job job;
+
+    public AddTask(Job job) {
+      this.job = job;
+    }
+
+    @Override
+    public void run() {
+      if (dependencyInjector != null) {
+        dependencyInjector.injectDependencies(job);
+      }
+
+      job.onAdded();
+      getJobQueue(job).add(job);
+    }
+  }
+
   private class LoadTask implements Runnable {
 
     private final EncryptionKeys keys;
@@ -149,12 +239,19 @@ public class JobManager implements RequirementListener {
 
     @Override
     public void run() {
-      List<Job> pendingJobs;
+      long                   lastId = 0;
+      long                   maxId  = persistentStorage.getMaxId();
+      PersistentStorage.Page page;
 
-      if (keys == null) pendingJobs = persistentStorage.getAllUnencrypted();
-      else              pendingJobs = persistentStorage.getAllEncrypted(keys);
+      do {
+        if (keys == null) page = persistentStorage.getUnencryptedPage(lastId, maxId, LOAD_PAGE_SIZE);
+        else              page = persistentStorage.getEncryptedPage(keys, lastId, maxId, LOAD_PAGE_SIZE);
 
-      jobQueue.addAll(pendingJobs);
+        for (Job job : page.getJobs()) {
+          getJobQueue(job).add(job);
+        }
+        lastId = page.getLastId();
+      } while (!page.isLast());
     }
   }
 
@@ -165,10 +262,18 @@ public class JobManager implements RequirementListener {
     private       DependencyInjector        dependencyInjector;
     private       JobSerializer             jobSerializer;
     private       int                       consumerThreads;
+    private       int                       cpuConsumerThreads;
+    private       long                      consumerIdleTimeoutMillis;
+    private       int                       maxCommitBatchSize;
+    private       long                      commitWindowMillis;
 
     Builder(Context context) {
-      this.context         = context;
-      this.consumerThreads = 5;
+      this.context                   = context;
+      this.consumerThreads           = 5;
+      this.cpuConsumerThreads        = Runtime.getRuntime().availableProcessors();
+      this.consumerIdleTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+      this.maxCommitBatchSize        = 1;
+      this.commitWindowMillis        = 0;
     }
 
     /**
@@ -222,9 +327,11 @@ public class JobManager implements RequirementListener {
     }
 
     /**
-     * Set the number of threads dedicated to consuming Jobs from the queue and executing them.
+     * Set the most threads that will consume I/O-bound Jobs from the queue and execute them.
+     * Threads are started as the backlog grows, and stop once they've been idle for a while,
+     * down to a single waiting thread.
      *
-     * @param consumerThreads The number of threads.
+     * @param consumerThreads The most threads.
      * @return The builder.
      */
     public Builder withConsumerThreads(int consumerThreads) {
@@ -232,6 +339,47 @@ public class JobManager implements RequirementListener {
       return this;
     }
 
+    /**
+     * Set the most threads that will consume CPU-bound Jobs, those built with
+     * {@link JobParameters.Builder#withCpuBound()}.  Defaults to the number of processors.
+     * These threads all stop once they've been idle for a while.
+     *
+     * @param cpuConsumerThreads The most threads.
+     * @return The builder.
+     */
+    public Builder withCpuConsumerThreads(int cpuConsumerThreads) {
+      this.cpuConsumerThreads = cpuConsumerThreads;
+      return this;
+    }
+
+    /**
+     * Set how long a consumer thread waits without work before it stops.  Defaults to
+     * 30 seconds.
+     *
+     * @param idleTimeoutMillis The idle timeout.
+     * @return The builder.
+     */
+    public Builder withConsumerIdleTimeout(long idleTimeoutMillis) {
+      this.consumerIdleTimeoutMillis = idleTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Enable group commit for persistent Jobs.  Optional.  Store and remove operations are
+     * gathered for up to windowMillis, or until maxBatchSize operations are pending, and then
+     * written in a single transaction.  A Job's onAdded() callback still isn't called until
+     * the batch containing it has committed.
+     *
+     * @param maxBatchSize The most operations to write in one transaction.
+     * @param windowMillis How long an operation may wait for others to join its batch.
+     * @return The builder.
+     */
+    public Builder withGroupCommit(int maxBatchSize, long windowMillis) {
+      this.maxCommitBatchSize = maxBatchSize;
+      this.commitWindowMillis = windowMillis;
+      return this;
+    }
+
     /**
      * @return A constructed JobManager.
      */
@@ -246,7 +394,9 @@ public class JobManager implements RequirementListener {
 
       return new JobManager(context, name, requirementProviders,
                             dependencyInjector, jobSerializer,
-                            consumerThreads);
+                            consumerThreads, cpuConsumerThreads,
+                            consumerIdleTimeoutMillis, maxCommitBatchSize,
+                            commitWindowMillis);
     }
   }
 
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Per-{@link Job} class counters and latency histograms for a {@link JobManager}.  They can
+ * be read as a snapshot with {@link #getSnapshot()}, or followed as they're recorded with a
+ * {@link JobMetricsListener}.
+ */
+public class JobMetrics {
+
+  public enum Outcome {
+    SUCCESS,
+    FAILURE,
+    DEFERRED,
+    DELAYED
+  }
+
+  private final Map<Class<? extends Job>, JobClassMetrics> metrics   = new HashMap<>();
+  private final List<JobMetricsListener>                   listeners = new CopyOnWriteArrayList<>();
+
+  public void addListener(JobMetricsListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(JobMetricsListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * @return A copy of the metrics for every job class that has been recorded, keyed by
+   * class name.
+   */
+  public synchronized Map<String, JobClassMetrics> getSnapshot() {
+    Map<String, JobClassMetrics> snapshot = new HashMap<>();
+
+    for (JobClassMetrics classMetrics : metrics.values()) {
+      snapshot.put(classMetrics.getJobClass(), classMetrics.copy());
+    }
+
+    return snapshot;
+  }
+
+  void onJobStarted(Job job, long waitMillis) {
+    synchronized (this) {
+      getMetrics(job).onStarted(waitMillis);
+    }
+
+    for (JobMetricsListener listener : listeners) {
+      listener.onJobStarted(job.getClass(), waitMillis);
+    }
+  }
+
+  void onJobFinished(Job job, Outcome outcome, int attempts, long runMillis) {
+    synchronized (this) {
+      getMetrics(job).onFinished(outcome, attempts, runMillis);
+    }
+
+    for (JobMetricsListener listener : listeners) {
+      listener.onJobFinished(job.getClass(), outcome, attempts, runMillis);
+    }
+  }
+
+  void onJobStored(Job job, long storeMillis) {
+    synchronized (this) {
+      getMetrics(job).onStored(storeMillis);
+    }
+
+    for (JobMetricsListener listener : listeners) {
+      listener.onJobStored(job.getClass(), storeMillis);
+    }
+  }
+
+  void onJobLoaded(Job job, long loadMillis) {
+    synchronized (this) {
+      getMetrics(job).onLoaded(loadMillis);
+    }
+
+    for (JobMetricsListener listener : listeners) {
+      listener.onJobLoaded(job.getClass(), loadMillis);
+    }
+  }
+
+  private JobClassMetrics getMetrics(Job job) {
+    JobClassMetrics classMetrics = metrics.get(job.getClass());
+
+    if (classMetrics == null) {
+      classMetrics = new JobClassMetrics(job.getClass().getName());
+      metrics.put(job.getClass(), classMetrics);
+    }
+
+    return classMetrics;
+  }
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue;
+
+/**
+ * Receives each measurement as {@link JobMetrics} records it.  Callbacks are made on the
+ * thread doing the work being measured, so they should return quickly.
+ */
+public interface JobMetricsListener {
+  public void onJobStarted(Class<? extends Job> jobClass, long waitMillis);
+  public void onJobFinished(Class<? extends Job> jobClass, JobMetrics.Outcome outcome, int attempts, long runMillis);
+  public void onJobStored(Class<? extends Job> jobClass, long storeMillis);
+  public void onJobLoaded(Class<? extends Job> jobClass, long loadMillis);
+}
@@ -27,23 +27,35 @@ import java.util.List;
  */
 public class JobParameters implements Serializable {
 
+  private static final long serialVersionUID = 8787456213198389917L;
+
   private transient EncryptionKeys encryptionKeys;
 
   private final List<Requirement> requirements;
   private final boolean           isPersistent;
   private final int               retryCount;
   private final String            groupId;
+  private final long              backoffMillis;
+  private final long              maxBackoffMillis;
+  private final JobPriority       priority;
+  private final boolean           isCpuBound;
 
   private JobParameters(List<Requirement> requirements,
                        boolean isPersistent, String groupId,
                        EncryptionKeys encryptionKeys,
-                       int retryCount)
+                       int retryCount, long backoffMillis,
+                       long maxBackoffMillis, JobPriority priority,
+                       boolean isCpuBound)
   {
-    this.requirements   = requirements;
-    this.isPersistent   = isPersistent;
-    this.groupId        = groupId;
-    this.encryptionKeys = encryptionKeys;
-    this.retryCount     = retryCount;
+    this.requirements     = requirements;
+    this.isPersistent     = isPersistent;
+    this.groupId          = groupId;
+    this.encryptionKeys   = encryptionKeys;
+    this.retryCount       = retryCount;
+    this.backoffMillis    = backoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.priority         = priority;
+    this.isCpuBound       = isCpuBound;
   }
 
   public List<Requirement> getRequirements() {
@@ -66,6 +78,23 @@ public class JobParameters implements Serializable {
     return retryCount;
   }
 
+  public long getBackoffMillis() {
+    return backoffMillis;
+  }
+
+  public long getMaxBackoffMillis() {
+    return maxBackoffMillis;
+  }
+
+  public boolean isCpuBound() {
+    return isCpuBound;
+  }
+
+  public JobPriority getPriority() {
+    // Jobs serialized before priorities existed have none.
+    return priority == null ? JobPriority.NORMAL : priority;
+  }
+
   /**
    * @return a builder used to construct JobParameters.
    */
@@ -78,11 +107,15 @@ public class JobParameters implements Serializable {
   }
 
   public static class Builder {
-    private List<Requirement> requirements   = new LinkedList<>();
-    private boolean           isPersistent   = false;
-    private EncryptionKeys    encryptionKeys = null;
-    private int               retryCount     = 100;
-    private String            groupId        = null;
+    private List<Requirement> requirements     = new LinkedList<>();
+    private boolean           isPersistent     = false;
+    private EncryptionKeys    encryptionKeys   = null;
+    private int               retryCount       = 100;
+    private String            groupId          = null;
+    private long              backoffMillis    = 0;
+    private long              maxBackoffMillis = 0;
+    private JobPriority       priority         = JobPriority.NORMAL;
+    private boolean           isCpuBound       = false;
 
     /**
      * Specify a {@link org.whispersystems.jobqueue.requirements.Requirement }that must be met
@@ -127,6 +160,46 @@ public class JobParameters implements Serializable {
       return this;
     }
 
+    /**
+     * Specify that a failed job should wait before it's retried, rather than being retried
+     * immediately.  The wait doubles after each failure, up to the maximum, and is jittered
+     * so that jobs which failed together don't all retry together.  A waiting job doesn't
+     * occupy a consumer thread, but does hold up the rest of its group.
+     *
+     * @param backoffMillis The wait before the first retry.
+     * @param maxBackoffMillis The longest wait between retries.
+     * @return the builder.
+     */
+    public Builder withBackoff(long backoffMillis, long maxBackoffMillis) {
+      this.backoffMillis    = backoffMillis;
+      this.maxBackoffMillis = maxBackoffMillis;
+      return this;
+    }
+
+    /**
+     * Specify the job's priority class.  Latency-sensitive work, like message delivery,
+     * should be {@link JobPriority#HIGH}, and bulk work, like downloads, {@link JobPriority#LOW}.
+     *
+     * @param priority The job's priority.
+     * @return the builder.
+     */
+    public Builder withPriority(JobPriority priority) {
+      this.priority = priority;
+      return this;
+    }
+
+    /**
+     * Specify that the job is CPU-bound, like decryption, rather than I/O-bound, like a network
+     * send or download.  CPU-bound jobs are run by their own pool of consumers, which is sized
+     * independently.  Jobs that share a groupId must also agree on this.
+     *
+     * @return the builder.
+     */
+    public Builder withCpuBound() {
+      this.isCpuBound = true;
+      return this;
+    }
+
     /**
      * Specify a groupId the job should belong to.  Jobs with the same groupId are guaranteed to be
      * executed serially.
@@ -143,7 +216,8 @@ public class JobParameters implements Serializable {
      * @return the JobParameters instance that describes a Job.
      */
     public JobParameters create() {
-      return new JobParameters(requirements, isPersistent, groupId, encryptionKeys, retryCount);
+      return new JobParameters(requirements, isPersistent, groupId, encryptionKeys, retryCount,
+                               backoffMillis, maxBackoffMillis, priority, isCpuBound);
     }
   }
 }
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue;
+
+/**
+ * The priority class of a {@link org.whispersystems.jobqueue.Job}.
+ *
+ * Ready jobs are handed to consumers by weighted round robin across priority classes, so
+ * a higher class gets proportionally more turns without starving the lower ones.
+ */
+public enum JobPriority {
+  LOW(1),
+  NORMAL(3),
+  HIGH(9);
+
+  private final int weight;
+
+  JobPriority(int weight) {
+    this.weight = weight;
+  }
+
+  int getWeight() {
+    return weight;
+  }
+}
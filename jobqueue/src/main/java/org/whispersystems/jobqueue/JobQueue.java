@@ -16,41 +16,165 @@
  */
 package org.whispersystems.jobqueue;
 
+import org.whispersystems.jobqueue.requirements.Requirement;
+
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
+/**
+ * The queue of pending jobs, indexed so that a consumer never has to scan it.
+ *
+ * At most one job per groupId is "staged" at a time.  A staged job is either in the ready
+ * queue for its priority class (its requirements were met when last checked) or parked in the
+ * wait list for the type of the first requirement it was missing.  The rest of a group waits
+ * behind it, in order, until the group is released, at which point the group's next job joins
+ * the back of its ready queue.  Groups with a deep backlog therefore take turns with the rest,
+ * rather than running to completion ahead of them.  A wait list is only re-examined when a
+ * provider reports a change to its requirement type, and each job that becomes ready wakes
+ * exactly one waiting consumer.
+ *
+ * Consumers take from the ready queues by smooth weighted round robin across priority
+ * classes.  When the consumer count is known, one consumer is held back for
+ * {@link JobPriority#HIGH} jobs, so that a backlog of lower priority work can't occupy all
+ * of them.
+ *
+ * A staged job with a next run time in the future is held in a heap ordered by that time,
+ * and only has its requirements checked once it's due.  Consumers waiting for work sleep
+ * until the earliest of those jobs is due.
+ *
+ * When a job needs a consumer and none is waiting, the queue asks its
+ * {@link ConsumerListener} for another.
+ */
 class JobQueue {
 
-  private final Set<String>     activeGroupIds = new HashSet<>();
-  private final LinkedList<Job> jobQueue       = new LinkedList<>();
+  private static final JobPriority[] PRIORITIES = JobPriority.values();
+
+  private final PriorityQueue<QueuedJob>[]         readyJobs    = newReadyQueues();
+  private final PriorityQueue<QueuedJob>           delayedJobs  = new PriorityQueue<>(11, new RunTimeComparator());
+  private final Map<String, LinkedList<QueuedJob>> groupQueues  = new HashMap<>();
+  private final Set<String>                        busyGroupIds = new HashSet<>();
+
+  private final Map<Class<? extends Requirement>, LinkedList<QueuedJob>> waitLists = new HashMap<>();
+
+  private final int[]  credits         = new int[PRIORITIES.length];
+  private final int[]  running         = new int[PRIORITIES.length];
+  private final long[] queueDepths     = new long[PRIORITIES.length];
+  private final long[] startedCounts   = new long[PRIORITIES.length];
+  private final long[] totalWaitMillis = new long[PRIORITIES.length];
+  private final long[] maxWaitMillis   = new long[PRIORITIES.length];
+
+  private ConsumerListener consumerListener;
+
+  private int  lowerPriorityLimit = Integer.MAX_VALUE;
+  private int  waitingConsumers   = 0;
+  private long headSequence       = 0;
+  private long tailSequence       = 0;
+
+  /**
+   * If work is already queued, a consumer is asked for straight away, since nothing else
+   * would wake one for it.
+   */
+  synchronized void setConsumerListener(ConsumerListener consumerListener) {
+    this.consumerListener = consumerListener;
+
+    if (hasQueuedWork()) {
+      wakeConsumer();
+    }
+  }
+
+  /**
+   * Hold one of the consumers back for {@link JobPriority#HIGH} jobs.
+   *
+   * @param consumers The number of consumers taking from this queue.
+   */
+  synchronized void setConsumerCount(int consumers) {
+    this.lowerPriorityLimit = consumers > 1 ? consumers - 1 : Integer.MAX_VALUE;
+  }
 
   synchronized void onRequirementStatusChanged() {
-    notifyAll();
+    List<LinkedList<QueuedJob>> released = new LinkedList<>(waitLists.values());
+    waitLists.clear();
+
+    for (LinkedList<QueuedJob> waitList : released) {
+      for (QueuedJob queuedJob : waitList) {
+        stage(queuedJob);
+      }
+    }
+  }
+
+  synchronized void onRequirementStatusChanged(Class<? extends Requirement> requirementType) {
+    LinkedList<QueuedJob> waitList = waitLists.remove(requirementType);
+
+    if (waitList != null) {
+      for (QueuedJob queuedJob : waitList) {
+        stage(queuedJob);
+      }
+    }
   }
 
   synchronized void add(Job job) {
-    jobQueue.add(job);
-    notifyAll();
+    enqueue(new QueuedJob(job, tailSequence++), false);
   }
 
   synchronized void addAll(List<Job> jobs) {
-    jobQueue.addAll(jobs);
-    notifyAll();
+    for (Job job : jobs) {
+      enqueue(new QueuedJob(job, tailSequence++), false);
+    }
   }
 
   synchronized void push(Job job) {
-    jobQueue.push(job);
+    enqueue(new QueuedJob(job, --headSequence), true);
   }
 
   synchronized Job getNext() {
+    return getNext(0);
+  }
+
+  /**
+   * Wait for the next available job.  A consumer is only let go once there's no work for it
+   * now, none scheduled for later, and its {@link ConsumerListener} agrees.
+   *
+   * @param idleTimeoutMillis How long to wait without work before asking to be let go, or 0
+   *                          to wait indefinitely.
+   * @return The next job, or null if the consumer should exit.
+   */
+  synchronized Job getNext(long idleTimeoutMillis) {
     try {
-      Job nextAvailableJob;
+      Job  nextAvailableJob;
+      long idleSince = System.currentTimeMillis();
 
       while ((nextAvailableJob = getNextAvailableJob()) == null) {
-        wait();
+        QueuedJob nextDelayedJob = delayedJobs.peek();
+        long      now            = System.currentTimeMillis();
+        long      timeout        = 0;
+
+        if (nextDelayedJob != null) {
+          timeout   = Math.max(1, nextDelayedJob.job.getNextRunTime() - now);
+          idleSince = now;
+        } else if (idleTimeoutMillis > 0) {
+          timeout = idleSince + idleTimeoutMillis - now;
+
+          if (timeout <= 0) {
+            if (consumerListener == null || consumerListener.onConsumerIdle()) return null;
+
+            idleSince = now;
+            timeout   = idleTimeoutMillis;
+          }
+        }
+
+        waitingConsumers++;
+
+        try {
+          wait(timeout);
+        } finally {
+          waitingConsumers--;
+        }
       }
 
       return nextAvailableJob;
@@ -59,37 +183,235 @@ class JobQueue {
     }
   }
 
+  /**
+   * Called by a consumer once it's done with a job it got from {@link #getNext()}, whether
+   * the job finished or was returned to the queue.
+   */
+  synchronized void setFinished(Job job) {
+    running[job.getPriority().ordinal()]--;
+    notify();
+
+    setGroupIdAvailable(job.getGroupId());
+  }
+
   synchronized void setGroupIdAvailable(String groupId) {
-    if (groupId != null) {
-      activeGroupIds.remove(groupId);
-      notifyAll();
+    if (groupId == null) return;
+
+    LinkedList<QueuedJob> groupQueue = groupQueues.get(groupId);
+
+    if (groupQueue == null || groupQueue.isEmpty()) {
+      groupQueues.remove(groupId);
+      busyGroupIds.remove(groupId);
+    } else {
+      QueuedJob next = groupQueue.removeFirst();
+      stage(new QueuedJob(next.job, tailSequence++, next.queuedTime));
     }
   }
 
+  synchronized JobQueueStatistics getStatistics() {
+    return new JobQueueStatistics(queueDepths.clone(), startedCounts.clone(),
+                                  totalWaitMillis.clone(), maxWaitMillis.clone());
+  }
+
   private Job getNextAvailableJob() {
-    if (jobQueue.isEmpty()) return null;
+    QueuedJob queuedJob;
+    long      now = System.currentTimeMillis();
 
-    ListIterator<Job> iterator = jobQueue.listIterator();
-    while (iterator.hasNext()) {
-      Job job = iterator.next();
+    while ((queuedJob = delayedJobs.peek()) != null && queuedJob.job.getNextRunTime() <= now) {
+      stage(delayedJobs.poll());
+    }
 
-      if (job.isRequirementsMet() && isGroupIdAvailable(job.getGroupId())) {
-        iterator.remove();
-        setGroupIdUnavailable(job.getGroupId());
-        return job;
+    JobPriority priority;
+
+    while ((priority = getNextPriority()) != null) {
+      queuedJob = readyJobs[priority.ordinal()].poll();
+
+      Requirement unmetRequirement = queuedJob.job.getUnmetRequirement();
+
+      if (unmetRequirement == null) {
+        onStarted(queuedJob, now);
+        return queuedJob.job;
       }
+
+      park(queuedJob, unmetRequirement);
     }
 
     return null;
   }
 
-  private boolean isGroupIdAvailable(String groupId) {
-    return groupId == null || !activeGroupIds.contains(groupId);
+  /**
+   * Smooth weighted round robin: every eligible class earns its weight in credit, and the
+   * richest class pays the total back and gets the turn.
+   */
+  private JobPriority getNextPriority() {
+    JobPriority selected    = null;
+    int         totalWeight = 0;
+
+    for (JobPriority priority : PRIORITIES) {
+      if (readyJobs[priority.ordinal()].isEmpty() || !isEligible(priority)) continue;
+
+      credits[priority.ordinal()] += priority.getWeight();
+      totalWeight                 += priority.getWeight();
+
+      if (selected == null || credits[priority.ordinal()] > credits[selected.ordinal()]) {
+        selected = priority;
+      }
+    }
+
+    if (selected != null) {
+      credits[selected.ordinal()] -= totalWeight;
+    }
+
+    return selected;
   }
 
-  private void setGroupIdUnavailable(String groupId) {
-    if (groupId != null) {
-      activeGroupIds.add(groupId);
+  private boolean isEligible(JobPriority priority) {
+    if (priority == JobPriority.HIGH) return true;
+
+    int runningBelowHigh = 0;
+
+    for (JobPriority lower : PRIORITIES) {
+      if (lower != JobPriority.HIGH) runningBelowHigh += running[lower.ordinal()];
+    }
+
+    return runningBelowHigh < lowerPriorityLimit;
+  }
+
+  private void onStarted(QueuedJob queuedJob, long now) {
+    int  index    = queuedJob.job.getPriority().ordinal();
+    long waitTime = Math.max(0, now - Math.max(queuedJob.queuedTime, queuedJob.job.getNextRunTime()));
+
+    queuedJob.job.setQueueWaitMillis(waitTime);
+
+    running[index]++;
+    queueDepths[index]--;
+    startedCounts[index]++;
+    totalWaitMillis[index] += waitTime;
+    maxWaitMillis[index]    = Math.max(maxWaitMillis[index], waitTime);
+  }
+
+  private void enqueue(QueuedJob queuedJob, boolean front) {
+    String groupId = queuedJob.job.getGroupId();
+
+    queueDepths[queuedJob.job.getPriority().ordinal()]++;
+
+    if (groupId == null || busyGroupIds.add(groupId)) {
+      stage(queuedJob);
+      return;
+    }
+
+    LinkedList<QueuedJob> groupQueue = groupQueues.get(groupId);
+
+    if (groupQueue == null) {
+      groupQueue = new LinkedList<>();
+      groupQueues.put(groupId, groupQueue);
+    }
+
+    if (front) groupQueue.addFirst(queuedJob);
+    else       groupQueue.addLast(queuedJob);
+  }
+
+  private void stage(QueuedJob queuedJob) {
+    if (queuedJob.job.getNextRunTime() > System.currentTimeMillis()) {
+      delayedJobs.add(queuedJob);
+      wakeConsumer();
+      return;
+    }
+
+    Requirement unmetRequirement = queuedJob.job.getUnmetRequirement();
+
+    if (unmetRequirement == null) setReady(queuedJob);
+    else                          park(queuedJob, unmetRequirement);
+  }
+
+  private void park(QueuedJob queuedJob, Requirement unmetRequirement) {
+    LinkedList<QueuedJob> waitList = waitLists.get(unmetRequirement.getClass());
+
+    if (waitList == null) {
+      waitList = new LinkedList<>();
+      waitLists.put(unmetRequirement.getClass(), waitList);
+    }
+
+    waitList.add(queuedJob);
+  }
+
+  private void setReady(QueuedJob queuedJob) {
+    readyJobs[queuedJob.job.getPriority().ordinal()].add(queuedJob);
+    wakeConsumer();
+  }
+
+  private boolean hasQueuedWork() {
+    if (!delayedJobs.isEmpty()) return true;
+
+    for (PriorityQueue<QueuedJob> readyQueue : readyJobs) {
+      if (!readyQueue.isEmpty()) return true;
+    }
+
+    return false;
+  }
+
+  private void wakeConsumer() {
+    if      (waitingConsumers > 0)     notify();
+    else if (consumerListener != null) consumerListener.onConsumerNeeded();
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static PriorityQueue<QueuedJob>[] newReadyQueues() {
+    PriorityQueue<QueuedJob>[] queues = new PriorityQueue[PRIORITIES.length];
+
+    for (int i=0;i<queues.length;i++) {
+      queues[i] = new PriorityQueue<>();
+    }
+
+    return queues;
+  }
+
+  interface ConsumerListener {
+    /**
+     * Called when a job is ready, or newly scheduled, and no consumer is waiting for one.
+     */
+    public void onConsumerNeeded();
+
+    /**
+     * Called when a consumer has waited its idle timeout without finding work.
+     *
+     * @return true if the consumer should exit.
+     */
+    public boolean onConsumerIdle();
+  }
+
+  private static class QueuedJob implements Comparable<QueuedJob> {
+    private final Job  job;
+    private final long sequence;
+    private final long queuedTime;
+
+    private QueuedJob(Job job, long sequence) {
+      this(job, sequence, System.currentTimeMillis());
+    }
+
+    private QueuedJob(Job job, long sequence, long queuedTime) {
+      this.job        = job;
+      this.sequence   = sequence;
+      this.queuedTime = queuedTime;
+    }
+
+    @Override
+    public int compareTo(QueuedJob another) {
+      if      (sequence < another.sequence) return -1;
+      else if (sequence > another.sequence) return 1;
+      else                                  return 0;
+    }
+  }
+
+  private static class RunTimeComparator implements Comparator<QueuedJob> {
+    @Override
+    public int compare(QueuedJob lhs, QueuedJob rhs) {
+      long lhsRunTime = lhs.job.getNextRunTime();
+      long rhsRunTime = rhs.job.getNextRunTime();
+
+      if      (lhsRunTime < rhsRunTime) return -1;
+      else if (lhsRunTime > rhsRunTime) return 1;
+      else                              return lhs.compareTo(rhs);
     }
   }
 }
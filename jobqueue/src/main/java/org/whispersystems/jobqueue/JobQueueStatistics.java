@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue;
+
+/**
+ * A snapshot of a {@link JobManager}'s queue depth and wait time counters, per
+ * {@link JobPriority}.
+ */
+public class JobQueueStatistics {
+
+  private final long[] queueDepths;
+  private final long[] startedCounts;
+  private final long[] totalWaitMillis;
+  private final long[] maxWaitMillis;
+
+  JobQueueStatistics(long[] queueDepths, long[] startedCounts,
+                     long[] totalWaitMillis, long[] maxWaitMillis)
+  {
+    this.queueDepths     = queueDepths;
+    this.startedCounts   = startedCounts;
+    this.totalWaitMillis = totalWaitMillis;
+    this.maxWaitMillis   = maxWaitMillis;
+  }
+
+  static JobQueueStatistics combine(JobQueueStatistics first, JobQueueStatistics second) {
+    int    count           = JobPriority.values().length;
+    long[] queueDepths     = new long[count];
+    long[] startedCounts   = new long[count];
+    long[] totalWaitMillis = new long[count];
+    long[] maxWaitMillis   = new long[count];
+
+    for (int i=0;i<count;i++) {
+      queueDepths[i]     = first.queueDepths[i] + second.queueDepths[i];
+      startedCounts[i]   = first.startedCounts[i] + second.startedCounts[i];
+      totalWaitMillis[i] = first.totalWaitMillis[i] + second.totalWaitMillis[i];
+      maxWaitMillis[i]   = Math.max(first.maxWaitMillis[i], second.maxWaitMillis[i]);
+    }
+
+    return new JobQueueStatistics(queueDepths, startedCounts, totalWaitMillis, maxWaitMillis);
+  }
+
+  /**
+   * @return The number of jobs of this priority that are queued, but not running.
+   */
+  public long getQueueDepth(JobPriority priority) {
+    return queueDepths[priority.ordinal()];
+  }
+
+  /**
+   * @return The number of times a job of this priority has been handed to a consumer.
+   */
+  public long getStartedCount(JobPriority priority) {
+    return startedCounts[priority.ordinal()];
+  }
+
+  /**
+   * @return The average time a job of this priority waited for a consumer, from when it was
+   * queued (or became due, if it was delayed) until it started.
+   */
+  public double getAverageWaitMillis(JobPriority priority) {
+    long started = startedCounts[priority.ordinal()];
+
+    if (started == 0) return 0;
+    else              return (double)totalWaitMillis[priority.ordinal()] / started;
+  }
+
+  public long getMaxWaitMillis(JobPriority priority) {
+    return maxWaitMillis[priority.ordinal()];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+
+    for (JobPriority priority : JobPriority.values()) {
+      if (builder.length() > 0) builder.append(", ");
+
+      builder.append(priority).append(": ")
+             .append(getQueueDepth(priority)).append(" queued, ")
+             .append(getAverageWaitMillis(priority)).append("ms average wait, ")
+             .append(getMaxWaitMillis(priority)).append("ms max wait");
+    }
+
+    return builder.toString();
+  }
+}
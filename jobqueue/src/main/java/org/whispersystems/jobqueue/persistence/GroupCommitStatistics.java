@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue.persistence;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the batch size and commit latency counters of a group-committing
+ * {@link PersistentStorage}.
+ */
+public class GroupCommitStatistics {
+
+  private final long commitCount;
+  private final long operationCount;
+  private final int  largestBatchSize;
+  private final long totalCommitNanos;
+
+  GroupCommitStatistics(long commitCount, long operationCount,
+                        int largestBatchSize, long totalCommitNanos)
+  {
+    this.commitCount      = commitCount;
+    this.operationCount   = operationCount;
+    this.largestBatchSize = largestBatchSize;
+    this.totalCommitNanos = totalCommitNanos;
+  }
+
+  /**
+   * @return The number of transactions committed.
+   */
+  public long getCommitCount() {
+    return commitCount;
+  }
+
+  /**
+   * @return The number of store and remove operations written across all transactions.
+   */
+  public long getOperationCount() {
+    return operationCount;
+  }
+
+  public int getLargestBatchSize() {
+    return largestBatchSize;
+  }
+
+  public double getAverageBatchSize() {
+    if (commitCount == 0) return 0;
+    else                  return (double)operationCount / commitCount;
+  }
+
+  public long getTotalCommitTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(totalCommitNanos);
+  }
+
+  public double getAverageCommitTimeMillis() {
+    if (commitCount == 0) return 0;
+    else                  return (double)totalCommitNanos / commitCount / 1000000;
+  }
+
+  @Override
+  public String toString() {
+    return "commits: " + commitCount + ", operations: " + operationCount +
+           ", largest batch: " + largestBatchSize +
+           ", average commit: " + getAverageCommitTimeMillis() + "ms";
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue.persistence;
+
+import android.util.Log;
+
+import org.whispersystems.jobqueue.Job;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers store and remove operations for a {@link PersistentStorage} and commits them
+ * together, either once a batch is full or once its oldest operation has waited for the
+ * batch window.
+ *
+ * If a commit throws, every store in its batch is reported as failed, and the batch isn't
+ * counted in the statistics.
+ */
+class GroupCommitWriter {
+
+  private static final String TAG = GroupCommitWriter.class.getSimpleName();
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+  private final PersistentStorage persistentStorage;
+  private final int               maxBatchSize;
+  private final long              batchWindowMillis;
+
+  private List<PendingStore> pendingStores  = new LinkedList<>();
+  private List<Long>         pendingRemoves = new LinkedList<>();
+  private boolean            flushScheduled = false;
+
+  private long commitCount;
+  private long operationCount;
+  private int  largestBatchSize;
+  private long totalCommitNanos;
+
+  GroupCommitWriter(PersistentStorage persistentStorage, int maxBatchSize, long batchWindowMillis) {
+    this.persistentStorage = persistentStorage;
+    this.maxBatchSize      = maxBatchSize;
+    this.batchWindowMillis = batchWindowMillis;
+  }
+
+  synchronized void store(Job job, PersistentStorage.StoreListener listener) {
+    pendingStores.add(new PendingStore(job, listener));
+    onOperationAdded();
+  }
+
+  synchronized void remove(long id) {
+    pendingRemoves.add(id);
+    onOperationAdded();
+  }
+
+  synchronized GroupCommitStatistics getStatistics() {
+    return new GroupCommitStatistics(commitCount, operationCount, largestBatchSize, totalCommitNanos);
+  }
+
+  private void onOperationAdded() {
+    if (pendingStores.size() + pendingRemoves.size() >= maxBatchSize) {
+      executor.execute(new FlushTask());
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      executor.schedule(new FlushTask(), batchWindowMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void flush() {
+    List<PendingStore> stores;
+    List<Long>         removes;
+
+    synchronized (this) {
+      stores         = pendingStores;
+      removes        = pendingRemoves;
+      pendingStores  = new LinkedList<>();
+      pendingRemoves = new LinkedList<>();
+      flushScheduled = false;
+    }
+
+    if (stores.isEmpty() && removes.isEmpty()) {
+      return;
+    }
+
+    List<Job> jobs = new LinkedList<>();
+
+    for (PendingStore store : stores) {
+      jobs.add(store.job);
+    }
+
+    long      startTime = System.nanoTime();
+    List<Job> failed;
+
+    try {
+      failed = persistentStorage.commit(jobs, removes);
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Group commit of " + (stores.size() + removes.size()) + " operations failed", e);
+
+      for (PendingStore store : stores) {
+        store.listener.onStoreFailed(store.job);
+      }
+
+      return;
+    }
+
+    long elapsed = System.nanoTime() - startTime;
+
+    synchronized (this) {
+      int batchSize = stores.size() + removes.size();
+
+      commitCount++;
+      operationCount   += batchSize;
+      totalCommitNanos += elapsed;
+      largestBatchSize  = Math.max(largestBatchSize, batchSize);
+    }
+
+    for (PendingStore store : stores) {
+      if (failed.contains(store.job)) store.listener.onStoreFailed(store.job);
+      else                            store.listener.onStored(store.job);
+    }
+  }
+
+  private class FlushTask implements Runnable {
+    @Override
+    public void run() {
+      flush();
+    }
+  }
+
+  private static class PendingStore {
+    private final Job                             job;
+    private final PersistentStorage.StoreListener listener;
+
+    private PendingStore(Job job, PersistentStorage.StoreListener listener) {
+      this.job      = job;
+      this.listener = listener;
+    }
+  }
+}
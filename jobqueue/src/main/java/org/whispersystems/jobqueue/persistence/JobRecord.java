@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue.persistence;
+
+import org.whispersystems.jobqueue.JobPriority;
+
+/**
+ * A serialized job, as it's kept by a {@link JobTable}.
+ *
+ * A "lazy" record carries its job's group id, priority and work type alongside the serialized
+ * job, so that it can be queued without being deserialized.  Records written before those
+ * were kept don't.
+ */
+public class JobRecord {
+
+  private final long        id;
+  private final String      item;
+  private final byte[]      data;
+  private final boolean     encrypted;
+  private final boolean     lazy;
+  private final String      groupId;
+  private final JobPriority priority;
+  private final boolean     cpuBound;
+  private final int         runIteration;
+  private final long        nextRunTime;
+
+  public JobRecord(long id, String item, byte[] data, boolean encrypted, boolean lazy,
+                   String groupId, JobPriority priority, boolean cpuBound,
+                   int runIteration, long nextRunTime)
+  {
+    this.id           = id;
+    this.item         = item;
+    this.data         = data;
+    this.encrypted    = encrypted;
+    this.lazy         = lazy;
+    this.groupId      = groupId;
+    this.priority     = priority;
+    this.cpuBound     = cpuBound;
+    this.runIteration = runIteration;
+    this.nextRunTime  = nextRunTime;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * @return The job serialized as a String, or an empty String if it was serialized as bytes.
+   */
+  public String getItem() {
+    return item;
+  }
+
+  /**
+   * @return The job serialized as bytes, or null if it was serialized as a String.
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  public boolean isEncrypted() {
+    return encrypted;
+  }
+
+  public boolean isLazy() {
+    return lazy;
+  }
+
+  public String getGroupId() {
+    return groupId;
+  }
+
+  public JobPriority getPriority() {
+    return priority;
+  }
+
+  public boolean isCpuBound() {
+    return cpuBound;
+  }
+
+  public int getRunIteration() {
+    return runIteration;
+  }
+
+  public long getNextRunTime() {
+    return nextRunTime;
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue.persistence;
+
+import org.whispersystems.jobqueue.Job;
+import org.whispersystems.jobqueue.JobParameters;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Describes how the fields of one {@link org.whispersystems.jobqueue.Job} class are written
+ * by a {@link org.whispersystems.jobqueue.persistence.SchemaJobSerializer}.  The job's
+ * {@link org.whispersystems.jobqueue.JobParameters} are written by the serializer itself.
+ *
+ * @param <T> The Job class this schema describes.
+ */
+public interface JobSchema<T extends Job> {
+
+  /**
+   * @return The current version of this schema.  It is stored with every job, and handed back
+   * to {@link #read(JobParameters, int, DataInput)} so that older layouts can still be read.
+   */
+  public int getVersion();
+
+  /**
+   * Write the job's own fields.
+   * @param job The Job to write.
+   * @param out The output to write to.
+   * @throws IOException if writing fails.
+   */
+  public void write(T job, DataOutput out) throws IOException;
+
+  /**
+   * Reconstruct a job from its parameters and the fields written by
+   * {@link #write(Job, DataOutput)}.
+   * @param parameters The restored parameters of the job.
+   * @param version The schema version the job was written with.
+   * @param in The input to read from.
+   * @return The restored Job.
+   * @throws IOException if reading fails.
+   */
+  public T read(JobParameters parameters, int version, DataInput in) throws IOException;
+
+}
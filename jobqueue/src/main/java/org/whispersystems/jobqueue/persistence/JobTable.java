@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue.persistence;
+
+import java.util.List;
+
+/**
+ * The durable table that a {@link PersistentStorage} keeps its {@link JobRecord}s in.
+ *
+ * Records are identified by an id that the table assigns, in increasing order of insertion.
+ */
+public interface JobTable {
+
+  /**
+   * Insert and delete records in a single transaction.
+   *
+   * @param inserted The records to insert.  Their ids are ignored.
+   * @param removedIds The ids of the records to delete.
+   * @return The ids assigned to the inserted records, in the same order.
+   */
+  public List<Long> commit(List<JobRecord> inserted, List<Long> removedIds);
+
+  public void remove(long id);
+
+  public void updateSchedule(long id, int runIteration, long nextRunTime);
+
+  /**
+   * @return Up to limit records with the given encryption state and an id in (afterId, maxId],
+   * in id order.
+   */
+  public List<JobRecord> getPage(boolean encrypted, long afterId, long maxId, int limit);
+
+  /**
+   * @return The id of the most recently inserted record, or 0 if there are none.
+   */
+  public long getMaxId();
+}
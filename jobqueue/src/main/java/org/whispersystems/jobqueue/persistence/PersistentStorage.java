@@ -16,11 +16,7 @@
  */
 package org.whispersystems.jobqueue.persistence;
 
-import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
 import org.whispersystems.jobqueue.EncryptionKeys;
@@ -30,90 +26,263 @@ import org.whispersystems.jobqueue.dependencies.DependencyInjector;
 import org.whispersystems.jobqueue.requirements.Requirement;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
 public class PersistentStorage {
 
-  private static final int DATABASE_VERSION = 1;
-
-  private static final String TABLE_NAME = "queue";
-  private static final String ID         = "_id";
-  private static final String ITEM       = "item";
-  private static final String ENCRYPTED  = "encrypted";
-
-  private static final String DATABASE_CREATE = String.format("CREATE TABLE %s (%s INTEGER PRIMARY KEY, %s TEXT NOT NULL, %s INTEGER DEFAULT 0);",
-                                                              TABLE_NAME, ID, ITEM, ENCRYPTED);
+  private static final String TAG = PersistentStorage.class.getSimpleName();
 
   private final Context            context;
-  private final DatabaseHelper     databaseHelper;
+  private final JobTable           jobTable;
   private final JobSerializer      jobSerializer;
   private final DependencyInjector dependencyInjector;
+  private final GroupCommitWriter  groupCommitWriter;
 
   public PersistentStorage(Context context, String name,
                            JobSerializer serializer,
                            DependencyInjector dependencyInjector)
   {
-    this.databaseHelper     = new DatabaseHelper(context, "_jobqueue-" + name);
+    this(context, name, serializer, dependencyInjector, 1, 0);
+  }
+
+  /**
+   * @param maxBatchSize The most store and remove operations to commit in one transaction.
+   *                     A value of 1 disables group commit, and every operation is written
+   *                     immediately.
+   * @param batchWindowMillis How long an operation may wait for others to join its batch.
+   */
+  public PersistentStorage(Context context, String name,
+                           JobSerializer serializer,
+                           DependencyInjector dependencyInjector,
+                           int maxBatchSize, long batchWindowMillis)
+  {
+    this(context, new SQLiteJobTable(context, "_jobqueue-" + name), serializer,
+         dependencyInjector, maxBatchSize, batchWindowMillis);
+  }
+
+  /**
+   * Keep jobs in the given table rather than in the default SQLite database.
+   *
+   * @param maxBatchSize The most store and remove operations to commit in one transaction.
+   *                     A value of 1 disables group commit.
+   * @param batchWindowMillis How long an operation may wait for others to join its batch.
+   */
+  public PersistentStorage(Context context, JobTable jobTable,
+                           JobSerializer serializer,
+                           DependencyInjector dependencyInjector,
+                           int maxBatchSize, long batchWindowMillis)
+  {
     this.context            = context;
+    this.jobTable           = jobTable;
     this.jobSerializer      = serializer;
     this.dependencyInjector = dependencyInjector;
+
+    if (maxBatchSize > 1) this.groupCommitWriter = new GroupCommitWriter(this, maxBatchSize, batchWindowMillis);
+    else                  this.groupCommitWriter = null;
   }
 
   public void store(Job job) throws IOException {
-    ContentValues contentValues = new ContentValues();
-    contentValues.put(ITEM, jobSerializer.serialize(job));
-    contentValues.put(ENCRYPTED, job.getEncryptionKeys() != null);
+    List<JobRecord> records = new ArrayList<>(1);
+    records.add(serialize(job));
+
+    List<Long> ids = jobTable.commit(records, new LinkedList<Long>());
+    job.setPersistentId(ids.get(0));
+  }
+
+  /**
+   * Store a job, notifying the listener once it has been durably written.  If group commit
+   * is enabled the write joins the current batch, and the job's persistent id is only
+   * assigned once that batch has committed.
+   *
+   * @param job The job to store.
+   * @param listener The listener to notify once the job is stored, or has failed to store.
+   */
+  public void store(Job job, StoreListener listener) {
+    if (groupCommitWriter != null) {
+      groupCommitWriter.store(job, listener);
+      return;
+    }
+
+    try {
+      store(job);
+      listener.onStored(job);
+    } catch (IOException e) {
+      Log.w(TAG, e);
+      listener.onStoreFailed(job);
+    }
+  }
+
+  /**
+   * @return The group commit counters, or null if group commit is disabled.
+   */
+  public GroupCommitStatistics getGroupCommitStatistics() {
+    if (groupCommitWriter == null) return null;
+    else                           return groupCommitWriter.getStatistics();
+  }
+
+  /**
+   * Insert and delete a batch of jobs in a single transaction.  Jobs are only assigned a
+   * persistent id once the transaction has committed.
+   *
+   * @return The jobs that could not be serialized, and so were not stored.
+   */
+  List<Job> commit(List<Job> jobs, List<Long> removedIds) {
+    List<Job>       failed  = new LinkedList<>();
+    List<Job>       stored  = new ArrayList<>(jobs.size());
+    List<JobRecord> records = new ArrayList<>(jobs.size());
+
+    for (Job job : jobs) {
+      try {
+        records.add(serialize(job));
+        stored.add(job);
+      } catch (IOException e) {
+        Log.w(TAG, e);
+        failed.add(job);
+      }
+    }
+
+    List<Long> ids = jobTable.commit(records, removedIds);
+
+    for (int i=0;i<stored.size();i++) {
+      stored.get(i).setPersistentId(ids.get(i));
+    }
 
-    long id = databaseHelper.getWritableDatabase().insert(TABLE_NAME, null, contentValues);
-    job.setPersistentId(id);
+    return failed;
   }
 
   public List<Job> getAllUnencrypted() {
-    return getJobs(null, ENCRYPTED + " = 0");
+    return getPage(null, false, 0, Long.MAX_VALUE, Integer.MAX_VALUE).getJobs();
   }
 
   public List<Job> getAllEncrypted(EncryptionKeys keys) {
-    return getJobs(keys, ENCRYPTED + " = 1");
+    return getPage(keys, true, 0, Long.MAX_VALUE, Integer.MAX_VALUE).getJobs();
   }
 
-  private List<Job> getJobs(EncryptionKeys keys, String where) {
-    List<Job>      results  = new LinkedList<>();
-    SQLiteDatabase database = databaseHelper.getReadableDatabase();
-    Cursor         cursor   = null;
+  /**
+   * Read a page of stored unencrypted jobs, oldest first.
+   *
+   * @param afterId Only return jobs stored after the job with this persistent id.
+   * @param maxId Only return jobs stored up to and including the job with this persistent id.
+   * @param limit The most rows to read.
+   */
+  public Page getUnencryptedPage(long afterId, long maxId, int limit) {
+    return getPage(null, false, afterId, maxId, limit);
+  }
 
-    try {
-      cursor = database.query(TABLE_NAME, null, where, null, null, null, ID + " ASC", null);
+  /**
+   * Read a page of stored encrypted jobs, oldest first.
+   *
+   * @param afterId Only return jobs stored after the job with this persistent id.
+   * @param maxId Only return jobs stored up to and including the job with this persistent id.
+   * @param limit The most rows to read.
+   */
+  public Page getEncryptedPage(EncryptionKeys keys, long afterId, long maxId, int limit) {
+    return getPage(keys, true, afterId, maxId, limit);
+  }
 
-      while (cursor.moveToNext()) {
-        long    id        = cursor.getLong(cursor.getColumnIndexOrThrow(ID));
-        String  item      = cursor.getString(cursor.getColumnIndexOrThrow(ITEM));
-        boolean encrypted = cursor.getInt(cursor.getColumnIndexOrThrow(ENCRYPTED)) == 1;
+  /**
+   * @return The persistent id of the most recently stored job, or 0 if there are none.
+   */
+  public long getMaxId() {
+    return jobTable.getMaxId();
+  }
 
-        try{
-          Job job = jobSerializer.deserialize(keys, encrypted, item);
+  private Page getPage(EncryptionKeys keys, boolean encrypted, long afterId, long maxId, int limit) {
+    List<JobRecord> records = jobTable.getPage(encrypted, afterId, maxId, limit);
+    List<Job>       results = new LinkedList<>();
+    long            lastId  = afterId;
 
-          job.setPersistentId(id);
-          job.setEncryptionKeys(keys);
-          injectDependencies(job);
+    for (JobRecord record : records) {
+      lastId = record.getId();
 
+      if (record.isLazy()) {
+        Job job = new UnloadedJob(this, record.getId(), record.getGroupId(),
+                                  record.getPriority(), record.isCpuBound(), keys,
+                                  record.isEncrypted(), record.getItem(), record.getData());
+
+        setSchedule(job, record);
+        results.add(job);
+      } else {
+        // Rows stored before group ids had their own column have to be
+        // deserialized now, so that they're queued behind the right group.
+        try {
+          Job job = load(record.getId(), keys, record.isEncrypted(), record.getItem(), record.getData());
+
+          setSchedule(job, record);
           results.add(job);
         } catch (IOException e) {
-          Log.w("PersistentStore", e);
-          remove(id);
+          Log.w(TAG, e);
         }
       }
-    } finally {
-      if (cursor != null)
-        cursor.close();
     }
 
-    return results;
+    return new Page(results, lastId, records.size() < limit);
+  }
+
+  private void setSchedule(Job job, JobRecord record) {
+    job.setRunIteration(record.getRunIteration());
+    job.setNextRunTime(record.getNextRunTime());
+  }
+
+  /**
+   * Record how many times a stored job has run, and when it should next be run, so that
+   * its backoff survives a restart.
+   */
+  public void updateSchedule(long id, int runIteration, long nextRunTime) {
+    jobTable.updateSchedule(id, runIteration, nextRunTime);
+  }
+
+  Job load(long id, EncryptionKeys keys, boolean encrypted, String item, byte[] data)
+      throws IOException
+  {
+    try {
+      Job job = deserialize(keys, encrypted, item, data);
+
+      job.setPersistentId(id);
+      job.setEncryptionKeys(keys);
+      injectDependencies(job);
+
+      return job;
+    } catch (IOException e) {
+      remove(id);
+      throw e;
+    }
+  }
+
+  private JobRecord serialize(Job job) throws IOException {
+    String item;
+    byte[] data;
+
+    if (jobSerializer instanceof BinaryJobSerializer) {
+      item = "";
+      data = ((BinaryJobSerializer)jobSerializer).serializeToBytes(job);
+    } else {
+      item = jobSerializer.serialize(job);
+      data = null;
+    }
+
+    return new JobRecord(0, item, data, job.getEncryptionKeys() != null, true,
+                         job.getGroupId(), job.getPriority(), job.isCpuBound(),
+                         job.getRunIteration(), job.getNextRunTime());
+  }
+
+  private Job deserialize(EncryptionKeys keys, boolean encrypted, String item, byte[] data)
+      throws IOException
+  {
+    if (data == null) {
+      return jobSerializer.deserialize(keys, encrypted, item);
+    } else if (jobSerializer instanceof BinaryJobSerializer) {
+      return ((BinaryJobSerializer)jobSerializer).deserialize(keys, encrypted, data);
+    } else {
+      throw new IOException("Binary job, but serializer doesn't support binary jobs!");
+    }
   }
 
   public void remove(long id) {
-    databaseHelper.getWritableDatabase()
-                  .delete(TABLE_NAME, ID + " = ?", new String[] {String.valueOf(id)});
+    if (groupCommitWriter != null) groupCommitWriter.remove(id);
+    else                           jobTable.remove(id);
   }
 
   private void injectDependencies(Job job) {
@@ -132,21 +301,39 @@ public class PersistentStorage {
     }
   }
 
-  private static class DatabaseHelper extends SQLiteOpenHelper {
+  /**
+   * A page of stored jobs.  Jobs stored by this version are returned as
+   * {@link UnloadedJob}s, and are only deserialized once they're about to run.
+   */
+  public static class Page {
+    private final List<Job> jobs;
+    private final long      lastId;
+    private final boolean   last;
 
-    public DatabaseHelper(Context context, String name) {
-      super(context, name, null, DATABASE_VERSION);
+    private Page(List<Job> jobs, long lastId, boolean last) {
+      this.jobs   = jobs;
+      this.lastId = lastId;
+      this.last   = last;
     }
 
-    @Override
-    public void onCreate(SQLiteDatabase db) {
-      db.execSQL(DATABASE_CREATE);
+    public List<Job> getJobs() {
+      return jobs;
     }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    /**
+     * @return The persistent id to read the next page after.
+     */
+    public long getLastId() {
+      return lastId;
+    }
 
+    public boolean isLast() {
+      return last;
     }
   }
 
+  public interface StoreListener {
+    public void onStored(Job job);
+    public void onStoreFailed(Job job);
+  }
 }
@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue.persistence;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import org.whispersystems.jobqueue.JobPriority;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The {@link JobTable} that {@link PersistentStorage} uses by default, kept in a SQLite
+ * database.
+ */
+class SQLiteJobTable implements JobTable {
+
+  private static final String TAG = SQLiteJobTable.class.getSimpleName();
+
+  private static final int BINARY_ITEMS_VERSION = 2;
+  private static final int LAZY_LOAD_VERSION    = 3;
+  private static final int SCHEDULE_VERSION     = 4;
+  private static final int PRIORITY_VERSION     = 5;
+  private static final int CPU_BOUND_VERSION    = 6;
+  private static final int DATABASE_VERSION     = 6;
+
+  private static final String TABLE_NAME = "queue";
+  private static final String ID         = "_id";
+  private static final String ITEM       = "item";
+  private static final String ENCRYPTED  = "encrypted";
+  private static final String DATA       = "data";
+  private static final String GROUP_ID   = "group_id";
+  private static final String LAZY       = "lazy";
+
+  private static final String RUN_ITERATION = "run_iteration";
+  private static final String NEXT_RUN_TIME = "next_run_time";
+  private static final String PRIORITY      = "priority";
+  private static final String CPU_BOUND     = "cpu_bound";
+
+  private static final String DATABASE_CREATE = String.format("CREATE TABLE %s (%s INTEGER PRIMARY KEY, %s TEXT NOT NULL, %s INTEGER DEFAULT 0, %s BLOB, %s TEXT, %s INTEGER DEFAULT 0, %s INTEGER DEFAULT 0, %s INTEGER DEFAULT 0, %s TEXT, %s INTEGER DEFAULT 0);",
+                                                              TABLE_NAME, ID, ITEM, ENCRYPTED, DATA, GROUP_ID, LAZY, RUN_ITERATION, NEXT_RUN_TIME, PRIORITY, CPU_BOUND);
+
+  private final DatabaseHelper databaseHelper;
+
+  SQLiteJobTable(Context context, String name) {
+    this.databaseHelper = new DatabaseHelper(context, name);
+  }
+
+  @Override
+  public List<Long> commit(List<JobRecord> inserted, List<Long> removedIds) {
+    List<Long>     ids      = new ArrayList<>(inserted.size());
+    SQLiteDatabase database = databaseHelper.getWritableDatabase();
+
+    database.beginTransaction();
+
+    try {
+      for (JobRecord record : inserted) {
+        ids.add(database.insert(TABLE_NAME, null, getContentValues(record)));
+      }
+
+      for (long id : removedIds) {
+        database.delete(TABLE_NAME, ID + " = ?", new String[] {String.valueOf(id)});
+      }
+
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+
+    return ids;
+  }
+
+  @Override
+  public void remove(long id) {
+    databaseHelper.getWritableDatabase()
+                  .delete(TABLE_NAME, ID + " = ?", new String[] {String.valueOf(id)});
+  }
+
+  @Override
+  public void updateSchedule(long id, int runIteration, long nextRunTime) {
+    ContentValues contentValues = new ContentValues();
+    contentValues.put(RUN_ITERATION, runIteration);
+    contentValues.put(NEXT_RUN_TIME, nextRunTime);
+
+    databaseHelper.getWritableDatabase()
+                  .update(TABLE_NAME, contentValues, ID + " = ?", new String[] {String.valueOf(id)});
+  }
+
+  @Override
+  public List<JobRecord> getPage(boolean encrypted, long afterId, long maxId, int limit) {
+    List<JobRecord> results  = new LinkedList<>();
+    SQLiteDatabase  database = databaseHelper.getReadableDatabase();
+    Cursor          cursor   = null;
+
+    try {
+      cursor = database.query(TABLE_NAME, null, ENCRYPTED + " = ? AND " + ID + " > ? AND " + ID + " <= ?",
+                              new String[] {encrypted ? "1" : "0", String.valueOf(afterId), String.valueOf(maxId)},
+                              null, null, ID + " ASC", String.valueOf(limit));
+
+      while (cursor.moveToNext()) {
+        results.add(getRecord(cursor));
+      }
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+
+    return results;
+  }
+
+  @Override
+  public long getMaxId() {
+    Cursor cursor = null;
+
+    try {
+      cursor = databaseHelper.getReadableDatabase()
+                             .rawQuery("SELECT MAX(" + ID + ") FROM " + TABLE_NAME, null);
+
+      if (cursor.moveToFirst()) return cursor.getLong(0);
+      else                      return 0;
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+  }
+
+  private ContentValues getContentValues(JobRecord record) {
+    ContentValues contentValues = new ContentValues();
+    contentValues.put(ITEM, record.getItem());
+    contentValues.put(DATA, record.getData());
+    contentValues.put(ENCRYPTED, record.isEncrypted());
+    contentValues.put(LAZY, record.isLazy());
+    contentValues.put(GROUP_ID, record.getGroupId());
+    contentValues.put(PRIORITY, record.getPriority() == null ? null : record.getPriority().name());
+    contentValues.put(CPU_BOUND, record.isCpuBound());
+    contentValues.put(RUN_ITERATION, record.getRunIteration());
+    contentValues.put(NEXT_RUN_TIME, record.getNextRunTime());
+
+    return contentValues;
+  }
+
+  private JobRecord getRecord(Cursor cursor) {
+    return new JobRecord(cursor.getLong(cursor.getColumnIndexOrThrow(ID)),
+                         cursor.getString(cursor.getColumnIndexOrThrow(ITEM)),
+                         cursor.getBlob(cursor.getColumnIndexOrThrow(DATA)),
+                         cursor.getInt(cursor.getColumnIndexOrThrow(ENCRYPTED)) == 1,
+                         cursor.getInt(cursor.getColumnIndexOrThrow(LAZY)) == 1,
+                         cursor.getString(cursor.getColumnIndexOrThrow(GROUP_ID)),
+                         getPriority(cursor),
+                         cursor.getInt(cursor.getColumnIndexOrThrow(CPU_BOUND)) == 1,
+                         cursor.getInt(cursor.getColumnIndexOrThrow(RUN_ITERATION)),
+                         cursor.getLong(cursor.getColumnIndexOrThrow(NEXT_RUN_TIME)));
+  }
+
+  private JobPriority getPriority(Cursor cursor) {
+    String priority = cursor.getString(cursor.getColumnIndexOrThrow(PRIORITY));
+
+    try {
+      return priority == null ? JobPriority.NORMAL : JobPriority.valueOf(priority);
+    } catch (IllegalArgumentException e) {
+      Log.w(TAG, e);
+      return JobPriority.NORMAL;
+    }
+  }
+
+  private static class DatabaseHelper extends SQLiteOpenHelper {
+
+    public DatabaseHelper(Context context, String name) {
+      super(context, name, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+      db.execSQL(DATABASE_CREATE);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+      if (oldVersion < BINARY_ITEMS_VERSION) {
+        db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s BLOB;", TABLE_NAME, DATA));
+      }
+
+      if (oldVersion < LAZY_LOAD_VERSION) {
+        db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s TEXT;", TABLE_NAME, GROUP_ID));
+        db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s INTEGER DEFAULT 0;", TABLE_NAME, LAZY));
+      }
+
+      if (oldVersion < SCHEDULE_VERSION) {
+        db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s INTEGER DEFAULT 0;", TABLE_NAME, RUN_ITERATION));
+        db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s INTEGER DEFAULT 0;", TABLE_NAME, NEXT_RUN_TIME));
+      }
+
+      if (oldVersion < PRIORITY_VERSION) {
+        db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s TEXT;", TABLE_NAME, PRIORITY));
+      }
+
+      if (oldVersion < CPU_BOUND_VERSION) {
+        db.execSQL(String.format("ALTER TABLE %s ADD COLUMN %s INTEGER DEFAULT 0;", TABLE_NAME, CPU_BOUND));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue.persistence;
+
+import android.util.Base64;
+
+import org.whispersystems.jobqueue.EncryptionKeys;
+import org.whispersystems.jobqueue.Job;
+import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.requirements.Requirement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An implementation of {@link org.whispersystems.jobqueue.persistence.BinaryJobSerializer}
+ * that writes each job as a compact, versioned record.
+ *
+ * Job classes are registered with a stable type id and a {@link JobSchema} that writes their
+ * fields.  Requirement classes are registered with a stable type id, and are recreated through
+ * their no-argument constructor.  A job whose class or requirements aren't registered is
+ * written with Java Serialization inside the same envelope, and jobs that were persisted as
+ * Base64-encoded Java Serialization can still be read.
+ */
+public class SchemaJobSerializer implements BinaryJobSerializer {
+
+  private static final int BACKOFF_FORMAT_VERSION   = 2;
+  private static final int PRIORITY_FORMAT_VERSION  = 3;
+  private static final int CPU_BOUND_FORMAT_VERSION = 4;
+  private static final int FORMAT_VERSION           = 4;
+  private static final int JAVA_TYPE_ID             = 0;
+
+  private final JavaJobSerializer legacySerializer = new JavaJobSerializer();
+
+  private final Map<Class<? extends Job>, Integer>         jobTypeIds         = new HashMap<>();
+  private final Map<Integer, JobSchema<?>>                 jobSchemas         = new HashMap<>();
+  private final Map<Class<? extends Requirement>, Integer> requirementTypeIds = new HashMap<>();
+  private final Map<Integer, Class<? extends Requirement>> requirementClasses = new HashMap<>();
+
+  public SchemaJobSerializer() {}
+
+  /**
+   * Register a schema for a Job class.
+   *
+   * @param typeId A stable, positive id for the class.  It is persisted, so it must never be
+   *               reused for a different class.
+   * @param jobClass The Job class.
+   * @param schema The schema that writes and reads the class's fields.
+   * @return This serializer.
+   */
+  public <T extends Job> SchemaJobSerializer registerJob(int typeId, Class<T> jobClass, JobSchema<T> schema) {
+    if (typeId <= JAVA_TYPE_ID || typeId > 0xFFFF || jobSchemas.containsKey(typeId)) {
+      throw new IllegalArgumentException("Bad job type id: " + typeId);
+    }
+
+    jobTypeIds.put(jobClass, typeId);
+    jobSchemas.put(typeId, schema);
+    return this;
+  }
+
+  /**
+   * Register a Requirement class.  The class must have a public no-argument constructor.
+   *
+   * @param typeId A stable, positive id for the class.
+   * @param requirementClass The Requirement class.
+   * @return This serializer.
+   */
+  public SchemaJobSerializer registerRequirement(int typeId, Class<? extends Requirement> requirementClass) {
+    if (typeId <= 0 || typeId > 0xFFFF || requirementClasses.containsKey(typeId)) {
+      throw new IllegalArgumentException("Bad requirement type id: " + typeId);
+    }
+
+    requirementTypeIds.put(requirementClass, typeId);
+    requirementClasses.put(typeId, requirementClass);
+    return this;
+  }
+
+  @Override
+  public String serialize(Job job) throws IOException {
+    return Base64.encodeToString(serializeToBytes(job), Base64.NO_WRAP);
+  }
+
+  @Override
+  public Job deserialize(EncryptionKeys keys, boolean encrypted, String serialized) throws IOException {
+    byte[] decoded = Base64.decode(serialized, Base64.NO_WRAP);
+
+    if (decoded.length > 0 && decoded[0] >= 1 && decoded[0] <= FORMAT_VERSION) {
+      return deserialize(keys, encrypted, decoded);
+    } else {
+      return legacySerializer.deserialize(keys, encrypted, serialized);
+    }
+  }
+
+  @Override
+  public byte[] serializeToBytes(Job job) throws IOException {
+    ByteArrayOutputStream baos   = new ByteArrayOutputStream();
+    DataOutputStream      out    = new DataOutputStream(baos);
+    Integer               typeId = jobTypeIds.get(job.getClass());
+
+    out.writeByte(FORMAT_VERSION);
+
+    if (typeId == null || !isRequirementsRegistered(job)) {
+      out.writeShort(JAVA_TYPE_ID);
+
+      ObjectOutputStream oos = new ObjectOutputStream(out);
+      oos.writeObject(job);
+      oos.flush();
+    } else {
+      JobSchema<Job> schema = getSchema(typeId);
+
+      out.writeShort(typeId);
+      out.writeByte(schema.getVersion());
+      writeParameters(job, out);
+      schema.write(job, out);
+    }
+
+    out.flush();
+    return baos.toByteArray();
+  }
+
+  @Override
+  public Job deserialize(EncryptionKeys keys, boolean encrypted, byte[] serialized) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized));
+
+    int formatVersion = in.readUnsignedByte();
+
+    if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+      throw new IOException("Unknown format version: " + formatVersion);
+    }
+
+    int typeId = in.readUnsignedShort();
+
+    if (typeId == JAVA_TYPE_ID) {
+      try {
+        return (Job)new ObjectInputStream(in).readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+    }
+
+    JobSchema<Job> schema = getSchema(typeId);
+
+    if (schema == null) {
+      throw new IOException("Unknown job type: " + typeId);
+    }
+
+    int           version    = in.readUnsignedByte();
+    JobParameters parameters = readParameters(formatVersion, in);
+
+    return schema.read(parameters, version, in);
+  }
+
+  private boolean isRequirementsRegistered(Job job) {
+    for (Requirement requirement : job.getRequirements()) {
+      if (!requirementTypeIds.containsKey(requirement.getClass())) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private JobSchema<Job> getSchema(int typeId) {
+    return (JobSchema<Job>)jobSchemas.get(typeId);
+  }
+
+  private void writeParameters(Job job, DataOutput out) throws IOException {
+    out.writeBoolean(job.isPersistent());
+    out.writeInt(job.getRetryCount());
+    writeString(out, job.getGroupId());
+    out.writeByte(job.getRequirements().size());
+
+    for (Requirement requirement : job.getRequirements()) {
+      out.writeShort(requirementTypeIds.get(requirement.getClass()));
+    }
+
+    out.writeLong(job.getBackoffMillis());
+    out.writeLong(job.getMaxBackoffMillis());
+    out.writeByte(job.getPriority().ordinal());
+    out.writeBoolean(job.isCpuBound());
+  }
+
+  private JobParameters readParameters(int formatVersion, DataInput in) throws IOException {
+    JobParameters.Builder builder = JobParameters.newBuilder();
+
+    if (in.readBoolean()) {
+      builder.withPersistence();
+    }
+
+    builder.withRetryCount(in.readInt());
+    builder.withGroupId(readString(in));
+
+    int requirementCount = in.readUnsignedByte();
+
+    for (int i=0;i<requirementCount;i++) {
+      int                          typeId           = in.readUnsignedShort();
+      Class<? extends Requirement> requirementClass = requirementClasses.get(typeId);
+
+      if (requirementClass == null) {
+        throw new IOException("Unknown requirement type: " + typeId);
+      }
+
+      try {
+        builder.withRequirement(requirementClass.newInstance());
+      } catch (InstantiationException | IllegalAccessException e) {
+        throw new IOException(e);
+      }
+    }
+
+    if (formatVersion >= BACKOFF_FORMAT_VERSION) {
+      builder.withBackoff(in.readLong(), in.readLong());
+    }
+
+    if (formatVersion >= PRIORITY_FORMAT_VERSION) {
+      int priority = in.readUnsignedByte();
+
+      if (priority >= JobPriority.values().length) {
+        throw new IOException("Unknown priority: " + priority);
+      }
+
+      builder.withPriority(JobPriority.values()[priority]);
+    }
+
+    if (formatVersion >= CPU_BOUND_FORMAT_VERSION && in.readBoolean()) {
+      builder.withCpuBound();
+    }
+
+    return builder.create();
+  }
+
+  /**
+   * Write a String of any length, which may be null.
+   */
+  public static void writeString(DataOutput out, String value) throws IOException {
+    writeBytes(out, value == null ? null : value.getBytes("UTF-8"));
+  }
+
+  public static String readString(DataInput in) throws IOException {
+    byte[] bytes = readBytes(in);
+    return bytes == null ? null : new String(bytes, "UTF-8");
+  }
+
+  /**
+   * Write a byte array of any length, which may be null.
+   */
+  public static void writeBytes(DataOutput out, byte[] value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(value.length);
+      out.write(value);
+    }
+  }
+
+  public static byte[] readBytes(DataInput in) throws IOException {
+    int length = in.readInt();
+
+    if (length < 0) {
+      return null;
+    }
+
+    byte[] value = new byte[length];
+    in.readFully(value);
+
+    return value;
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.jobqueue.persistence;
+
+import org.whispersystems.jobqueue.EncryptionKeys;
+import org.whispersystems.jobqueue.Job;
+import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+
+import java.io.IOException;
+
+/**
+ * A persisted job whose row has been read, but which hasn't been deserialized yet.
+ *
+ * It carries just enough to take its place in the right queue (its groupId, priority, whether
+ * it's CPU-bound, and persistent id), and is exchanged for the real job by whichever consumer
+ * claims it.  Its own requirements are empty, since the real ones aren't known until it's
+ * loaded.
+ */
+public class UnloadedJob extends Job {
+
+  private final transient PersistentStorage persistentStorage;
+  private final transient boolean           encrypted;
+  private final transient String            item;
+  private final transient byte[]            data;
+
+  UnloadedJob(PersistentStorage persistentStorage, long id, String groupId, JobPriority priority,
+              boolean cpuBound, EncryptionKeys keys, boolean encrypted, String item, byte[] data)
+  {
+    super(cpuBound ? createParameters(groupId, priority).withCpuBound().create()
+                   : createParameters(groupId, priority).create());
+
+    this.persistentStorage = persistentStorage;
+    this.encrypted         = encrypted;
+    this.item              = item;
+    this.data              = data;
+
+    setPersistentId(id);
+    setEncryptionKeys(keys);
+  }
+
+  /**
+   * Deserialize the job this stands in for.  If it can't be deserialized, its row is
+   * removed from storage.
+   *
+   * @return The job, with its persistent id, encryption keys, schedule, and dependencies set.
+   * @throws IOException if the stored job couldn't be deserialized.
+   */
+  public Job load() throws IOException {
+    Job job = persistentStorage.load(getPersistentId(), getEncryptionKeys(), encrypted, item, data);
+    job.setRunIteration(getRunIteration());
+    job.setNextRunTime(getNextRunTime());
+
+    return job;
+  }
+
+  private static JobParameters.Builder createParameters(String groupId, JobPriority priority) {
+    return JobParameters.newBuilder()
+                        .withPersistence()
+                        .withGroupId(groupId)
+                        .withPriority(priority);
+  }
+
+  @Override
+  public void onAdded() {}
+
+  @Override
+  public void onRun() {
+    throw new IllegalStateException("Unloaded jobs must be loaded before they're run!");
+  }
+
+  @Override
+  public boolean onShouldRetry(Exception exception) {
+    return false;
+  }
+
+  @Override
+  public void onCanceled() {}
+}
@@ -40,7 +40,7 @@ public class NetworkRequirementProvider implements RequirementProvider {
         }
 
         if (requirement.isPresent()) {
-          listener.onRequirementStatusChanged();
+          listener.onRequirementStatusChanged(NetworkRequirement.class);
         }
       }
     }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
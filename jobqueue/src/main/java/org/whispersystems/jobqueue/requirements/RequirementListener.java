@@ -17,5 +17,17 @@
 package org.whispersystems.jobqueue.requirements;
 
 public interface RequirementListener {
+  /**
+   * Called when any {@link org.whispersystems.jobqueue.requirements.Requirement}'s status
+   * may have changed.  Every waiting job is checked again.
+   */
   public void onRequirementStatusChanged();
+
+  /**
+   * Called when the status of one type of {@link org.whispersystems.jobqueue.requirements.Requirement}
+   * may have changed.  Only jobs waiting on a requirement of that type are checked again.
+   *
+   * @param requirementType The class of the requirement whose status changed.
+   */
+  public void onRequirementStatusChanged(Class<? extends Requirement> requirementType);
 }
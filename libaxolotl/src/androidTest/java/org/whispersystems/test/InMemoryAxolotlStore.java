@@ -4,13 +4,15 @@ import org.whispersystems.libaxolotl.IdentityKey;
 import org.whispersystems.libaxolotl.IdentityKeyPair;
 import org.whispersystems.libaxolotl.InvalidKeyIdException;
 import org.whispersystems.libaxolotl.state.AxolotlStore;
+import org.whispersystems.libaxolotl.state.BatchSessionStore;
 import org.whispersystems.libaxolotl.state.PreKeyRecord;
 import org.whispersystems.libaxolotl.state.SessionRecord;
 import org.whispersystems.libaxolotl.state.SignedPreKeyRecord;
 
 import java.util.List;
+import java.util.Map;
 
-public class InMemoryAxolotlStore implements AxolotlStore {
+public class InMemoryAxolotlStore implements AxolotlStore, BatchSessionStore {
 
   private final InMemoryIdentityKeyStore  identityKeyStore  = new InMemoryIdentityKeyStore();
   private final InMemoryPreKeyStore       preKeyStore       = new InMemoryPreKeyStore();
@@ -73,6 +75,11 @@ public class InMemoryAxolotlStore implements AxolotlStore {
     sessionStore.storeSession(recipientId, deviceId, record);
   }
 
+  @Override
+  public void storeSessions(long recipientId, Map<Integer, SessionRecord> records) {
+    sessionStore.storeSessions(recipientId, records);
+  }
+
   @Override
   public boolean containsSession(long recipientId, int deviceId) {
     return sessionStore.containsSession(recipientId, deviceId);
@@ -1,7 +1,7 @@
 package org.whispersystems.test;
 
+import org.whispersystems.libaxolotl.state.BatchSessionStore;
 import org.whispersystems.libaxolotl.state.SessionRecord;
-import org.whispersystems.libaxolotl.state.SessionStore;
 import org.whispersystems.libaxolotl.util.Pair;
 
 import java.io.IOException;
@@ -10,7 +10,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-public class InMemorySessionStore implements SessionStore {
+public class InMemorySessionStore implements BatchSessionStore {
 
   private Map<Pair<Long, Integer>, byte[]> sessions = new HashMap<>();
 
@@ -47,6 +47,13 @@ public class InMemorySessionStore implements SessionStore {
     sessions.put(new Pair<>(recipientId, deviceId), record.serialize());
   }
 
+  @Override
+  public synchronized void storeSessions(long recipientId, Map<Integer, SessionRecord> records) {
+    for (Map.Entry<Integer, SessionRecord> record : records.entrySet()) {
+      storeSession(recipientId, record.getKey(), record.getValue());
+    }
+  }
+
   @Override
   public synchronized boolean containsSession(long recipientId, int deviceId) {
     return sessions.containsKey(new Pair<>(recipientId, deviceId));
@@ -0,0 +1,66 @@
+package org.whispersystems.test;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.libaxolotl.MultiDeviceSessionCipher;
+import org.whispersystems.libaxolotl.SessionCipher;
+import org.whispersystems.libaxolotl.protocol.CiphertextMessage;
+import org.whispersystems.libaxolotl.protocol.WhisperMessage;
+import org.whispersystems.libaxolotl.state.AxolotlStore;
+import org.whispersystems.libaxolotl.state.SessionRecord;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.whispersystems.libaxolotl.MultiDeviceSessionCipher.DeviceMessage;
+import static org.whispersystems.libaxolotl.MultiDeviceSessionCipher.Padding;
+
+public class MultiDeviceSessionCipherTest extends AndroidTestCase {
+
+  private static final long BOB_RECIPIENT_ID   = 2L;
+  private static final long ALICE_RECIPIENT_ID = 3L;
+
+  private static final Padding NO_PADDING = new Padding() {
+    @Override
+    public byte[] pad(int sessionVersion, byte[] message) {
+      return message;
+    }
+  };
+
+  public void testEncryptToEveryDevice() throws Exception {
+    AxolotlStore    aliceStore = new InMemoryAxolotlStore();
+    AxolotlStore[]  bobStores  = new AxolotlStore[3];
+    List<Integer>   deviceIds  = Arrays.asList(1, 2, 3);
+
+    for (int deviceId : deviceIds) {
+      SessionRecord aliceSessionRecord = new SessionRecord();
+      SessionRecord bobSessionRecord   = new SessionRecord();
+
+      SessionCipherTest.initializeSessionsV3(aliceSessionRecord.getSessionState(),
+                                             bobSessionRecord.getSessionState());
+
+      bobStores[deviceId - 1] = new InMemoryAxolotlStore();
+      bobStores[deviceId - 1].storeSession(ALICE_RECIPIENT_ID, 1, bobSessionRecord);
+      aliceStore.storeSession(BOB_RECIPIENT_ID, deviceId, aliceSessionRecord);
+    }
+
+    MultiDeviceSessionCipher cipher = new MultiDeviceSessionCipher(aliceStore, BOB_RECIPIENT_ID, deviceIds);
+
+    for (int i=0;i<3;i++) {
+      byte[]              plaintext = ("Message " + i).getBytes();
+      List<DeviceMessage> messages  = cipher.encrypt(plaintext, NO_PADDING);
+
+      assertEquals(deviceIds.size(), messages.size());
+
+      for (int j=0;j<messages.size();j++) {
+        DeviceMessage     message       = messages.get(j);
+        SessionCipher     bobCipher     = new SessionCipher(bobStores[j], ALICE_RECIPIENT_ID, 1);
+        CiphertextMessage ciphertext    = message.getCiphertextMessage();
+        byte[]            bobPlaintext  = bobCipher.decrypt(new WhisperMessage(ciphertext.serialize()));
+
+        assertEquals((int)deviceIds.get(j), message.getDeviceId());
+        assertTrue(Arrays.equals(plaintext, bobPlaintext));
+      }
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package org.whispersystems.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.whispersystems.libaxolotl.SessionCipher;
+import org.whispersystems.libaxolotl.protocol.CiphertextMessage;
+import org.whispersystems.libaxolotl.protocol.WhisperMessage;
+import org.whispersystems.libaxolotl.state.AxolotlStore;
+import org.whispersystems.libaxolotl.state.SessionRecord;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SessionCipherBenchmarkTest extends AndroidTestCase {
+
+  private static final String TAG = SessionCipherBenchmarkTest.class.getSimpleName();
+
+  private static final int WARMUP_MESSAGES   = 500;
+  private static final int MEASURED_MESSAGES = 2000;
+  private static final int REORDERED_WINDOW  = 50;
+  private static final int BURST_WINDOW      = 1000;
+  private static final int MAX_GAP           = 2000;
+  private static final int GAP_ITERATIONS    = 10;
+
+  private static final byte[] PLAINTEXT = "This is a plaintext message of a typical length.".getBytes();
+
+  private AxolotlStore  aliceStore;
+  private AxolotlStore  bobStore;
+  private SessionCipher aliceCipher;
+  private SessionCipher bobCipher;
+
+  @Override
+  public void setUp() throws Exception {
+    SessionRecord aliceSessionRecord = new SessionRecord();
+    SessionRecord bobSessionRecord   = new SessionRecord();
+
+    SessionCipherTest.initializeSessionsV3(aliceSessionRecord.getSessionState(),
+                                           bobSessionRecord.getSessionState());
+
+    aliceStore = new InMemoryAxolotlStore();
+    bobStore   = new InMemoryAxolotlStore();
+
+    aliceStore.storeSession(2L, 1, aliceSessionRecord);
+    bobStore.storeSession(3L, 1, bobSessionRecord);
+
+    aliceCipher = new SessionCipher(aliceStore, 2L, 1);
+    bobCipher   = new SessionCipher(bobStore, 3L, 1);
+  }
+
+  public void testInOrderMessages() throws Exception {
+    runInOrder(WARMUP_MESSAGES);
+
+    Result result = runInOrder(MEASURED_MESSAGES);
+    Log.w(TAG, "In order: " + result);
+  }
+
+  public void testReorderedMessages() throws Exception {
+    runReordered(WARMUP_MESSAGES, REORDERED_WINDOW);
+
+    Result result = runReordered(MEASURED_MESSAGES, REORDERED_WINDOW);
+    Log.w(TAG, "Reordered in windows of " + REORDERED_WINDOW + ": " + result);
+  }
+
+  public void testOutOfOrderBurst() throws Exception {
+    runReordered(WARMUP_MESSAGES, REORDERED_WINDOW);
+
+    Result result = runReordered(MEASURED_MESSAGES, BURST_WINDOW);
+    Log.w(TAG, "Reordered in windows of " + BURST_WINDOW + ": " + result);
+  }
+
+  /**
+   * Each message arrives as far ahead of the last as is allowed, so every decrypt has to
+   * derive and store keys for the whole gap.
+   */
+  public void testLargeCounterGap() throws Exception {
+    long decryptNanos = 0, decryptBytes = 0;
+
+    for (int i=0;i<GAP_ITERATIONS + 1;i++) {
+      for (int j=0;j<MAX_GAP;j++) {
+        aliceCipher.encrypt(PLAINTEXT);
+      }
+
+      WhisperMessage message    = new WhisperMessage(aliceCipher.encrypt(PLAINTEXT).serialize());
+      long           startBytes = getAllocatedBytes();
+      long           startTime  = System.nanoTime();
+
+      byte[] plaintext = bobCipher.decrypt(message);
+
+      if (i > 0) {
+        decryptNanos += System.nanoTime() - startTime;
+        decryptBytes += getAllocatedBytes() - startBytes;
+      }
+
+      assertTrue(Arrays.equals(PLAINTEXT, plaintext));
+    }
+
+    Log.w(TAG, String.format("Gap of %d: decrypt %dms, %d bytes (per message, over %d)", MAX_GAP,
+                             TimeUnit.NANOSECONDS.toMillis(decryptNanos / GAP_ITERATIONS),
+                             decryptBytes / GAP_ITERATIONS, GAP_ITERATIONS));
+  }
+
+  private Result runInOrder(int count) throws Exception {
+    long encryptNanos = 0, decryptNanos = 0, encryptBytes = 0, decryptBytes = 0;
+
+    for (int i=0;i<count;i++) {
+      long startBytes = getAllocatedBytes();
+      long startTime  = System.nanoTime();
+
+      CiphertextMessage message = aliceCipher.encrypt(PLAINTEXT);
+
+      encryptNanos += System.nanoTime() - startTime;
+      encryptBytes += getAllocatedBytes() - startBytes;
+
+      WhisperMessage received = new WhisperMessage(message.serialize());
+
+      startBytes = getAllocatedBytes();
+      startTime  = System.nanoTime();
+
+      byte[] plaintext = bobCipher.decrypt(received);
+
+      decryptNanos += System.nanoTime() - startTime;
+      decryptBytes += getAllocatedBytes() - startBytes;
+
+      assertTrue(Arrays.equals(PLAINTEXT, plaintext));
+    }
+
+    return new Result(count, encryptNanos, decryptNanos, encryptBytes, decryptBytes);
+  }
+
+  /**
+   * Each window of messages is delivered last first, so every message but one in a window is
+   * decrypted with a skipped message key.
+   */
+  private Result runReordered(int count, int windowSize) throws Exception {
+    long encryptNanos = 0, decryptNanos = 0, encryptBytes = 0, decryptBytes = 0;
+
+    for (int window=0;window<count;window+=windowSize) {
+      List<WhisperMessage> messages = new ArrayList<>(windowSize);
+
+      for (int i=0;i<windowSize;i++) {
+        long startBytes = getAllocatedBytes();
+        long startTime  = System.nanoTime();
+
+        CiphertextMessage message = aliceCipher.encrypt(PLAINTEXT);
+
+        encryptNanos += System.nanoTime() - startTime;
+        encryptBytes += getAllocatedBytes() - startBytes;
+
+        messages.add(new WhisperMessage(message.serialize()));
+      }
+
+      for (int i=messages.size()-1;i>=0;i--) {
+        long startBytes = getAllocatedBytes();
+        long startTime  = System.nanoTime();
+
+        byte[] plaintext = bobCipher.decrypt(messages.get(i));
+
+        decryptNanos += System.nanoTime() - startTime;
+        decryptBytes += getAllocatedBytes() - startBytes;
+
+        assertTrue(Arrays.equals(PLAINTEXT, plaintext));
+      }
+    }
+
+    return new Result(count, encryptNanos, decryptNanos, encryptBytes, decryptBytes);
+  }
+
+  /**
+   * @return The bytes allocated by this thread so far, or 0 if the VM can't say.
+   */
+  private static long getAllocatedBytes() {
+    try {
+      ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+      Method       method     = Class.forName("com.sun.management.ThreadMXBean")
+                                     .getMethod("getThreadAllocatedBytes", long.class);
+
+      return (Long)method.invoke(threadBean, Thread.currentThread().getId());
+    } catch (Exception | LinkageError e) {
+      return 0;
+    }
+  }
+
+  private static class Result {
+    private final int  count;
+    private final long encryptNanos;
+    private final long decryptNanos;
+    private final long encryptBytes;
+    private final long decryptBytes;
+
+    private Result(int count, long encryptNanos, long decryptNanos, long encryptBytes, long decryptBytes) {
+      this.count        = count;
+      this.encryptNanos = encryptNanos;
+      this.decryptNanos = decryptNanos;
+      this.encryptBytes = encryptBytes;
+      this.decryptBytes = decryptBytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("encrypt %dus, %d bytes; decrypt %dus, %d bytes (per message, over %d)",
+                           TimeUnit.NANOSECONDS.toMicros(encryptNanos / count), encryptBytes / count,
+                           TimeUnit.NANOSECONDS.toMicros(decryptNanos / count), decryptBytes / count,
+                           count);
+    }
+  }
+}
@@ -10,6 +10,7 @@ import org.whispersystems.libaxolotl.InvalidMessageException;
 import org.whispersystems.libaxolotl.LegacyMessageException;
 import org.whispersystems.libaxolotl.NoSessionException;
 import org.whispersystems.libaxolotl.SessionCipher;
+import org.whispersystems.libaxolotl.SessionLock;
 import org.whispersystems.libaxolotl.ecc.Curve;
 import org.whispersystems.libaxolotl.ecc.ECKeyPair;
 import org.whispersystems.libaxolotl.ecc.ECPublicKey;
@@ -33,6 +34,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 
 public class SessionCipherTest extends AndroidTestCase {
@@ -59,6 +62,83 @@ public class SessionCipherTest extends AndroidTestCase {
     runInteraction(aliceSessionRecord, bobSessionRecord);
   }
 
+  public void testIndependentSessionsDontShareLock()
+      throws InvalidKeyException, NoSuchAlgorithmException, InterruptedException
+  {
+    final AxolotlStore aliceStore   = new InMemoryAxolotlStore();
+    final long         heldSession  = 2L;
+    long               otherSession = 3L;
+
+    while (SessionLock.get(otherSession, 1) == SessionLock.get(heldSession, 1)) {
+      otherSession++;
+    }
+
+    SessionRecord aliceSessionRecord = new SessionRecord();
+    SessionRecord bobSessionRecord   = new SessionRecord();
+
+    initializeSessionsV3(aliceSessionRecord.getSessionState(), bobSessionRecord.getSessionState());
+    aliceStore.storeSession(otherSession, 1, aliceSessionRecord);
+
+    final long           encryptedSession = otherSession;
+    final CountDownLatch encrypted        = new CountDownLatch(1);
+
+    synchronized (SessionLock.get(heldSession, 1)) {
+      new Thread() {
+        @Override
+        public void run() {
+          new SessionCipher(aliceStore, encryptedSession, 1).encrypt("Hello".getBytes());
+          encrypted.countDown();
+        }
+      }.start();
+
+      assertTrue(encrypted.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  public void testSkippedMessageKeysAreBounded()
+      throws InvalidKeyException, DuplicateMessageException,
+      LegacyMessageException, InvalidMessageException, NoSessionException
+  {
+    SessionRecord aliceSessionRecord = new SessionRecord();
+    SessionRecord bobSessionRecord   = new SessionRecord();
+
+    initializeSessionsV3(aliceSessionRecord.getSessionState(), bobSessionRecord.getSessionState());
+
+    AxolotlStore aliceStore = new InMemoryAxolotlStore();
+    AxolotlStore bobStore   = new InMemoryAxolotlStore();
+
+    aliceStore.storeSession(2L, 1, aliceSessionRecord);
+    bobStore.storeSession(3L, 1, bobSessionRecord);
+
+    SessionCipher        aliceCipher = new SessionCipher(aliceStore, 2L, 1);
+    SessionCipher        bobCipher   = new SessionCipher(bobStore, 3L, 1);
+    List<WhisperMessage> messages    = new ArrayList<>();
+
+    for (int i=0;i<2501;i++) {
+      messages.add(new WhisperMessage(aliceCipher.encrypt(("Message " + i).getBytes()).serialize()));
+    }
+
+    try {
+      bobCipher.decrypt(messages.get(2500));
+      fail("Decrypted a message over 2000 messages into the future");
+    } catch (InvalidMessageException e) {
+      // good
+    }
+
+    bobCipher.decrypt(messages.get(1500));
+    bobCipher.decrypt(messages.get(2500));
+
+    try {
+      bobCipher.decrypt(messages.get(0));
+      fail("Kept more than 2000 skipped message keys");
+    } catch (DuplicateMessageException e) {
+      // good
+    }
+
+    assertTrue(Arrays.equals("Message 2499".getBytes(), bobCipher.decrypt(messages.get(2499))));
+    assertTrue(Arrays.equals("Message 1000".getBytes(), bobCipher.decrypt(messages.get(1000))));
+  }
+
   private void runInteraction(SessionRecord aliceSessionRecord, SessionRecord bobSessionRecord)
       throws DuplicateMessageException, LegacyMessageException, InvalidMessageException, NoSuchAlgorithmException, NoSessionException {
     AxolotlStore aliceStore = new InMemoryAxolotlStore();
@@ -167,7 +247,7 @@ public class SessionCipherTest extends AndroidTestCase {
     RatchetingSession.initializeSession(bobSessionState, 2, bobParameters);
   }
 
-  private void initializeSessionsV3(SessionState aliceSessionState, SessionState bobSessionState)
+  static void initializeSessionsV3(SessionState aliceSessionState, SessionState bobSessionState)
       throws InvalidKeyException
   {
     ECKeyPair       aliceIdentityKeyPair = Curve.generateKeyPair();
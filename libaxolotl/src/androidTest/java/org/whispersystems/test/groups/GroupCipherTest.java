@@ -130,6 +130,76 @@ public class GroupCipherTest extends AndroidTestCase {
     }
   }
 
+  public void testLateDistributionMessage()
+      throws LegacyMessageException, DuplicateMessageException, InvalidMessageException, NoSessionException
+  {
+    InMemorySenderKeyStore aliceStore = new InMemorySenderKeyStore();
+    InMemorySenderKeyStore bobStore   = new InMemorySenderKeyStore();
+
+    GroupSessionBuilder aliceSessionBuilder = new GroupSessionBuilder(aliceStore);
+    GroupSessionBuilder bobSessionBuilder   = new GroupSessionBuilder(bobStore);
+
+    GroupCipher aliceGroupCipher = new GroupCipher(aliceStore, "groupWithBobInIt");
+    GroupCipher bobGroupCipher   = new GroupCipher(bobStore, "groupWithBobInIt::aliceUserName");
+
+    aliceSessionBuilder.process("groupWithBobInIt", KeyHelper.generateSenderKeyId(), 0,
+                                KeyHelper.generateSenderKey(), KeyHelper.generateSenderSigningKey());
+
+    byte[] earlyCiphertext = aliceGroupCipher.encrypt("smert ze smert".getBytes());
+
+    byte[] serializedDistributionMessage = aliceSessionBuilder.getDistributionMessage("groupWithBobInIt").serialize();
+
+    bobSessionBuilder.process("groupWithBobInIt::aliceUserName", new SenderKeyDistributionMessage(serializedDistributionMessage));
+    bobSessionBuilder.process("groupWithBobInIt::aliceUserName", new SenderKeyDistributionMessage(serializedDistributionMessage));
+
+    byte[] ciphertext = aliceGroupCipher.encrypt("up the punks".getBytes());
+    byte[] plaintext  = bobGroupCipher.decrypt(ciphertext);
+
+    assertTrue(new String(plaintext).equals("up the punks"));
+
+    try {
+      bobGroupCipher.decrypt(earlyCiphertext);
+      throw new AssertionError("Decrypted a message sent before distribution!");
+    } catch (DuplicateMessageException dme) {
+      // good
+    }
+  }
+
+  public void testOldestSenderKeysEvicted()
+      throws LegacyMessageException, DuplicateMessageException, InvalidMessageException, NoSessionException
+  {
+    InMemorySenderKeyStore aliceStore = new InMemorySenderKeyStore();
+    InMemorySenderKeyStore bobStore   = new InMemorySenderKeyStore();
+
+    GroupSessionBuilder aliceSessionBuilder = new GroupSessionBuilder(aliceStore);
+    GroupSessionBuilder bobSessionBuilder   = new GroupSessionBuilder(bobStore);
+
+    GroupCipher bobGroupCipher = new GroupCipher(bobStore, "aliceUserName.1");
+    List<byte[]> ciphertexts   = new ArrayList<>();
+
+    for (int i=0;i<21;i++) {
+      String groupId = "group" + i;
+
+      aliceSessionBuilder.process(groupId, i + 1, 0, KeyHelper.generateSenderKey(),
+                                  KeyHelper.generateSenderSigningKey());
+
+      byte[] serializedDistributionMessage = aliceSessionBuilder.getDistributionMessage(groupId).serialize();
+      bobSessionBuilder.process("aliceUserName.1", new SenderKeyDistributionMessage(serializedDistributionMessage));
+
+      ciphertexts.add(new GroupCipher(aliceStore, groupId).encrypt(("message " + i).getBytes()));
+    }
+
+    assertTrue(new String(bobGroupCipher.decrypt(ciphertexts.get(20))).equals("message 20"));
+    assertTrue(new String(bobGroupCipher.decrypt(ciphertexts.get(1))).equals("message 1"));
+
+    try {
+      bobGroupCipher.decrypt(ciphertexts.get(0));
+      throw new AssertionError("Oldest sender key should have been evicted!");
+    } catch (InvalidMessageException ime) {
+      // good
+    }
+  }
+
   public void testEncryptNoSession() {
     InMemorySenderKeyStore aliceStore = new InMemorySenderKeyStore();
     GroupCipher aliceGroupCipher = new GroupCipher(aliceStore, "groupWithBobInIt");
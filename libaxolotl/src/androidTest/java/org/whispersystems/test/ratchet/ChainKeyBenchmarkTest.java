@@ -0,0 +1,75 @@
+package org.whispersystems.test.ratchet;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.whispersystems.libaxolotl.kdf.HKDF;
+import org.whispersystems.libaxolotl.ratchet.ChainKey;
+import org.whispersystems.libaxolotl.ratchet.MessageKeys;
+
+import java.util.concurrent.TimeUnit;
+
+public class ChainKeyBenchmarkTest extends AndroidTestCase {
+
+  private static final String TAG = ChainKeyBenchmarkTest.class.getSimpleName();
+
+  private static final int WARMUP_ITERATIONS   = 5;
+  private static final int MEASURED_ITERATIONS = 10;
+  private static final int STEPS               = 2000;
+
+  public void testChainKeyStepping() {
+    ChainKey chainKey = new ChainKey(HKDF.createFor(3), new byte[32], 0);
+
+    for (int i=0;i<WARMUP_ITERATIONS;i++) {
+      chainKey = step(chainKey);
+    }
+
+    long startTime = System.nanoTime();
+
+    for (int i=0;i<MEASURED_ITERATIONS;i++) {
+      chainKey = step(chainKey);
+    }
+
+    long elapsed = System.nanoTime() - startTime;
+
+    assertEquals((WARMUP_ITERATIONS + MEASURED_ITERATIONS) * STEPS, chainKey.getIndex());
+    Log.w(TAG, "Chain key steps: " + getOpsPerSecond(elapsed) + " ops/s");
+  }
+
+  public void testMessageKeyDerivation() {
+    ChainKey chainKey = new ChainKey(HKDF.createFor(3), new byte[32], 0);
+
+    for (int i=0;i<WARMUP_ITERATIONS;i++) {
+      deriveMessageKeys(chainKey);
+    }
+
+    long startTime = System.nanoTime();
+
+    for (int i=0;i<MEASURED_ITERATIONS;i++) {
+      deriveMessageKeys(chainKey);
+    }
+
+    long elapsed = System.nanoTime() - startTime;
+
+    Log.w(TAG, "Message key derivations: " + getOpsPerSecond(elapsed) + " ops/s");
+  }
+
+  private ChainKey step(ChainKey chainKey) {
+    for (int i=0;i<STEPS;i++) {
+      chainKey = chainKey.getNextChainKey();
+    }
+
+    return chainKey;
+  }
+
+  private void deriveMessageKeys(ChainKey chainKey) {
+    for (int i=0;i<STEPS;i++) {
+      MessageKeys messageKeys = chainKey.getMessageKeys();
+      assertEquals(32, messageKeys.getCipherKey().getEncoded().length);
+    }
+  }
+
+  private long getOpsPerSecond(long elapsedNanos) {
+    return (long)MEASURED_ITERATIONS * STEPS * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+}
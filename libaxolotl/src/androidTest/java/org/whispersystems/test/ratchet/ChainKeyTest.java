@@ -2,8 +2,11 @@ package org.whispersystems.test.ratchet;
 
 import android.test.AndroidTestCase;
 
+import org.whispersystems.libaxolotl.kdf.DerivedMessageSecrets;
 import org.whispersystems.libaxolotl.kdf.HKDF;
 import org.whispersystems.libaxolotl.ratchet.ChainKey;
+import org.whispersystems.libaxolotl.ratchet.MessageKeys;
+import org.whispersystems.libaxolotl.util.ByteUtil;
 
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
@@ -56,4 +59,25 @@ public class ChainKeyTest extends AndroidTestCase {
     assertTrue(chainKey.getNextChainKey().getMessageKeys().getCounter() == 1);
   }
 
+  public void testBatchedMessageKeyDerivation() {
+    ChainKey chainKey    = new ChainKey(HKDF.createFor(3), new byte[32], 5);
+    byte[]   keyMaterial = new byte[10 * DerivedMessageSecrets.SIZE];
+    ChainKey batched     = chainKey.getMessageKeys(10, keyMaterial);
+
+    for (int i=0;i<10;i++) {
+      MessageKeys messageKeys = chainKey.getMessageKeys();
+      byte[]      expected    = ByteUtil.combine(messageKeys.getCipherKey().getEncoded(),
+                                                 messageKeys.getMacKey().getEncoded(),
+                                                 messageKeys.getIv().getIV());
+
+      assertTrue(Arrays.equals(expected, Arrays.copyOfRange(keyMaterial, i * DerivedMessageSecrets.SIZE,
+                                                            (i + 1) * DerivedMessageSecrets.SIZE)));
+
+      chainKey = chainKey.getNextChainKey();
+    }
+
+    assertEquals(15, batched.getIndex());
+    assertTrue(Arrays.equals(chainKey.getKey(), batched.getKey()));
+  }
+
 }
@@ -0,0 +1,111 @@
+package org.whispersystems.libaxolotl;
+
+import org.whispersystems.libaxolotl.protocol.CiphertextMessage;
+import org.whispersystems.libaxolotl.state.BatchSessionStore;
+import org.whispersystems.libaxolotl.state.SessionRecord;
+import org.whispersystems.libaxolotl.state.SessionState;
+import org.whispersystems.libaxolotl.state.SessionStore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encrypts one message to every device of a recipient at once.
+ *
+ * The sessions for all of the devices are locked together, and each is loaded once.  Once
+ * every device's copy has been encrypted they're stored together, through
+ * {@link BatchSessionStore#storeSessions(long, Map)} if the store supports it.  Every device
+ * must already have a session, as with {@link SessionCipher}.
+ */
+public class MultiDeviceSessionCipher {
+
+  private final SessionStore sessionStore;
+  private final long         recipientId;
+  private final Set<Integer> deviceIds;
+
+  /**
+   * @param sessionStore The {@link SessionStore} that contains a session for each device.
+   * @param recipientId The remote ID that messages will be encrypted to.
+   * @param deviceIds The devices of the recipientId to encrypt to.
+   */
+  public MultiDeviceSessionCipher(SessionStore sessionStore, long recipientId, List<Integer> deviceIds) {
+    this.sessionStore = sessionStore;
+    this.recipientId  = recipientId;
+    this.deviceIds    = new LinkedHashSet<>(deviceIds);
+  }
+
+  /**
+   * Encrypt a message to each device.
+   *
+   * @param message The plaintext message bytes.
+   * @param padding Pads the message for each device's session version.
+   * @return A ciphertext message for each device, in the order the devices were given.
+   */
+  public List<DeviceMessage> encrypt(byte[] message, Padding padding) {
+    return encrypt(SessionLock.getAll(recipientId, deviceIds).iterator(), message, padding);
+  }
+
+  private List<DeviceMessage> encrypt(Iterator<Object> locks, byte[] message, Padding padding) {
+    if (locks.hasNext()) {
+      synchronized (locks.next()) {
+        return encrypt(locks, message, padding);
+      }
+    }
+
+    Map<Integer, SessionRecord> records  = new LinkedHashMap<>();
+    List<DeviceMessage>         messages = new ArrayList<>(deviceIds.size());
+
+    for (int deviceId : deviceIds) {
+      SessionRecord     sessionRecord = sessionStore.loadSession(recipientId, deviceId);
+      SessionState      sessionState  = sessionRecord.getSessionState();
+      byte[]            paddedMessage = padding.pad(sessionState.getSessionVersion(), message);
+      CiphertextMessage ciphertext    = SessionCipher.encrypt(sessionState, paddedMessage);
+
+      records.put(deviceId, sessionRecord);
+      messages.add(new DeviceMessage(deviceId, sessionState.getRemoteRegistrationId(), ciphertext));
+    }
+
+    if (sessionStore instanceof BatchSessionStore) {
+      ((BatchSessionStore)sessionStore).storeSessions(recipientId, records);
+    } else {
+      for (Map.Entry<Integer, SessionRecord> record : records.entrySet()) {
+        sessionStore.storeSession(recipientId, record.getKey(), record.getValue());
+      }
+    }
+
+    return messages;
+  }
+
+  public interface Padding {
+    public byte[] pad(int sessionVersion, byte[] message);
+  }
+
+  public static class DeviceMessage {
+    private final int               deviceId;
+    private final int               remoteRegistrationId;
+    private final CiphertextMessage ciphertextMessage;
+
+    private DeviceMessage(int deviceId, int remoteRegistrationId, CiphertextMessage ciphertextMessage) {
+      this.deviceId             = deviceId;
+      this.remoteRegistrationId = remoteRegistrationId;
+      this.ciphertextMessage    = ciphertextMessage;
+    }
+
+    public int getDeviceId() {
+      return deviceId;
+    }
+
+    public int getRemoteRegistrationId() {
+      return remoteRegistrationId;
+    }
+
+    public CiphertextMessage getCiphertextMessage() {
+      return ciphertextMessage;
+    }
+  }
+}
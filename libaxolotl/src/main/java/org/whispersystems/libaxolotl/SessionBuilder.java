@@ -213,7 +213,7 @@ public class SessionBuilder {
    *                                                                  trusted.
    */
   public void process(PreKeyBundle preKey) throws InvalidKeyException, UntrustedIdentityException {
-    synchronized (SessionCipher.SESSION_LOCK) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
       if (!identityKeyStore.isTrustedIdentity(recipientId, preKey.getIdentityKey())) {
         throw new UntrustedIdentityException();
       }
@@ -274,7 +274,7 @@ public class SessionBuilder {
   public KeyExchangeMessage process(KeyExchangeMessage message)
       throws InvalidKeyException, UntrustedIdentityException, StaleKeyExchangeException
   {
-    synchronized (SessionCipher.SESSION_LOCK) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
       if (!identityKeyStore.isTrustedIdentity(recipientId, message.getIdentityKey())) {
         throw new UntrustedIdentityException();
       }
@@ -386,7 +386,7 @@ public class SessionBuilder {
    * @return the KeyExchangeMessage to deliver.
    */
   public KeyExchangeMessage process() {
-    synchronized (SessionCipher.SESSION_LOCK) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
       try {
         int             sequence         = KeyHelper.getRandomSequence(65534) + 1;
         int             flags            = KeyExchangeMessage.INITIATE_FLAG;
@@ -19,6 +19,7 @@ package org.whispersystems.libaxolotl;
 import org.whispersystems.libaxolotl.ecc.Curve;
 import org.whispersystems.libaxolotl.ecc.ECKeyPair;
 import org.whispersystems.libaxolotl.ecc.ECPublicKey;
+import org.whispersystems.libaxolotl.kdf.DerivedMessageSecrets;
 import org.whispersystems.libaxolotl.protocol.CiphertextMessage;
 import org.whispersystems.libaxolotl.protocol.PreKeyWhisperMessage;
 import org.whispersystems.libaxolotl.protocol.WhisperMessage;
@@ -33,11 +34,11 @@ import org.whispersystems.libaxolotl.state.SessionState;
 import org.whispersystems.libaxolotl.state.SessionStore;
 import org.whispersystems.libaxolotl.state.SignedPreKeyStore;
 import org.whispersystems.libaxolotl.util.ByteUtil;
+import org.whispersystems.libaxolotl.util.CryptoPrimitives;
 import org.whispersystems.libaxolotl.util.Pair;
 import org.whispersystems.libaxolotl.util.guava.Optional;
 
 import java.security.InvalidAlgorithmParameterException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -45,7 +46,6 @@ import java.util.List;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -62,8 +62,6 @@ import static org.whispersystems.libaxolotl.state.SessionState.UnacknowledgedPre
  */
 public class SessionCipher {
 
-  public static final Object SESSION_LOCK = new Object();
-
   private final SessionStore   sessionStore;
   private final SessionBuilder sessionBuilder;
   private final PreKeyStore    preKeyStore;
@@ -102,38 +100,47 @@ public class SessionCipher {
    * @return A ciphertext message encrypted to the recipient+device tuple.
    */
   public CiphertextMessage encrypt(byte[] paddedMessage) {
-    synchronized (SESSION_LOCK) {
-      SessionRecord sessionRecord   = sessionStore.loadSession(recipientId, deviceId);
-      SessionState  sessionState    = sessionRecord.getSessionState();
-      ChainKey      chainKey        = sessionState.getSenderChainKey();
-      MessageKeys   messageKeys     = chainKey.getMessageKeys();
-      ECPublicKey   senderEphemeral = sessionState.getSenderRatchetKey();
-      int           previousCounter = sessionState.getPreviousCounter();
-      int           sessionVersion  = sessionState.getSessionVersion();
-
-      byte[]            ciphertextBody    = getCiphertext(sessionVersion, messageKeys, paddedMessage);
-      CiphertextMessage ciphertextMessage = new WhisperMessage(sessionVersion, messageKeys.getMacKey(),
-                                                               senderEphemeral, chainKey.getIndex(),
-                                                               previousCounter, ciphertextBody,
-                                                               sessionState.getLocalIdentityKey(),
-                                                               sessionState.getRemoteIdentityKey());
-
-      if (sessionState.hasUnacknowledgedPreKeyMessage()) {
-        UnacknowledgedPreKeyMessageItems items = sessionState.getUnacknowledgedPreKeyMessageItems();
-        int localRegistrationId = sessionState.getLocalRegistrationId();
-
-        ciphertextMessage = new PreKeyWhisperMessage(sessionVersion, localRegistrationId, items.getPreKeyId(),
-                                                     items.getSignedPreKeyId(), items.getBaseKey(),
-                                                     sessionState.getLocalIdentityKey(),
-                                                     (WhisperMessage) ciphertextMessage);
-      }
+    synchronized (SessionLock.get(recipientId, deviceId)) {
+      SessionRecord     sessionRecord     = sessionStore.loadSession(recipientId, deviceId);
+      CiphertextMessage ciphertextMessage = encrypt(sessionRecord.getSessionState(), paddedMessage);
 
-      sessionState.setSenderChainKey(chainKey.getNextChainKey());
       sessionStore.storeSession(recipientId, deviceId, sessionRecord);
       return ciphertextMessage;
     }
   }
 
+  /**
+   * Encrypt a message with a session state, advancing its sender chain.  The caller must hold
+   * the session's lock, and store the state once it's done.
+   */
+  static CiphertextMessage encrypt(SessionState sessionState, byte[] paddedMessage) {
+    ChainKey    chainKey        = sessionState.getSenderChainKey();
+    MessageKeys messageKeys     = chainKey.getMessageKeys();
+    ECPublicKey senderEphemeral = sessionState.getSenderRatchetKey();
+    int         previousCounter = sessionState.getPreviousCounter();
+    int         sessionVersion  = sessionState.getSessionVersion();
+
+    byte[]            ciphertextBody    = getCiphertext(sessionVersion, messageKeys, paddedMessage);
+    CiphertextMessage ciphertextMessage = new WhisperMessage(sessionVersion, messageKeys.getMacKey(),
+                                                             senderEphemeral, chainKey.getIndex(),
+                                                             previousCounter, ciphertextBody,
+                                                             sessionState.getLocalIdentityKey(),
+                                                             sessionState.getRemoteIdentityKey());
+
+    if (sessionState.hasUnacknowledgedPreKeyMessage()) {
+      UnacknowledgedPreKeyMessageItems items = sessionState.getUnacknowledgedPreKeyMessageItems();
+      int localRegistrationId = sessionState.getLocalRegistrationId();
+
+      ciphertextMessage = new PreKeyWhisperMessage(sessionVersion, localRegistrationId, items.getPreKeyId(),
+                                                   items.getSignedPreKeyId(), items.getBaseKey(),
+                                                   sessionState.getLocalIdentityKey(),
+                                                   (WhisperMessage) ciphertextMessage);
+    }
+
+    sessionState.setSenderChainKey(chainKey.getNextChainKey());
+    return ciphertextMessage;
+  }
+
   /**
    * Decrypt a message.
    *
@@ -153,7 +160,7 @@ public class SessionCipher {
       throws DuplicateMessageException, LegacyMessageException, InvalidMessageException,
              InvalidKeyIdException, InvalidKeyException, UntrustedIdentityException
   {
-    synchronized (SESSION_LOCK) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
       SessionRecord     sessionRecord    = sessionStore.loadSession(recipientId, deviceId);
       Optional<Integer> unsignedPreKeyId = sessionBuilder.process(sessionRecord, ciphertext);
       byte[]            plaintext        = decrypt(sessionRecord, ciphertext.getWhisperMessage());
@@ -185,7 +192,7 @@ public class SessionCipher {
       throws InvalidMessageException, DuplicateMessageException, LegacyMessageException,
              NoSessionException
   {
-    synchronized (SESSION_LOCK) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
 
       if (!sessionStore.containsSession(recipientId, deviceId)) {
         throw new NoSessionException("No session for: " + recipientId + ", " + deviceId);
@@ -203,7 +210,7 @@ public class SessionCipher {
   private byte[] decrypt(SessionRecord sessionRecord, WhisperMessage ciphertext)
       throws DuplicateMessageException, LegacyMessageException, InvalidMessageException
   {
-    synchronized (SESSION_LOCK) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
       Iterator<SessionState> previousStates = sessionRecord.getPreviousSessionStates().iterator();
       List<Exception>        exceptions     = new LinkedList<>();
 
@@ -268,14 +275,14 @@ public class SessionCipher {
   }
 
   public int getRemoteRegistrationId() {
-    synchronized (SESSION_LOCK) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
       SessionRecord record = sessionStore.loadSession(recipientId, deviceId);
       return record.getSessionState().getRemoteRegistrationId();
     }
   }
 
   public int getSessionVersion() {
-    synchronized (SESSION_LOCK) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
       if (!sessionStore.containsSession(recipientId, deviceId)) {
         throw new IllegalStateException(String.format("No session for (%d, %d)!", recipientId, deviceId));
       }
@@ -324,21 +331,24 @@ public class SessionCipher {
       }
     }
 
-    if (chainKey.getIndex() - counter > 2000) {
+    if (counter - chainKey.getIndex() > 2000) {
       throw new InvalidMessageException("Over 2000 messages into the future!");
     }
 
-    while (chainKey.getIndex() < counter) {
-      MessageKeys messageKeys = chainKey.getMessageKeys();
-      sessionState.setMessageKeys(theirEphemeral, messageKeys);
-      chainKey = chainKey.getNextChainKey();
+    if (chainKey.getIndex() < counter) {
+      int    firstCounter = chainKey.getIndex();
+      int    skipped      = counter - firstCounter;
+      byte[] keyMaterial  = new byte[skipped * DerivedMessageSecrets.SIZE];
+
+      chainKey = chainKey.getMessageKeys(skipped, keyMaterial);
+      sessionState.setMessageKeys(theirEphemeral, firstCounter, skipped, keyMaterial);
     }
 
     sessionState.setReceiverChainKey(theirEphemeral, chainKey.getNextChainKey());
     return chainKey.getMessageKeys();
   }
 
-  private byte[] getCiphertext(int version, MessageKeys messageKeys, byte[] plaintext) {
+  private static byte[] getCiphertext(int version, MessageKeys messageKeys, byte[] plaintext) {
     try {
       Cipher cipher;
 
@@ -372,9 +382,9 @@ public class SessionCipher {
     }
   }
 
-  private Cipher getCipher(int mode, SecretKeySpec key, int counter)  {
+  private static Cipher getCipher(int mode, SecretKeySpec key, int counter)  {
     try {
-      Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+      Cipher cipher = CryptoPrimitives.getCipher("AES/CTR/NoPadding");
 
       byte[] ivBytes = new byte[16];
       ByteUtil.intToByteArray(ivBytes, 0, counter);
@@ -383,21 +393,17 @@ public class SessionCipher {
       cipher.init(mode, key, iv);
 
       return cipher;
-    } catch (NoSuchAlgorithmException | NoSuchPaddingException | java.security.InvalidKeyException |
-             InvalidAlgorithmParameterException e)
-    {
+    } catch (java.security.InvalidKeyException | InvalidAlgorithmParameterException e) {
       throw new AssertionError(e);
     }
   }
 
-  private Cipher getCipher(int mode, SecretKeySpec key, IvParameterSpec iv) {
+  private static Cipher getCipher(int mode, SecretKeySpec key, IvParameterSpec iv) {
     try {
-      Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+      Cipher cipher = CryptoPrimitives.getCipher("AES/CBC/PKCS5Padding");
       cipher.init(mode, key, iv);
       return cipher;
-    } catch (NoSuchAlgorithmException | NoSuchPaddingException | java.security.InvalidKeyException |
-             InvalidAlgorithmParameterException e)
-    {
+    } catch (java.security.InvalidKeyException | InvalidAlgorithmParameterException e) {
       throw new AssertionError(e);
     }
   }
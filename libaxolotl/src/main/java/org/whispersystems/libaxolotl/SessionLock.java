@@ -0,0 +1,69 @@
+package org.whispersystems.libaxolotl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The locks that serialize access to each session.
+ *
+ * {@link SessionCipher} and {@link SessionBuilder} hold the lock for a recipientId + deviceId
+ * tuple while they load, modify, and store its session, and a
+ * {@link org.whispersystems.libaxolotl.state.SessionStore} may synchronize on the same lock
+ * to protect its own storage.  Operations on different sessions usually take different locks,
+ * so they can run in parallel.
+ *
+ * The locks are striped, so memory use is fixed no matter how many sessions there are.  Two
+ * sessions can share a stripe, in which case they're serialized as if they were one.
+ */
+public class SessionLock {
+
+  private static final int STRIPES = 64;
+
+  private static final Object[] LOCKS = new Object[STRIPES];
+
+  static {
+    for (int i=0;i<STRIPES;i++) {
+      LOCKS[i] = new Object();
+    }
+  }
+
+  private SessionLock() {}
+
+  /**
+   * @return The lock for the session with a recipientId + deviceId tuple.
+   */
+  public static Object get(long recipientId, int deviceId) {
+    return LOCKS[getStripe(recipientId, deviceId)];
+  }
+
+  /**
+   * @return The distinct locks for several devices of a recipient, always in the same order,
+   *         so that callers who take them one after another can't deadlock each other.
+   */
+  public static List<Object> getAll(long recipientId, Collection<Integer> deviceIds) {
+    SortedSet<Integer> stripes = new TreeSet<>();
+    List<Object>       locks   = new ArrayList<>(deviceIds.size());
+
+    for (int deviceId : deviceIds) {
+      stripes.add(getStripe(recipientId, deviceId));
+    }
+
+    for (int stripe : stripes) {
+      locks.add(LOCKS[stripe]);
+    }
+
+    return locks;
+  }
+
+  private static int getStripe(long recipientId, int deviceId) {
+    int hash = (int)(recipientId ^ (recipientId >>> 32)) * 31 + deviceId;
+
+    hash ^= (hash >>> 16);
+    hash ^= (hash >>> 8);
+
+    return hash & (STRIPES - 1);
+  }
+}
@@ -11,14 +11,13 @@ import org.whispersystems.libaxolotl.groups.state.SenderKeyRecord;
 import org.whispersystems.libaxolotl.groups.state.SenderKeyState;
 import org.whispersystems.libaxolotl.groups.state.SenderKeyStore;
 import org.whispersystems.libaxolotl.protocol.SenderKeyMessage;
+import org.whispersystems.libaxolotl.util.CryptoPrimitives;
 
 import java.security.InvalidAlgorithmParameterException;
-import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -96,7 +95,7 @@ public class GroupCipher {
       }
     }
 
-    if (senderChainKey.getIteration() - iteration > 2000) {
+    if (iteration - senderChainKey.getIteration() > 2000) {
       throw new InvalidMessageException("Over 2000 messages into the future!");
     }
 
@@ -114,14 +113,12 @@ public class GroupCipher {
   {
     try {
       IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-      Cipher          cipher          = Cipher.getInstance("AES/CBC/PKCS5Padding");
+      Cipher          cipher          = CryptoPrimitives.getCipher("AES/CBC/PKCS5Padding");
 
       cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), ivParameterSpec);
 
       return cipher.doFinal(ciphertext);
-    } catch (NoSuchAlgorithmException | NoSuchPaddingException | java.security.InvalidKeyException |
-             InvalidAlgorithmParameterException e)
-    {
+    } catch (java.security.InvalidKeyException | InvalidAlgorithmParameterException e) {
       throw new AssertionError(e);
     } catch (IllegalBlockSizeException | BadPaddingException e) {
       throw new InvalidMessageException(e);
@@ -131,13 +128,13 @@ public class GroupCipher {
   private byte[] getCipherText(byte[] iv, byte[] key, byte[] plaintext) {
     try {
       IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-      Cipher          cipher          = Cipher.getInstance("AES/CBC/PKCS5Padding");
+      Cipher          cipher          = CryptoPrimitives.getCipher("AES/CBC/PKCS5Padding");
 
       cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), ivParameterSpec);
 
       return cipher.doFinal(plaintext);
-    } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException |
-             IllegalBlockSizeException | BadPaddingException | java.security.InvalidKeyException e)
+    } catch (InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException |
+             java.security.InvalidKeyException e)
     {
       throw new AssertionError(e);
     }
@@ -1,7 +1,12 @@
 package org.whispersystems.libaxolotl.groups;
 
+import org.whispersystems.libaxolotl.InvalidKeyException;
+import org.whispersystems.libaxolotl.InvalidKeyIdException;
+import org.whispersystems.libaxolotl.NoSessionException;
 import org.whispersystems.libaxolotl.ecc.ECKeyPair;
+import org.whispersystems.libaxolotl.groups.ratchet.SenderChainKey;
 import org.whispersystems.libaxolotl.groups.state.SenderKeyRecord;
+import org.whispersystems.libaxolotl.groups.state.SenderKeyState;
 import org.whispersystems.libaxolotl.groups.state.SenderKeyStore;
 import org.whispersystems.libaxolotl.protocol.SenderKeyDistributionMessage;
 
@@ -35,4 +40,31 @@ public class GroupSessionBuilder {
       return new SenderKeyDistributionMessage(keyId, iteration, chainKey, signatureKey.getPublicKey());
     }
   }
+
+  /**
+   * Build a distribution message for the sender key we currently send to a group with,
+   * starting at the next message we'll encrypt.  Members who process it can decrypt our
+   * future messages to the group, but none of those we've already sent.
+   *
+   * @param groupId The sender key id we send to the group with.
+   * @return A distribution message for the current sender key.
+   * @throws NoSessionException If we don't have a sender key for the group.
+   */
+  public SenderKeyDistributionMessage getDistributionMessage(String groupId)
+      throws NoSessionException
+  {
+    synchronized (GroupCipher.LOCK) {
+      try {
+        SenderKeyState senderKeyState = senderKeyStore.loadSenderKey(groupId).getSenderKeyState();
+        SenderChainKey senderChainKey = senderKeyState.getSenderChainKey();
+
+        return new SenderKeyDistributionMessage(senderKeyState.getKeyId(),
+                                                senderChainKey.getIteration(),
+                                                senderChainKey.getSeed(),
+                                                senderKeyState.getSigningKeyPublic());
+      } catch (InvalidKeyIdException | InvalidKeyException e) {
+        throw new NoSessionException(e);
+      }
+    }
+  }
 }
@@ -1,7 +1,8 @@
 package org.whispersystems.libaxolotl.groups.ratchet;
 
+import org.whispersystems.libaxolotl.util.CryptoPrimitives;
+
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -37,11 +38,11 @@ public class SenderChainKey {
 
   private byte[] getDerivative(byte[] seed, byte[] key) {
     try {
-      Mac mac = Mac.getInstance("HmacSHA256");
+      Mac mac = CryptoPrimitives.getHmacSha256();
       mac.init(new SecretKeySpec(key, "HmacSHA256"));
 
       return mac.doFinal(seed);
-    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+    } catch (InvalidKeyException e) {
       throw new AssertionError(e);
     }
   }
@@ -6,6 +6,7 @@ import org.whispersystems.libaxolotl.ecc.ECPublicKey;
 import org.whispersystems.libaxolotl.state.StorageProtos;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -13,6 +14,8 @@ import static org.whispersystems.libaxolotl.state.StorageProtos.SenderKeyRecordS
 
 public class SenderKeyRecord {
 
+  private static final int MAX_STATES = 20;
+
   private List<SenderKeyState> senderKeyStates = new LinkedList<>();
 
   public SenderKeyRecord() {}
@@ -43,8 +46,29 @@ public class SenderKeyRecord {
     throw new InvalidKeyIdException("No keys for: " + keyId);
   }
 
+  /**
+   * Add the state for a sender key we've been sent.  A key we already have is only replaced
+   * if the new state starts further along its chain, so that being sent the same key again
+   * can't rewind it and let old messages be decrypted twice.  Only the {@link #MAX_STATES}
+   * most recently added keys are kept, so the oldest is dropped once the record is full.
+   */
   public void addSenderKeyState(int id, int iteration, byte[] chainKey, ECPublicKey signatureKey) {
+    Iterator<SenderKeyState> iterator = senderKeyStates.iterator();
+
+    while (iterator.hasNext()) {
+      SenderKeyState state = iterator.next();
+
+      if (state.getKeyId() == id) {
+        if (state.getSenderChainKey().getIteration() >= iteration) return;
+        else                                                       iterator.remove();
+      }
+    }
+
     senderKeyStates.add(new SenderKeyState(id, iteration, chainKey, signatureKey));
+
+    while (senderKeyStates.size() > MAX_STATES) {
+      senderKeyStates.remove(0);
+    }
   }
 
   public void setSenderKeyState(int id, int iteration, byte[] chainKey, ECKeyPair signatureKey) {
@@ -26,10 +26,10 @@ import javax.crypto.spec.SecretKeySpec;
 
 public class DerivedMessageSecrets {
 
-  public  static final int SIZE              = 80;
-  private static final int CIPHER_KEY_LENGTH = 32;
-  private static final int MAC_KEY_LENGTH    = 32;
-  private static final int IV_LENGTH         = 16;
+  public static final int SIZE              = 80;
+  public static final int CIPHER_KEY_LENGTH = 32;
+  public static final int MAC_KEY_LENGTH    = 32;
+  public static final int IV_LENGTH         = 16;
 
   private final SecretKeySpec   cipherKey;
   private final SecretKeySpec   macKey;
@@ -17,9 +17,10 @@
 
 package org.whispersystems.libaxolotl.kdf;
 
+import org.whispersystems.libaxolotl.util.CryptoPrimitives;
+
 import java.io.ByteArrayOutputStream;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -48,10 +49,10 @@ public abstract class HKDF {
 
   private byte[] extract(byte[] salt, byte[] inputKeyMaterial) {
     try {
-      Mac mac = Mac.getInstance("HmacSHA256");
+      Mac mac = CryptoPrimitives.getHmacSha256();
       mac.init(new SecretKeySpec(salt, "HmacSHA256"));
       return mac.doFinal(inputKeyMaterial);
-    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+    } catch (InvalidKeyException e) {
       throw new AssertionError(e);
     }
   }
@@ -62,11 +63,11 @@ public abstract class HKDF {
       byte[]                mixin          = new byte[0];
       ByteArrayOutputStream results        = new ByteArrayOutputStream();
       int                   remainingBytes = outputSize;
+      Mac                   mac            = CryptoPrimitives.getHmacSha256();
 
-      for (int i= getIterationStartOffset();i<iterations + getIterationStartOffset();i++) {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+      mac.init(new SecretKeySpec(prk, "HmacSHA256"));
 
+      for (int i= getIterationStartOffset();i<iterations + getIterationStartOffset();i++) {
         mac.update(mixin);
         if (info != null) {
           mac.update(info);
@@ -83,7 +84,7 @@ public abstract class HKDF {
       }
 
       return results.toByteArray();
-    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+    } catch (InvalidKeyException e) {
       throw new AssertionError(e);
     }
   }
@@ -1,7 +1,11 @@
 package org.whispersystems.libaxolotl.protocol;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 
+import org.whispersystems.libaxolotl.InvalidKeyException;
+import org.whispersystems.libaxolotl.InvalidMessageException;
+import org.whispersystems.libaxolotl.ecc.Curve;
 import org.whispersystems.libaxolotl.ecc.ECPublicKey;
 import org.whispersystems.libaxolotl.util.ByteUtil;
 
@@ -28,6 +32,29 @@ public class SenderKeyDistributionMessage implements CiphertextMessage {
                                                                   .build().toByteArray();
   }
 
+  public SenderKeyDistributionMessage(byte[] serialized) throws InvalidMessageException {
+    try {
+      WhisperProtos.SenderKeyDistributionMessage distributionMessage =
+          WhisperProtos.SenderKeyDistributionMessage.parseFrom(serialized);
+
+      if (!distributionMessage.hasId()        ||
+          !distributionMessage.hasIteration() ||
+          !distributionMessage.hasChainKey()  ||
+          !distributionMessage.hasSigningKey())
+      {
+        throw new InvalidMessageException("Incomplete message.");
+      }
+
+      this.serialized   = serialized;
+      this.id           = distributionMessage.getId();
+      this.iteration    = distributionMessage.getIteration();
+      this.chainKey     = distributionMessage.getChainKey().toByteArray();
+      this.signatureKey = Curve.decodePoint(distributionMessage.getSigningKey().toByteArray(), 0);
+    } catch (InvalidProtocolBufferException | InvalidKeyException e) {
+      throw new InvalidMessageException(e);
+    }
+  }
+
   @Override
   public byte[] serialize() {
     return serialized;
@@ -26,9 +26,9 @@ import org.whispersystems.libaxolotl.LegacyMessageException;
 import org.whispersystems.libaxolotl.ecc.Curve;
 import org.whispersystems.libaxolotl.ecc.ECPublicKey;
 import org.whispersystems.libaxolotl.util.ByteUtil;
+import org.whispersystems.libaxolotl.util.CryptoPrimitives;
 
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 
 import javax.crypto.Mac;
@@ -139,7 +139,7 @@ public class WhisperMessage implements CiphertextMessage {
                         SecretKeySpec macKey, byte[] serialized)
   {
     try {
-      Mac mac = Mac.getInstance("HmacSHA256");
+      Mac mac = CryptoPrimitives.getHmacSha256();
       mac.init(macKey);
 
       if (messageVersion >= 3) {
@@ -149,7 +149,7 @@ public class WhisperMessage implements CiphertextMessage {
 
       byte[] fullMac = mac.doFinal(serialized);
       return ByteUtil.trim(fullMac, MAC_LENGTH);
-    } catch (NoSuchAlgorithmException | java.security.InvalidKeyException e) {
+    } catch (java.security.InvalidKeyException e) {
       throw new AssertionError(e);
     }
   }
@@ -19,9 +19,9 @@ package org.whispersystems.libaxolotl.ratchet;
 
 import org.whispersystems.libaxolotl.kdf.DerivedMessageSecrets;
 import org.whispersystems.libaxolotl.kdf.HKDF;
+import org.whispersystems.libaxolotl.util.CryptoPrimitives;
 
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -30,6 +30,7 @@ public class ChainKey {
 
   private static final byte[] MESSAGE_KEY_SEED = {0x01};
   private static final byte[] CHAIN_KEY_SEED   = {0x02};
+  private static final byte[] MESSAGE_KEY_INFO = "WhisperMessageKeys".getBytes();
 
   private final HKDF   kdf;
   private final byte[] key;
@@ -56,19 +57,46 @@ public class ChainKey {
 
   public MessageKeys getMessageKeys() {
     byte[]                inputKeyMaterial = getBaseMaterial(MESSAGE_KEY_SEED);
-    byte[]                keyMaterialBytes = kdf.deriveSecrets(inputKeyMaterial, "WhisperMessageKeys".getBytes(), DerivedMessageSecrets.SIZE);
+    byte[]                keyMaterialBytes = kdf.deriveSecrets(inputKeyMaterial, MESSAGE_KEY_INFO, DerivedMessageSecrets.SIZE);
     DerivedMessageSecrets keyMaterial      = new DerivedMessageSecrets(keyMaterialBytes);
 
     return new MessageKeys(keyMaterial.getCipherKey(), keyMaterial.getMacKey(), keyMaterial.getIv(), index);
   }
 
+  /**
+   * Derive the message keys for this index and the count - 1 that follow it in one pass,
+   * without creating a ChainKey or MessageKeys for each of them.
+   *
+   * @param count The number of message keys to derive.
+   * @param keyMaterial Receives the cipher key, MAC key and IV of each message key in turn,
+   *                    {@link DerivedMessageSecrets#SIZE} bytes apiece.
+   * @return The chain key that follows the last derived message key.
+   */
+  public ChainKey getMessageKeys(int count, byte[] keyMaterial) {
+    byte[] chainKey = key;
+
+    for (int i=0;i<count;i++) {
+      byte[] inputKeyMaterial = getBaseMaterial(chainKey, MESSAGE_KEY_SEED);
+      byte[] keyMaterialBytes = kdf.deriveSecrets(inputKeyMaterial, MESSAGE_KEY_INFO, DerivedMessageSecrets.SIZE);
+
+      System.arraycopy(keyMaterialBytes, 0, keyMaterial, i * DerivedMessageSecrets.SIZE, DerivedMessageSecrets.SIZE);
+      chainKey = getBaseMaterial(chainKey, CHAIN_KEY_SEED);
+    }
+
+    return new ChainKey(kdf, chainKey, index + count);
+  }
+
   private byte[] getBaseMaterial(byte[] seed) {
+    return getBaseMaterial(key, seed);
+  }
+
+  private byte[] getBaseMaterial(byte[] key, byte[] seed) {
     try {
-      Mac mac = Mac.getInstance("HmacSHA256");
+      Mac mac = CryptoPrimitives.getHmacSha256();
       mac.init(new SecretKeySpec(key, "HmacSHA256"));
 
       return mac.doFinal(seed);
-    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+    } catch (InvalidKeyException e) {
       throw new AssertionError(e);
     }
   }
@@ -0,0 +1,21 @@
+package org.whispersystems.libaxolotl.state;
+
+import java.util.Map;
+
+/**
+ * A {@link SessionStore} that can commit the sessions for several devices of one recipient
+ * together.  {@link org.whispersystems.libaxolotl.MultiDeviceSessionCipher} uses it when it's
+ * available, and otherwise stores each session separately.
+ */
+public interface BatchSessionStore extends SessionStore {
+
+  /**
+   * Commit to storage the {@link SessionRecord}s for several devices of a recipientId, in a
+   * single write where the store is able to.
+   *
+   * @param recipientId the recipient ID of the remote client.
+   * @param records the current SessionRecord for each device ID of the remote client.
+   */
+  public void storeSessions(long recipientId, Map<Integer, SessionRecord> records);
+
+}
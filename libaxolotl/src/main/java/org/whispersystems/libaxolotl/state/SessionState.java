@@ -28,6 +28,7 @@ import org.whispersystems.libaxolotl.ecc.Curve;
 import org.whispersystems.libaxolotl.ecc.ECKeyPair;
 import org.whispersystems.libaxolotl.ecc.ECPrivateKey;
 import org.whispersystems.libaxolotl.ecc.ECPublicKey;
+import org.whispersystems.libaxolotl.kdf.DerivedMessageSecrets;
 import org.whispersystems.libaxolotl.kdf.HKDF;
 import org.whispersystems.libaxolotl.ratchet.ChainKey;
 import org.whispersystems.libaxolotl.ratchet.MessageKeys;
@@ -35,80 +36,147 @@ import org.whispersystems.libaxolotl.ratchet.RootKey;
 import org.whispersystems.libaxolotl.state.StorageProtos.SessionStructure.Chain;
 import org.whispersystems.libaxolotl.state.StorageProtos.SessionStructure.PendingKeyExchange;
 import org.whispersystems.libaxolotl.state.StorageProtos.SessionStructure.PendingPreKey;
-import org.whispersystems.libaxolotl.util.Pair;
 import org.whispersystems.libaxolotl.util.guava.Optional;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import static org.whispersystems.libaxolotl.state.StorageProtos.SessionStructure;
 
+/**
+ * The state of one session.
+ *
+ * A SessionState is mutable, and is kept in typed fields rather than as a
+ * {@link SessionStructure}, so that advancing a chain doesn't rebuild the whole structure.
+ * It's converted to a SessionStructure only when it's stored.  A state that's parsed from a
+ * SessionStructure isn't unpacked until it's first used, so the archived states of a
+ * {@link SessionRecord}, which are rarely touched, cost no more than parsing them.
+ *
+ * Receiver chains are indexed by their ratchet key, and each chain's skipped message keys
+ * by counter, so that decrypting a message doesn't scan either list.  A chain keeps at most
+ * {@link #MAX_MESSAGE_KEYS} skipped keys, discarding the oldest first.
+ *
+ * Byte arrays held by a SessionState are never modified in place, so they're shared, rather
+ * than copied, between a state and its copies.
+ */
 public class SessionState {
 
-  private SessionStructure sessionStructure;
+  private static final int MAX_RECEIVER_CHAINS = 5;
+  private static final int MAX_MESSAGE_KEYS    = 2000;
+
+  private SessionStructure structure;
+  private boolean          unpacked;
+
+  private int                         sessionVersion;
+  private byte[]                      localIdentityPublic;
+  private byte[]                      remoteIdentityPublic;
+  private byte[]                      rootKey;
+  private int                         previousCounter;
+  private ChainState                  senderChain;
+  private ArrayList<ChainState>       receiverChains;
+  private Map<ByteBuffer, ChainState> receiverChainIndex;
+  private PendingKeyExchange          pendingKeyExchange;
+  private PendingPreKey               pendingPreKey;
+  private int                         remoteRegistrationId;
+  private int                         localRegistrationId;
+  private boolean                     needsRefresh;
+  private byte[]                      aliceBaseKey;
 
   public SessionState() {
-    this.sessionStructure = SessionStructure.newBuilder().build();
+    this(SessionStructure.getDefaultInstance());
   }
 
   public SessionState(SessionStructure sessionStructure) {
-    this.sessionStructure = sessionStructure;
+    this.structure = sessionStructure;
+    this.unpacked  = false;
   }
 
   public SessionState(SessionState copy) {
-    this.sessionStructure = copy.sessionStructure.toBuilder().build();
+    if (!copy.unpacked) {
+      this.structure = copy.structure;
+      this.unpacked  = false;
+      return;
+    }
+
+    this.structure            = copy.structure;
+    this.unpacked             = true;
+    this.sessionVersion       = copy.sessionVersion;
+    this.localIdentityPublic  = copy.localIdentityPublic;
+    this.remoteIdentityPublic = copy.remoteIdentityPublic;
+    this.rootKey              = copy.rootKey;
+    this.previousCounter      = copy.previousCounter;
+    this.senderChain          = copy.senderChain == null ? null : new ChainState(copy.senderChain);
+    this.receiverChains       = new ArrayList<>(copy.receiverChains.size());
+    this.receiverChainIndex   = new HashMap<>();
+    this.pendingKeyExchange   = copy.pendingKeyExchange;
+    this.pendingPreKey        = copy.pendingPreKey;
+    this.remoteRegistrationId = copy.remoteRegistrationId;
+    this.localRegistrationId  = copy.localRegistrationId;
+    this.needsRefresh         = copy.needsRefresh;
+    this.aliceBaseKey         = copy.aliceBaseKey;
+
+    for (ChainState receiverChain : copy.receiverChains) {
+      indexReceiverChain(new ChainState(receiverChain));
+    }
   }
 
   public SessionStructure getStructure() {
-    return sessionStructure;
+    if (structure == null) {
+      structure = pack();
+    }
+
+    return structure;
   }
 
   public byte[] getAliceBaseKey() {
-    return this.sessionStructure.getAliceBaseKey().toByteArray();
+    unpack();
+    return aliceBaseKey;
   }
 
   public void setAliceBaseKey(byte[] aliceBaseKey) {
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setAliceBaseKey(ByteString.copyFrom(aliceBaseKey))
-                                                 .build();
+    modify();
+    this.aliceBaseKey = aliceBaseKey;
   }
 
   public void setSessionVersion(int version) {
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setSessionVersion(version)
-                                                 .build();
+    modify();
+    this.sessionVersion = version;
   }
 
   public int getSessionVersion() {
-    int sessionVersion = this.sessionStructure.getSessionVersion();
+    unpack();
 
     if (sessionVersion == 0) return 2;
     else                     return sessionVersion;
   }
 
   public void setRemoteIdentityKey(IdentityKey identityKey) {
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setRemoteIdentityPublic(ByteString.copyFrom(identityKey.serialize()))
-                                                 .build();
+    modify();
+    this.remoteIdentityPublic = identityKey.serialize();
   }
 
   public void setLocalIdentityKey(IdentityKey identityKey) {
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setLocalIdentityPublic(ByteString.copyFrom(identityKey.serialize()))
-                                                 .build();
+    modify();
+    this.localIdentityPublic = identityKey.serialize();
   }
 
   public IdentityKey getRemoteIdentityKey() {
+    unpack();
+
     try {
-      if (!this.sessionStructure.hasRemoteIdentityPublic()) {
+      if (remoteIdentityPublic == null) {
         return null;
       }
 
-      return new IdentityKey(this.sessionStructure.getRemoteIdentityPublic().toByteArray(), 0);
+      return new IdentityKey(remoteIdentityPublic, 0);
     } catch (InvalidKeyException e) {
       Log.w("SessionRecordV2", e);
       return null;
@@ -116,37 +184,39 @@ public class SessionState {
   }
 
   public IdentityKey getLocalIdentityKey() {
+    unpack();
+
     try {
-      return new IdentityKey(this.sessionStructure.getLocalIdentityPublic().toByteArray(), 0);
+      return new IdentityKey(localIdentityPublic, 0);
     } catch (InvalidKeyException e) {
       throw new AssertionError(e);
     }
   }
 
   public int getPreviousCounter() {
-    return sessionStructure.getPreviousCounter();
+    unpack();
+    return previousCounter;
   }
 
   public void setPreviousCounter(int previousCounter) {
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setPreviousCounter(previousCounter)
-                                                 .build();
+    modify();
+    this.previousCounter = previousCounter;
   }
 
   public RootKey getRootKey() {
-    return new RootKey(HKDF.createFor(getSessionVersion()),
-                       this.sessionStructure.getRootKey().toByteArray());
+    return new RootKey(HKDF.createFor(getSessionVersion()), rootKey);
   }
 
   public void setRootKey(RootKey rootKey) {
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setRootKey(ByteString.copyFrom(rootKey.getKeyBytes()))
-                                                 .build();
+    modify();
+    this.rootKey = rootKey.getKeyBytes();
   }
 
   public ECPublicKey getSenderRatchetKey() {
+    unpack();
+
     try {
-      return Curve.decodePoint(sessionStructure.getSenderChain().getSenderRatchetKey().toByteArray(), 0);
+      return Curve.decodePoint(senderChain == null ? new byte[0] : senderChain.senderRatchetKey, 0);
     } catch (InvalidKeyException e) {
       throw new AssertionError(e);
     }
@@ -154,9 +224,7 @@ public class SessionState {
 
   public ECKeyPair getSenderRatchetKeyPair() {
     ECPublicKey  publicKey  = getSenderRatchetKey();
-    ECPrivateKey privateKey = Curve.decodePrivatePoint(sessionStructure.getSenderChain()
-                                                                       .getSenderRatchetKeyPrivate()
-                                                                       .toByteArray());
+    ECPrivateKey privateKey = Curve.decodePrivatePoint(senderChain.senderRatchetKeyPrivate);
 
     return new ECKeyPair(publicKey, privateKey);
   }
@@ -166,186 +234,160 @@ public class SessionState {
   }
 
   public boolean hasSenderChain() {
-    return sessionStructure.hasSenderChain();
+    unpack();
+    return senderChain != null;
   }
 
-  private Pair<Chain,Integer> getReceiverChain(ECPublicKey senderEphemeral) {
-    List<Chain> receiverChains = sessionStructure.getReceiverChainsList();
-    int         index          = 0;
-
-    for (Chain receiverChain : receiverChains) {
-      try {
-        ECPublicKey chainSenderRatchetKey = Curve.decodePoint(receiverChain.getSenderRatchetKey().toByteArray(), 0);
-
-        if (chainSenderRatchetKey.equals(senderEphemeral)) {
-          return new Pair<>(receiverChain,index);
-        }
-      } catch (InvalidKeyException e) {
-        Log.w("SessionRecordV2", e);
-      }
-
-      index++;
-    }
+  private ChainState getReceiverChain(ECPublicKey senderEphemeral) {
+    unpack();
+    return receiverChainIndex.get(ByteBuffer.wrap(senderEphemeral.serialize()));
+  }
 
-    return null;
+  private void indexReceiverChain(ChainState receiverChain) {
+    receiverChains.add(receiverChain);
+    receiverChainIndex.put(ByteBuffer.wrap(receiverChain.senderRatchetKey), receiverChain);
   }
 
   public ChainKey getReceiverChainKey(ECPublicKey senderEphemeral) {
-    Pair<Chain,Integer> receiverChainAndIndex = getReceiverChain(senderEphemeral);
-    Chain               receiverChain         = receiverChainAndIndex.first();
+    ChainState receiverChain = getReceiverChain(senderEphemeral);
 
     if (receiverChain == null) {
       return null;
     } else {
       return new ChainKey(HKDF.createFor(getSessionVersion()),
-                          receiverChain.getChainKey().getKey().toByteArray(),
-                          receiverChain.getChainKey().getIndex());
+                          receiverChain.chainKey, receiverChain.index);
     }
   }
 
   public void addReceiverChain(ECPublicKey senderRatchetKey, ChainKey chainKey) {
-    Chain.ChainKey chainKeyStructure = Chain.ChainKey.newBuilder()
-                                                     .setKey(ByteString.copyFrom(chainKey.getKey()))
-                                                     .setIndex(chainKey.getIndex())
-                                                     .build();
-
-    Chain chain = Chain.newBuilder()
-                       .setChainKey(chainKeyStructure)
-                       .setSenderRatchetKey(ByteString.copyFrom(senderRatchetKey.serialize()))
-                       .build();
-
-    this.sessionStructure = this.sessionStructure.toBuilder().addReceiverChains(chain).build();
-
-    if (this.sessionStructure.getReceiverChainsList().size() > 5) {
-      this.sessionStructure = this.sessionStructure.toBuilder()
-                                                   .removeReceiverChains(0)
-                                                   .build();
+    modify();
+
+    indexReceiverChain(new ChainState(senderRatchetKey.serialize(), null,
+                                      chainKey.getKey(), chainKey.getIndex()));
+
+    if (receiverChains.size() > MAX_RECEIVER_CHAINS) {
+      ChainState evicted = receiverChains.remove(0);
+      ByteBuffer key     = ByteBuffer.wrap(evicted.senderRatchetKey);
+
+      if (receiverChainIndex.get(key) == evicted) {
+        receiverChainIndex.remove(key);
+      }
     }
   }
 
   public void setSenderChain(ECKeyPair senderRatchetKeyPair, ChainKey chainKey) {
-    Chain.ChainKey chainKeyStructure = Chain.ChainKey.newBuilder()
-                                                     .setKey(ByteString.copyFrom(chainKey.getKey()))
-                                                     .setIndex(chainKey.getIndex())
-                                                     .build();
+    modify();
 
-    Chain senderChain = Chain.newBuilder()
-                             .setSenderRatchetKey(ByteString.copyFrom(senderRatchetKeyPair.getPublicKey().serialize()))
-                             .setSenderRatchetKeyPrivate(ByteString.copyFrom(senderRatchetKeyPair.getPrivateKey().serialize()))
-                             .setChainKey(chainKeyStructure)
-                             .build();
-
-    this.sessionStructure = this.sessionStructure.toBuilder().setSenderChain(senderChain).build();
+    this.senderChain = new ChainState(senderRatchetKeyPair.getPublicKey().serialize(),
+                                      senderRatchetKeyPair.getPrivateKey().serialize(),
+                                      chainKey.getKey(), chainKey.getIndex());
   }
 
   public ChainKey getSenderChainKey() {
-    Chain.ChainKey chainKeyStructure = sessionStructure.getSenderChain().getChainKey();
+    unpack();
+
+    if (senderChain == null) {
+      return new ChainKey(HKDF.createFor(getSessionVersion()), new byte[0], 0);
+    }
+
     return new ChainKey(HKDF.createFor(getSessionVersion()),
-                        chainKeyStructure.getKey().toByteArray(), chainKeyStructure.getIndex());
+                        senderChain.chainKey, senderChain.index);
   }
 
 
   public void setSenderChainKey(ChainKey nextChainKey) {
-    Chain.ChainKey chainKey = Chain.ChainKey.newBuilder()
-                                            .setKey(ByteString.copyFrom(nextChainKey.getKey()))
-                                            .setIndex(nextChainKey.getIndex())
-                                            .build();
-
-    Chain chain = sessionStructure.getSenderChain().toBuilder()
-                                  .setChainKey(chainKey).build();
+    modify();
 
-    this.sessionStructure = this.sessionStructure.toBuilder().setSenderChain(chain).build();
+    if (senderChain == null) {
+      senderChain = new ChainState(new byte[0], null, nextChainKey.getKey(), nextChainKey.getIndex());
+    } else {
+      senderChain.chainKey = nextChainKey.getKey();
+      senderChain.index    = nextChainKey.getIndex();
+    }
   }
 
   public boolean hasMessageKeys(ECPublicKey senderEphemeral, int counter) {
-    Pair<Chain,Integer> chainAndIndex = getReceiverChain(senderEphemeral);
-    Chain               chain         = chainAndIndex.first();
+    ChainState chain = getReceiverChain(senderEphemeral);
 
     if (chain == null) {
       return false;
     }
 
-    List<Chain.MessageKey> messageKeyList = chain.getMessageKeysList();
-
-    for (Chain.MessageKey messageKey : messageKeyList) {
-      if (messageKey.getIndex() == counter) {
-        return true;
-      }
-    }
-
-    return false;
+    return chain.messageKeys.containsKey(counter);
   }
 
   public MessageKeys removeMessageKeys(ECPublicKey senderEphemeral, int counter) {
-    Pair<Chain,Integer> chainAndIndex = getReceiverChain(senderEphemeral);
-    Chain               chain         = chainAndIndex.first();
+    ChainState chain = getReceiverChain(senderEphemeral);
 
     if (chain == null) {
       return null;
     }
 
-    List<Chain.MessageKey>     messageKeyList     = new LinkedList<>(chain.getMessageKeysList());
-    Iterator<Chain.MessageKey> messageKeyIterator = messageKeyList.iterator();
-    MessageKeys                result             = null;
-
-    while (messageKeyIterator.hasNext()) {
-      Chain.MessageKey messageKey = messageKeyIterator.next();
+    modify();
+    Chain.MessageKey messageKey = chain.messageKeys.remove(counter);
 
-      if (messageKey.getIndex() == counter) {
-        result = new MessageKeys(new SecretKeySpec(messageKey.getCipherKey().toByteArray(), "AES"),
-                                 new SecretKeySpec(messageKey.getMacKey().toByteArray(), "HmacSHA256"),
-                                 new IvParameterSpec(messageKey.getIv().toByteArray()),
-                                 messageKey.getIndex());
-
-        messageKeyIterator.remove();
-        break;
-      }
+    if (messageKey == null) {
+      return null;
     }
 
-    Chain updatedChain = chain.toBuilder().clearMessageKeys()
-                              .addAllMessageKeys(messageKeyList)
-                              .build();
-
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setReceiverChains(chainAndIndex.second(), updatedChain)
-                                                 .build();
-
-    return result;
+    return new MessageKeys(new SecretKeySpec(messageKey.getCipherKey().toByteArray(), "AES"),
+                           new SecretKeySpec(messageKey.getMacKey().toByteArray(), "HmacSHA256"),
+                           new IvParameterSpec(messageKey.getIv().toByteArray()),
+                           messageKey.getIndex());
   }
 
   public void setMessageKeys(ECPublicKey senderEphemeral, MessageKeys messageKeys) {
-    Pair<Chain,Integer> chainAndIndex       = getReceiverChain(senderEphemeral);
-    Chain               chain               = chainAndIndex.first();
-    Chain.MessageKey    messageKeyStructure = Chain.MessageKey.newBuilder()
-                                                              .setCipherKey(ByteString.copyFrom(messageKeys.getCipherKey().getEncoded()))
-                                                              .setMacKey(ByteString.copyFrom(messageKeys.getMacKey().getEncoded()))
-                                                              .setIndex(messageKeys.getCounter())
-                                                              .setIv(ByteString.copyFrom(messageKeys.getIv().getIV()))
-                                                              .build();
-
-    Chain updatedChain = chain.toBuilder()
-                              .addMessageKeys(messageKeyStructure)
-                              .build();
+    ChainState chain = getReceiverChain(senderEphemeral);
+
+    modify();
+    chain.messageKeys.put(messageKeys.getCounter(),
+                          Chain.MessageKey.newBuilder()
+                                          .setCipherKey(ByteString.copyFrom(messageKeys.getCipherKey().getEncoded()))
+                                          .setMacKey(ByteString.copyFrom(messageKeys.getMacKey().getEncoded()))
+                                          .setIndex(messageKeys.getCounter())
+                                          .setIv(ByteString.copyFrom(messageKeys.getIv().getIV()))
+                                          .build());
+
+    chain.evictMessageKeys();
+  }
+
+  /**
+   * Store the keys for a run of skipped messages, as derived by
+   * {@link ChainKey#getMessageKeys(int, byte[])}.
+   *
+   * @param firstCounter The counter of the first message in the run.
+   * @param count The number of messages in the run.
+   * @param keyMaterial The cipher key, MAC key and IV of each message in turn.
+   */
+  public void setMessageKeys(ECPublicKey senderEphemeral, int firstCounter, int count, byte[] keyMaterial) {
+    ChainState chain = getReceiverChain(senderEphemeral);
+    int        skip  = Math.max(0, count - MAX_MESSAGE_KEYS);
+
+    modify();
+
+    for (int i=skip;i<count;i++) {
+      int offset = i * DerivedMessageSecrets.SIZE;
+      int macKey = offset + DerivedMessageSecrets.CIPHER_KEY_LENGTH;
+      int iv     = macKey + DerivedMessageSecrets.MAC_KEY_LENGTH;
+
+      chain.messageKeys.put(firstCounter + i,
+                            Chain.MessageKey.newBuilder()
+                                            .setCipherKey(ByteString.copyFrom(keyMaterial, offset, DerivedMessageSecrets.CIPHER_KEY_LENGTH))
+                                            .setMacKey(ByteString.copyFrom(keyMaterial, macKey, DerivedMessageSecrets.MAC_KEY_LENGTH))
+                                            .setIndex(firstCounter + i)
+                                            .setIv(ByteString.copyFrom(keyMaterial, iv, DerivedMessageSecrets.IV_LENGTH))
+                                            .build());
+    }
 
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setReceiverChains(chainAndIndex.second(), updatedChain)
-                                                 .build();
+    chain.evictMessageKeys();
   }
 
   public void setReceiverChainKey(ECPublicKey senderEphemeral, ChainKey chainKey) {
-    Pair<Chain,Integer> chainAndIndex = getReceiverChain(senderEphemeral);
-    Chain               chain         = chainAndIndex.first();
-
-    Chain.ChainKey chainKeyStructure = Chain.ChainKey.newBuilder()
-                                                     .setKey(ByteString.copyFrom(chainKey.getKey()))
-                                                     .setIndex(chainKey.getIndex())
-                                                     .build();
+    ChainState chain = getReceiverChain(senderEphemeral);
 
-    Chain updatedChain = chain.toBuilder().setChainKey(chainKeyStructure).build();
-
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setReceiverChains(chainAndIndex.second(), updatedChain)
-                                                 .build();
+    modify();
+    chain.chainKey = chainKey.getKey();
+    chain.index    = chainKey.getIndex();
   }
 
   public void setPendingKeyExchange(int sequence,
@@ -353,7 +395,9 @@ public class SessionState {
                                     ECKeyPair ourRatchetKey,
                                     IdentityKeyPair ourIdentityKey)
   {
-    PendingKeyExchange structure =
+    modify();
+
+    this.pendingKeyExchange =
         PendingKeyExchange.newBuilder()
                           .setSequence(sequence)
                           .setLocalBaseKey(ByteString.copyFrom(ourBaseKey.getPublicKey().serialize()))
@@ -363,51 +407,44 @@ public class SessionState {
                           .setLocalIdentityKey(ByteString.copyFrom(ourIdentityKey.getPublicKey().serialize()))
                           .setLocalIdentityKeyPrivate(ByteString.copyFrom(ourIdentityKey.getPrivateKey().serialize()))
                           .build();
-
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setPendingKeyExchange(structure)
-                                                 .build();
   }
 
   public int getPendingKeyExchangeSequence() {
-    return sessionStructure.getPendingKeyExchange().getSequence();
+    return getPendingKeyExchange().getSequence();
   }
 
   public ECKeyPair getPendingKeyExchangeBaseKey() throws InvalidKeyException {
-    ECPublicKey publicKey   = Curve.decodePoint(sessionStructure.getPendingKeyExchange()
-                                                                .getLocalBaseKey().toByteArray(), 0);
-
-    ECPrivateKey privateKey = Curve.decodePrivatePoint(sessionStructure.getPendingKeyExchange()
-                                                                       .getLocalBaseKeyPrivate()
-                                                                       .toByteArray());
+    ECPublicKey publicKey   = Curve.decodePoint(getPendingKeyExchange().getLocalBaseKey().toByteArray(), 0);
+    ECPrivateKey privateKey = Curve.decodePrivatePoint(getPendingKeyExchange().getLocalBaseKeyPrivate()
+                                                                              .toByteArray());
 
     return new ECKeyPair(publicKey, privateKey);
   }
 
   public ECKeyPair getPendingKeyExchangeRatchetKey() throws InvalidKeyException {
-    ECPublicKey publicKey   = Curve.decodePoint(sessionStructure.getPendingKeyExchange()
-                                                                .getLocalRatchetKey().toByteArray(), 0);
-
-    ECPrivateKey privateKey = Curve.decodePrivatePoint(sessionStructure.getPendingKeyExchange()
-                                                                       .getLocalRatchetKeyPrivate()
-                                                                       .toByteArray());
+    ECPublicKey publicKey   = Curve.decodePoint(getPendingKeyExchange().getLocalRatchetKey().toByteArray(), 0);
+    ECPrivateKey privateKey = Curve.decodePrivatePoint(getPendingKeyExchange().getLocalRatchetKeyPrivate()
+                                                                              .toByteArray());
 
     return new ECKeyPair(publicKey, privateKey);
   }
 
   public IdentityKeyPair getPendingKeyExchangeIdentityKey() throws InvalidKeyException {
-    IdentityKey publicKey = new IdentityKey(sessionStructure.getPendingKeyExchange()
-                                                            .getLocalIdentityKey().toByteArray(), 0);
-
-    ECPrivateKey privateKey = Curve.decodePrivatePoint(sessionStructure.getPendingKeyExchange()
-                                                                       .getLocalIdentityKeyPrivate()
-                                                                       .toByteArray());
+    IdentityKey publicKey   = new IdentityKey(getPendingKeyExchange().getLocalIdentityKey().toByteArray(), 0);
+    ECPrivateKey privateKey = Curve.decodePrivatePoint(getPendingKeyExchange().getLocalIdentityKeyPrivate()
+                                                                              .toByteArray());
 
     return new IdentityKeyPair(publicKey, privateKey);
   }
 
   public boolean hasPendingKeyExchange() {
-    return sessionStructure.hasPendingKeyExchange();
+    unpack();
+    return pendingKeyExchange != null;
+  }
+
+  private PendingKeyExchange getPendingKeyExchange() {
+    unpack();
+    return pendingKeyExchange == null ? PendingKeyExchange.getDefaultInstance() : pendingKeyExchange;
   }
 
   public void setUnacknowledgedPreKeyMessage(Optional<Integer> preKeyId, int signedPreKeyId, ECPublicKey baseKey) {
@@ -419,64 +456,189 @@ public class SessionState {
       pending.setPreKeyId(preKeyId.get());
     }
 
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setPendingPreKey(pending.build())
-                                                 .build();
+    modify();
+    this.pendingPreKey = pending.build();
   }
 
   public boolean hasUnacknowledgedPreKeyMessage() {
-    return this.sessionStructure.hasPendingPreKey();
+    unpack();
+    return pendingPreKey != null;
   }
 
   public UnacknowledgedPreKeyMessageItems getUnacknowledgedPreKeyMessageItems() {
+    unpack();
+
     try {
+      PendingPreKey     pending = pendingPreKey == null ? PendingPreKey.getDefaultInstance() : pendingPreKey;
       Optional<Integer> preKeyId;
 
-      if (sessionStructure.getPendingPreKey().hasPreKeyId()) {
-        preKeyId = Optional.of(sessionStructure.getPendingPreKey().getPreKeyId());
+      if (pending.hasPreKeyId()) {
+        preKeyId = Optional.of(pending.getPreKeyId());
       } else {
         preKeyId = Optional.absent();
       }
 
       return
           new UnacknowledgedPreKeyMessageItems(preKeyId,
-                                               sessionStructure.getPendingPreKey().getSignedPreKeyId(),
-                                               Curve.decodePoint(sessionStructure.getPendingPreKey()
-                                                                                 .getBaseKey()
-                                                                                 .toByteArray(), 0));
+                                               pending.getSignedPreKeyId(),
+                                               Curve.decodePoint(pending.getBaseKey().toByteArray(), 0));
     } catch (InvalidKeyException e) {
       throw new AssertionError(e);
     }
   }
 
   public void clearUnacknowledgedPreKeyMessage() {
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .clearPendingPreKey()
-                                                 .build();
+    unpack();
+
+    if (pendingPreKey != null) {
+      modify();
+      this.pendingPreKey = null;
+    }
   }
 
   public void setRemoteRegistrationId(int registrationId) {
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setRemoteRegistrationId(registrationId)
-                                                 .build();
+    modify();
+    this.remoteRegistrationId = registrationId;
   }
 
   public int getRemoteRegistrationId() {
-    return this.sessionStructure.getRemoteRegistrationId();
+    unpack();
+    return remoteRegistrationId;
   }
 
   public void setLocalRegistrationId(int registrationId) {
-    this.sessionStructure = this.sessionStructure.toBuilder()
-                                                 .setLocalRegistrationId(registrationId)
-                                                 .build();
+    modify();
+    this.localRegistrationId = registrationId;
   }
 
   public int getLocalRegistrationId() {
-    return this.sessionStructure.getLocalRegistrationId();
+    unpack();
+    return localRegistrationId;
   }
 
   public byte[] serialize() {
-    return sessionStructure.toByteArray();
+    return getStructure().toByteArray();
+  }
+
+  private void unpack() {
+    if (unpacked) return;
+
+    this.sessionVersion       = structure.getSessionVersion();
+    this.localIdentityPublic  = structure.getLocalIdentityPublic().toByteArray();
+    this.remoteIdentityPublic = structure.hasRemoteIdentityPublic() ? structure.getRemoteIdentityPublic().toByteArray() : null;
+    this.rootKey              = structure.getRootKey().toByteArray();
+    this.previousCounter      = structure.getPreviousCounter();
+    this.senderChain          = structure.hasSenderChain() ? new ChainState(structure.getSenderChain()) : null;
+    this.receiverChains       = new ArrayList<>(structure.getReceiverChainsCount());
+    this.receiverChainIndex   = new HashMap<>();
+    this.pendingKeyExchange   = structure.hasPendingKeyExchange() ? structure.getPendingKeyExchange() : null;
+    this.pendingPreKey        = structure.hasPendingPreKey() ? structure.getPendingPreKey() : null;
+    this.remoteRegistrationId = structure.getRemoteRegistrationId();
+    this.localRegistrationId  = structure.getLocalRegistrationId();
+    this.needsRefresh         = structure.getNeedsRefresh();
+    this.aliceBaseKey         = structure.getAliceBaseKey().toByteArray();
+
+    for (Chain receiverChain : structure.getReceiverChainsList()) {
+      indexReceiverChain(new ChainState(receiverChain));
+    }
+
+    this.unpacked = true;
+  }
+
+  /**
+   * Called before every change, so that the stored form is rebuilt the next time it's needed.
+   */
+  private void modify() {
+    unpack();
+    this.structure = null;
+  }
+
+  private SessionStructure pack() {
+    SessionStructure.Builder builder = SessionStructure.newBuilder()
+                                                       .setSessionVersion(sessionVersion)
+                                                       .setLocalIdentityPublic(ByteString.copyFrom(localIdentityPublic))
+                                                       .setRootKey(ByteString.copyFrom(rootKey))
+                                                       .setPreviousCounter(previousCounter)
+                                                       .setRemoteRegistrationId(remoteRegistrationId)
+                                                       .setLocalRegistrationId(localRegistrationId)
+                                                       .setNeedsRefresh(needsRefresh)
+                                                       .setAliceBaseKey(ByteString.copyFrom(aliceBaseKey));
+
+    if (remoteIdentityPublic != null) builder.setRemoteIdentityPublic(ByteString.copyFrom(remoteIdentityPublic));
+    if (senderChain != null)          builder.setSenderChain(senderChain.pack());
+    if (pendingKeyExchange != null)   builder.setPendingKeyExchange(pendingKeyExchange);
+    if (pendingPreKey != null)        builder.setPendingPreKey(pendingPreKey);
+
+    for (ChainState receiverChain : receiverChains) {
+      builder.addReceiverChains(receiverChain.pack());
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * A sender or receiver chain, along with the keys for any messages in it that were skipped.
+   * Skipped keys are rarely used, so they stay in their serialized form until they are.
+   */
+  private static class ChainState {
+    private final byte[]                         senderRatchetKey;
+    private final byte[]                         senderRatchetKeyPrivate;
+    private final Map<Integer, Chain.MessageKey> messageKeys;
+    private       byte[]                         chainKey;
+    private       int                            index;
+
+    private ChainState(byte[] senderRatchetKey, byte[] senderRatchetKeyPrivate, byte[] chainKey, int index) {
+      this.senderRatchetKey        = senderRatchetKey;
+      this.senderRatchetKeyPrivate = senderRatchetKeyPrivate;
+      this.chainKey                = chainKey;
+      this.index                   = index;
+      this.messageKeys             = new LinkedHashMap<>();
+    }
+
+    private ChainState(ChainState copy) {
+      this.senderRatchetKey        = copy.senderRatchetKey;
+      this.senderRatchetKeyPrivate = copy.senderRatchetKeyPrivate;
+      this.chainKey                = copy.chainKey;
+      this.index                   = copy.index;
+      this.messageKeys             = new LinkedHashMap<>(copy.messageKeys);
+    }
+
+    private ChainState(Chain chain) {
+      this(chain.getSenderRatchetKey().toByteArray(),
+           chain.hasSenderRatchetKeyPrivate() ? chain.getSenderRatchetKeyPrivate().toByteArray() : null,
+           chain.getChainKey().getKey().toByteArray(),
+           chain.getChainKey().getIndex());
+
+      for (Chain.MessageKey messageKey : chain.getMessageKeysList()) {
+        messageKeys.put(messageKey.getIndex(), messageKey);
+      }
+    }
+
+    /**
+     * Drop the oldest skipped keys until no more than {@link #MAX_MESSAGE_KEYS} are left.
+     */
+    private void evictMessageKeys() {
+      Iterator<Integer> oldest = messageKeys.keySet().iterator();
+
+      for (int excess=messageKeys.size() - MAX_MESSAGE_KEYS;excess>0;excess--) {
+        oldest.next();
+        oldest.remove();
+      }
+    }
+
+    private Chain pack() {
+      Chain.Builder builder = Chain.newBuilder()
+                                   .setSenderRatchetKey(ByteString.copyFrom(senderRatchetKey))
+                                   .setChainKey(Chain.ChainKey.newBuilder()
+                                                              .setKey(ByteString.copyFrom(chainKey))
+                                                              .setIndex(index));
+
+      if (senderRatchetKeyPrivate != null) {
+        builder.setSenderRatchetKeyPrivate(ByteString.copyFrom(senderRatchetKeyPrivate));
+      }
+
+      return builder.addAllMessageKeys(messageKeys.values()).build();
+    }
   }
 
   public static class UnacknowledgedPreKeyMessageItems {
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.libaxolotl.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Per-thread Mac and Cipher instances, so that deriving and using message keys doesn't look
+ * up a provider every time.
+ *
+ * An instance belongs to the calling thread, and is shared by every caller on that thread, so
+ * it must be initialized before each use and must not be held across a call that might use it
+ * too.
+ */
+public class CryptoPrimitives {
+
+  private static final ThreadLocal<Mac> HMAC_SHA256 = new ThreadLocal<Mac>() {
+    @Override
+    protected Mac initialValue() {
+      try {
+        return Mac.getInstance("HmacSHA256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new AssertionError(e);
+      }
+    }
+  };
+
+  private static final ThreadLocal<Map<String, Cipher>> CIPHERS = new ThreadLocal<Map<String, Cipher>>() {
+    @Override
+    protected Map<String, Cipher> initialValue() {
+      return new HashMap<>();
+    }
+  };
+
+  /**
+   * @return This thread's HmacSHA256 instance, which must be initialized before use.
+   */
+  public static Mac getHmacSha256() {
+    return HMAC_SHA256.get();
+  }
+
+  /**
+   * @return This thread's instance of the given transformation, which must be initialized
+   *         before use.
+   */
+  public static Cipher getCipher(String transformation) {
+    Map<String, Cipher> ciphers = CIPHERS.get();
+    Cipher              cipher  = ciphers.get(transformation);
+
+    if (cipher == null) {
+      try {
+        cipher = Cipher.getInstance(transformation);
+        ciphers.put(transformation, cipher);
+      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    return cipher;
+  }
+
+}
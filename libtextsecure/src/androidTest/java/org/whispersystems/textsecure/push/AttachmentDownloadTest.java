@@ -0,0 +1,322 @@
+package org.whispersystems.textsecure.push;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.libaxolotl.InvalidMessageException;
+import org.whispersystems.textsecure.api.crypto.AttachmentCipherInputStream;
+import org.whispersystems.textsecure.api.crypto.AttachmentCipherOutputStream;
+import org.whispersystems.textsecure.api.push.DownloadCheckpoint;
+import org.whispersystems.textsecure.api.push.exceptions.PushNetworkException;
+import org.whispersystems.textsecure.internal.push.PushRequestBody;
+import org.whispersystems.textsecure.internal.push.PushResponse;
+import org.whispersystems.textsecure.internal.push.PushServiceSocket;
+import org.whispersystems.textsecure.internal.push.PushTransport;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+public class AttachmentDownloadTest extends AndroidTestCase {
+
+  private static final int ATTACHMENT_SIZE = 1024 * 1024;
+
+  private byte[]                attachment;
+  private LocalAttachmentServer server;
+  private PushServiceSocket     socket;
+  private File                  destination;
+
+  @Override
+  public void setUp() throws Exception {
+    this.attachment = new byte[ATTACHMENT_SIZE];
+    new SecureRandom().nextBytes(attachment);
+
+    this.server      = new LocalAttachmentServer(attachment, "\"v1\"");
+    this.socket      = new PushServiceSocket("https://example.com", new DescriptorTransport(server.getUrl()),
+                                             "+14151231234", "password");
+    this.destination = File.createTempFile("attachment", "tmp");
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    server.close();
+    destination.delete();
+  }
+
+  public void testResumesAfterDroppedConnection() throws Exception {
+    CheckpointRecorder checkpoints = new CheckpointRecorder();
+    server.dropAfter = 600 * 1024;
+
+    try {
+      socket.retrieveAttachment(null, 1, destination, null, checkpoints);
+      fail();
+    } catch (PushNetworkException e) {
+      // good
+    }
+
+    DownloadCheckpoint checkpoint = checkpoints.last();
+
+    assertNotNull(checkpoint);
+    assertTrue(checkpoint.getOffset() >= 256 * 1024);
+    assertEquals("\"v1\"", checkpoint.getValidator());
+
+    socket.retrieveAttachment(null, 1, destination, checkpoint, checkpoints);
+
+    assertEquals("bytes=" + checkpoint.getOffset() + "-", server.ranges.get(1));
+    assertTrue(checkpoints.last().isComplete());
+    assertTrue(Arrays.equals(attachment, readFile(destination)));
+  }
+
+  public void testRestartsWhenAttachmentChanged() throws Exception {
+    writeFile(destination, new byte[1000]);
+
+    DownloadCheckpoint checkpoint = new DownloadCheckpoint(1000, ATTACHMENT_SIZE, "\"v0\"");
+    socket.retrieveAttachment(null, 1, destination, checkpoint, new CheckpointRecorder());
+
+    assertEquals("bytes=1000-", server.ranges.get(0));
+    assertTrue(Arrays.equals(attachment, readFile(destination)));
+  }
+
+  public void testRestartsWhenPartialFileIsShort() throws Exception {
+    writeFile(destination, Arrays.copyOf(attachment, 100));
+
+    DownloadCheckpoint checkpoint = new DownloadCheckpoint(5000, ATTACHMENT_SIZE, "\"v1\"");
+    socket.retrieveAttachment(null, 1, destination, checkpoint, new CheckpointRecorder());
+
+    assertNull(server.ranges.get(0));
+    assertTrue(Arrays.equals(attachment, readFile(destination)));
+  }
+
+  public void testSkipsCompleteDownload() throws Exception {
+    writeFile(destination, attachment);
+
+    DownloadCheckpoint checkpoint = new DownloadCheckpoint(ATTACHMENT_SIZE, ATTACHMENT_SIZE, "\"v1\"");
+    socket.retrieveAttachment(null, 1, destination, checkpoint, new CheckpointRecorder());
+
+    assertTrue(server.ranges.isEmpty());
+    assertTrue(Arrays.equals(attachment, readFile(destination)));
+  }
+
+  public void testCorruptPrefixFailsMacAndRestarts() throws Exception {
+    byte[] key = new byte[64];
+    new SecureRandom().nextBytes(key);
+
+    byte[]                ciphertext = encrypt(attachment, key);
+    LocalAttachmentServer encrypted  = new LocalAttachmentServer(ciphertext, "\"v1\"");
+
+    try {
+      PushServiceSocket encryptedSocket = new PushServiceSocket("https://example.com",
+                                                                new DescriptorTransport(encrypted.getUrl()),
+                                                                "+14151231234", "password");
+
+      byte[] prefix = Arrays.copyOf(ciphertext, 1000);
+      prefix[500] ^= 0x01;
+      writeFile(destination, prefix);
+
+      DownloadCheckpoint checkpoint = new DownloadCheckpoint(1000, ciphertext.length, "\"v1\"");
+      encryptedSocket.retrieveAttachment(null, 1, destination, checkpoint, new CheckpointRecorder());
+
+      assertEquals("bytes=1000-", encrypted.ranges.get(0));
+      assertEquals(ciphertext.length, destination.length());
+
+      try {
+        new AttachmentCipherInputStream(destination, key);
+        fail();
+      } catch (InvalidMessageException e) {
+        // good
+      }
+
+      destination.delete();
+      encryptedSocket.retrieveAttachment(null, 1, destination, null, new CheckpointRecorder());
+
+      assertNull(encrypted.ranges.get(1));
+      assertTrue(Arrays.equals(attachment, decrypt(destination, key)));
+    } finally {
+      encrypted.close();
+    }
+  }
+
+  private byte[] encrypt(byte[] plaintext, byte[] key) throws IOException {
+    ByteArrayOutputStream        ciphertext = new ByteArrayOutputStream();
+    AttachmentCipherOutputStream out        = new AttachmentCipherOutputStream(key, ciphertext);
+
+    out.write(plaintext);
+    out.flush();
+
+    return ciphertext.toByteArray();
+  }
+
+  private byte[] decrypt(File file, byte[] key) throws Exception {
+    InputStream           in        = new AttachmentCipherInputStream(file, key);
+    ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+    byte[]                buffer    = new byte[4096];
+    int                   read;
+
+    while ((read = in.read(buffer)) != -1) {
+      plaintext.write(buffer, 0, read);
+    }
+
+    in.close();
+    return plaintext.toByteArray();
+  }
+
+  private byte[] readFile(File file) throws IOException {
+    byte[]          contents = new byte[(int)file.length()];
+    FileInputStream in       = new FileInputStream(file);
+    int             offset   = 0;
+    int             read;
+
+    while (offset < contents.length && (read = in.read(contents, offset, contents.length - offset)) != -1) {
+      offset += read;
+    }
+
+    in.close();
+    return contents;
+  }
+
+  private void writeFile(File file, byte[] contents) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(contents);
+    out.close();
+  }
+
+  private static class CheckpointRecorder implements DownloadCheckpoint.Listener {
+    private final List<DownloadCheckpoint> checkpoints = new LinkedList<>();
+
+    @Override
+    public void onCheckpoint(DownloadCheckpoint checkpoint) {
+      checkpoints.add(checkpoint);
+    }
+
+    DownloadCheckpoint last() {
+      return checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+    }
+  }
+
+  private static class DescriptorTransport implements PushTransport {
+    private final String location;
+
+    DescriptorTransport(String location) {
+      this.location = location;
+    }
+
+    @Override
+    public PushResponse execute(String method, String url, String authorization, PushRequestBody body) {
+      String descriptor = "{\"id\":1,\"location\":\"" + location + "\"}";
+      return new PushResponse(200, "", new ByteArrayInputStream(descriptor.getBytes()));
+    }
+  }
+
+  /**
+   * A stand-in for the attachment store, which serves one file over plain HTTP with support
+   * for Range and If-Range requests, and can drop the connection partway through a response.
+   */
+  private static class LocalAttachmentServer implements Runnable {
+
+    private final byte[]       contents;
+    private final String       etag;
+    private final ServerSocket serverSocket;
+    private final List<String> ranges = new LinkedList<>();
+
+    private volatile int dropAfter = -1;
+
+    LocalAttachmentServer(byte[] contents, String etag) throws IOException {
+      this.contents     = contents;
+      this.etag         = etag;
+      this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+      Thread thread = new Thread(this);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    String getUrl() {
+      return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/attachment";
+    }
+
+    void close() throws IOException {
+      serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          Socket connection = serverSocket.accept();
+
+          try {
+            handle(connection);
+          } finally {
+            connection.close();
+          }
+        }
+      } catch (IOException e) {
+        // Closed.
+      }
+    }
+
+    private void handle(Socket connection) throws IOException {
+      BufferedReader reader  = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+      String         range   = null;
+      String         ifRange = null;
+      String         line;
+
+      while ((line = reader.readLine()) != null && line.length() > 0) {
+        if      (line.startsWith("Range: "))    range   = line.substring("Range: ".length());
+        else if (line.startsWith("If-Range: ")) ifRange = line.substring("If-Range: ".length());
+      }
+
+      synchronized (ranges) {
+        ranges.add(range);
+      }
+
+      OutputStream out   = connection.getOutputStream();
+      int          start = 0;
+      String       status;
+      String       headers;
+
+      if (range != null && (ifRange == null || ifRange.equals(etag))) {
+        start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+
+        if (start >= contents.length) {
+          out.write("HTTP/1.1 416 Range Not Satisfiable\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes());
+          return;
+        }
+
+        status  = "206 Partial Content";
+        headers = "Content-Range: bytes " + start + "-" + (contents.length - 1) + "/" + contents.length + "\r\n";
+      } else {
+        status  = "200 OK";
+        headers = "";
+      }
+
+      out.write(("HTTP/1.1 " + status + "\r\n" + headers +
+                 "Content-Length: " + (contents.length - start) + "\r\n" +
+                 "ETag: " + etag + "\r\n" +
+                 "Connection: close\r\n\r\n").getBytes());
+
+      int length = contents.length - start;
+
+      if (dropAfter >= 0) {
+        length    = Math.min(length, dropAfter);
+        dropAfter = -1;
+      }
+
+      out.write(contents, start, length);
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package org.whispersystems.textsecure.push;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.textsecure.api.crypto.AttachmentCipherInputStream;
+import org.whispersystems.textsecure.api.messages.TextSecureAttachmentStream;
+import org.whispersystems.textsecure.internal.push.PushAttachmentData;
+import org.whispersystems.textsecure.internal.push.PushRequestBody;
+import org.whispersystems.textsecure.internal.push.PushResponse;
+import org.whispersystems.textsecure.internal.push.PushServiceSocket;
+import org.whispersystems.textsecure.internal.push.PushTransport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+public class AttachmentUploadTest extends AndroidTestCase {
+
+  private static final int ATTACHMENT_SIZE = 3 * 1024 * 1024 + 100;
+
+  private byte[]               attachment;
+  private byte[]               key;
+  private LocalAttachmentStore store;
+
+  @Override
+  public void setUp() throws Exception {
+    SecureRandom random = new SecureRandom();
+
+    this.attachment = new byte[ATTACHMENT_SIZE];
+    this.key        = new byte[64];
+    this.store      = new LocalAttachmentStore();
+
+    random.nextBytes(attachment);
+    random.nextBytes(key);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    store.close();
+  }
+
+  public void testResumableUploadRetriesFailedSegment() throws Exception {
+    ProgressRecorder  progress = new ProgressRecorder();
+    PushServiceSocket socket   = createSocket(true);
+
+    store.failRequest = 3;
+
+    assertEquals(1, socket.sendAttachment(new PushAttachmentData("image/jpeg", new ByteArrayInputStream(attachment),
+                                                                 ATTACHMENT_SIZE, key, progress)));
+
+    assertEquals(Arrays.asList("bytes 0-1048575/" + store.total,
+                               "bytes 1048576-2097151/" + store.total,
+                               "bytes 2097152-3145727/" + store.total,
+                               "bytes */" + store.total,
+                               "bytes 2097152-3145727/" + store.total,
+                               "bytes 3145728-" + (store.total - 1) + "/" + store.total),
+                 store.ranges);
+
+    assertEquals(store.total, progress.last);
+    assertTrue(Arrays.equals(attachment, decrypt(store.contents.toByteArray())));
+  }
+
+  public void testSingleUploadRetriesFromCiphertext() throws Exception {
+    ProgressRecorder  progress = new ProgressRecorder();
+    PushServiceSocket socket   = createSocket(false);
+
+    store.failRequest = 1;
+
+    socket.sendAttachment(new PushAttachmentData("image/jpeg", new ByteArrayInputStream(attachment),
+                                                 ATTACHMENT_SIZE, key, progress));
+
+    assertEquals(Arrays.asList(null, null), store.ranges);
+    assertEquals(store.total, progress.last);
+    assertTrue(Arrays.equals(attachment, decrypt(store.contents.toByteArray())));
+  }
+
+  private PushServiceSocket createSocket(boolean resumable) {
+    return new PushServiceSocket("https://example.com", new DescriptorTransport(store.getUrl(), resumable),
+                                 "+14151231234", "password");
+  }
+
+  private byte[] decrypt(byte[] ciphertext) throws Exception {
+    File file = File.createTempFile("attachment", "tmp");
+
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      out.write(ciphertext);
+      out.close();
+
+      InputStream           in        = new AttachmentCipherInputStream(file, key);
+      ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+      byte[]                buffer    = new byte[4096];
+      int                   read;
+
+      while ((read = in.read(buffer)) != -1) {
+        plaintext.write(buffer, 0, read);
+      }
+
+      in.close();
+      return plaintext.toByteArray();
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static class ProgressRecorder implements TextSecureAttachmentStream.ProgressListener {
+    private long last;
+
+    @Override
+    public void onAttachmentProgress(long total, long progress) {
+      this.last = progress;
+    }
+  }
+
+  private static class DescriptorTransport implements PushTransport {
+    private final String  location;
+    private final boolean resumable;
+
+    DescriptorTransport(String location, boolean resumable) {
+      this.location  = location;
+      this.resumable = resumable;
+    }
+
+    @Override
+    public PushResponse execute(String method, String url, String authorization, PushRequestBody body) {
+      String descriptor = "{\"id\":1,\"location\":\"" + location + "\",\"resumable\":" + resumable + "}";
+      return new PushResponse(200, "", new ByteArrayInputStream(descriptor.getBytes()));
+    }
+  }
+
+  /**
+   * A stand-in for the attachment store, which takes PUTs over plain HTTP, either whole or in
+   * Content-Range segments, and can drop the connection partway through a request.
+   */
+  private static class LocalAttachmentStore implements Runnable {
+
+    private final ServerSocket          serverSocket;
+    private final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+    private final List<String>          ranges   = new LinkedList<>();
+
+    private volatile int  failRequest = -1;
+    private volatile long total;
+
+    LocalAttachmentStore() throws IOException {
+      this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+      Thread thread = new Thread(this);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    String getUrl() {
+      return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/attachment";
+    }
+
+    void close() throws IOException {
+      serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          Socket connection = serverSocket.accept();
+
+          try {
+            handle(connection);
+          } finally {
+            connection.close();
+          }
+        }
+      } catch (IOException e) {
+        // Closed.
+      }
+    }
+
+    private void handle(Socket connection) throws IOException {
+      DataInputStream in            = new DataInputStream(connection.getInputStream());
+      String          range         = null;
+      int             contentLength = 0;
+      String          line;
+
+      while ((line = readLine(in)) != null && line.length() > 0) {
+        if      (line.startsWith("Content-Range: "))  range         = line.substring("Content-Range: ".length());
+        else if (line.startsWith("Content-Length: ")) contentLength = Integer.parseInt(line.substring("Content-Length: ".length()));
+      }
+
+      ranges.add(range);
+
+      byte[] body = new byte[contentLength];
+
+      if (ranges.size() == failRequest) {
+        in.readFully(body, 0, contentLength / 2);
+        return;
+      }
+
+      in.readFully(body);
+
+      OutputStream out = connection.getOutputStream();
+
+      if (range == null) {
+        contents.reset();
+        contents.write(body);
+        total = body.length;
+        out.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes());
+        return;
+      }
+
+      String[] parts = range.substring("bytes ".length()).split("/");
+      total = Long.parseLong(parts[1]);
+
+      if (!parts[0].equals("*")) {
+        long start = Long.parseLong(parts[0].substring(0, parts[0].indexOf('-')));
+
+        if (start == contents.size()) {
+          contents.write(body);
+        }
+      }
+
+      if (contents.size() == total) {
+        out.write("HTTP/1.1 201 Created\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes());
+      } else {
+        out.write(("HTTP/1.1 308 Resume Incomplete\r\n" +
+                   (contents.size() > 0 ? "Range: bytes=0-" + (contents.size() - 1) + "\r\n" : "") +
+                   "Content-Length: 0\r\nConnection: close\r\n\r\n").getBytes());
+      }
+    }
+
+    private String readLine(DataInputStream in) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int           c;
+
+      while ((c = in.read()) != -1 && c != '\n') {
+        if (c != '\r') line.append((char) c);
+      }
+
+      return c == -1 && line.length() == 0 ? null : line.toString();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.whispersystems.textsecure.push;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.google.thoughtcrimegson.Gson;
+
+import org.whispersystems.textsecure.internal.push.ContactTokenDetailsList;
+import org.whispersystems.textsecure.internal.push.ContactTokenList;
+import org.whispersystems.textsecure.internal.util.Base64;
+import org.whispersystems.textsecure.internal.util.JsonUtil;
+import org.whispersystems.textsecure.internal.util.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building directory request and response bodies as Strings with streaming them,
+ * for a directory of 10,000 contact tokens.
+ */
+public class DirectoryJsonBenchmarkTest extends AndroidTestCase {
+
+  private static final String TAG = DirectoryJsonBenchmarkTest.class.getSimpleName();
+
+  private static final int TOKEN_COUNT         = 10000;
+  private static final int WARMUP_ITERATIONS   = 3;
+  private static final int MEASURED_ITERATIONS = 10;
+
+  private ContactTokenList request;
+  private byte[]           response;
+
+  @Override
+  public void setUp() throws Exception {
+    SecureRandom  random   = new SecureRandom();
+    List<String>  tokens   = new LinkedList<>();
+    StringBuilder contacts = new StringBuilder("{\"contacts\":[");
+
+    for (int i=0;i<TOKEN_COUNT;i++) {
+      byte[] token = new byte[10];
+      random.nextBytes(token);
+
+      String encoded = Base64.encodeBytesWithoutPadding(token);
+      tokens.add(encoded);
+
+      if (i > 0) contacts.append(',');
+      contacts.append("{\"token\":\"").append(encoded).append("\",\"relay\":null,\"supportsSms\":false}");
+    }
+
+    this.request  = new ContactTokenList(tokens);
+    this.response = contacts.append("]}").toString().getBytes("UTF-8");
+  }
+
+  public void testStringDirectoryPayload() throws Exception {
+    long elapsed = time(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          byte[]                  body    = new Gson().toJson(request).getBytes();
+          String                  text    = Util.readFully(new ByteArrayInputStream(response));
+          ContactTokenDetailsList results = new Gson().fromJson(text, ContactTokenDetailsList.class);
+
+          assertTrue(body.length > 0);
+          assertEquals(TOKEN_COUNT, results.getContacts().size());
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        }
+      }
+    });
+
+    Log.w(TAG, "String directory payload: " + elapsed + "ms per round trip");
+  }
+
+  public void testStreamingDirectoryPayload() throws Exception {
+    long elapsed = time(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          CountingOutputStream out = new CountingOutputStream();
+          JsonUtil.toJson(request, out);
+
+          ContactTokenDetailsList results = JsonUtil.fromJson(new ByteArrayInputStream(response),
+                                                              ContactTokenDetailsList.class);
+
+          assertTrue(out.count > 0);
+          assertEquals(TOKEN_COUNT, results.getContacts().size());
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        }
+      }
+    });
+
+    Log.w(TAG, "Streaming directory payload: " + elapsed + "ms per round trip");
+  }
+
+  private long time(Runnable operation) {
+    for (int i=0;i<WARMUP_ITERATIONS;i++) {
+      operation.run();
+    }
+
+    long startTime = System.nanoTime();
+
+    for (int i=0;i<MEASURED_ITERATIONS;i++) {
+      operation.run();
+    }
+
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) / MEASURED_ITERATIONS;
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+      count += length;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package org.whispersystems.textsecure.push;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.libaxolotl.state.PreKeyBundle;
+import org.whispersystems.textsecure.api.push.PushAddress;
+import org.whispersystems.textsecure.internal.push.PreKeyBundleResolver;
+import org.whispersystems.textsecure.internal.push.PushServiceSocket;
+import org.whispersystems.textsecure.internal.push.PushTransport;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PreKeyBundleResolverTest extends AndroidTestCase {
+
+  private static final PushAddress ADDRESS = new PushAddress(1, "+14151231234", 1, null);
+
+  public void testSecondCallerWaitsForInFlightFetch() throws Exception {
+    BlockingSocket       socket   = new BlockingSocket();
+    PreKeyBundleResolver resolver = new PreKeyBundleResolver(socket);
+
+    resolver.prefetch(ADDRESS);
+    assertTrue(socket.started.await(5, TimeUnit.SECONDS));
+
+    Thread first  = startFetch(resolver);
+    Thread second = startFetch(resolver);
+
+    Thread.sleep(200);
+    assertEquals(1, socket.fetches.get());
+
+    socket.release.countDown();
+    first.join(5000);
+    second.join(5000);
+
+    assertFalse(first.isAlive());
+    assertFalse(second.isAlive());
+    assertEquals(2, socket.fetches.get());
+  }
+
+  public void testCancelDropsUnclaimedPrefetch() throws Exception {
+    BlockingSocket       socket   = new BlockingSocket();
+    PreKeyBundleResolver resolver = new PreKeyBundleResolver(socket);
+
+    resolver.prefetch(ADDRESS);
+    assertTrue(socket.started.await(5, TimeUnit.SECONDS));
+
+    resolver.cancel(ADDRESS);
+    socket.release.countDown();
+
+    resolver.getPreKeys(ADDRESS);
+    assertEquals(2, socket.fetches.get());
+  }
+
+  private Thread startFetch(final PreKeyBundleResolver resolver) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          resolver.getPreKeys(ADDRESS);
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+
+    thread.start();
+    return thread;
+  }
+
+  private static class BlockingSocket extends PushServiceSocket {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger  fetches = new AtomicInteger(0);
+
+    public BlockingSocket() {
+      super("https://example.com", (PushTransport)null, "+14151231234", "password");
+    }
+
+    @Override
+    public List<PreKeyBundle> getPreKeys(PushAddress destination) throws IOException {
+      fetches.incrementAndGet();
+      started.countDown();
+
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+
+      return new LinkedList<>();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package org.whispersystems.textsecure.push;
+
+import android.test.AndroidTestCase;
+
+import org.whispersystems.textsecure.api.push.ContactTokenDetails;
+import org.whispersystems.textsecure.api.push.exceptions.NotFoundException;
+import org.whispersystems.textsecure.api.push.exceptions.PushNetworkException;
+import org.whispersystems.textsecure.internal.push.EndpointLatency;
+import org.whispersystems.textsecure.internal.push.PushRequestBody;
+import org.whispersystems.textsecure.internal.push.PushResponse;
+import org.whispersystems.textsecure.internal.push.PushServiceSocket;
+import org.whispersystems.textsecure.internal.push.PushTransport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+public class PushServiceSocketTest extends AndroidTestCase {
+
+  public void testRequestsGoThroughTransport() throws Exception {
+    MockTransport     transport = new MockTransport(200, "{\"count\":42}");
+    PushServiceSocket socket    = new PushServiceSocket("https://example.com", transport, "+14151231234", "password");
+
+    assertEquals(42, socket.getAvailablePreKeys());
+    assertEquals(1, transport.requests.size());
+    assertEquals("GET https://example.com/v2/keys/", transport.requests.get(0));
+    assertTrue(transport.authorization.startsWith("Basic "));
+    assertTrue(transport.lastResponse.closed);
+  }
+
+  public void testStreamingDirectoryRequest() throws Exception {
+    MockTransport     transport = new MockTransport(200, "{\"contacts\":[{\"token\":\"abc\",\"relay\":\"foo\",\"supportsSms\":true}]}");
+    PushServiceSocket socket    = new PushServiceSocket("https://example.com", transport, "+14151231234", "password");
+
+    List<ContactTokenDetails> contacts = socket.retrieveDirectory(new HashSet<>(Arrays.asList("abc", "def")));
+
+    assertEquals(1, contacts.size());
+    assertEquals("abc", contacts.get(0).getToken());
+    assertEquals("foo", contacts.get(0).getRelay());
+    assertTrue(transport.bodies.get(0).contains("\"abc\""));
+    assertTrue(transport.bodies.get(0).contains("\"def\""));
+    assertTrue(transport.lastResponse.closed);
+  }
+
+  public void testErrorResponsesAreClosed() throws Exception {
+    MockTransport     transport = new MockTransport(404, "missing");
+    PushServiceSocket socket    = new PushServiceSocket("https://example.com", transport, "+14151231234", "password");
+
+    try {
+      socket.sendReceipt("+14152222222", 1000, null);
+      fail();
+    } catch (NotFoundException e) {
+      assertTrue(transport.lastResponse.closed);
+    }
+  }
+
+  public void testEndpointLatencies() throws Exception {
+    MockTransport     transport = new MockTransport(200, "");
+    PushServiceSocket socket    = new PushServiceSocket("https://example.com", transport, "+14151231234", "password");
+
+    long before = getRequestCount("PUT /v1/receipt");
+
+    socket.sendReceipt("+14152222222", 1000, null);
+    socket.sendReceipt("+14153333333", 1001, "relay");
+
+    assertEquals(before + 2, getRequestCount("PUT /v1/receipt"));
+
+    transport.failure = new IOException("unreachable");
+
+    try {
+      socket.sendReceipt("+14152222222", 1002, null);
+      fail();
+    } catch (PushNetworkException e) {
+      // good
+    }
+
+    for (EndpointLatency latency : PushServiceSocket.getEndpointLatencies()) {
+      if (latency.getEndpoint().equals("PUT /v1/receipt")) {
+        assertTrue(latency.getFailureCount() >= 1);
+      }
+    }
+  }
+
+  private long getRequestCount(String endpoint) {
+    for (EndpointLatency latency : PushServiceSocket.getEndpointLatencies()) {
+      if (latency.getEndpoint().equals(endpoint)) {
+        return latency.getRequestCount();
+      }
+    }
+
+    return 0;
+  }
+
+  private static class MockTransport implements PushTransport {
+
+    private final List<String> requests = new LinkedList<>();
+    private final List<String> bodies   = new LinkedList<>();
+    private final int          responseCode;
+    private final String       responseBody;
+
+    private String      authorization;
+    private MockBody    lastResponse;
+    private IOException failure;
+
+    MockTransport(int responseCode, String responseBody) {
+      this.responseCode = responseCode;
+      this.responseBody = responseBody;
+    }
+
+    @Override
+    public PushResponse execute(String method, String url, String authorization, PushRequestBody body)
+        throws IOException
+    {
+      if (failure != null) throw failure;
+
+      if (body != null) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        this.bodies.add(new String(out.toByteArray(), "UTF-8"));
+      }
+
+      this.requests.add(method + " " + url);
+      this.authorization = authorization;
+      this.lastResponse  = new MockBody(responseBody.getBytes());
+
+      return new PushResponse(responseCode, "", lastResponse);
+    }
+  }
+
+  private static class MockBody extends ByteArrayInputStream {
+    private boolean closed;
+
+    MockBody(byte[] body) {
+      super(body);
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      super.close();
+    }
+  }
+}
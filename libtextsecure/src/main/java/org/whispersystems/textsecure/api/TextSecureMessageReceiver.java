@@ -19,7 +19,9 @@ package org.whispersystems.textsecure.api;
 import org.whispersystems.libaxolotl.InvalidMessageException;
 import org.whispersystems.textsecure.api.crypto.AttachmentCipherInputStream;
 import org.whispersystems.textsecure.api.messages.TextSecureAttachmentPointer;
+import org.whispersystems.textsecure.api.push.DownloadCheckpoint;
 import org.whispersystems.textsecure.api.push.TrustStore;
+import org.whispersystems.textsecure.api.push.exceptions.PushNetworkException;
 import org.whispersystems.textsecure.internal.push.PushServiceSocket;
 
 import java.io.File;
@@ -39,7 +41,26 @@ public class TextSecureMessageReceiver {
   public InputStream retrieveAttachment(TextSecureAttachmentPointer pointer, File destination)
       throws IOException, InvalidMessageException
   {
-    socket.retrieveAttachment(pointer.getRelay().orNull(), pointer.getId(), destination);
+    return retrieveAttachment(pointer, destination, null, null);
+  }
+
+  /**
+   * Retrieve an attachment, resuming an earlier attempt that was interrupted.
+   *
+   * @param pointer The attachment to retrieve.
+   * @param destination The file to download the encrypted attachment to.  If an earlier
+   *                    attempt failed with a {@link PushNetworkException}, its partial download
+   *                    is still here.
+   * @param checkpoint The last checkpoint reported for the destination, or null to start over.
+   * @param listener Told each time more of the download is safely on disk, so that the
+   *                 checkpoint can be saved for the next attempt.
+   * @return A stream that decrypts the attachment, once the whole file's MAC has been verified.
+   */
+  public InputStream retrieveAttachment(TextSecureAttachmentPointer pointer, File destination,
+                                        DownloadCheckpoint checkpoint, DownloadCheckpoint.Listener listener)
+      throws IOException, InvalidMessageException
+  {
+    socket.retrieveAttachment(pointer.getRelay().orNull(), pointer.getId(), destination, checkpoint, listener);
     return new AttachmentCipherInputStream(destination, pointer.getKey());
   }
 
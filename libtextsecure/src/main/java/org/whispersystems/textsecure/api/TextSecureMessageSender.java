@@ -21,36 +21,62 @@ import android.util.Log;
 import com.google.protobuf.ByteString;
 
 import org.whispersystems.libaxolotl.InvalidKeyException;
+import org.whispersystems.libaxolotl.MultiDeviceSessionCipher;
+import org.whispersystems.libaxolotl.NoSessionException;
 import org.whispersystems.libaxolotl.SessionBuilder;
+import org.whispersystems.libaxolotl.groups.GroupCipher;
+import org.whispersystems.libaxolotl.groups.GroupSessionBuilder;
 import org.whispersystems.libaxolotl.protocol.CiphertextMessage;
 import org.whispersystems.libaxolotl.state.AxolotlStore;
 import org.whispersystems.libaxolotl.state.PreKeyBundle;
+import org.whispersystems.libaxolotl.util.KeyHelper;
 import org.whispersystems.libaxolotl.util.guava.Optional;
-import org.whispersystems.textsecure.api.crypto.TextSecureCipher;
+import org.whispersystems.textsecure.api.crypto.GroupSenderKeyStore;
 import org.whispersystems.textsecure.api.crypto.UntrustedIdentityException;
 import org.whispersystems.textsecure.api.messages.TextSecureAttachment;
 import org.whispersystems.textsecure.api.messages.TextSecureAttachmentStream;
 import org.whispersystems.textsecure.api.messages.TextSecureGroup;
 import org.whispersystems.textsecure.api.messages.TextSecureMessage;
+import org.whispersystems.textsecure.api.push.DeliveryReceipt;
 import org.whispersystems.textsecure.api.push.PushAddress;
+import org.whispersystems.textsecure.api.push.RecipientSendResult;
 import org.whispersystems.textsecure.api.push.TrustStore;
 import org.whispersystems.textsecure.internal.push.MismatchedDevices;
 import org.whispersystems.textsecure.internal.push.OutgoingPushMessage;
 import org.whispersystems.textsecure.internal.push.OutgoingPushMessageList;
 import org.whispersystems.textsecure.internal.push.PushAttachmentData;
+import org.whispersystems.textsecure.internal.push.PreKeyBundleResolver;
 import org.whispersystems.textsecure.internal.push.PushBody;
 import org.whispersystems.textsecure.internal.push.PushServiceSocket;
+import org.whispersystems.textsecure.internal.push.PushTransportDetails;
 import org.whispersystems.textsecure.internal.push.StaleDevices;
 import org.whispersystems.textsecure.api.push.exceptions.UnregisteredUserException;
 import org.whispersystems.textsecure.api.push.exceptions.EncapsulatedExceptions;
 import org.whispersystems.textsecure.internal.push.exceptions.MismatchedDevicesException;
 import org.whispersystems.textsecure.internal.push.exceptions.StaleDevicesException;
+import org.whispersystems.textsecure.internal.util.Hex;
 import org.whispersystems.textsecure.internal.util.Util;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.whispersystems.libaxolotl.MultiDeviceSessionCipher.DeviceMessage;
+import static org.whispersystems.libaxolotl.MultiDeviceSessionCipher.Padding;
 import static org.whispersystems.textsecure.internal.push.PushMessageProtos.IncomingPushMessageSignal.Type;
 import static org.whispersystems.textsecure.internal.push.PushMessageProtos.PushMessageContent;
 import static org.whispersystems.textsecure.internal.push.PushMessageProtos.PushMessageContent.AttachmentPointer;
@@ -60,7 +86,22 @@ public class TextSecureMessageSender {
 
   private static final String TAG = TextSecureMessageSender.class.getSimpleName();
 
+  private static final int MAX_SEND_ATTEMPTS   = 3;
+  private static final int MAX_FAN_OUT_THREADS = 8;
+
+  private static final ExecutorService FAN_OUT_EXECUTOR = createFanOutExecutor();
+
+  private static volatile boolean batchReceiptsSupported = true;
+
+  private static final Padding PADDING = new Padding() {
+    @Override
+    public byte[] pad(int sessionVersion, byte[] message) {
+      return new PushTransportDetails(sessionVersion).getPaddedMessageBody(message);
+    }
+  };
+
   private final PushServiceSocket       socket;
+  private final PreKeyBundleResolver    preKeyResolver;
   private final AxolotlStore            store;
   private final Optional<EventListener> eventListener;
 
@@ -68,20 +109,53 @@ public class TextSecureMessageSender {
                                  String user, String password, AxolotlStore store,
                                  Optional<EventListener> eventListener)
   {
-    this.socket        = new PushServiceSocket(url, trustStore, user, password);
-    this.store         = store;
-    this.eventListener = eventListener;
+    this.socket         = new PushServiceSocket(url, trustStore, user, password);
+    this.preKeyResolver = new PreKeyBundleResolver(socket);
+    this.store          = store;
+    this.eventListener  = eventListener;
   }
 
   public void sendDeliveryReceipt(PushAddress recipient, long messageId) throws IOException {
     this.socket.sendReceipt(recipient.getNumber(), messageId, recipient.getRelay());
   }
 
+  /**
+   * Send several delivery receipts for messages that arrived through the same relay.  They're
+   * sent in one request if the server supports it, and otherwise one at a time.
+   *
+   * @param receipts The receipts to send.
+   * @param relay The relay the messages arrived through, or null.
+   * @param listener Told about each receipt as it's sent, so that a caller whose request
+   *                 fails partway through one-at-a-time sending knows which already went out.
+   */
+  public void sendDeliveryReceipts(List<DeliveryReceipt> receipts, String relay,
+                                   ReceiptListener listener)
+      throws IOException
+  {
+    if (receipts.size() > 1 && batchReceiptsSupported) {
+      if (socket.sendReceipts(receipts, relay)) {
+        for (DeliveryReceipt receipt : receipts) {
+          listener.onReceiptSent(receipt);
+        }
+
+        return;
+      }
+
+      Log.w(TAG, "Server doesn't support batched receipts, sending individually...");
+      batchReceiptsSupported = false;
+    }
+
+    for (DeliveryReceipt receipt : receipts) {
+      socket.sendReceipt(receipt.getDestination(), receipt.getTimestamp(), relay);
+      listener.onReceiptSent(receipt);
+    }
+  }
+
   public void sendMessage(PushAddress recipient, TextSecureMessage message)
       throws UntrustedIdentityException, IOException
   {
-    byte[] content = createMessageContent(message);
-    sendMessage(recipient, message.getTimestamp(), content);
+    byte[] content = createMessageContent(message).build().toByteArray();
+    sendMessage(recipient, new PairwiseEncrypter(message.getTimestamp(), content));
 
     if (message.isEndSession()) {
       store.deleteAllSessions(recipient.getRecipientId());
@@ -95,11 +169,124 @@ public class TextSecureMessageSender {
   public void sendMessage(List<PushAddress> recipients, TextSecureMessage message)
       throws IOException, EncapsulatedExceptions
   {
-    byte[] content = createMessageContent(message);
-    sendMessage(recipients, message.getTimestamp(), content);
+    sendMessage(recipients, message, Optional.<ProgressListener>absent());
   }
 
-  private byte[] createMessageContent(TextSecureMessage message) throws IOException {
+  /**
+   * Send a message to each of a list of recipients.  Up to {@link #MAX_FAN_OUT_THREADS}
+   * recipients, across all senders, are sent to at once.
+   *
+   * @param listener Notified as each recipient is sent to, or fails.
+   * @throws IOException If any recipient failed for a reason other than an untrusted identity
+   *                     or being unregistered, once every recipient has been tried.
+   * @throws EncapsulatedExceptions If any recipients had untrusted identities or were
+   *                                unregistered, and none failed for any other reason.
+   */
+  public void sendMessage(List<PushAddress> recipients, TextSecureMessage message,
+                          Optional<ProgressListener> listener)
+      throws IOException, EncapsulatedExceptions
+  {
+    byte[] content = createMessageContent(message).build().toByteArray();
+    sendMessage(recipients, new PairwiseEncrypter(message.getTimestamp(), content), listener);
+  }
+
+  /**
+   * Send a group message to each of a list of recipients, encrypting it just once with our
+   * sender key for the group rather than once for every device.  Devices that haven't been
+   * sent our current sender key get the message pairwise encrypted instead, along with the
+   * key.  The key is replaced whenever a member who had it is no longer a recipient, so that
+   * they can't read anything sent to the group after they've left.
+   *
+   * @param senderKeyStore Where our sender keys, and the devices they've been sent to, are kept.
+   * @param listener Notified as each recipient is sent to, or fails.
+   * @throws IOException If any recipient failed for a reason other than an untrusted identity
+   *                     or being unregistered, once every recipient has been tried.
+   * @throws EncapsulatedExceptions If any recipients had untrusted identities or were
+   *                                unregistered, and none failed for any other reason.
+   */
+  public void sendGroupMessage(GroupSenderKeyStore senderKeyStore, List<PushAddress> recipients,
+                               TextSecureMessage message, Optional<ProgressListener> listener)
+      throws IOException, EncapsulatedExceptions
+  {
+    if (!message.getGroupInfo().isPresent()) {
+      throw new IllegalArgumentException("Not a group message!");
+    }
+
+    try {
+      String              senderKeyId    = getSenderKeyId(message.getGroupInfo().get());
+      GroupSessionBuilder sessionBuilder = new GroupSessionBuilder(senderKeyStore);
+      Set<String>         distributed    = getDistributedDevices(senderKeyStore, senderKeyId, recipients);
+
+      PushMessageContent.Builder content    = createMessageContent(message);
+      byte[]                     ciphertext = new GroupCipher(senderKeyStore, senderKeyId).encrypt(PADDING.pad(CiphertextMessage.CURRENT_VERSION,
+                                                                                                               content.build().toByteArray()));
+
+      content.setSenderKeyDistribution(ByteString.copyFrom(sessionBuilder.getDistributionMessage(senderKeyId).serialize()));
+
+      try {
+        sendMessage(recipients, new SenderKeyEncrypter(message.getTimestamp(), ciphertext,
+                                                       content.build().toByteArray(), distributed),
+                    listener);
+      } finally {
+        senderKeyStore.storeDistributedDevices(senderKeyId, new HashSet<>(distributed));
+      }
+    } catch (NoSessionException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Load the devices that have our current sender key for a group, first replacing the key
+   * if we don't have one yet or if any member who has it is no longer a recipient.
+   */
+  private Set<String> getDistributedDevices(GroupSenderKeyStore senderKeyStore, String senderKeyId,
+                                            List<PushAddress> recipients)
+  {
+    GroupSessionBuilder sessionBuilder = new GroupSessionBuilder(senderKeyStore);
+    Set<String>         distributed    = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    Set<String>         numbers        = new HashSet<>();
+
+    for (PushAddress recipient : recipients) {
+      numbers.add(recipient.getNumber());
+    }
+
+    distributed.addAll(senderKeyStore.loadDistributedDevices(senderKeyId));
+
+    boolean replace = !hasSenderKey(sessionBuilder, senderKeyId);
+
+    for (String device : distributed) {
+      if (!numbers.contains(device.substring(0, device.lastIndexOf('.')))) {
+        replace = true;
+      }
+    }
+
+    if (replace) {
+      sessionBuilder.process(senderKeyId, KeyHelper.generateSenderKeyId(), 0,
+                             KeyHelper.generateSenderKey(), KeyHelper.generateSenderSigningKey());
+      distributed.clear();
+    }
+
+    return distributed;
+  }
+
+  private boolean hasSenderKey(GroupSessionBuilder sessionBuilder, String senderKeyId) {
+    try {
+      sessionBuilder.getDistributionMessage(senderKeyId);
+      return true;
+    } catch (NoSessionException e) {
+      return false;
+    }
+  }
+
+  private String getSenderKeyId(TextSecureGroup group) {
+    return "group." + Hex.toStringCondensed(group.getGroupId());
+  }
+
+  private static String getDeviceName(PushAddress recipient, int deviceId) {
+    return recipient.getNumber() + "." + deviceId;
+  }
+
+  private PushMessageContent.Builder createMessageContent(TextSecureMessage message) throws IOException {
     PushMessageContent.Builder builder  = PushMessageContent.newBuilder();
     List<AttachmentPointer>    pointers = createAttachmentPointers(message.getAttachments());
 
@@ -119,7 +306,7 @@ public class TextSecureMessageSender {
       builder.setFlags(PushMessageContent.Flags.END_SESSION_VALUE);
     }
 
-    return builder.build().toByteArray();
+    return builder;
   }
 
   private GroupContext createGroupContent(TextSecureGroup group) throws IOException {
@@ -145,46 +332,131 @@ public class TextSecureMessageSender {
     return builder.build();
   }
 
-  private void sendMessage(List<PushAddress> recipients, long timestamp, byte[] content)
+  private void sendMessage(final List<PushAddress> recipients, final RecipientEncrypter encrypter,
+                           final Optional<ProgressListener> listener)
       throws IOException, EncapsulatedExceptions
   {
-    List<UntrustedIdentityException> untrustedIdentities = new LinkedList<>();
-    List<UnregisteredUserException>  unregisteredUsers   = new LinkedList<>();
+    List<Future<RecipientSendResult>> results   = new ArrayList<>(recipients.size());
+    final AtomicInteger               completed = new AtomicInteger(0);
 
     for (PushAddress recipient : recipients) {
-      try {
-        sendMessage(recipient, timestamp, content);
-      } catch (UntrustedIdentityException e) {
-        Log.w(TAG, e);
-        untrustedIdentities.add(e);
-      } catch (UnregisteredUserException e) {
-        Log.w(TAG, e);
-        unregisteredUsers.add(e);
+      if (!store.containsSession(recipient.getRecipientId(), recipient.getDeviceId())) {
+        preKeyResolver.prefetch(recipient);
       }
     }
 
+    for (final PushAddress recipient : recipients) {
+      results.add(FAN_OUT_EXECUTOR.submit(new Callable<RecipientSendResult>() {
+        @Override
+        public RecipientSendResult call() {
+          RecipientSendResult result = sendMessageForResult(recipient, encrypter);
+
+          if (listener.isPresent()) {
+            listener.get().onRecipientComplete(result, completed.incrementAndGet(), recipients.size());
+          }
+
+          return result;
+        }
+      }));
+    }
+
+    List<RecipientSendResult> sendResults;
+
+    try {
+      sendResults = getResults(results);
+    } finally {
+      for (PushAddress recipient : recipients) {
+        preKeyResolver.cancel(recipient);
+      }
+    }
+
+    List<UntrustedIdentityException> untrustedIdentities = new LinkedList<>();
+    List<UnregisteredUserException>  unregisteredUsers   = new LinkedList<>();
+    IOException                      ioException         = null;
+
+    for (RecipientSendResult result : sendResults) {
+      Exception failure = result.getFailure();
+
+      if      (failure == null)                               continue;
+      else if (failure instanceof UntrustedIdentityException) untrustedIdentities.add((UntrustedIdentityException)failure);
+      else if (failure instanceof UnregisteredUserException)  unregisteredUsers.add((UnregisteredUserException)failure);
+      else if (ioException == null)                           ioException = (IOException)failure;
+    }
+
+    if (ioException != null) {
+      throw ioException;
+    }
+
     if (!untrustedIdentities.isEmpty() || !unregisteredUsers.isEmpty()) {
       throw new EncapsulatedExceptions(untrustedIdentities, unregisteredUsers);
     }
   }
 
-  private void sendMessage(PushAddress recipient, long timestamp, byte[] content)
+  private List<RecipientSendResult> getResults(List<Future<RecipientSendResult>> futures)
+      throws IOException
+  {
+    List<RecipientSendResult> results = new ArrayList<>(futures.size());
+
+    try {
+      for (Future<RecipientSendResult> future : futures) {
+        results.add(future.get());
+      }
+
+      return results;
+    } catch (InterruptedException e) {
+      for (Future<RecipientSendResult> future : futures) {
+        future.cancel(false);
+      }
+
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while sending to group");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+      if (e.getCause() instanceof Error)            throw (Error)e.getCause();
+      throw new AssertionError(e);
+    }
+  }
+
+  private RecipientSendResult sendMessageForResult(PushAddress recipient, RecipientEncrypter encrypter) {
+    long startTime = System.currentTimeMillis();
+
+    try {
+      int attempts = sendMessage(recipient, encrypter);
+      return new RecipientSendResult(recipient, null, attempts, System.currentTimeMillis() - startTime);
+    } catch (UntrustedIdentityException | IOException e) {
+      Log.w(TAG, e);
+      return new RecipientSendResult(recipient, e, 0, System.currentTimeMillis() - startTime);
+    }
+  }
+
+  /**
+   * Encrypt and send a message to every device of a recipient, refreshing the recipient's
+   * devices and trying again whenever the server reports that they've changed.
+   *
+   * @return The number of attempts it took.
+   */
+  private int sendMessage(PushAddress recipient, RecipientEncrypter encrypter)
       throws UntrustedIdentityException, IOException
   {
-    for (int i=0;i<3;i++) {
+    for (int i=1;i<=MAX_SEND_ATTEMPTS;i++) {
       try {
-        OutgoingPushMessageList messages = getEncryptedMessages(socket, recipient, timestamp, content);
+        OutgoingPushMessageList messages = encrypter.encrypt(recipient);
         socket.sendMessage(messages);
+        encrypter.onSent(recipient, messages);
 
-        return;
+        return i;
       } catch (MismatchedDevicesException mde) {
         Log.w(TAG, mde);
         handleMismatchedDevices(socket, recipient, mde.getMismatchedDevices());
+        encrypter.onDevicesChanged(recipient, mde.getMismatchedDevices().getExtraDevices());
       } catch (StaleDevicesException ste) {
         Log.w(TAG, ste);
         handleStaleDevices(recipient, ste.getStaleDevices());
+        encrypter.onDevicesChanged(recipient, ste.getStaleDevices().getStaleDevices());
       }
     }
+
+    throw new IOException("Devices still didn't match after " + MAX_SEND_ATTEMPTS + " attempts");
   }
 
   private List<AttachmentPointer> createAttachmentPointers(Optional<List<TextSecureAttachment>> attachments) throws IOException {
@@ -212,7 +484,8 @@ public class TextSecureMessageSender {
     PushAttachmentData attachmentData = new PushAttachmentData(attachment.getContentType(),
                                                                attachment.getInputStream(),
                                                                attachment.getLength(),
-                                                               attachmentKey);
+                                                               attachmentKey,
+                                                               attachment.getListener().orNull());
 
     long attachmentId = socket.sendAttachment(attachmentData);
 
@@ -230,31 +503,60 @@ public class TextSecureMessageSender {
                                                        byte[] plaintext)
       throws IOException, UntrustedIdentityException
   {
-    PushBody masterBody = getEncryptedMessage(socket, recipient, plaintext);
+    List<Integer>             deviceIds = getDeviceIds(socket, recipient);
+    List<OutgoingPushMessage> messages  = getEncryptedMessages(recipient, deviceIds, plaintext);
 
+    return new OutgoingPushMessageList(recipient.getNumber(), timestamp, recipient.getRelay(), messages);
+  }
+
+  private List<OutgoingPushMessage> getEncryptedMessages(PushAddress recipient,
+                                                         List<Integer> deviceIds,
+                                                         byte[] plaintext)
+  {
+    MultiDeviceSessionCipher  cipher   = new MultiDeviceSessionCipher(store, recipient.getRecipientId(), deviceIds);
     List<OutgoingPushMessage> messages = new LinkedList<>();
-    messages.add(new OutgoingPushMessage(recipient, masterBody));
 
-    for (int deviceId : store.getSubDeviceSessions(recipient.getRecipientId())) {
-      PushAddress device = new PushAddress(recipient.getRecipientId(), recipient.getNumber(), deviceId, recipient.getRelay());
-      PushBody    body   = getEncryptedMessage(socket, device, plaintext);
+    for (DeviceMessage message : cipher.encrypt(plaintext, PADDING)) {
+      PushAddress device = message.getDeviceId() == recipient.getDeviceId() ? recipient : getDevice(recipient, message.getDeviceId());
+      messages.add(new OutgoingPushMessage(device, getPushBody(message)));
+    }
+
+    return messages;
+  }
 
-      messages.add(new OutgoingPushMessage(device, body));
+  /**
+   * @return Every device of a recipient that we know of, once each has a session.
+   */
+  private List<Integer> getDeviceIds(PushServiceSocket socket, PushAddress recipient)
+      throws IOException, UntrustedIdentityException
+  {
+    List<Integer> deviceIds = new LinkedList<>();
+
+    establishSession(socket, recipient);
+    deviceIds.add(recipient.getDeviceId());
+
+    for (int deviceId : store.getSubDeviceSessions(recipient.getRecipientId())) {
+      establishSession(socket, getDevice(recipient, deviceId));
+      deviceIds.add(deviceId);
     }
 
-    return new OutgoingPushMessageList(recipient.getNumber(), timestamp, recipient.getRelay(), messages);
+    return deviceIds;
   }
 
-  private PushBody getEncryptedMessage(PushServiceSocket socket, PushAddress recipient, byte[] plaintext)
+  private PushAddress getDevice(PushAddress recipient, int deviceId) {
+    return new PushAddress(recipient.getRecipientId(), recipient.getNumber(), deviceId, recipient.getRelay());
+  }
+
+  private void establishSession(PushServiceSocket socket, PushAddress recipient)
       throws IOException, UntrustedIdentityException
   {
     if (!store.containsSession(recipient.getRecipientId(), recipient.getDeviceId())) {
       try {
-        List<PreKeyBundle> preKeys = socket.getPreKeys(recipient);
+        List<PreKeyBundle> preKeys = preKeyResolver.getPreKeys(recipient);
 
         for (PreKeyBundle preKey : preKeys) {
           try {
-            SessionBuilder sessionBuilder = new SessionBuilder(store, recipient.getRecipientId(), recipient.getDeviceId());
+            SessionBuilder sessionBuilder = new SessionBuilder(store, recipient.getRecipientId(), preKey.getDeviceId());
             sessionBuilder.process(preKey);
           } catch (org.whispersystems.libaxolotl.UntrustedIdentityException e) {
             throw new UntrustedIdentityException("Untrusted identity key!", recipient.getNumber(), preKey.getIdentityKey());
@@ -268,17 +570,18 @@ public class TextSecureMessageSender {
         throw new IOException(e);
       }
     }
+  }
 
-    TextSecureCipher  cipher               = new TextSecureCipher(store, recipient.getRecipientId(), recipient.getDeviceId());
-    CiphertextMessage message              = cipher.encrypt(plaintext);
-    int               remoteRegistrationId = cipher.getRemoteRegistrationId();
+  private PushBody getPushBody(DeviceMessage message) {
+    CiphertextMessage ciphertext           = message.getCiphertextMessage();
+    int               remoteRegistrationId = message.getRemoteRegistrationId();
 
-    if (message.getType() == CiphertextMessage.PREKEY_TYPE) {
-      return new PushBody(Type.PREKEY_BUNDLE_VALUE, remoteRegistrationId, message.serialize());
-    } else if (message.getType() == CiphertextMessage.WHISPER_TYPE) {
-      return new PushBody(Type.CIPHERTEXT_VALUE, remoteRegistrationId, message.serialize());
+    if (ciphertext.getType() == CiphertextMessage.PREKEY_TYPE) {
+      return new PushBody(Type.PREKEY_BUNDLE_VALUE, remoteRegistrationId, ciphertext.serialize());
+    } else if (ciphertext.getType() == CiphertextMessage.WHISPER_TYPE) {
+      return new PushBody(Type.CIPHERTEXT_VALUE, remoteRegistrationId, ciphertext.serialize());
     } else {
-      throw new AssertionError("Unknown ciphertext type: " + message.getType());
+      throw new AssertionError("Unknown ciphertext type: " + ciphertext.getType());
     }
   }
 
@@ -291,13 +594,9 @@ public class TextSecureMessageSender {
         store.deleteSession(recipient.getRecipientId(), extraDeviceId);
       }
 
-      for (int missingDeviceId : mismatchedDevices.getMissingDevices()) {
-        PushAddress  device = new PushAddress(recipient.getRecipientId(), recipient.getNumber(),
-                                              missingDeviceId, recipient.getRelay());
-        PreKeyBundle preKey = socket.getPreKey(device);
-
+      for (PreKeyBundle preKey : getMissingPreKeys(recipient, mismatchedDevices.getMissingDevices())) {
         try {
-          SessionBuilder sessionBuilder = new SessionBuilder(store, device.getRecipientId(), device.getDeviceId());
+          SessionBuilder sessionBuilder = new SessionBuilder(store, recipient.getRecipientId(), preKey.getDeviceId());
           sessionBuilder.process(preKey);
         } catch (org.whispersystems.libaxolotl.UntrustedIdentityException e) {
           throw new UntrustedIdentityException("Untrusted identity key!", recipient.getNumber(), preKey.getIdentityKey());
@@ -308,6 +607,28 @@ public class TextSecureMessageSender {
     }
   }
 
+  /**
+   * Fetch the bundles for several missing devices with one request for all of the
+   * recipient's devices, rather than one request each.
+   */
+  private List<PreKeyBundle> getMissingPreKeys(PushAddress recipient, List<Integer> missingDeviceIds)
+      throws IOException
+  {
+    List<PreKeyBundle> preKeys = new LinkedList<>();
+
+    if (missingDeviceIds.size() == 1) {
+      preKeys.add(preKeyResolver.getPreKey(getDevice(recipient, missingDeviceIds.get(0))));
+    } else if (missingDeviceIds.size() > 1) {
+      for (PreKeyBundle preKey : preKeyResolver.getPreKeys(getDevice(recipient, PushAddress.DEFAULT_DEVICE_ID))) {
+        if (missingDeviceIds.contains(preKey.getDeviceId())) {
+          preKeys.add(preKey);
+        }
+      }
+    }
+
+    return preKeys;
+  }
+
   private void handleStaleDevices(PushAddress recipient, StaleDevices staleDevices) {
     long recipientId = recipient.getRecipientId();
 
@@ -316,8 +637,127 @@ public class TextSecureMessageSender {
     }
   }
 
+  private static ExecutorService createFanOutExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_FAN_OUT_THREADS, MAX_FAN_OUT_THREADS,
+                                                         30, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>());
+    executor.allowCoreThreadTimeOut(true);
+
+    return executor;
+  }
+
+  /**
+   * Builds the messages that send one recipient's copy of a message to each of their devices.
+   */
+  private abstract class RecipientEncrypter {
+    abstract OutgoingPushMessageList encrypt(PushAddress recipient)
+        throws IOException, UntrustedIdentityException;
+
+    /**
+     * Called once the server has accepted the messages for a recipient.
+     */
+    void onSent(PushAddress recipient, OutgoingPushMessageList messages) {}
+
+    /**
+     * Called when some of a recipient's devices have been removed or re-registered.
+     */
+    void onDevicesChanged(PushAddress recipient, List<Integer> deviceIds) {}
+  }
+
+  private class PairwiseEncrypter extends RecipientEncrypter {
+    private final long   timestamp;
+    private final byte[] content;
+
+    private PairwiseEncrypter(long timestamp, byte[] content) {
+      this.timestamp = timestamp;
+      this.content   = content;
+    }
+
+    @Override
+    OutgoingPushMessageList encrypt(PushAddress recipient)
+        throws IOException, UntrustedIdentityException
+    {
+      return getEncryptedMessages(socket, recipient, timestamp, content);
+    }
+  }
+
+  /**
+   * Sends devices that have our sender key the one sender key ciphertext, and pairwise
+   * encrypts the message and our sender key for any that don't.
+   */
+  private class SenderKeyEncrypter extends RecipientEncrypter {
+    private final long        timestamp;
+    private final byte[]      ciphertext;
+    private final byte[]      distributionContent;
+    private final Set<String> distributed;
+
+    private SenderKeyEncrypter(long timestamp, byte[] ciphertext, byte[] distributionContent,
+                               Set<String> distributed)
+    {
+      this.timestamp           = timestamp;
+      this.ciphertext          = ciphertext;
+      this.distributionContent = distributionContent;
+      this.distributed         = distributed;
+    }
+
+    @Override
+    OutgoingPushMessageList encrypt(PushAddress recipient)
+        throws IOException, UntrustedIdentityException
+    {
+      List<OutgoingPushMessage> messages          = new LinkedList<>();
+      List<Integer>             pairwiseDeviceIds = new LinkedList<>();
+
+      for (int deviceId : getDeviceIds(socket, recipient)) {
+        if (distributed.contains(getDeviceName(recipient, deviceId))) {
+          int registrationId = store.loadSession(recipient.getRecipientId(), deviceId)
+                                    .getSessionState()
+                                    .getRemoteRegistrationId();
+
+          messages.add(new OutgoingPushMessage(getDevice(recipient, deviceId),
+                                               new PushBody(Type.SENDERKEY_VALUE, registrationId, ciphertext)));
+        } else {
+          pairwiseDeviceIds.add(deviceId);
+        }
+      }
+
+      if (!pairwiseDeviceIds.isEmpty()) {
+        messages.addAll(getEncryptedMessages(recipient, pairwiseDeviceIds, distributionContent));
+      }
+
+      return new OutgoingPushMessageList(recipient.getNumber(), timestamp, recipient.getRelay(), messages);
+    }
+
+    @Override
+    void onSent(PushAddress recipient, OutgoingPushMessageList messages) {
+      for (OutgoingPushMessage message : messages.getMessages()) {
+        distributed.add(getDeviceName(recipient, message.getDestinationDeviceId()));
+      }
+    }
+
+    @Override
+    void onDevicesChanged(PushAddress recipient, List<Integer> deviceIds) {
+      for (int deviceId : deviceIds) {
+        distributed.remove(getDeviceName(recipient, deviceId));
+      }
+    }
+  }
+
   public static interface EventListener {
     public void onSecurityEvent(long recipientId);
   }
 
+  public static interface ProgressListener {
+    /**
+     * Called from a sender thread once each recipient has been sent to, or has failed.
+     *
+     * @param completed The number of recipients that are done, including this one.
+     * @param total The number of recipients being sent to.
+     */
+    public void onRecipientComplete(RecipientSendResult result, int completed, int total);
+  }
+
+  public static interface ReceiptListener {
+    public void onReceiptSent(DeliveryReceipt receipt);
+  }
+
 }
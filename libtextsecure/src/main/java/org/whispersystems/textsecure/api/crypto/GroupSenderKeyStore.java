@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.api.crypto;
+
+import org.whispersystems.libaxolotl.groups.state.SenderKeyStore;
+
+import java.util.Set;
+
+/**
+ * A {@link SenderKeyStore} that also remembers which devices have been sent the sender key
+ * we currently use for each group.
+ *
+ * Sender keys we send with are stored under a name derived from the group id, while those
+ * we receive with are stored under the number and device id of the member who sent them.
+ */
+public interface GroupSenderKeyStore extends SenderKeyStore {
+
+  /**
+   * @return The "number.deviceId" names of every device that has been sent our current
+   *         sender key for the group, or an empty set if there are none.
+   */
+  public Set<String> loadDistributedDevices(String senderKeyId);
+
+  public void storeDistributedDevices(String senderKeyId, Set<String> devices);
+
+}
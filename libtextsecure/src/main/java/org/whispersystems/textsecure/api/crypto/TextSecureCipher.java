@@ -16,6 +16,8 @@
  */
 package org.whispersystems.textsecure.api.crypto;
 
+import android.util.Log;
+
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import org.whispersystems.libaxolotl.DuplicateMessageException;
@@ -27,10 +29,15 @@ import org.whispersystems.libaxolotl.LegacyMessageException;
 import org.whispersystems.libaxolotl.NoSessionException;
 import org.whispersystems.libaxolotl.SessionCipher;
 import org.whispersystems.libaxolotl.UntrustedIdentityException;
+import org.whispersystems.libaxolotl.groups.GroupCipher;
+import org.whispersystems.libaxolotl.groups.GroupSessionBuilder;
+import org.whispersystems.libaxolotl.groups.state.SenderKeyStore;
 import org.whispersystems.libaxolotl.protocol.CiphertextMessage;
 import org.whispersystems.libaxolotl.protocol.PreKeyWhisperMessage;
+import org.whispersystems.libaxolotl.protocol.SenderKeyDistributionMessage;
 import org.whispersystems.libaxolotl.protocol.WhisperMessage;
 import org.whispersystems.libaxolotl.state.AxolotlStore;
+import org.whispersystems.libaxolotl.util.guava.Optional;
 import org.whispersystems.textsecure.api.messages.TextSecureAttachment;
 import org.whispersystems.textsecure.api.messages.TextSecureAttachmentPointer;
 import org.whispersystems.textsecure.api.messages.TextSecureEnvelope;
@@ -46,10 +53,25 @@ import static org.whispersystems.textsecure.internal.push.PushMessageProtos.Push
 
 public class TextSecureCipher {
 
-  private final SessionCipher sessionCipher;
+  private static final String TAG = TextSecureCipher.class.getSimpleName();
+
+  private final SessionCipher            sessionCipher;
+  private final Optional<SenderKeyStore> senderKeyStore;
 
   public TextSecureCipher(AxolotlStore axolotlStore, long recipientId, int deviceId) {
-    this.sessionCipher = new SessionCipher(axolotlStore, recipientId, deviceId);
+    this(axolotlStore, Optional.<SenderKeyStore>absent(), recipientId, deviceId);
+  }
+
+  /**
+   * @param senderKeyStore Where the sender keys of group members are kept.  Without one,
+   *                       sender key messages can't be decrypted, and sender keys
+   *                       distributed with pairwise messages are ignored.
+   */
+  public TextSecureCipher(AxolotlStore axolotlStore, Optional<SenderKeyStore> senderKeyStore,
+                          long recipientId, int deviceId)
+  {
+    this.sessionCipher  = new SessionCipher(axolotlStore, recipientId, deviceId);
+    this.senderKeyStore = senderKeyStore;
   }
 
   public CiphertextMessage encrypt(byte[] unpaddedMessage) {
@@ -64,20 +86,33 @@ public class TextSecureCipher {
   {
     try {
       byte[] paddedMessage;
+      int    messageVersion;
 
       if (envelope.isPreKeyWhisperMessage()) {
-        paddedMessage = sessionCipher.decrypt(new PreKeyWhisperMessage(envelope.getMessage()));
+        paddedMessage  = sessionCipher.decrypt(new PreKeyWhisperMessage(envelope.getMessage()));
+        messageVersion = sessionCipher.getSessionVersion();
       } else if (envelope.isWhisperMessage()) {
-        paddedMessage = sessionCipher.decrypt(new WhisperMessage(envelope.getMessage()));
+        paddedMessage  = sessionCipher.decrypt(new WhisperMessage(envelope.getMessage()));
+        messageVersion = sessionCipher.getSessionVersion();
+      } else if (envelope.isSenderKeyMessage()) {
+        paddedMessage  = getGroupCipher(envelope).decrypt(envelope.getMessage());
+        messageVersion = CiphertextMessage.CURRENT_VERSION;
       } else if (envelope.isPlaintext()) {
-        paddedMessage = envelope.getMessage();
+        paddedMessage  = envelope.getMessage();
+        messageVersion = sessionCipher.getSessionVersion();
       } else {
         throw new InvalidMessageException("Unknown type: " + envelope.getType());
       }
 
-      PushTransportDetails transportDetails = new PushTransportDetails(sessionCipher.getSessionVersion());
+      PushTransportDetails transportDetails = new PushTransportDetails(messageVersion);
       PushMessageContent   content          = PushMessageContent.parseFrom(transportDetails.getStrippedPaddingMessageBody(paddedMessage));
 
+      if (content.hasSenderKeyDistribution() &&
+          (envelope.isWhisperMessage() || envelope.isPreKeyWhisperMessage()))
+      {
+        handleSenderKeyDistribution(envelope, content.getSenderKeyDistribution().toByteArray());
+      }
+
       return createTextSecureMessage(envelope, content);
     } catch (InvalidProtocolBufferException e) {
       throw new InvalidMessageException(e);
@@ -88,11 +123,47 @@ public class TextSecureCipher {
     return sessionCipher.getRemoteRegistrationId();
   }
 
+  private GroupCipher getGroupCipher(TextSecureEnvelope envelope) throws NoSessionException {
+    if (!senderKeyStore.isPresent()) {
+      throw new NoSessionException("No sender key store for sender key message!");
+    }
+
+    return new GroupCipher(senderKeyStore.get(), getSenderKeyId(envelope));
+  }
+
+  /**
+   * A distribution message only arrives alongside a message that was pairwise encrypted,
+   * so it's as trustworthy as the session it came over.  A malformed one shouldn't cost
+   * us the message it was sent with.
+   */
+  private void handleSenderKeyDistribution(TextSecureEnvelope envelope, byte[] serialized) {
+    if (!senderKeyStore.isPresent()) {
+      Log.w(TAG, "Ignoring sender key distribution, no sender key store.");
+      return;
+    }
+
+    try {
+      new GroupSessionBuilder(senderKeyStore.get()).process(getSenderKeyId(envelope),
+                                                            new SenderKeyDistributionMessage(serialized));
+    } catch (InvalidMessageException e) {
+      Log.w(TAG, e);
+    }
+  }
+
+  /**
+   * Every sender key a member sends to any of our groups with is kept in the same record,
+   * since the group a sender key message belongs to is only known once it's decrypted.  The
+   * record only keeps that member's most recent keys, so it doesn't grow with each group.
+   */
+  private String getSenderKeyId(TextSecureEnvelope envelope) {
+    return envelope.getSource() + "." + envelope.getSourceDevice();
+  }
+
   private TextSecureMessage createTextSecureMessage(TextSecureEnvelope envelope, PushMessageContent content) {
     TextSecureGroup            groupInfo   = createGroupInfo(envelope, content);
     List<TextSecureAttachment> attachments = new LinkedList<>();
     boolean                    endSession  = ((content.getFlags() & PushMessageContent.Flags.END_SESSION_VALUE) != 0);
-    boolean                    secure      = envelope.isWhisperMessage() || envelope.isPreKeyWhisperMessage();
+    boolean                    secure      = envelope.isWhisperMessage() || envelope.isPreKeyWhisperMessage() || envelope.isSenderKeyMessage();
 
     for (PushMessageContent.AttachmentPointer pointer : content.getAttachmentsList()) {
       attachments.add(new TextSecureAttachmentPointer(pointer.getId(),
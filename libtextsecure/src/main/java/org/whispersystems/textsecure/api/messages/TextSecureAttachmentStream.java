@@ -16,17 +16,30 @@
  */
 package org.whispersystems.textsecure.api.messages;
 
+import org.whispersystems.libaxolotl.util.guava.Optional;
+
 import java.io.InputStream;
 
 public class TextSecureAttachmentStream extends TextSecureAttachment {
 
-  private final InputStream inputStream;
-  private final long        length;
+  private final InputStream                inputStream;
+  private final long                       length;
+  private final Optional<ProgressListener> listener;
 
   public TextSecureAttachmentStream(InputStream inputStream, String contentType, long length) {
+    this(inputStream, contentType, length, null);
+  }
+
+  /**
+   * @param listener Told how much of the attachment has been uploaded as it's sent, or null.
+   */
+  public TextSecureAttachmentStream(InputStream inputStream, String contentType, long length,
+                                    ProgressListener listener)
+  {
     super(contentType);
     this.inputStream = inputStream;
     this.length      = length;
+    this.listener    = Optional.fromNullable(listener);
   }
 
   @Override
@@ -46,4 +59,19 @@ public class TextSecureAttachmentStream extends TextSecureAttachment {
   public long getLength() {
     return length;
   }
+
+  public Optional<ProgressListener> getListener() {
+    return listener;
+  }
+
+  public interface ProgressListener {
+    /**
+     * Called from the sending thread as the encrypted attachment is uploaded.  Progress can
+     * go backwards if part of the upload has to be sent again.
+     *
+     * @param total The length of the encrypted attachment.
+     * @param progress The number of encrypted bytes sent so far.
+     */
+    public void onAttachmentProgress(long total, long progress);
+  }
 }
@@ -117,6 +117,10 @@ public class TextSecureEnvelope {
     return signal.getType().getNumber() == IncomingPushMessageSignal.Type.PREKEY_BUNDLE_VALUE;
   }
 
+  public boolean isSenderKeyMessage() {
+    return signal.getType().getNumber() == IncomingPushMessageSignal.Type.SENDERKEY_VALUE;
+  }
+
   public boolean isPlaintext() {
     return signal.getType().getNumber() == IncomingPushMessageSignal.Type.PLAINTEXT_VALUE;
   }
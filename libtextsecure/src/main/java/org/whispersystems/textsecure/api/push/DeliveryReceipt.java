@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.api.push;
+
+/**
+ * A receipt for a message that has been delivered to this device, to be sent back to the
+ * message's sender.
+ */
+public class DeliveryReceipt {
+
+  private String destination;
+  private long   timestamp;
+
+  public DeliveryReceipt(String destination, long timestamp) {
+    this.destination = destination;
+    this.timestamp   = timestamp;
+  }
+
+  public DeliveryReceipt() {}
+
+  public String getDestination() {
+    return destination;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other == null || !(other instanceof DeliveryReceipt)) return false;
+
+    DeliveryReceipt that = (DeliveryReceipt)other;
+    return this.timestamp == that.timestamp && this.destination.equals(that.destination);
+  }
+
+  @Override
+  public int hashCode() {
+    return destination.hashCode() ^ (int)(timestamp ^ (timestamp >>> 32));
+  }
+}
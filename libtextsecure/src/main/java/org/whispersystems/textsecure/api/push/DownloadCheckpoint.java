@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.api.push;
+
+/**
+ * How much of an attachment has been safely written to its partial file, so that an
+ * interrupted download can pick up where it left off rather than starting over.
+ */
+public class DownloadCheckpoint {
+
+  private final long   offset;
+  private final long   length;
+  private final String validator;
+
+  /**
+   * @param offset The number of bytes at the start of the partial file that are on disk.
+   * @param length The full length of the attachment, or -1 if the server didn't say.
+   * @param validator The ETag or Last-Modified date the server gave for the attachment, or
+   *                  null if it gave neither.  A resumed download is only appended to the
+   *                  partial file if the attachment still has this validator.
+   */
+  public DownloadCheckpoint(long offset, long length, String validator) {
+    this.offset    = offset;
+    this.length    = length;
+    this.validator = validator;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public String getValidator() {
+    return validator;
+  }
+
+  public boolean isComplete() {
+    return length >= 0 && offset == length;
+  }
+
+  public interface Listener {
+    public void onCheckpoint(DownloadCheckpoint checkpoint);
+  }
+}
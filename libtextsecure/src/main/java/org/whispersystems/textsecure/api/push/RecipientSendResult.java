@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.api.push;
+
+/**
+ * The outcome of sending a message to one recipient of a group.
+ */
+public class RecipientSendResult {
+
+  private final PushAddress address;
+  private final Exception   failure;
+  private final int         attempts;
+  private final long        elapsedMillis;
+
+  public RecipientSendResult(PushAddress address, Exception failure, int attempts, long elapsedMillis) {
+    this.address       = address;
+    this.failure       = failure;
+    this.attempts      = attempts;
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  public PushAddress getAddress() {
+    return address;
+  }
+
+  public boolean isSuccess() {
+    return failure == null;
+  }
+
+  /**
+   * @return Why the message couldn't be sent, or null if it was.
+   */
+  public Exception getFailure() {
+    return failure;
+  }
+
+  /**
+   * @return The number of times the message was encrypted and sent, including retries after
+   *         the server reported mismatched or stale devices, or 0 if it couldn't be sent.
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * @return How long it took to send to this recipient, including establishing sessions and
+   *         any retries, but not time spent waiting for a free sender thread.
+   */
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+}
@@ -27,6 +27,7 @@ import com.google.thoughtcrimegson.JsonSerializer;
 
 import org.whispersystems.libaxolotl.ecc.ECPublicKey;
 import org.whispersystems.textsecure.internal.util.Base64;
+import org.whispersystems.textsecure.internal.util.JsonUtil;
 import org.whispersystems.textsecure.internal.push.PreKeyEntity;
 
 import java.io.IOException;
@@ -48,13 +49,11 @@ public class SignedPreKeyEntity extends PreKeyEntity {
   }
 
   public static String toJson(SignedPreKeyEntity entity) {
-    GsonBuilder builder = new GsonBuilder();
-    return forBuilder(builder).create().toJson(entity);
+    return JsonUtil.toJson(entity);
   }
 
   public static SignedPreKeyEntity fromJson(String serialized) {
-    GsonBuilder builder = new GsonBuilder();
-    return forBuilder(builder).create().fromJson(serialized, SignedPreKeyEntity.class);
+    return JsonUtil.fromJson(serialized, SignedPreKeyEntity.class);
   }
 
   public static GsonBuilder forBuilder(GsonBuilder builder) {
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.internal.push;
+
+/**
+ * A snapshot of how long requests to one server endpoint have taken, from sending the
+ * request until its response's status line arrived.
+ */
+public class EndpointLatency {
+
+  private final String endpoint;
+  private final long   requestCount;
+  private final long   failureCount;
+  private final long   totalMillis;
+  private final long   maxMillis;
+
+  EndpointLatency(String endpoint, long requestCount, long failureCount,
+                  long totalMillis, long maxMillis)
+  {
+    this.endpoint     = endpoint;
+    this.requestCount = requestCount;
+    this.failureCount = failureCount;
+    this.totalMillis  = totalMillis;
+    this.maxMillis    = maxMillis;
+  }
+
+  /**
+   * @return The method and the first two segments of the path, such as "PUT /v1/messages".
+   */
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public long getRequestCount() {
+    return requestCount;
+  }
+
+  /**
+   * @return The number of requests that never got a response.
+   */
+  public long getFailureCount() {
+    return failureCount;
+  }
+
+  public long getMaxMillis() {
+    return maxMillis;
+  }
+
+  public double getAverageMillis() {
+    if (requestCount == 0) return 0;
+    else                   return (double)totalMillis / requestCount;
+  }
+
+  @Override
+  public String toString() {
+    return endpoint + ": requests: " + requestCount + ", failures: " + failureCount +
+           ", average: " + getAverageMillis() + "ms, max: " + maxMillis + "ms";
+  }
+}
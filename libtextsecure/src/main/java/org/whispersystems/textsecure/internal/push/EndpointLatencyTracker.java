@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.internal.push;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates the latency of {@link PushServiceSocket}'s requests, per endpoint.  Paths are
+ * cut down to their first two segments, so that numbers and ids never end up in an
+ * endpoint's name.
+ */
+class EndpointLatencyTracker {
+
+  private static final int REQUESTS = 0;
+  private static final int FAILURES = 1;
+  private static final int TOTAL    = 2;
+  private static final int MAX      = 3;
+
+  private final Map<String, long[]> endpoints = new HashMap<>();
+
+  synchronized void record(String method, String path, long millis, boolean failed) {
+    String endpoint = getEndpoint(method, path);
+    long[] counters = endpoints.get(endpoint);
+
+    if (counters == null) {
+      counters = new long[4];
+      endpoints.put(endpoint, counters);
+    }
+
+    counters[REQUESTS]++;
+    counters[TOTAL] += millis;
+    counters[MAX]    = Math.max(counters[MAX], millis);
+
+    if (failed) counters[FAILURES]++;
+  }
+
+  synchronized List<EndpointLatency> getLatencies() {
+    List<EndpointLatency> results = new LinkedList<>();
+
+    for (Map.Entry<String, long[]> entry : endpoints.entrySet()) {
+      long[] counters = entry.getValue();
+      results.add(new EndpointLatency(entry.getKey(), counters[REQUESTS], counters[FAILURES],
+                                      counters[TOTAL], counters[MAX]));
+    }
+
+    return results;
+  }
+
+  private String getEndpoint(String method, String path) {
+    int query = path.indexOf('?');
+
+    if (query != -1) {
+      path = path.substring(0, query);
+    }
+
+    String[] segments = path.split("/");
+    String   endpoint = method;
+
+    for (int i=1;i<segments.length && i<=2;i++) {
+      endpoint += (i == 1 ? " /" : "/") + segments[i];
+    }
+
+    return endpoint;
+  }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.internal.push;
+
+import android.util.Log;
+
+import org.whispersystems.libaxolotl.InvalidKeyException;
+import org.whispersystems.libaxolotl.ecc.Curve;
+import org.whispersystems.libaxolotl.state.PreKeyBundle;
+import org.whispersystems.textsecure.api.push.PushAddress;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the {@link PreKeyBundle}s we need to start sessions, optionally ahead of time.
+ *
+ * A prefetched fetch is handed to exactly one caller, since a bundle's one-time prekey
+ * can only be used for one session.  Any other caller asking for the same recipient while
+ * it's in flight waits for it to finish before fetching for itself, rather than racing it
+ * for the same prekeys.  Prefetched bundles that nobody has asked for are thrown away once
+ * the send that wanted them calls {@link #cancel(PushAddress)}, or after
+ * {@link #MAX_AGE_MILLIS} if it never does.
+ */
+public class PreKeyBundleResolver {
+
+  private static final String TAG = PreKeyBundleResolver.class.getSimpleName();
+
+  private static final long MAX_AGE_MILLIS       = TimeUnit.MINUTES.toMillis(1);
+  private static final int  MAX_PREFETCH_THREADS = 8;
+
+  private static final ExecutorService PREFETCH_EXECUTOR = createPrefetchExecutor();
+
+  private final PushServiceSocket     socket;
+  private final Map<String, Prefetch> prefetches = new HashMap<>();
+
+  public PreKeyBundleResolver(PushServiceSocket socket) {
+    this.socket = socket;
+  }
+
+  /**
+   * Start fetching the bundles for a recipient's devices in the background, unless they're
+   * already being fetched.
+   */
+  public synchronized void prefetch(final PushAddress destination) {
+    String   name     = getName(destination);
+    Prefetch prefetch = prefetches.get(name);
+
+    if (prefetch != null && (prefetch.claimed || !prefetch.isExpired())) {
+      return;
+    }
+
+    prefetches.put(name, new Prefetch(PREFETCH_EXECUTOR.submit(new Callable<List<PreKeyBundle>>() {
+      @Override
+      public List<PreKeyBundle> call() throws IOException {
+        return getVerifiedPreKeys(destination);
+      }
+    })));
+  }
+
+  /**
+   * @return The bundles for every device of the destination if it's the primary device,
+   *         or for just that device otherwise.
+   */
+  public List<PreKeyBundle> getPreKeys(PushAddress destination) throws IOException {
+    String   name = getName(destination);
+    Prefetch prefetch;
+    boolean  claimed;
+    boolean  inFlight;
+
+    synchronized (this) {
+      prefetch = prefetches.get(name);
+      inFlight = prefetch != null && prefetch.claimed;
+      claimed  = prefetch != null && !inFlight && !prefetch.isExpired();
+
+      if      (claimed)                       prefetch.claimed = true;
+      else if (prefetch != null && !inFlight) prefetches.remove(name);
+    }
+
+    if (claimed) {
+      try {
+        return getResult(prefetch.future);
+      } finally {
+        synchronized (this) {
+          if (prefetches.get(name) == prefetch) prefetches.remove(name);
+        }
+      }
+    }
+
+    if (inFlight) {
+      awaitCompletion(prefetch.future);
+    }
+
+    return getVerifiedPreKeys(destination);
+  }
+
+  /**
+   * Throw away a prefetch for this recipient that nobody has claimed, so that it doesn't
+   * hold on to a one-time prekey the send no longer needs.
+   */
+  public synchronized void cancel(PushAddress destination) {
+    String   name     = getName(destination);
+    Prefetch prefetch = prefetches.get(name);
+
+    if (prefetch != null && !prefetch.claimed) {
+      prefetches.remove(name);
+      prefetch.future.cancel(false);
+    }
+  }
+
+  public PreKeyBundle getPreKey(PushAddress destination) throws IOException {
+    return verify(socket.getPreKey(destination));
+  }
+
+  private List<PreKeyBundle> getVerifiedPreKeys(PushAddress destination) throws IOException {
+    List<PreKeyBundle> verified = new LinkedList<>();
+
+    for (PreKeyBundle preKey : socket.getPreKeys(destination)) {
+      verified.add(verify(preKey));
+    }
+
+    return verified;
+  }
+
+  private PreKeyBundle verify(PreKeyBundle preKey) throws IOException {
+    try {
+      if (preKey.getSignedPreKey() != null &&
+          !Curve.verifySignature(preKey.getIdentityKey().getPublicKey(),
+                                 preKey.getSignedPreKey().serialize(),
+                                 preKey.getSignedPreKeySignature()))
+      {
+        throw new IOException("Invalid signature on device key!");
+      }
+
+      return preKey;
+    } catch (InvalidKeyException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private List<PreKeyBundle> getResult(Future<List<PreKeyBundle>> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching prekeys");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)     throw (IOException)e.getCause();
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+      throw new AssertionError(e);
+    }
+  }
+
+  private void awaitCompletion(Future<List<PreKeyBundle>> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching prekeys");
+    } catch (ExecutionException | CancellationException e) {
+      Log.w(TAG, e);
+    }
+  }
+
+  private String getName(PushAddress destination) {
+    return destination.getNumber() + "." + destination.getDeviceId();
+  }
+
+  private static ExecutorService createPrefetchExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PREFETCH_THREADS, MAX_PREFETCH_THREADS,
+                                                         30, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>());
+    executor.allowCoreThreadTimeOut(true);
+
+    return executor;
+  }
+
+  private static class Prefetch {
+    private final Future<List<PreKeyBundle>> future;
+    private final long                       startTime;
+
+    private boolean claimed;
+
+    private Prefetch(Future<List<PreKeyBundle>> future) {
+      this.future    = future;
+      this.startTime = System.currentTimeMillis();
+    }
+
+    private boolean isExpired() {
+      if (System.currentTimeMillis() - startTime <= MAX_AGE_MILLIS) {
+        return false;
+      }
+
+      Log.w(TAG, "Discarding stale prefetched prekeys");
+      future.cancel(false);
+      return true;
+    }
+  }
+}
@@ -16,7 +16,6 @@
  */
 package org.whispersystems.textsecure.internal.push;
 
-import com.google.thoughtcrimegson.GsonBuilder;
 import com.google.thoughtcrimegson.JsonDeserializationContext;
 import com.google.thoughtcrimegson.JsonDeserializer;
 import com.google.thoughtcrimegson.JsonElement;
@@ -46,13 +45,6 @@ public class PreKeyResponse {
     return devices;
   }
 
-  public static PreKeyResponse fromJson(String serialized) {
-    GsonBuilder builder = new GsonBuilder();
-    return PreKeyResponseItem.forBuilder(builder)
-                             .registerTypeAdapter(IdentityKey.class, new IdentityKeyJsonAdapter())
-                             .create().fromJson(serialized, PreKeyResponse.class);
-  }
-
   public static class IdentityKeyJsonAdapter
       implements JsonSerializer<IdentityKey>, JsonDeserializer<IdentityKey>
   {
@@ -244,6 +244,10 @@ public final class PushMessageProtos {
        * <code>RECEIPT = 5;</code>
        */
       RECEIPT(5, 5),
+      /**
+       * <code>SENDERKEY = 6;</code>
+       */
+      SENDERKEY(6, 6),
       ;
 
       /**
@@ -270,6 +274,10 @@ public final class PushMessageProtos {
        * <code>RECEIPT = 5;</code>
        */
       public static final int RECEIPT_VALUE = 5;
+      /**
+       * <code>SENDERKEY = 6;</code>
+       */
+      public static final int SENDERKEY_VALUE = 6;
 
 
       public final int getNumber() { return value; }
@@ -282,6 +290,7 @@ public final class PushMessageProtos {
           case 3: return PREKEY_BUNDLE;
           case 4: return PLAINTEXT;
           case 5: return RECEIPT;
+          case 6: return SENDERKEY;
           default: return null;
         }
       }
@@ -1187,6 +1196,16 @@ public final class PushMessageProtos {
      * <code>optional uint32 flags = 4;</code>
      */
     int getFlags();
+
+    // optional bytes senderKeyDistribution = 5;
+    /**
+     * <code>optional bytes senderKeyDistribution = 5;</code>
+     */
+    boolean hasSenderKeyDistribution();
+    /**
+     * <code>optional bytes senderKeyDistribution = 5;</code>
+     */
+    com.google.protobuf.ByteString getSenderKeyDistribution();
   }
   /**
    * Protobuf type {@code textsecure.PushMessageContent}
@@ -1270,6 +1289,11 @@ public final class PushMessageProtos {
               flags_ = input.readUInt32();
               break;
             }
+            case 42: {
+              bitField0_ |= 0x00000008;
+              senderKeyDistribution_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -3261,11 +3285,28 @@ public final class PushMessageProtos {
       return flags_;
     }
 
+    // optional bytes senderKeyDistribution = 5;
+    public static final int SENDERKEYDISTRIBUTION_FIELD_NUMBER = 5;
+    private com.google.protobuf.ByteString senderKeyDistribution_;
+    /**
+     * <code>optional bytes senderKeyDistribution = 5;</code>
+     */
+    public boolean hasSenderKeyDistribution() {
+      return ((bitField0_ & 0x00000008) == 0x00000008);
+    }
+    /**
+     * <code>optional bytes senderKeyDistribution = 5;</code>
+     */
+    public com.google.protobuf.ByteString getSenderKeyDistribution() {
+      return senderKeyDistribution_;
+    }
+
     private void initFields() {
       body_ = "";
       attachments_ = java.util.Collections.emptyList();
       group_ = org.whispersystems.textsecure.internal.push.PushMessageProtos.PushMessageContent.GroupContext.getDefaultInstance();
       flags_ = 0;
+      senderKeyDistribution_ = com.google.protobuf.ByteString.EMPTY;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -3291,6 +3332,9 @@ public final class PushMessageProtos {
       if (((bitField0_ & 0x00000004) == 0x00000004)) {
         output.writeUInt32(4, flags_);
       }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        output.writeBytes(5, senderKeyDistribution_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -3316,6 +3360,10 @@ public final class PushMessageProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeUInt32Size(4, flags_);
       }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(5, senderKeyDistribution_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -3450,6 +3498,8 @@ public final class PushMessageProtos {
         bitField0_ = (bitField0_ & ~0x00000004);
         flags_ = 0;
         bitField0_ = (bitField0_ & ~0x00000008);
+        senderKeyDistribution_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000010);
         return this;
       }
 
@@ -3503,6 +3553,10 @@ public final class PushMessageProtos {
           to_bitField0_ |= 0x00000004;
         }
         result.flags_ = flags_;
+        if (((from_bitField0_ & 0x00000010) == 0x00000010)) {
+          to_bitField0_ |= 0x00000008;
+        }
+        result.senderKeyDistribution_ = senderKeyDistribution_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -3556,6 +3610,9 @@ public final class PushMessageProtos {
         if (other.hasFlags()) {
           setFlags(other.getFlags());
         }
+        if (other.hasSenderKeyDistribution()) {
+          setSenderKeyDistribution(other.getSenderKeyDistribution());
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -4047,6 +4104,42 @@ public final class PushMessageProtos {
         return this;
       }
 
+      // optional bytes senderKeyDistribution = 5;
+      private com.google.protobuf.ByteString senderKeyDistribution_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes senderKeyDistribution = 5;</code>
+       */
+      public boolean hasSenderKeyDistribution() {
+        return ((bitField0_ & 0x00000010) == 0x00000010);
+      }
+      /**
+       * <code>optional bytes senderKeyDistribution = 5;</code>
+       */
+      public com.google.protobuf.ByteString getSenderKeyDistribution() {
+        return senderKeyDistribution_;
+      }
+      /**
+       * <code>optional bytes senderKeyDistribution = 5;</code>
+       */
+      public Builder setSenderKeyDistribution(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000010;
+        senderKeyDistribution_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes senderKeyDistribution = 5;</code>
+       */
+      public Builder clearSenderKeyDistribution() {
+        bitField0_ = (bitField0_ & ~0x00000010);
+        senderKeyDistribution_ = getDefaultInstance().getSenderKeyDistribution();
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:textsecure.PushMessageContent)
     }
 
@@ -4088,28 +4181,29 @@ public final class PushMessageProtos {
   static {
     java.lang.String[] descriptorData = {
       "\n\037IncomingPushMessageSignal.proto\022\ntexts" +
-      "ecure\"\224\002\n\031IncomingPushMessageSignal\0228\n\004t" +
+      "ecure\"\243\002\n\031IncomingPushMessageSignal\0228\n\004t" +
       "ype\030\001 \001(\0162*.textsecure.IncomingPushMessa" +
       "geSignal.Type\022\016\n\006source\030\002 \001(\t\022\024\n\014sourceD" +
       "evice\030\007 \001(\r\022\r\n\005relay\030\003 \001(\t\022\021\n\ttimestamp\030" +
-      "\005 \001(\004\022\017\n\007message\030\006 \001(\014\"d\n\004Type\022\013\n\007UNKNOW" +
+      "\005 \001(\004\022\017\n\007message\030\006 \001(\014\"s\n\004Type\022\013\n\007UNKNOW" +
       "N\020\000\022\016\n\nCIPHERTEXT\020\001\022\020\n\014KEY_EXCHANGE\020\002\022\021\n" +
       "\rPREKEY_BUNDLE\020\003\022\r\n\tPLAINTEXT\020\004\022\013\n\007RECEI" +
-      "PT\020\005\"\207\004\n\022PushMessageContent\022\014\n\004body\030\001 \001(" +
-      "\t\022E\n\013attachments\030\002 \003(\01320.textsecure.Push",
-      "MessageContent.AttachmentPointer\022:\n\005grou" +
-      "p\030\003 \001(\0132+.textsecure.PushMessageContent." +
-      "GroupContext\022\r\n\005flags\030\004 \001(\r\032A\n\021Attachmen" +
-      "tPointer\022\n\n\002id\030\001 \001(\006\022\023\n\013contentType\030\002 \001(" +
-      "\t\022\013\n\003key\030\003 \001(\014\032\363\001\n\014GroupContext\022\n\n\002id\030\001 " +
-      "\001(\014\022>\n\004type\030\002 \001(\01620.textsecure.PushMessa" +
-      "geContent.GroupContext.Type\022\014\n\004name\030\003 \001(" +
-      "\t\022\017\n\007members\030\004 \003(\t\022@\n\006avatar\030\005 \001(\01320.tex" +
-      "tsecure.PushMessageContent.AttachmentPoi" +
-      "nter\"6\n\004Type\022\013\n\007UNKNOWN\020\000\022\n\n\006UPDATE\020\001\022\013\n",
-      "\007DELIVER\020\002\022\010\n\004QUIT\020\003\"\030\n\005Flags\022\017\n\013END_SES" +
-      "SION\020\001B@\n+org.whispersystems.textsecure." +
-      "internal.pushB\021PushMessageProtos"
+      "PT\020\005\022\r\n\tSENDERKEY\020\006\"\246\004\n\022PushMessageConte" +
+      "nt\022\014\n\004body\030\001 \001(\t\022E\n\013attachments\030\002 \003(\01320.",
+      "textsecure.PushMessageContent.Attachment" +
+      "Pointer\022:\n\005group\030\003 \001(\0132+.textsecure.Push" +
+      "MessageContent.GroupContext\022\r\n\005flags\030\004 \001" +
+      "(\r\022\035\n\025senderKeyDistribution\030\005 \001(\014\032A\n\021Att" +
+      "achmentPointer\022\n\n\002id\030\001 \001(\006\022\023\n\013contentTyp" +
+      "e\030\002 \001(\t\022\013\n\003key\030\003 \001(\014\032\363\001\n\014GroupContext\022\n\n" +
+      "\002id\030\001 \001(\014\022>\n\004type\030\002 \001(\01620.textsecure.Pus" +
+      "hMessageContent.GroupContext.Type\022\014\n\004nam" +
+      "e\030\003 \001(\t\022\017\n\007members\030\004 \003(\t\022@\n\006avatar\030\005 \001(\013" +
+      "20.textsecure.PushMessageContent.Attachm",
+      "entPointer\"6\n\004Type\022\013\n\007UNKNOWN\020\000\022\n\n\006UPDAT" +
+      "E\020\001\022\013\n\007DELIVER\020\002\022\010\n\004QUIT\020\003\"\030\n\005Flags\022\017\n\013E" +
+      "ND_SESSION\020\001B@\n+org.whispersystems.texts" +
+      "ecure.internal.pushB\021PushMessageProtos"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -4127,7 +4221,7 @@ public final class PushMessageProtos {
           internal_static_textsecure_PushMessageContent_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_textsecure_PushMessageContent_descriptor,
-              new java.lang.String[] { "Body", "Attachments", "Group", "Flags", });
+              new java.lang.String[] { "Body", "Attachments", "Group", "Flags", "SenderKeyDistribution", });
           internal_static_textsecure_PushMessageContent_AttachmentPointer_descriptor =
             internal_static_textsecure_PushMessageContent_descriptor.getNestedTypes().get(0);
           internal_static_textsecure_PushMessageContent_AttachmentPointer_fieldAccessorTable = new
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.internal.push;
+
+import org.whispersystems.textsecure.internal.util.JsonUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The body of a {@link PushTransport} request, written straight to the connection rather
+ * than built up in memory first.
+ */
+public abstract class PushRequestBody {
+
+  public abstract void writeTo(OutputStream out) throws IOException;
+
+  /**
+   * @return A body holding the JSON serialization of the entity.
+   */
+  public static PushRequestBody forJson(final Object entity) {
+    return new PushRequestBody() {
+      @Override
+      public void writeTo(OutputStream out) throws IOException {
+        JsonUtil.toJson(entity, out);
+      }
+    };
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.internal.push;
+
+import org.whispersystems.textsecure.internal.util.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The response to a {@link PushTransport} request.  Closing it reads whatever's left of the
+ * body, since a keep-alive connection can only be reused once its last response has been
+ * read to the end.
+ */
+public class PushResponse {
+
+  private final int         responseCode;
+  private final String      responseMessage;
+  private final InputStream body;
+
+  public PushResponse(int responseCode, String responseMessage, InputStream body) {
+    this.responseCode    = responseCode;
+    this.responseMessage = responseMessage;
+    this.body            = body == null ? new ByteArrayInputStream(new byte[0]) : body;
+  }
+
+  public int getResponseCode() {
+    return responseCode;
+  }
+
+  public String getResponseMessage() {
+    return responseMessage;
+  }
+
+  public InputStream getBody() {
+    return body;
+  }
+
+  /**
+   * Read the whole body, and close the response.
+   */
+  public String readFully() throws IOException {
+    return Util.readFully(body);
+  }
+
+  public void close() {
+    try {
+      byte[] buffer = new byte[4096];
+      while (body.read(buffer) != -1);
+      body.close();
+    } catch (IOException e) {
+      // The connection just won't be reused.
+    }
+  }
+}
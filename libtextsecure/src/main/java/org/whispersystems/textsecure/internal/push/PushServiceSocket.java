@@ -19,10 +19,8 @@ package org.whispersystems.textsecure.internal.push;
 
 import android.util.Log;
 
-import com.google.thoughtcrimegson.Gson;
 import com.google.thoughtcrimegson.JsonParseException;
 
-import org.apache.http.conn.ssl.StrictHostnameVerifier;
 import org.whispersystems.libaxolotl.IdentityKey;
 import org.whispersystems.libaxolotl.ecc.ECPublicKey;
 import org.whispersystems.libaxolotl.state.PreKeyBundle;
@@ -30,13 +28,17 @@ import org.whispersystems.libaxolotl.state.PreKeyRecord;
 import org.whispersystems.libaxolotl.state.SignedPreKeyRecord;
 import org.whispersystems.textsecure.api.push.PushAddress;
 import org.whispersystems.textsecure.api.crypto.AttachmentCipherOutputStream;
+import org.whispersystems.textsecure.api.messages.TextSecureAttachmentStream.ProgressListener;
 import org.whispersystems.textsecure.api.push.ContactTokenDetails;
+import org.whispersystems.textsecure.api.push.DeliveryReceipt;
+import org.whispersystems.textsecure.api.push.DownloadCheckpoint;
 import org.whispersystems.textsecure.api.push.SignedPreKeyEntity;
 import org.whispersystems.textsecure.api.push.TrustStore;
 import org.whispersystems.textsecure.api.push.exceptions.UnregisteredUserException;
 import org.whispersystems.textsecure.internal.push.exceptions.MismatchedDevicesException;
 import org.whispersystems.textsecure.internal.push.exceptions.StaleDevicesException;
 import org.whispersystems.textsecure.internal.util.Base64;
+import org.whispersystems.textsecure.internal.util.JsonUtil;
 import org.whispersystems.textsecure.internal.util.Util;
 import org.whispersystems.textsecure.api.push.exceptions.AuthorizationFailedException;
 import org.whispersystems.textsecure.api.push.exceptions.ExpectationFailedException;
@@ -44,7 +46,6 @@ import org.whispersystems.textsecure.api.push.exceptions.NonSuccessfulResponseCo
 import org.whispersystems.textsecure.api.push.exceptions.NotFoundException;
 import org.whispersystems.textsecure.api.push.exceptions.PushNetworkException;
 import org.whispersystems.textsecure.api.push.exceptions.RateLimitException;
-import org.whispersystems.textsecure.internal.util.BlacklistingTrustManager;
 import org.whispersystems.textsecure.internal.util.Util;
 
 
@@ -52,29 +53,20 @@ import org.whispersystems.textsecure.internal.util.Util;
 
 
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
-
 /**
  *
  * Network interface to the TextSecure server API.
@@ -97,23 +89,45 @@ public class PushServiceSocket {
     private static final String DIRECTORY_VERIFY_PATH     = "/v1/directory/%s";
     private static final String MESSAGE_PATH              = "/v1/messages/%s";
     private static final String RECEIPT_PATH              = "/v1/receipt/%s/%d";
+    private static final String RECEIPTS_PATH             = "/v1/receipts";
     private static final String ATTACHMENT_PATH           = "/v1/attachments/%s";
     private static final String INVITATION_PATH = "/v1/accounts/invitation/%s";
 
-    private static final boolean ENFORCE_SSL = true;
+    private static final int  DOWNLOAD_TIMEOUT_MILLIS      = 30 * 1000;
+    private static final int  MIN_DOWNLOAD_BUFFER_SIZE     = 8 * 1024;
+    private static final int  MAX_DOWNLOAD_BUFFER_SIZE     = 64 * 1024;
+    private static final long DOWNLOAD_CHECKPOINT_INTERVAL = 256 * 1024;
+    private static final int  UPLOAD_BUFFER_SIZE           = 16 * 1024;
+    private static final long UPLOAD_SEGMENT_SIZE          = 1024 * 1024;
+    private static final int  MAX_UPLOAD_ATTEMPTS          = 3;
+
+    private static final EndpointLatencyTracker latencyTracker = new EndpointLatencyTracker();
 
-    private final String         serviceUrl;
-    private final String         localNumber;
-    private final String         password;
-    private final TrustManager[] trustManagers;
+    private final String        serviceUrl;
+    private final String        localNumber;
+    private final String        password;
+    private final PushTransport transport;
 
     public PushServiceSocket(String serviceUrl, TrustStore trustStore,
                              String localNumber, String password)
     {
-        this.serviceUrl    = serviceUrl;
-        this.localNumber   = localNumber;
-        this.password      = password;
-        this.trustManagers = initializeTrustManager(trustStore);
+        this(serviceUrl, UrlConnectionPushTransport.getInstance(trustStore), localNumber, password);
+    }
+
+    public PushServiceSocket(String serviceUrl, PushTransport transport,
+                             String localNumber, String password)
+    {
+        this.serviceUrl  = serviceUrl;
+        this.localNumber = localNumber;
+        this.password    = password;
+        this.transport   = transport;
+    }
+
+    /**
+     * @return The latency of every endpoint requested so far, across all sockets.
+     */
+    public static List<EndpointLatency> getEndpointLatencies() {
+        return latencyTracker.getLatencies();
     }
 
     public void createAccount(boolean voice) throws IOException {
@@ -132,7 +146,7 @@ public class PushServiceSocket {
     {
         AccountAttributes signalingKeyEntity = new AccountAttributes(signalingKey, supportsSms, registrationId);
         makeRequest(String.format(VERIFY_ACCOUNT_PATH, verificationCode),
-                "PUT", new Gson().toJson(signalingKeyEntity));
+                "PUT", signalingKeyEntity);
     }
 
     public void sendReceipt(String destination, long messageId, String relay) throws IOException {
@@ -145,15 +159,36 @@ public class PushServiceSocket {
         makeRequest(path, "PUT", null);
     }
 
+    /**
+     * Send several receipts, all from the same relay, in one request.
+     *
+     * @return false if the server doesn't support batched receipts, in which case none were sent.
+     */
+    public boolean sendReceipts(List<DeliveryReceipt> receipts, String relay) throws IOException {
+        String path = RECEIPTS_PATH;
+
+        if (!Util.isEmpty(relay)) {
+            path += "?relay=" + relay;
+        }
+
+        try {
+            makeRequest(path, "PUT", new DeliveryReceiptList(receipts));
+            return true;
+        } catch (NotFoundException e) {
+            Log.w("PushServiceSocket", e);
+            return false;
+        }
+    }
+
     public void registerGcmId(String gcmRegistrationId) throws IOException {
         GcmRegistrationId registration = new GcmRegistrationId(gcmRegistrationId);
-        makeRequest(REGISTER_GCM_PATH, "PUT", new Gson().toJson(registration));
+        makeRequest(REGISTER_GCM_PATH, "PUT", registration);
     }
 
     public String sendInvitation(String invitee) throws IOException {
-        HttpURLConnection connection = makeBaseRequest(String.format(INVITATION_PATH, invitee), "GET", null);
-        connection.disconnect();
-        return "" + connection.getResponseCode();
+        PushResponse response = makeBaseRequest(String.format(INVITATION_PATH, invitee), "GET", null);
+        response.close();
+        return "" + response.getResponseCode();
     }
     public void unregisterGcmId() throws IOException {
         makeRequest(REGISTER_GCM_PATH, "DELETE", null);
@@ -163,7 +198,7 @@ public class PushServiceSocket {
             throws IOException
     {
         try {
-            makeRequest(String.format(MESSAGE_PATH, bundle.getDestination()), "PUT", new Gson().toJson(bundle));
+            makeRequest(String.format(MESSAGE_PATH, bundle.getDestination()), "PUT", bundle);
         } catch (NotFoundException nfe) {
             throw new UnregisteredUserException(bundle.getDestination(), nfe);
         }
@@ -192,13 +227,11 @@ public class PushServiceSocket {
                 signedPreKey.getSignature());
 
         makeRequest(String.format(PREKEY_PATH, ""), "PUT",
-                PreKeyState.toJson(new PreKeyState(entities, lastResortEntity,
-                        signedPreKeyEntity, identityKey)));
+                new PreKeyState(entities, lastResortEntity, signedPreKeyEntity, identityKey));
     }
 
     public int getAvailablePreKeys() throws IOException {
-        String       responseText = makeRequest(PREKEY_METADATA_PATH, "GET", null);
-        PreKeyStatus preKeyStatus = new Gson().fromJson(responseText, PreKeyStatus.class);
+        PreKeyStatus preKeyStatus = makeRequest(PREKEY_METADATA_PATH, "GET", null, PreKeyStatus.class);
 
         return preKeyStatus.getCount();
     }
@@ -216,8 +249,7 @@ public class PushServiceSocket {
                 path = path + "?relay=" + destination.getRelay();
             }
 
-            String             responseText = makeRequest(path, "GET", null);
-            PreKeyResponse     response     = PreKeyResponse.fromJson(responseText);
+            PreKeyResponse     response = makeRequest(path, "GET", null, PreKeyResponse.class);
             List<PreKeyBundle> bundles      = new LinkedList<>();
 
             for (PreKeyResponseItem device : response.getDevices()) {
@@ -260,8 +292,7 @@ public class PushServiceSocket {
                 path = path + "?relay=" + destination.getRelay();
             }
 
-            String         responseText = makeRequest(path, "GET", null);
-            PreKeyResponse response     = PreKeyResponse.fromJson(responseText);
+            PreKeyResponse response = makeRequest(path, "GET", null, PreKeyResponse.class);
 
             if (response.getDevices() == null || response.getDevices().size() < 1)
                 throw new IOException("Empty prekey list");
@@ -295,8 +326,7 @@ public class PushServiceSocket {
 
     public SignedPreKeyEntity getCurrentSignedPreKey() throws IOException {
         try {
-            String responseText = makeRequest(SIGNED_PREKEY_PATH, "GET", null);
-            return SignedPreKeyEntity.fromJson(responseText);
+            return makeRequest(SIGNED_PREKEY_PATH, "GET", null, SignedPreKeyEntity.class);
         } catch (NotFoundException e) {
             Log.w("PushServiceSocket", e);
             return null;
@@ -307,45 +337,81 @@ public class PushServiceSocket {
         SignedPreKeyEntity signedPreKeyEntity = new SignedPreKeyEntity(signedPreKey.getId(),
                 signedPreKey.getKeyPair().getPublicKey(),
                 signedPreKey.getSignature());
-        makeRequest(SIGNED_PREKEY_PATH, "PUT", SignedPreKeyEntity.toJson(signedPreKeyEntity));
+        makeRequest(SIGNED_PREKEY_PATH, "PUT", signedPreKeyEntity);
     }
 
+    /**
+     * Encrypt an attachment to a temporary file, and upload it from there.  A failed upload is
+     * retried from the file rather than re-encrypted, and if the attachment store accepts
+     * uploads in segments, only the segments it hasn't received are sent again.
+     */
     public long sendAttachment(PushAttachmentData attachment) throws IOException {
-        String               response      = makeRequest(String.format(ATTACHMENT_PATH, ""), "GET", null);
-        AttachmentDescriptor attachmentKey = new Gson().fromJson(response, AttachmentDescriptor.class);
+        File ciphertext = encryptAttachment(attachment);
 
-        if (attachmentKey == null || attachmentKey.getLocation() == null) {
-            throw new IOException("Server failed to allocate an attachment key!");
-        }
+        try {
+            AttachmentDescriptor attachmentKey = makeRequest(String.format(ATTACHMENT_PATH, ""), "GET", null, AttachmentDescriptor.class);
+
+            if (attachmentKey == null || attachmentKey.getLocation() == null) {
+                throw new IOException("Server failed to allocate an attachment key!");
+            }
 
-        Log.w("PushServiceSocket", "Got attachment content location: " + attachmentKey.getLocation());
+            Log.w("PushServiceSocket", "Got attachment content location: " + attachmentKey.getLocation());
 
-        uploadAttachment("PUT", attachmentKey.getLocation(), attachment.getData(),
-                attachment.getDataSize(), attachment.getKey());
+            uploadAttachment(attachmentKey.getLocation(), ciphertext, attachmentKey.isResumable(),
+                             attachment.getListener());
 
-        return attachmentKey.getId();
+            return attachmentKey.getId();
+        } finally {
+            if (!ciphertext.delete()) {
+                Log.w("PushServiceSocket", "Failed to delete attachment ciphertext: " + ciphertext.getAbsolutePath());
+            }
+        }
     }
 
     public void retrieveAttachment(String relay, long attachmentId, File destination) throws IOException {
+        retrieveAttachment(relay, attachmentId, destination, null, null);
+    }
+
+    /**
+     * Download an attachment, carrying on from where an earlier attempt left off if the
+     * partial file it left behind still matches its last checkpoint.
+     *
+     * @param checkpoint The last checkpoint reported for this destination, or null to start over.
+     * @param listener Told each time more of the attachment is safely on disk, or null.
+     * @throws PushNetworkException If the connection failed, in which case the partial file
+     *                              is left in place to be resumed.
+     */
+    public void retrieveAttachment(String relay, long attachmentId, File destination,
+                                   DownloadCheckpoint checkpoint, DownloadCheckpoint.Listener listener)
+            throws IOException
+    {
+        checkpoint = verifyPartialDownload(destination, checkpoint);
+
+        if (checkpoint != null && checkpoint.isComplete()) {
+            Log.w("PushServiceSocket", "Attachment: " + attachmentId + " is already downloaded.");
+            return;
+        }
+
         String path = String.format(ATTACHMENT_PATH, String.valueOf(attachmentId));
 
         if (!Util.isEmpty(relay)) {
             path = path + "?relay=" + relay;
         }
 
-        String               response   = makeRequest(path, "GET", null);
-        AttachmentDescriptor descriptor = new Gson().fromJson(response, AttachmentDescriptor.class);
+        AttachmentDescriptor descriptor = makeRequest(path, "GET", null, AttachmentDescriptor.class);
 
         Log.w("PushServiceSocket", "Attachment: " + attachmentId + " is at: " + descriptor.getLocation());
 
-        downloadExternalFile(descriptor.getLocation(), destination);
+        if (!downloadExternalFile(descriptor.getLocation(), destination, checkpoint, listener)) {
+            Log.w("PushServiceSocket", "Couldn't resume attachment: " + attachmentId + ", starting over.");
+            downloadExternalFile(descriptor.getLocation(), destination, null, listener);
+        }
     }
 
     public List<ContactTokenDetails> retrieveDirectory(Set<String> contactTokens) {
         try {
             ContactTokenList        contactTokenList = new ContactTokenList(new LinkedList<String>(contactTokens));
-            String                  response         = makeRequest(DIRECTORY_TOKENS_PATH, "PUT", new Gson().toJson(contactTokenList));
-            ContactTokenDetailsList activeTokens     = new Gson().fromJson(response, ContactTokenDetailsList.class);
+            ContactTokenDetailsList activeTokens     = makeRequest(DIRECTORY_TOKENS_PATH, "PUT", contactTokenList, ContactTokenDetailsList.class);
 
             return activeTokens.getContacts();
         } catch (IOException ioe) {
@@ -356,181 +422,462 @@ public class PushServiceSocket {
 
     public ContactTokenDetails getContactTokenDetails(String contactToken) throws IOException {
         try {
-            String response = makeRequest(String.format(DIRECTORY_VERIFY_PATH, contactToken), "GET", null);
-            return new Gson().fromJson(response, ContactTokenDetails.class);
+            return makeRequest(String.format(DIRECTORY_VERIFY_PATH, contactToken), "GET", null, ContactTokenDetails.class);
         } catch (NotFoundException nfe) {
             return null;
         }
     }
 
-    private void downloadExternalFile(String url, File localDestination)
+    /**
+     * @return The checkpoint to resume from, or null if the partial file holds fewer bytes
+     *         than the checkpoint says it should.  Anything written after the checkpoint is
+     *         cut off, since it may not have reached the disk intact.
+     */
+    private DownloadCheckpoint verifyPartialDownload(File destination, DownloadCheckpoint checkpoint)
+            throws IOException
+    {
+        if (checkpoint == null || checkpoint.getOffset() <= 0) {
+            return null;
+        }
+
+        if (destination.length() < checkpoint.getOffset() ||
+            (checkpoint.getLength() >= 0 && checkpoint.getOffset() > checkpoint.getLength()))
+        {
+            Log.w("PushServiceSocket", "Partial download doesn't match its checkpoint: " + destination.length());
+            return null;
+        }
+
+        RandomAccessFile partial = new RandomAccessFile(destination, "rw");
+
+        try {
+            partial.setLength(checkpoint.getOffset());
+        } finally {
+            partial.close();
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Download a file, asking only for what comes after the checkpoint if there is one.  If
+     * the server sends the whole file instead, because it's changed or doesn't do ranges, the
+     * partial file is overwritten.
+     *
+     * @return false if the server refused to resume from the checkpoint.
+     */
+    private boolean downloadExternalFile(String url, File localDestination,
+                                         DownloadCheckpoint checkpoint, DownloadCheckpoint.Listener listener)
             throws IOException
     {
         URL               downloadUrl = new URL(url);
         HttpURLConnection connection  = (HttpURLConnection) downloadUrl.openConnection();
         connection.setRequestProperty("Content-Type", "application/octet-stream");
         connection.setRequestMethod("GET");
+        connection.setConnectTimeout(DOWNLOAD_TIMEOUT_MILLIS);
+        connection.setReadTimeout(DOWNLOAD_TIMEOUT_MILLIS);
         connection.setDoInput(true);
 
+        if (checkpoint != null) {
+            connection.setRequestProperty("Range", "bytes=" + checkpoint.getOffset() + "-");
+
+            if (checkpoint.getValidator() != null) {
+                connection.setRequestProperty("If-Range", checkpoint.getValidator());
+            }
+        }
+
         try {
-            if (connection.getResponseCode() != 200) {
-                throw new NonSuccessfulResponseCodeException("Bad response: " + connection.getResponseCode());
+            int    responseCode = getDownloadResponseCode(connection);
+            String validator    = getValidator(connection);
+            long   offset;
+            long   length;
+
+            if (responseCode == 206 && checkpoint != null) {
+                long[] contentRange = parseContentRange(connection.getHeaderField("Content-Range"));
+
+                if (contentRange == null || contentRange[0] != checkpoint.getOffset()) {
+                    return false;
+                }
+
+                offset = checkpoint.getOffset();
+                length = contentRange[1];
+
+                if (validator == null) validator = checkpoint.getValidator();
+            } else if (responseCode == 200) {
+                offset = 0;
+                length = parseLong(connection.getHeaderField("Content-Length"));
+            } else if (responseCode == 416 && checkpoint != null) {
+                return false;
+            } else {
+                throw new NonSuccessfulResponseCodeException("Bad response: " + responseCode);
             }
 
-            OutputStream output = new FileOutputStream(localDestination);
-            InputStream input   = connection.getInputStream();
-            byte[] buffer       = new byte[4096];
-            int read;
+            FileOutputStream output = new FileOutputStream(localDestination, offset > 0);
 
-            while ((read = input.read(buffer)) != -1) {
-                output.write(buffer, 0, read);
+            try {
+                copyDownload(connection, output, offset, length, validator, listener);
+            } finally {
+                output.close();
             }
 
-            output.close();
-            Log.w("PushServiceSocket", "Downloaded: " + url + " to: " + localDestination.getAbsolutePath());
+            Log.w("PushServiceSocket", "Downloaded: " + url + " to: " + localDestination.getAbsolutePath() +
+                                       " from: " + offset);
+            return true;
         } finally {
             connection.disconnect();
         }
     }
 
-    private void uploadAttachment(String method, String url, InputStream data, long dataSize, byte[] key)
+    /**
+     * Copy the response body to the end of the partial file, checkpointing as it goes.  The
+     * buffer starts small and doubles whenever a read fills it, so that slow links don't hold
+     * large buffers and fast ones aren't held back by small reads.
+     */
+    private void copyDownload(HttpURLConnection connection, FileOutputStream output,
+                              long offset, long length, String validator,
+                              DownloadCheckpoint.Listener listener)
             throws IOException
     {
-        URL                uploadUrl  = new URL(url);
-        HttpsURLConnection connection = (HttpsURLConnection) uploadUrl.openConnection();
-        connection.setDoOutput(true);
-        connection.setFixedLengthStreamingMode((int) AttachmentCipherOutputStream.getCiphertextLength(dataSize));
-        connection.setRequestMethod(method);
-        connection.setRequestProperty("Content-Type", "application/octet-stream");
-        connection.connect();
+        InputStream input        = getDownloadStream(connection);
+        byte[]      buffer       = new byte[MIN_DOWNLOAD_BUFFER_SIZE];
+        long        written      = offset;
+        long        checkpointed = offset;
+        int         read;
+
+        while ((read = readDownload(input, buffer)) != -1) {
+            output.write(buffer, 0, read);
+            written += read;
+
+            if (written - checkpointed >= DOWNLOAD_CHECKPOINT_INTERVAL) {
+                checkpointDownload(output, new DownloadCheckpoint(written, length, validator), listener);
+                checkpointed = written;
+            }
+
+            if (read == buffer.length && buffer.length < MAX_DOWNLOAD_BUFFER_SIZE) {
+                buffer = new byte[buffer.length * 2];
+            }
+        }
+
+        if (length >= 0 && written != length) {
+            checkpointDownload(output, new DownloadCheckpoint(written, length, validator), listener);
+            throw new PushNetworkException("Download ended after " + written + " of " + length + " bytes");
+        }
+
+        checkpointDownload(output, new DownloadCheckpoint(written, written, validator), listener);
+    }
+
+    private void checkpointDownload(FileOutputStream output, DownloadCheckpoint checkpoint,
+                                    DownloadCheckpoint.Listener listener)
+            throws IOException
+    {
+        if (listener != null) {
+            output.flush();
+            output.getFD().sync();
+            listener.onCheckpoint(checkpoint);
+        }
+    }
+
+    private int getDownloadResponseCode(HttpURLConnection connection) throws PushNetworkException {
+        try {
+            return connection.getResponseCode();
+        } catch (IOException e) {
+            throw new PushNetworkException(e);
+        }
+    }
 
+    private InputStream getDownloadStream(HttpURLConnection connection) throws PushNetworkException {
         try {
-            OutputStream                 stream = connection.getOutputStream();
-            AttachmentCipherOutputStream out    = new AttachmentCipherOutputStream(key, stream);
+            return connection.getInputStream();
+        } catch (IOException e) {
+            throw new PushNetworkException(e);
+        }
+    }
 
-            Util.copy(data, out);
+    private int readDownload(InputStream input, byte[] buffer) throws PushNetworkException {
+        try {
+            return input.read(buffer);
+        } catch (IOException e) {
+            throw new PushNetworkException(e);
+        }
+    }
+
+    /**
+     * @return The response's strong ETag, or its Last-Modified date if it has none, either of
+     *         which can be sent back in an If-Range header.
+     */
+    private String getValidator(HttpURLConnection connection) {
+        String etag = connection.getHeaderField("ETag");
+
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+
+        return connection.getHeaderField("Last-Modified");
+    }
+
+    /**
+     * @return The first byte and full length from a "bytes first-last/length" Content-Range
+     *         header, with a length of -1 if it's unknown, or null if it can't be parsed.
+     */
+    private long[] parseContentRange(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return null;
+        }
+
+        String[] parts = contentRange.substring("bytes ".length()).trim().split("[-/]");
+
+        if (parts.length != 3) {
+            return null;
+        }
+
+        try {
+            return new long[] {Long.parseLong(parts[0].trim()), parseLong(parts[2])};
+        } catch (NumberFormatException e) {
+            Log.w("PushServiceSocket", e);
+            return null;
+        }
+    }
+
+    private long parseLong(String value) {
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private File encryptAttachment(PushAttachmentData attachment) throws IOException {
+        File ciphertext = File.createTempFile("push-attachment", ".tmp");
+
+        try {
+            OutputStream                 file = new BufferedOutputStream(new FileOutputStream(ciphertext));
+            AttachmentCipherOutputStream out  = new AttachmentCipherOutputStream(attachment.getKey(), file);
+
+            Util.copy(attachment.getData(), out);
             out.flush();
+            file.close();
+
+            return ciphertext;
+        } catch (IOException e) {
+            ciphertext.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Upload an encrypted attachment, retrying each segment up to {@link #MAX_UPLOAD_ATTEMPTS}
+     * times.  A resumable upload is sent in {@link #UPLOAD_SEGMENT_SIZE} segments, each with a
+     * Content-Range, and after a failure the store is asked how much it has before carrying
+     * on from there.  Otherwise the whole file is a single segment.
+     */
+    private void uploadAttachment(String url, File ciphertext, boolean resumable,
+                                  ProgressListener listener)
+            throws IOException
+    {
+        long total    = ciphertext.length();
+        long uploaded = 0;
+        int  failures = 0;
+
+        while (uploaded < total) {
+            long length = resumable ? Math.min(UPLOAD_SEGMENT_SIZE, total - uploaded) : total;
+
+            try {
+                uploaded = uploadSegment(url, ciphertext, uploaded, length, resumable, listener);
+                failures = 0;
+            } catch (PushNetworkException e) {
+                if (++failures >= MAX_UPLOAD_ATTEMPTS) {
+                    throw e;
+                }
+
+                Log.w("PushServiceSocket", e);
+
+                if (resumable) uploaded = getUploadedLength(url, total, uploaded);
+                else           uploaded = 0;
+            }
+        }
+    }
+
+    /**
+     * @return How much of the file the store has, once the segment has been sent.
+     */
+    private long uploadSegment(String url, File ciphertext, long offset, long length,
+                               boolean resumable, ProgressListener listener)
+            throws IOException
+    {
+        long              total      = ciphertext.length();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        RandomAccessFile  input      = new RandomAccessFile(ciphertext, "r");
+
+        try {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode((int) length);
+            connection.setRequestMethod("PUT");
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+
+            if (resumable) {
+                connection.setRequestProperty("Content-Range", "bytes " + offset + "-" + (offset + length - 1) + "/" + total);
+            }
+
+            OutputStream out     = connection.getOutputStream();
+            byte[]       buffer  = new byte[UPLOAD_BUFFER_SIZE];
+            long         written = 0;
 
-            if (connection.getResponseCode() != 200) {
-                throw new IOException("Bad response: " + connection.getResponseCode() + " " + connection.getResponseMessage());
+            input.seek(offset);
+
+            while (written < length) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, length - written));
+
+                if (read == -1) {
+                    throw new IOException("Attachment ciphertext ended early");
+                }
+
+                out.write(buffer, 0, read);
+                written += read;
+
+                if (listener != null) {
+                    listener.onAttachmentProgress(total, offset + written);
+                }
             }
+
+            out.close();
+
+            return getUploadResponse(connection, total);
+        } catch (NonSuccessfulResponseCodeException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new PushNetworkException(e);
         } finally {
+            input.close();
             connection.disconnect();
         }
     }
 
-    private String makeRequest(String urlFragment, String method, String body)
-            throws NonSuccessfulResponseCodeException, PushNetworkException
-    {
-        HttpURLConnection connection = makeBaseRequest(urlFragment, method, body);
+    /**
+     * Ask the store how much of a resumable upload it has, with an empty PUT.
+     *
+     * @return The length it has, or the given length if it couldn't be asked.
+     */
+    private long getUploadedLength(String url, long total, long uploaded) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
 
         try {
-            String response = Util.readFully(connection.getInputStream());
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(0);
+            connection.setRequestMethod("PUT");
+            connection.setRequestProperty("Content-Range", "bytes */" + total);
+            connection.getOutputStream().close();
+
+            return getUploadResponse(connection, total);
+        } catch (NonSuccessfulResponseCodeException e) {
+            throw e;
+        } catch (IOException e) {
+            Log.w("PushServiceSocket", e);
+            return uploaded;
+        } finally {
             connection.disconnect();
+        }
+    }
 
-            return response;
-        } catch (IOException ioe) {
-            throw new PushNetworkException(ioe);
+    /**
+     * @return The whole length if the upload is complete, or for a 308 (Resume Incomplete)
+     *         the length the store has so far, from its Range header.
+     */
+    private long getUploadResponse(HttpURLConnection connection, long total) throws IOException {
+        int responseCode = connection.getResponseCode();
+
+        if (responseCode == 200 || responseCode == 201) {
+            return total;
+        } else if (responseCode == 308) {
+            String range = connection.getHeaderField("Range");
+
+            if (range == null) {
+                return 0;
+            }
+
+            return parseLong(range.substring(range.indexOf('-') + 1)) + 1;
+        } else if (responseCode >= 500) {
+            throw new PushNetworkException("Bad response: " + responseCode + " " + connection.getResponseMessage());
+        } else {
+            throw new NonSuccessfulResponseCodeException("Bad response: " + responseCode + " " + connection.getResponseMessage());
         }
     }
 
-    private HttpURLConnection makeBaseRequest(String urlFragment, String method, String body)
+    private void makeRequest(String urlFragment, String method, Object entity)
             throws NonSuccessfulResponseCodeException, PushNetworkException
     {
-        HttpURLConnection connection = getConnection(urlFragment, method, body);
-        int               responseCode;
-        String            responseMessage;
-        String            response;
+        makeBaseRequest(urlFragment, method, entity).close();
+    }
 
-        try {
-            responseCode    = connection.getResponseCode();
-            responseMessage = connection.getResponseMessage();
-        } catch (IOException ioe) {
-            throw new PushNetworkException(ioe);
-        }
+    /**
+     * Make a request, and read the response body as JSON straight from the connection.
+     */
+    private <T> T makeRequest(String urlFragment, String method, Object entity, Class<T> responseType)
+            throws NonSuccessfulResponseCodeException, PushNetworkException
+    {
+        return readJson(makeBaseRequest(urlFragment, method, entity), responseType);
+    }
+
+    private PushResponse makeBaseRequest(String urlFragment, String method, Object entity)
+            throws NonSuccessfulResponseCodeException, PushNetworkException
+    {
+        PushResponse response     = getResponse(urlFragment, method, entity);
+        int          responseCode = response.getResponseCode();
 
         switch (responseCode) {
             case 413:
-                connection.disconnect();
+                response.close();
                 throw new RateLimitException("Rate limit exceeded: " + responseCode);
             case 401:
             case 403:
-                connection.disconnect();
+                response.close();
                 throw new AuthorizationFailedException("Authorization failed!");
             case 404:
-                connection.disconnect();
+                response.close();
                 throw new NotFoundException("Not found");
             case 409:
-                try {
-                    response = Util.readFully(connection.getErrorStream());
-                } catch (IOException e) {
-                    throw new PushNetworkException(e);
-                }
-                throw new MismatchedDevicesException(new Gson().fromJson(response, MismatchedDevices.class));
+                throw new MismatchedDevicesException(readJson(response, MismatchedDevices.class));
             case 410:
-                try {
-                    response = Util.readFully(connection.getErrorStream());
-                } catch (IOException e) {
-                    throw new PushNetworkException(e);
-                }
-                throw new StaleDevicesException(new Gson().fromJson(response, StaleDevices.class));
+                throw new StaleDevicesException(readJson(response, StaleDevices.class));
             case 417:
+                response.close();
                 throw new ExpectationFailedException();
         }
 
         if (responseCode != 200 && responseCode != 204) {
+            response.close();
             throw new NonSuccessfulResponseCodeException("Bad response: " + responseCode + " " +
-                    responseMessage);
+                    response.getResponseMessage());
         }
 
-        return connection;
+        return response;
     }
 
-    private HttpURLConnection getConnection(String urlFragment, String method, String body)
-            throws PushNetworkException
-    {
+    private <T> T readJson(PushResponse response, Class<T> type) throws PushNetworkException {
         try {
-            SSLContext context = SSLContext.getInstance("TLS");
-            context.init(null, trustManagers, null);
-
-            URL url = new URL(String.format("%s%s", serviceUrl, urlFragment));
-            Log.w("PushServiceSocket", "Push service URL: " + serviceUrl);
-            Log.w("PushServiceSocket", "Opening URL: " + url);
-
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-            if (ENFORCE_SSL) {
-                ((HttpsURLConnection) connection).setSSLSocketFactory(context.getSocketFactory());
-                ((HttpsURLConnection) connection).setHostnameVerifier(new StrictHostnameVerifier());
-            }
-
-            connection.setRequestMethod(method);
-            connection.setRequestProperty("Content-Type", "application/json");
-
-            if (password != null) {
-                connection.setRequestProperty("Authorization", getAuthorizationHeader());
-            }
+            return JsonUtil.fromJson(response.getBody(), type);
+        } catch (IOException e) {
+            throw new PushNetworkException(e);
+        } finally {
+            response.close();
+        }
+    }
 
-            if (body != null) {
-                connection.setDoOutput(true);
-            }
+    private PushResponse getResponse(String urlFragment, String method, Object entity)
+            throws PushNetworkException
+    {
+        String          url       = String.format("%s%s", serviceUrl, urlFragment);
+        PushRequestBody body      = entity == null ? null : PushRequestBody.forJson(entity);
+        long            startTime = System.currentTimeMillis();
 
-            connection.connect();
+        Log.w("PushServiceSocket", "Opening URL: " + url);
 
-            if (body != null) {
-                Log.w("PushServiceSocket", method + "  --  " + body);
-                OutputStream out = connection.getOutputStream();
-                out.write(body.getBytes());
-                out.close();
-            }
+        try {
+            PushResponse response = transport.execute(method, url, password != null ? getAuthorizationHeader() : null, body);
+            latencyTracker.record(method, urlFragment, System.currentTimeMillis() - startTime, false);
 
-            return connection;
+            return response;
         } catch (IOException e) {
+            latencyTracker.record(method, urlFragment, System.currentTimeMillis() - startTime, true);
             throw new PushNetworkException(e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new AssertionError(e);
-        } catch (KeyManagementException e) {
-            throw new AssertionError(e);
         }
     }
 
@@ -542,22 +889,6 @@ public class PushServiceSocket {
         }
     }
 
-    private TrustManager[] initializeTrustManager(TrustStore trustStore) {
-        try {
-            InputStream keyStoreInputStream = trustStore.getKeyStoreInputStream();
-            KeyStore    keyStore            = KeyStore.getInstance("BKS");
-
-            keyStore.load(keyStoreInputStream, trustStore.getKeyStorePassword().toCharArray());
-
-            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance("X509");
-            trustManagerFactory.init(keyStore);
-
-            return BlacklistingTrustManager.createFor(trustManagerFactory.getTrustManagers());
-        } catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException kse) {
-            throw new AssertionError(kse);
-        }
-    }
-
     private static class GcmRegistrationId {
         private String gcmRegistrationId;
 
@@ -572,6 +903,12 @@ public class PushServiceSocket {
         private long id;
         private String location;
 
+        /**
+         * Set by attachment stores that take an upload in Content-Range segments, answering
+         * each with a 308 until the last.
+         */
+        private boolean resumable;
+
         public long getId() {
             return id;
         }
@@ -579,5 +916,9 @@ public class PushServiceSocket {
         public String getLocation() {
             return location;
         }
+
+        public boolean isResumable() {
+            return resumable;
+        }
     }
 }
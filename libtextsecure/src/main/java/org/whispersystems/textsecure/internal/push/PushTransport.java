@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.internal.push;
+
+import java.io.IOException;
+
+/**
+ * Carries {@link PushServiceSocket}'s requests to the server.  The default transport keeps
+ * connections alive between requests, but any other can be swapped in, such as one that
+ * answers from a local mock server.
+ */
+public interface PushTransport {
+
+  /**
+   * Send a request and wait for the response's status line.
+   *
+   * @param method The HTTP method.
+   * @param url The full URL of the request.
+   * @param authorization The Authorization header, or null if there isn't one.
+   * @param body The JSON request body, or null if there isn't one.  It may be written in
+   *             chunks, since its length isn't known until it has been written.
+   * @return The response, whatever its status code.  The caller must close it, so that the
+   *         connection can be reused.
+   * @throws IOException If the server couldn't be reached.
+   */
+  public PushResponse execute(String method, String url, String authorization, PushRequestBody body)
+      throws IOException;
+}
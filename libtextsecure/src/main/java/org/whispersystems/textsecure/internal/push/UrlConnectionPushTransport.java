@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.internal.push;
+
+import org.apache.http.conn.ssl.StrictHostnameVerifier;
+import org.whispersystems.textsecure.api.push.TrustStore;
+import org.whispersystems.textsecure.internal.util.BlacklistingTrustManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * The default {@link PushTransport}, on top of {@link HttpURLConnection}.
+ *
+ * The platform keeps HTTP/1.1 connections alive in a pool, but only hands one back out to
+ * requests with the same {@link SSLSocketFactory} and {@link HostnameVerifier} instances.
+ * So rather than building an {@link SSLContext} for every request, one transport is built
+ * for each kind of {@link TrustStore} and shared, and connections are never disconnected.
+ */
+public class UrlConnectionPushTransport implements PushTransport {
+
+  private static final boolean          ENFORCE_SSL       = true;
+  private static final HostnameVerifier HOSTNAME_VERIFIER = new StrictHostnameVerifier();
+
+  private static final Map<Class<?>, UrlConnectionPushTransport> instances = new HashMap<>();
+
+  private final SSLSocketFactory socketFactory;
+
+  /**
+   * @return The shared transport for this kind of trust store.  Every instance of a
+   *         {@link TrustStore} class is expected to hold the same key store.
+   */
+  public static synchronized UrlConnectionPushTransport getInstance(TrustStore trustStore) {
+    UrlConnectionPushTransport instance = instances.get(trustStore.getClass());
+
+    if (instance == null) {
+      instance = new UrlConnectionPushTransport(trustStore);
+      instances.put(trustStore.getClass(), instance);
+    }
+
+    return instance;
+  }
+
+  public UrlConnectionPushTransport(TrustStore trustStore) {
+    try {
+      SSLContext context = SSLContext.getInstance("TLS");
+      context.init(null, initializeTrustManager(trustStore), null);
+
+      this.socketFactory = context.getSocketFactory();
+    } catch (NoSuchAlgorithmException | KeyManagementException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override
+  public PushResponse execute(String method, String url, String authorization, PushRequestBody body)
+      throws IOException
+  {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+
+    if (ENFORCE_SSL) {
+      if (!(connection instanceof HttpsURLConnection)) {
+        throw new IOException("Not an HTTPS URL: " + url);
+      }
+
+      ((HttpsURLConnection) connection).setSSLSocketFactory(socketFactory);
+      ((HttpsURLConnection) connection).setHostnameVerifier(HOSTNAME_VERIFIER);
+    }
+
+    connection.setRequestMethod(method);
+    connection.setRequestProperty("Content-Type", "application/json");
+
+    if (authorization != null) {
+      connection.setRequestProperty("Authorization", authorization);
+    }
+
+    if (body != null) {
+      connection.setDoOutput(true);
+      connection.setChunkedStreamingMode(0);
+
+      OutputStream out = connection.getOutputStream();
+      body.writeTo(out);
+      out.close();
+    }
+
+    int         responseCode    = connection.getResponseCode();
+    String      responseMessage = connection.getResponseMessage();
+    InputStream responseBody    = responseCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+    return new PushResponse(responseCode, responseMessage, responseBody);
+  }
+
+  private TrustManager[] initializeTrustManager(TrustStore trustStore) {
+    try {
+      InputStream keyStoreInputStream = trustStore.getKeyStoreInputStream();
+      KeyStore    keyStore            = KeyStore.getInstance("BKS");
+
+      keyStore.load(keyStoreInputStream, trustStore.getKeyStorePassword().toCharArray());
+
+      TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance("X509");
+      trustManagerFactory.init(keyStore);
+
+      return BlacklistingTrustManager.createFor(trustManagerFactory.getTrustManagers());
+    } catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException kse) {
+      throw new AssertionError(kse);
+    }
+  }
+}
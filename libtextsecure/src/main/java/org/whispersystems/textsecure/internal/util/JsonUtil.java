@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2014 Open Whisper Systems
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.whispersystems.textsecure.internal.util;
+
+import com.google.thoughtcrimegson.Gson;
+import com.google.thoughtcrimegson.GsonBuilder;
+import com.google.thoughtcrimegson.JsonIOException;
+
+import org.whispersystems.libaxolotl.IdentityKey;
+import org.whispersystems.textsecure.api.push.SignedPreKeyEntity;
+import org.whispersystems.textsecure.internal.push.PreKeyResponse;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * One shared {@link Gson}, with the adapters for keys and signatures registered, which
+ * reads and writes entities straight from and to streams rather than through Strings.
+ *
+ * The adapters only apply to key, identity key, and byte array fields, which no other
+ * entity has, so every entity can be serialized with the same instance.
+ */
+public class JsonUtil {
+
+  private static final String CHARSET = "UTF-8";
+
+  private static final Gson gson = SignedPreKeyEntity.forBuilder(new GsonBuilder())
+                                                     .registerTypeAdapter(IdentityKey.class, new PreKeyResponse.IdentityKeyJsonAdapter())
+                                                     .create();
+
+  public static Gson getGson() {
+    return gson;
+  }
+
+  public static String toJson(Object entity) {
+    return gson.toJson(entity);
+  }
+
+  public static <T> T fromJson(String json, Class<T> type) {
+    return gson.fromJson(json, type);
+  }
+
+  /**
+   * Write an entity to a stream without building its JSON in memory.  The stream is
+   * flushed, but not closed.
+   */
+  public static void toJson(Object entity, OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, CHARSET));
+
+    try {
+      gson.toJson(entity, entity.getClass(), writer);
+      writer.flush();
+    } catch (JsonIOException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Read an entity from a stream without reading the whole stream into memory first.  The
+   * stream isn't closed.
+   *
+   * @throws com.google.thoughtcrimegson.JsonParseException If the stream isn't valid JSON.
+   */
+  public static <T> T fromJson(InputStream in, Class<T> type) throws IOException {
+    try {
+      return gson.fromJson(new BufferedReader(new InputStreamReader(in, CHARSET)), type);
+    } catch (JsonIOException e) {
+      throw new IOException(e);
+    }
+  }
+}
@@ -20,9 +20,11 @@ import android.app.Application;
 import android.content.Context;
 
 import com.securecomcode.messaging.crypto.PRNGFixes;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.dependencies.AxolotlStorageModule;
 import com.securecomcode.messaging.dependencies.InjectableType;
 import com.securecomcode.messaging.dependencies.TextSecureCommunicationModule;
+import com.securecomcode.messaging.jobs.AxolotlMigrationJob;
 import com.securecomcode.messaging.jobs.GcmRefreshJob;
 import com.securecomcode.messaging.jobs.persistence.EncryptingJobSerializer;
 import com.securecomcode.messaging.jobs.requirements.MasterSecretRequirementProvider;
@@ -38,7 +40,8 @@ import dagger.ObjectGraph;
  * Will be called once when the TextSecure process is created.
  *
  * We're using this as an insertion point to patch up the Android PRNG disaster,
- * to initialize the job manager, and to check for GCM registration freshness.
+ * to initialize the job manager, to check for GCM registration freshness, and to finish
+ * any interrupted move of the axolotl stores into their database.
  *
  * @author Moxie Marlinspike
  */
@@ -57,6 +60,7 @@ public class ApplicationContext extends Application implements DependencyInjecto
     initializeDependencyInjection();
     initializeJobManager();
     initializeGcmCheck();
+    initializeAxolotlMigration();
   }
 
   @Override
@@ -84,6 +88,8 @@ public class ApplicationContext extends Application implements DependencyInjecto
                                                           new ServiceRequirementProvider(this),
                                                           new NetworkRequirementProvider(this))
                                 .withConsumerThreads(5)
+                                .withCpuConsumerThreads(2)
+                                .withGroupCommit(32, 50)
                                 .build();
   }
 
@@ -100,4 +106,10 @@ public class ApplicationContext extends Application implements DependencyInjecto
     }
   }
 
+  private void initializeAxolotlMigration() {
+    if (AxolotlStoreFactory.isMigrationPending(this)) {
+      this.jobManager.add(new AxolotlMigrationJob(this));
+    }
+  }
+
 }
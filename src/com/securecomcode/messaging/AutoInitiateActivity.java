@@ -27,7 +27,7 @@ import android.widget.Button;
 
 import com.securecomcode.messaging.crypto.KeyExchangeInitiator;
 import com.securecomcode.messaging.crypto.MasterSecret;
-import com.securecomcode.messaging.crypto.storage.TextSecureSessionStore;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.protocol.Tag;
 import com.securecomcode.messaging.recipients.Recipient;
 import com.securecomcode.messaging.util.MemoryCleaner;
@@ -117,7 +117,7 @@ public class AutoInitiateActivity extends Activity {
                                              MasterSecret masterSecret,
                                              Recipient recipient)
   {
-    SessionStore sessionStore = new TextSecureSessionStore(context, masterSecret);
+    SessionStore sessionStore = AxolotlStoreFactory.createSessionStore(context, masterSecret);
     return sessionStore.containsSession(recipient.getRecipientId(), PushAddress.DEFAULT_DEVICE_ID);
   }
 }
@@ -68,7 +68,7 @@ import com.securecomcode.messaging.crypto.KeyExchangeInitiator;
 import com.securecomcode.messaging.crypto.MasterCipher;
 import com.securecomcode.messaging.crypto.MasterSecret;
 import com.securecomcode.messaging.crypto.SecurityEvent;
-import com.securecomcode.messaging.crypto.storage.TextSecureSessionStore;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.database.DatabaseFactory;
 import com.securecomcode.messaging.database.DraftDatabase;
 import com.securecomcode.messaging.database.DraftDatabase.Draft;
@@ -318,7 +318,7 @@ public class ConversationActivity extends PassphraseRequiredActionBarActivity
   @Override
   public void onCreateContextMenu(ContextMenu menu, View v, ContextMenu.ContextMenuInfo menuInfo) {
     if (isEncryptedConversation && isSingleConversation()) {
-      SessionStore sessionStore      = new TextSecureSessionStore(this, masterSecret);
+      SessionStore sessionStore      = AxolotlStoreFactory.createSessionStore(this, masterSecret);
       Recipient  primaryRecipient    = getRecipients() == null ? null : getRecipients().getPrimaryRecipient();
       boolean    isPushDestination   = DirectoryHelper.isPushDestination(this, getRecipients());
       boolean    isSecureDestination = isSingleConversation() && sessionStore.containsSession(primaryRecipient.getRecipientId(),
@@ -675,7 +675,7 @@ public class ConversationActivity extends PassphraseRequiredActionBarActivity
 
   private void initializeSecurity() {
     TypedArray drawables           = obtainStyledAttributes(SEND_ATTRIBUTES);
-    SessionStore sessionStore      = new TextSecureSessionStore(this, masterSecret);
+    SessionStore sessionStore      = AxolotlStoreFactory.createSessionStore(this, masterSecret);
     Recipient  primaryRecipient    = getRecipients() == null ? null : getRecipients().getPrimaryRecipient();
     boolean    isPushDestination   = DirectoryHelper.isPushDestination(this, getRecipients());
     boolean    isSecureDestination = isSingleConversation() && sessionStore.containsSession(primaryRecipient.getRecipientId(),
@@ -29,6 +29,7 @@ import android.widget.ProgressBar;
 
 import com.securecomcode.messaging.crypto.IdentityKeyUtil;
 import com.securecomcode.messaging.crypto.MasterSecret;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.database.DatabaseFactory;
 import com.securecomcode.messaging.database.SmsDatabase;
 import com.securecomcode.messaging.database.model.SmsMessageRecord;
@@ -54,6 +55,7 @@ public class DatabaseUpgradeActivity extends Activity {
   public static final int NO_V1_VERSION                        = 83;
   public static final int SIGNED_PREKEY_VERSION                = 83;
   public static final int NO_DECRYPT_QUEUE_VERSION             = 84;
+  public static final int AXOLOTL_DATABASE_VERSION             = 85;
 
   private static final SortedSet<Integer> UPGRADE_VERSIONS = new TreeSet<Integer>() {{
     add(NO_MORE_KEY_EXCHANGE_PREFIX_VERSION);
@@ -63,6 +65,7 @@ public class DatabaseUpgradeActivity extends Activity {
     add(NO_V1_VERSION);
     add(SIGNED_PREKEY_VERSION);
     add(NO_DECRYPT_QUEUE_VERSION);
+    add(AXOLOTL_DATABASE_VERSION);
   }};
 
   private MasterSecret masterSecret;
@@ -193,6 +196,10 @@ public class DatabaseUpgradeActivity extends Activity {
         }
       }
 
+      if (params[0] < AXOLOTL_DATABASE_VERSION) {
+        AxolotlStoreFactory.enableDatabase(context, masterSecret);
+      }
+
       return null;
     }
 
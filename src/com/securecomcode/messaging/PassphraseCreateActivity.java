@@ -25,6 +25,7 @@ import android.support.v7.app.ActionBar;
 import com.securecomcode.messaging.crypto.IdentityKeyUtil;
 import com.securecomcode.messaging.crypto.MasterSecret;
 import com.securecomcode.messaging.crypto.MasterSecretUtil;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.util.MemoryCleaner;
 import com.securecomcode.messaging.util.TextSecurePreferences;
 import com.securecomcode.messaging.util.Util;
@@ -75,6 +76,7 @@ public class PassphraseCreateActivity extends PassphraseActivity {
 
       MasterSecretUtil.generateAsymmetricMasterSecret(PassphraseCreateActivity.this, masterSecret);
       IdentityKeyUtil.generateIdentityKeys(PassphraseCreateActivity.this, masterSecret);
+      AxolotlStoreFactory.enableDatabase(PassphraseCreateActivity.this, masterSecret);
       VersionTracker.updateLastSeenVersion(PassphraseCreateActivity.this);
 
       return null;
@@ -24,7 +24,7 @@ import android.widget.Toast;
 import com.securecomcode.messaging.crypto.IdentityKeyParcelable;
 import com.securecomcode.messaging.crypto.IdentityKeyUtil;
 import com.securecomcode.messaging.crypto.MasterSecret;
-import com.securecomcode.messaging.crypto.storage.TextSecureSessionStore;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.recipients.Recipient;
 import com.securecomcode.messaging.util.DynamicLanguage;
 import com.securecomcode.messaging.util.DynamicTheme;
@@ -182,7 +182,7 @@ public class VerifyIdentityActivity extends KeyScanningActivity {
   }
 
   private IdentityKey getRemoteIdentityKey(MasterSecret masterSecret, Recipient recipient) {
-    SessionStore  sessionStore = new TextSecureSessionStore(this, masterSecret);
+    SessionStore  sessionStore = AxolotlStoreFactory.createSessionStore(this, masterSecret);
     SessionRecord record       = sessionStore.loadSession(recipient.getRecipientId(),
                                                           PushAddress.DEFAULT_DEVICE_ID);
 
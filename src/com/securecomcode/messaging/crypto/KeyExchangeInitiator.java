@@ -22,9 +22,8 @@ import android.content.Context;
 import android.content.DialogInterface;
 
 import com.securecomcode.messaging.R;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.crypto.storage.TextSecureIdentityKeyStore;
-import com.securecomcode.messaging.crypto.storage.TextSecurePreKeyStore;
-import com.securecomcode.messaging.crypto.storage.TextSecureSessionStore;
 import com.securecomcode.messaging.recipients.Recipient;
 import com.securecomcode.messaging.sms.MessageSender;
 import com.securecomcode.messaging.sms.OutgoingKeyExchangeMessage;
@@ -61,9 +60,9 @@ public class KeyExchangeInitiator {
   }
 
   private static void initiateKeyExchange(Context context, MasterSecret masterSecret, Recipient recipient) {
-    SessionStore      sessionStore      = new TextSecureSessionStore(context, masterSecret);
-    PreKeyStore       preKeyStore       = new TextSecurePreKeyStore(context, masterSecret);
-    SignedPreKeyStore signedPreKeyStore = new TextSecurePreKeyStore(context, masterSecret);
+    SessionStore      sessionStore      = AxolotlStoreFactory.createSessionStore(context, masterSecret);
+    PreKeyStore       preKeyStore       = AxolotlStoreFactory.createPreKeyStore(context, masterSecret);
+    SignedPreKeyStore signedPreKeyStore = AxolotlStoreFactory.createSignedPreKeyStore(context, masterSecret);
     IdentityKeyStore  identityKeyStore  = new TextSecureIdentityKeyStore(context, masterSecret);
 
     SessionBuilder    sessionBuilder    = new SessionBuilder(sessionStore, preKeyStore, signedPreKeyStore,
@@ -80,7 +79,7 @@ public class KeyExchangeInitiator {
   private static boolean hasInitiatedSession(Context context, MasterSecret masterSecret,
                                              Recipient recipient)
   {
-    SessionStore  sessionStore  = new TextSecureSessionStore(context, masterSecret);
+    SessionStore  sessionStore  = AxolotlStoreFactory.createSessionStore(context, masterSecret);
     SessionRecord sessionRecord = sessionStore.loadSession(recipient.getRecipientId(), PushAddress.DEFAULT_DEVICE_ID);
 
     return sessionRecord.getSessionState().hasPendingKeyExchange();
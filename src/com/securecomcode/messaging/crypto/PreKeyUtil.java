@@ -22,6 +22,7 @@ import android.util.Log;
 
 import com.google.thoughtcrimegson.Gson;
 
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.crypto.storage.TextSecurePreKeyStore;
 import com.securecomcode.messaging.util.Util;
 import org.whispersystems.libaxolotl.IdentityKeyPair;
@@ -49,7 +50,7 @@ public class PreKeyUtil {
   public static final int BATCH_SIZE = 100;
 
   public static List<PreKeyRecord> generatePreKeys(Context context, MasterSecret masterSecret) {
-    PreKeyStore        preKeyStore    = new TextSecurePreKeyStore(context, masterSecret);
+    PreKeyStore        preKeyStore    = AxolotlStoreFactory.createPreKeyStore(context, masterSecret);
     List<PreKeyRecord> records        = new LinkedList<>();
     int                preKeyIdOffset = getNextPreKeyId(context);
 
@@ -70,7 +71,7 @@ public class PreKeyUtil {
                                                         IdentityKeyPair identityKeyPair)
   {
     try {
-      SignedPreKeyStore  signedPreKeyStore = new TextSecurePreKeyStore(context, masterSecret);
+      SignedPreKeyStore  signedPreKeyStore = AxolotlStoreFactory.createSignedPreKeyStore(context, masterSecret);
       int                signedPreKeyId    = getNextSignedPreKeyId(context);
       ECKeyPair          keyPair           = Curve25519.generateKeyPair();
       byte[]             signature         = Curve.calculateSignature(identityKeyPair.getPrivateKey(), keyPair.getPublicKey().serialize());
@@ -86,7 +87,7 @@ public class PreKeyUtil {
   }
 
   public static PreKeyRecord generateLastResortKey(Context context, MasterSecret masterSecret) {
-    PreKeyStore preKeyStore = new TextSecurePreKeyStore(context, masterSecret);
+    PreKeyStore preKeyStore = AxolotlStoreFactory.createPreKeyStore(context, masterSecret);
 
     if (preKeyStore.containsPreKey(Medium.MAX_VALUE)) {
       try {
@@ -0,0 +1,77 @@
+package com.securecomcode.messaging.crypto.storage;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * A single SQLite database holding every session, prekey, and signed prekey, in place of
+ * the one file per record that {@link TextSecureSessionStore} and
+ * {@link TextSecurePreKeyStore} write.  Records are encrypted with the
+ * {@link com.securecomcode.messaging.crypto.MasterCipher} just as they are in those files,
+ * and only the ids that already made up the file names are stored in the clear.
+ */
+class AxolotlDatabase extends SQLiteOpenHelper {
+
+  private static final int    DATABASE_VERSION = 1;
+  private static final String DATABASE_NAME    = "axolotl.db";
+  private static final Object lock             = new Object();
+
+  static final String SESSIONS_TABLE   = "sessions";
+  static final String RECIPIENT_ID     = "recipient_id";
+  static final String DEVICE_ID        = "device_id";
+  static final String HAS_SENDER_CHAIN = "has_sender_chain";
+  static final String RECORD           = "record";
+
+  static final String PREKEYS_TABLE        = "prekeys";
+  static final String SIGNED_PREKEYS_TABLE = "signed_prekeys";
+  static final String KEY_ID               = "key_id";
+
+  private static final String ID = "_id";
+
+  private static final String CREATE_SESSIONS_TABLE = "CREATE TABLE " + SESSIONS_TABLE + " (" + ID + " INTEGER PRIMARY KEY, " +
+      RECIPIENT_ID + " INTEGER NOT NULL, " + DEVICE_ID + " INTEGER NOT NULL, " +
+      HAS_SENDER_CHAIN + " INTEGER DEFAULT 0, " + RECORD + " BLOB NOT NULL);";
+
+  private static final String CREATE_PREKEYS_TABLE = "CREATE TABLE " + PREKEYS_TABLE + " (" + ID + " INTEGER PRIMARY KEY, " +
+      KEY_ID + " INTEGER NOT NULL, " + RECORD + " BLOB NOT NULL);";
+
+  private static final String CREATE_SIGNED_PREKEYS_TABLE = "CREATE TABLE " + SIGNED_PREKEYS_TABLE + " (" + ID + " INTEGER PRIMARY KEY, " +
+      KEY_ID + " INTEGER NOT NULL, " + RECORD + " BLOB NOT NULL);";
+
+  private static final String[] CREATE_INDEXS = {
+      "CREATE UNIQUE INDEX IF NOT EXISTS session_address_index ON " + SESSIONS_TABLE + " (" + RECIPIENT_ID + ", " + DEVICE_ID + ");",
+      "CREATE UNIQUE INDEX IF NOT EXISTS prekey_id_index ON " + PREKEYS_TABLE + " (" + KEY_ID + ");",
+      "CREATE UNIQUE INDEX IF NOT EXISTS signed_prekey_id_index ON " + SIGNED_PREKEYS_TABLE + " (" + KEY_ID + ");",
+  };
+
+  private static AxolotlDatabase instance;
+
+  static AxolotlDatabase getInstance(Context context) {
+    synchronized (lock) {
+      if (instance == null)
+        instance = new AxolotlDatabase(context.getApplicationContext());
+
+      return instance;
+    }
+  }
+
+  private AxolotlDatabase(Context context) {
+    super(context, DATABASE_NAME, null, DATABASE_VERSION);
+  }
+
+  @Override
+  public void onCreate(SQLiteDatabase db) {
+    db.execSQL(CREATE_SESSIONS_TABLE);
+    db.execSQL(CREATE_PREKEYS_TABLE);
+    db.execSQL(CREATE_SIGNED_PREKEYS_TABLE);
+
+    for (String statement : CREATE_INDEXS)
+      db.execSQL(statement);
+  }
+
+  @Override
+  public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+
+  }
+}
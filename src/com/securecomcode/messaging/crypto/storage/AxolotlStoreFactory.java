@@ -0,0 +1,76 @@
+package com.securecomcode.messaging.crypto.storage;
+
+import android.content.Context;
+
+import com.securecomcode.messaging.crypto.MasterSecret;
+import com.securecomcode.messaging.util.TextSecurePreferences;
+import org.whispersystems.libaxolotl.state.BatchSessionStore;
+import org.whispersystems.libaxolotl.state.PreKeyStore;
+import org.whispersystems.libaxolotl.state.SignedPreKeyStore;
+
+/**
+ * Chooses between the file-per-record stores and the {@link AxolotlDatabase} backed ones.
+ * The database is only chosen once the records still in files have been migrated into it,
+ * which happens in the background, either as part of the database upgrade or from an
+ * {@link com.securecomcode.messaging.jobs.AxolotlMigrationJob}.  Until then the file
+ * stores are still used.
+ */
+public class AxolotlStoreFactory {
+
+  private static final Object MIGRATION_LOCK = new Object();
+
+  public static BatchSessionStore createSessionStore(Context context, MasterSecret masterSecret) {
+    if (isDatabaseEnabled(context)) return new DatabaseSessionStore(context, masterSecret);
+    else                           return new TextSecureSessionStore(context, masterSecret);
+  }
+
+  public static PreKeyStore createPreKeyStore(Context context, MasterSecret masterSecret) {
+    if (isDatabaseEnabled(context)) return new DatabasePreKeyStore(context, masterSecret);
+    else                           return new TextSecurePreKeyStore(context, masterSecret);
+  }
+
+  public static SignedPreKeyStore createSignedPreKeyStore(Context context, MasterSecret masterSecret) {
+    if (isDatabaseEnabled(context)) return new DatabasePreKeyStore(context, masterSecret);
+    else                           return new TextSecurePreKeyStore(context, masterSecret);
+  }
+
+  /**
+   * Switch to the database backed stores, and migrate any records still in files into it.
+   * This blocks until the migration is done, so it must not be called on the main thread.
+   */
+  public static void enableDatabase(Context context, MasterSecret masterSecret) {
+    TextSecurePreferences.enableAxolotlDatabase(context);
+    migrate(context, masterSecret);
+  }
+
+  /**
+   * Finish switching to the database backed stores, if an earlier switch was interrupted
+   * before its migration was done.  This must not be called on the main thread.
+   */
+  public static void migrate(Context context, MasterSecret masterSecret) {
+    synchronized (MIGRATION_LOCK) {
+      if (isMigrationPending(context)) {
+        new FileStoreMigrator(context.getApplicationContext(), masterSecret).migrate();
+        TextSecurePreferences.setAxolotlFilesMigrated(context);
+      }
+    }
+  }
+
+  public static boolean isMigrationPending(Context context) {
+    return TextSecurePreferences.isAxolotlDatabaseEnabled(context) &&
+           !TextSecurePreferences.isAxolotlFilesMigrated(context);
+  }
+
+  /**
+   * Drop every cached session, from whichever store has been used.
+   */
+  public static void clearCache() {
+    TextSecureSessionStore.clearCache();
+    DatabaseSessionStore.clearCache();
+  }
+
+  private static boolean isDatabaseEnabled(Context context) {
+    return TextSecurePreferences.isAxolotlDatabaseEnabled(context) &&
+           TextSecurePreferences.isAxolotlFilesMigrated(context);
+  }
+}
@@ -0,0 +1,174 @@
+package com.securecomcode.messaging.crypto.storage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.securecomcode.messaging.crypto.MasterCipher;
+import com.securecomcode.messaging.crypto.MasterSecret;
+import org.whispersystems.libaxolotl.InvalidKeyIdException;
+import org.whispersystems.libaxolotl.InvalidMessageException;
+import org.whispersystems.libaxolotl.state.PreKeyRecord;
+import org.whispersystems.libaxolotl.state.PreKeyStore;
+import org.whispersystems.libaxolotl.state.SignedPreKeyRecord;
+import org.whispersystems.libaxolotl.state.SignedPreKeyStore;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.KEY_ID;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.PREKEYS_TABLE;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.RECORD;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.SIGNED_PREKEYS_TABLE;
+
+/**
+ * A {@link PreKeyStore} and {@link SignedPreKeyStore} that keeps every prekey as a row of
+ * the {@link AxolotlDatabase}, rather than as a file of its own.
+ */
+public class DatabasePreKeyStore implements PreKeyStore, SignedPreKeyStore {
+
+  private static final String TAG = DatabasePreKeyStore.class.getSimpleName();
+
+  private static final String KEY_ID_WHERE = KEY_ID + " = ?";
+
+  private final AxolotlDatabase database;
+  private final MasterSecret    masterSecret;
+
+  public DatabasePreKeyStore(Context context, MasterSecret masterSecret) {
+    this.database     = AxolotlDatabase.getInstance(context);
+    this.masterSecret = masterSecret;
+  }
+
+  @Override
+  public PreKeyRecord loadPreKey(int preKeyId) throws InvalidKeyIdException {
+    try {
+      return new PreKeyRecord(loadSerializedRecord(PREKEYS_TABLE, preKeyId));
+    } catch (IOException | InvalidMessageException e) {
+      Log.w(TAG, e);
+      throw new InvalidKeyIdException(e);
+    }
+  }
+
+  @Override
+  public SignedPreKeyRecord loadSignedPreKey(int signedPreKeyId) throws InvalidKeyIdException {
+    try {
+      return new SignedPreKeyRecord(loadSerializedRecord(SIGNED_PREKEYS_TABLE, signedPreKeyId));
+    } catch (IOException | InvalidMessageException e) {
+      Log.w(TAG, e);
+      throw new InvalidKeyIdException(e);
+    }
+  }
+
+  /**
+   * Read with a single query, and decrypted with one {@link MasterCipher}.
+   */
+  @Override
+  public List<SignedPreKeyRecord> loadSignedPreKeys() {
+    MasterCipher             masterCipher = new MasterCipher(masterSecret);
+    List<SignedPreKeyRecord> results      = new LinkedList<>();
+    Cursor                   cursor       = null;
+
+    try {
+      cursor = database.getReadableDatabase().query(SIGNED_PREKEYS_TABLE, new String[] {RECORD},
+                                                    null, null, null, null, null);
+
+      while (cursor != null && cursor.moveToNext()) {
+        try {
+          results.add(new SignedPreKeyRecord(masterCipher.decryptBytes(cursor.getBlob(0))));
+        } catch (IOException | InvalidMessageException e) {
+          Log.w(TAG, e);
+        }
+      }
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+
+    return results;
+  }
+
+  @Override
+  public void storePreKey(int preKeyId, PreKeyRecord record) {
+    storeSerializedRecord(PREKEYS_TABLE, preKeyId, record.serialize());
+  }
+
+  @Override
+  public void storeSignedPreKey(int signedPreKeyId, SignedPreKeyRecord record) {
+    storeSerializedRecord(SIGNED_PREKEYS_TABLE, signedPreKeyId, record.serialize());
+  }
+
+  @Override
+  public boolean containsPreKey(int preKeyId) {
+    return containsRecord(PREKEYS_TABLE, preKeyId);
+  }
+
+  @Override
+  public boolean containsSignedPreKey(int signedPreKeyId) {
+    return containsRecord(SIGNED_PREKEYS_TABLE, signedPreKeyId);
+  }
+
+  @Override
+  public void removePreKey(int preKeyId) {
+    removeRecord(PREKEYS_TABLE, preKeyId);
+  }
+
+  @Override
+  public void removeSignedPreKey(int signedPreKeyId) {
+    removeRecord(SIGNED_PREKEYS_TABLE, signedPreKeyId);
+  }
+
+  private byte[] loadSerializedRecord(String table, int keyId)
+      throws IOException, InvalidMessageException
+  {
+    Cursor cursor = null;
+
+    try {
+      cursor = database.getReadableDatabase().query(table, new String[] {RECORD}, KEY_ID_WHERE,
+                                                    new String[] {String.valueOf(keyId)},
+                                                    null, null, null);
+
+      if (cursor == null || !cursor.moveToFirst()) {
+        throw new IOException("No record for key id: " + keyId);
+      }
+
+      return new MasterCipher(masterSecret).decryptBytes(cursor.getBlob(0));
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+  }
+
+  private void storeSerializedRecord(String table, int keyId, byte[] serialized) {
+    database.getWritableDatabase().replace(table, null,
+                                           getContentValues(new MasterCipher(masterSecret), keyId, serialized));
+  }
+
+  private boolean containsRecord(String table, int keyId) {
+    Cursor cursor = null;
+
+    try {
+      cursor = database.getReadableDatabase().query(table, new String[] {KEY_ID}, KEY_ID_WHERE,
+                                                    new String[] {String.valueOf(keyId)},
+                                                    null, null, null);
+
+      return cursor != null && cursor.moveToFirst();
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+  }
+
+  private void removeRecord(String table, int keyId) {
+    database.getWritableDatabase().delete(table, KEY_ID_WHERE, new String[] {String.valueOf(keyId)});
+  }
+
+  static ContentValues getContentValues(MasterCipher masterCipher, int keyId, byte[] serialized) {
+    ContentValues values = new ContentValues();
+    values.put(KEY_ID, keyId);
+    values.put(RECORD, masterCipher.encryptBytes(serialized));
+
+    return values;
+  }
+}
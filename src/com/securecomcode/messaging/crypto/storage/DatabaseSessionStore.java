@@ -0,0 +1,235 @@
+package com.securecomcode.messaging.crypto.storage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.securecomcode.messaging.crypto.MasterCipher;
+import com.securecomcode.messaging.crypto.MasterSecret;
+import org.whispersystems.libaxolotl.InvalidMessageException;
+import org.whispersystems.libaxolotl.SessionLock;
+import org.whispersystems.libaxolotl.state.BatchSessionStore;
+import org.whispersystems.libaxolotl.state.SessionRecord;
+import org.whispersystems.textsecure.api.push.PushAddress;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.DEVICE_ID;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.HAS_SENDER_CHAIN;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.RECIPIENT_ID;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.RECORD;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.SESSIONS_TABLE;
+
+/**
+ * A {@link BatchSessionStore} that keeps every session as a row of the {@link AxolotlDatabase},
+ * indexed by recipient and device, rather than as a file of its own.
+ */
+public class DatabaseSessionStore implements BatchSessionStore {
+
+  private static final String TAG = DatabaseSessionStore.class.getSimpleName();
+
+  private static final String ADDRESS_WHERE = RECIPIENT_ID + " = ? AND " + DEVICE_ID + " = ?";
+  private static final int    CACHE_SIZE    = 100;
+
+  private static final SessionCache cache = new SessionCache(CACHE_SIZE);
+
+  private final AxolotlDatabase database;
+  private final MasterSecret    masterSecret;
+
+  public DatabaseSessionStore(Context context, MasterSecret masterSecret) {
+    this.database     = AxolotlDatabase.getInstance(context);
+    this.masterSecret = masterSecret;
+  }
+
+  /**
+   * Drop every cached session, so that no decrypted session state is left in memory once
+   * the master secret has been cleared.
+   */
+  public static void clearCache() {
+    cache.clear();
+  }
+
+  @Override
+  public SessionRecord loadSession(long recipientId, int deviceId) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
+      String name   = getSessionName(recipientId, deviceId);
+      byte[] cached = cache.get(name);
+      Cursor cursor = null;
+
+      try {
+        if (cached != null) {
+          return new SessionRecord(cached);
+        }
+
+        cursor = database.getReadableDatabase().query(SESSIONS_TABLE, new String[] {RECORD}, ADDRESS_WHERE,
+                                                      getAddressArgs(recipientId, deviceId),
+                                                      null, null, null);
+
+        if (cursor == null || !cursor.moveToFirst()) {
+          return new SessionRecord();
+        }
+
+        byte[]        serialized = new MasterCipher(masterSecret).decryptBytes(cursor.getBlob(0));
+        SessionRecord record     = new SessionRecord(serialized);
+
+        cache.put(name, serialized, record.getSessionState().hasSenderChain());
+        return record;
+      } catch (InvalidMessageException | IOException e) {
+        Log.w(TAG, e);
+        return new SessionRecord();
+      } finally {
+        if (cursor != null)
+          cursor.close();
+      }
+    }
+  }
+
+  @Override
+  public void storeSession(long recipientId, int deviceId, SessionRecord record) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
+      byte[] serialized = record.serialize();
+
+      database.getWritableDatabase().replace(SESSIONS_TABLE, null,
+                                             getContentValues(new MasterCipher(masterSecret),
+                                                              recipientId, deviceId, record, serialized));
+
+      cache.put(getSessionName(recipientId, deviceId), serialized, record.getSessionState().hasSenderChain());
+    }
+  }
+
+  /**
+   * Every record is written in a single transaction, so either all of the sessions are
+   * updated or none of them are.  The caller is expected to hold the lock of every session.
+   */
+  @Override
+  public void storeSessions(long recipientId, Map<Integer, SessionRecord> records) {
+    MasterCipher        masterCipher = new MasterCipher(masterSecret);
+    Map<String, byte[]> serialized   = new HashMap<>(records.size());
+    SQLiteDatabase      db           = database.getWritableDatabase();
+
+    db.beginTransaction();
+
+    try {
+      for (Map.Entry<Integer, SessionRecord> record : records.entrySet()) {
+        byte[] recordBytes = record.getValue().serialize();
+
+        db.replace(SESSIONS_TABLE, null, getContentValues(masterCipher, recipientId, record.getKey(),
+                                                          record.getValue(), recordBytes));
+        serialized.put(getSessionName(recipientId, record.getKey()), recordBytes);
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    for (Map.Entry<Integer, SessionRecord> record : records.entrySet()) {
+      String name = getSessionName(recipientId, record.getKey());
+      cache.put(name, serialized.get(name), record.getValue().getSessionState().hasSenderChain());
+    }
+  }
+
+  /**
+   * Answered from the session index where possible, and otherwise from the unencrypted
+   * sender chain column, so that the session itself doesn't have to be decrypted.
+   */
+  @Override
+  public boolean containsSession(long recipientId, int deviceId) {
+    String  name    = getSessionName(recipientId, deviceId);
+    Boolean indexed = cache.hasSenderChain(name);
+
+    if (indexed != null) {
+      return indexed;
+    }
+
+    synchronized (SessionLock.get(recipientId, deviceId)) {
+      Cursor cursor = null;
+
+      try {
+        cursor = database.getReadableDatabase().query(SESSIONS_TABLE, new String[] {HAS_SENDER_CHAIN}, ADDRESS_WHERE,
+                                                      getAddressArgs(recipientId, deviceId),
+                                                      null, null, null);
+
+        boolean hasSenderChain = cursor != null && cursor.moveToFirst() && cursor.getInt(0) == 1;
+
+        cache.setHasSenderChain(name, hasSenderChain);
+        return hasSenderChain;
+      } finally {
+        if (cursor != null)
+          cursor.close();
+      }
+    }
+  }
+
+  @Override
+  public void deleteSession(long recipientId, int deviceId) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
+      database.getWritableDatabase().delete(SESSIONS_TABLE, ADDRESS_WHERE, getAddressArgs(recipientId, deviceId));
+      cache.remove(getSessionName(recipientId, deviceId));
+    }
+  }
+
+  @Override
+  public void deleteAllSessions(long recipientId) {
+    List<Integer> devices = getSubDeviceSessions(recipientId);
+
+    deleteSession(recipientId, PushAddress.DEFAULT_DEVICE_ID);
+
+    for (int device : devices) {
+      deleteSession(recipientId, device);
+    }
+  }
+
+  /**
+   * A lookup on the (recipient, device) index, so the cost doesn't grow with the number of
+   * sessions.
+   */
+  @Override
+  public List<Integer> getSubDeviceSessions(long recipientId) {
+    List<Integer> results = new LinkedList<>();
+    Cursor        cursor  = null;
+
+    try {
+      cursor = database.getReadableDatabase().query(SESSIONS_TABLE, new String[] {DEVICE_ID},
+                                                    RECIPIENT_ID + " = ? AND " + DEVICE_ID + " != ?",
+                                                    new String[] {String.valueOf(recipientId),
+                                                                  String.valueOf(PushAddress.DEFAULT_DEVICE_ID)},
+                                                    null, null, DEVICE_ID + " ASC");
+
+      while (cursor != null && cursor.moveToNext()) {
+        results.add(cursor.getInt(0));
+      }
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+
+    return results;
+  }
+
+  static ContentValues getContentValues(MasterCipher masterCipher, long recipientId, int deviceId,
+                                        SessionRecord record, byte[] serialized)
+  {
+    ContentValues values = new ContentValues();
+    values.put(RECIPIENT_ID, recipientId);
+    values.put(DEVICE_ID, deviceId);
+    values.put(HAS_SENDER_CHAIN, record.getSessionState().hasSenderChain() ? 1 : 0);
+    values.put(RECORD, masterCipher.encryptBytes(serialized));
+
+    return values;
+  }
+
+  private String[] getAddressArgs(long recipientId, int deviceId) {
+    return new String[] {String.valueOf(recipientId), String.valueOf(deviceId)};
+  }
+
+  private String getSessionName(long recipientId, int deviceId) {
+    return recipientId + (deviceId == PushAddress.DEFAULT_DEVICE_ID ? "" : "." + deviceId);
+  }
+}
@@ -0,0 +1,187 @@
+package com.securecomcode.messaging.crypto.storage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.securecomcode.messaging.crypto.MasterCipher;
+import com.securecomcode.messaging.crypto.MasterSecret;
+import org.whispersystems.libaxolotl.InvalidKeyIdException;
+import org.whispersystems.libaxolotl.InvalidMessageException;
+import org.whispersystems.libaxolotl.state.SessionRecord;
+import org.whispersystems.textsecure.api.push.PushAddress;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.DEVICE_ID;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.KEY_ID;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.PREKEYS_TABLE;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.RECIPIENT_ID;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.SESSIONS_TABLE;
+import static com.securecomcode.messaging.crypto.storage.AxolotlDatabase.SIGNED_PREKEYS_TABLE;
+
+/**
+ * Moves the sessions and prekeys written by {@link TextSecureSessionStore} and
+ * {@link TextSecurePreKeyStore} into the {@link AxolotlDatabase}.
+ *
+ * Everything is copied in one transaction, and the files are only deleted once it has
+ * committed, so an interrupted migration is simply run again.  Rows that are already in the
+ * database are never overwritten by the files, since they can only have been written after
+ * those files were migrated.  A file that can't be read is left where it is rather than
+ * deleted, but isn't tried again once the migration has finished.
+ */
+class FileStoreMigrator {
+
+  private static final String TAG = FileStoreMigrator.class.getSimpleName();
+
+  private static final String SESSION_WHERE = RECIPIENT_ID + " = ? AND " + DEVICE_ID + " = ?";
+  private static final String KEY_ID_WHERE  = KEY_ID + " = ?";
+
+  private final Context      context;
+  private final MasterSecret masterSecret;
+
+  FileStoreMigrator(Context context, MasterSecret masterSecret) {
+    this.context      = context;
+    this.masterSecret = masterSecret;
+  }
+
+  void migrate() {
+    File sessionDirectory      = new File(context.getFilesDir(), TextSecureSessionStore.SESSIONS_DIRECTORY_V2);
+    File preKeyDirectory       = new File(context.getFilesDir(), TextSecurePreKeyStore.PREKEY_DIRECTORY);
+    File signedPreKeyDirectory = new File(context.getFilesDir(), TextSecurePreKeyStore.SIGNED_PREKEY_DIRECTORY);
+
+    if (!sessionDirectory.exists() && !preKeyDirectory.exists() && !signedPreKeyDirectory.exists()) {
+      return;
+    }
+
+    SQLiteDatabase db       = AxolotlDatabase.getInstance(context).getWritableDatabase();
+    List<File>     migrated = new LinkedList<>();
+
+    db.beginTransaction();
+
+    try {
+      migrateSessions(db, sessionDirectory, migrated);
+      migratePreKeys(db, preKeyDirectory, migrated);
+      migrateSignedPreKeys(db, signedPreKeyDirectory, migrated);
+
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    for (File file : migrated) {
+      if (!file.delete()) {
+        Log.w(TAG, "Failed to delete migrated record: " + file.getName());
+      }
+    }
+
+    sessionDirectory.delete();
+    TextSecureSessionStore.clearCache();
+
+    Log.w(TAG, "Migrated " + migrated.size() + " records.");
+  }
+
+  private void migrateSessions(SQLiteDatabase db, File directory, List<File> migrated) {
+    TextSecureSessionStore sessionStore = new TextSecureSessionStore(context, masterSecret);
+    MasterCipher           masterCipher = new MasterCipher(masterSecret);
+
+    for (File file : listFiles(directory)) {
+      try {
+        String[]      parts       = file.getName().split("[.]", 2);
+        long          recipientId = Long.parseLong(parts[0]);
+        int           deviceId    = parts.length > 1 ? Integer.parseInt(parts[1]) : PushAddress.DEFAULT_DEVICE_ID;
+        SessionRecord record      = sessionStore.loadSessionRecord(recipientId, deviceId);
+
+        if (insert(db, SESSIONS_TABLE,
+                   DatabaseSessionStore.getContentValues(masterCipher, recipientId, deviceId,
+                                                         record, record.serialize()),
+                   SESSION_WHERE, new String[] {String.valueOf(recipientId), String.valueOf(deviceId)}))
+        {
+          migrated.add(file);
+        }
+      } catch (NumberFormatException | InvalidMessageException | IOException e) {
+        Log.w(TAG, e);
+      }
+    }
+  }
+
+  private void migratePreKeys(SQLiteDatabase db, File directory, List<File> migrated) {
+    TextSecurePreKeyStore preKeyStore  = new TextSecurePreKeyStore(context, masterSecret);
+    MasterCipher          masterCipher = new MasterCipher(masterSecret);
+
+    for (File file : listFiles(directory)) {
+      try {
+        int preKeyId = Integer.parseInt(file.getName());
+
+        if (insert(db, PREKEYS_TABLE,
+                   DatabasePreKeyStore.getContentValues(masterCipher, preKeyId,
+                                                        preKeyStore.loadPreKey(preKeyId).serialize()),
+                   KEY_ID_WHERE, new String[] {String.valueOf(preKeyId)}))
+        {
+          migrated.add(file);
+        }
+      } catch (NumberFormatException e) {
+        // The prekey index is kept alongside the records.
+      } catch (InvalidKeyIdException e) {
+        Log.w(TAG, e);
+      }
+    }
+  }
+
+  private void migrateSignedPreKeys(SQLiteDatabase db, File directory, List<File> migrated) {
+    TextSecurePreKeyStore preKeyStore  = new TextSecurePreKeyStore(context, masterSecret);
+    MasterCipher          masterCipher = new MasterCipher(masterSecret);
+
+    for (File file : listFiles(directory)) {
+      try {
+        int signedPreKeyId = Integer.parseInt(file.getName());
+
+        if (insert(db, SIGNED_PREKEYS_TABLE,
+                   DatabasePreKeyStore.getContentValues(masterCipher, signedPreKeyId,
+                                                        preKeyStore.loadSignedPreKey(signedPreKeyId).serialize()),
+                   KEY_ID_WHERE, new String[] {String.valueOf(signedPreKeyId)}))
+        {
+          migrated.add(file);
+        }
+      } catch (NumberFormatException e) {
+        // The signed prekey index is kept alongside the records.
+      } catch (InvalidKeyIdException e) {
+        Log.w(TAG, e);
+      }
+    }
+  }
+
+  /**
+   * @return true if the row was written, or one for the same record was already there.
+   *         Either way the database holds the record, and its file can go.
+   */
+  private boolean insert(SQLiteDatabase db, String table, ContentValues values,
+                         String where, String[] whereArgs)
+  {
+    if (db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+      return true;
+    }
+
+    Cursor cursor = null;
+
+    try {
+      cursor = db.query(table, null, where, whereArgs, null, null, null);
+      return cursor != null && cursor.moveToFirst();
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+  }
+
+  private File[] listFiles(File directory) {
+    File[] files = directory.listFiles();
+
+    if (files == null) return new File[0];
+    else               return files;
+  }
+}
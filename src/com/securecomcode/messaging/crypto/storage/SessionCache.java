@@ -0,0 +1,109 @@
+package com.securecomcode.messaging.crypto.storage;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A bounded, process-wide cache of decrypted session records, along with an index of which
+ * sessions have a sender chain, and of which sub-devices each recipient has sessions with.
+ *
+ * Records are cached in serialized form, so a caller that modifies a loaded
+ * {@link org.whispersystems.libaxolotl.state.SessionRecord} without storing it can't change
+ * what the next caller loads.  The sender chain index is kept for every session that's been
+ * seen, not just the cached ones, since it's only a flag per session.  The device index holds
+ * nothing that isn't already in the session file names, so it isn't dropped by
+ * {@link #clear()}.
+ */
+class SessionCache {
+
+  private final Map<String, byte[]>  records;
+  private final Map<String, Boolean> senderChains = new HashMap<>();
+
+  private Map<Long, Set<Integer>> subDevices;
+
+  SessionCache(final int maxSize) {
+    this.records = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  public synchronized byte[] get(String name) {
+    return records.get(name);
+  }
+
+  public synchronized void put(String name, byte[] serialized, boolean hasSenderChain) {
+    records.put(name, serialized);
+    senderChains.put(name, hasSenderChain);
+  }
+
+  /**
+   * @return Whether the session has a sender chain, or null if it hasn't been seen yet.
+   */
+  public synchronized Boolean hasSenderChain(String name) {
+    return senderChains.get(name);
+  }
+
+  public synchronized void setHasSenderChain(String name, boolean hasSenderChain) {
+    senderChains.put(name, hasSenderChain);
+  }
+
+  public synchronized void remove(String name) {
+    records.remove(name);
+    senderChains.put(name, false);
+  }
+
+  /**
+   * @return Whether the device index has been loaded.
+   */
+  public synchronized boolean hasDeviceIndex() {
+    return subDevices != null;
+  }
+
+  public synchronized void setDeviceIndex(Map<Long, Set<Integer>> subDevices) {
+    this.subDevices = subDevices;
+  }
+
+  public synchronized List<Integer> getSubDevices(long recipientId) {
+    Set<Integer> devices = subDevices.get(recipientId);
+
+    if (devices == null) return new LinkedList<>();
+    else                 return new LinkedList<>(devices);
+  }
+
+  public synchronized void addSubDevice(long recipientId, int deviceId) {
+    if (subDevices == null) return;
+
+    Set<Integer> devices = subDevices.get(recipientId);
+
+    if (devices == null) {
+      devices = new TreeSet<>();
+      subDevices.put(recipientId, devices);
+    }
+
+    devices.add(deviceId);
+  }
+
+  public synchronized void removeSubDevice(long recipientId, int deviceId) {
+    if (subDevices == null) return;
+
+    Set<Integer> devices = subDevices.get(recipientId);
+
+    if (devices != null) {
+      devices.remove(deviceId);
+      if (devices.isEmpty()) subDevices.remove(recipientId);
+    }
+  }
+
+  public synchronized void clear() {
+    records.clear();
+    senderChains.clear();
+  }
+}
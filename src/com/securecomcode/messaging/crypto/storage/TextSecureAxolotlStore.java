@@ -7,28 +7,29 @@ import org.whispersystems.libaxolotl.IdentityKey;
 import org.whispersystems.libaxolotl.IdentityKeyPair;
 import org.whispersystems.libaxolotl.InvalidKeyIdException;
 import org.whispersystems.libaxolotl.state.AxolotlStore;
+import org.whispersystems.libaxolotl.state.BatchSessionStore;
 import org.whispersystems.libaxolotl.state.IdentityKeyStore;
 import org.whispersystems.libaxolotl.state.PreKeyRecord;
 import org.whispersystems.libaxolotl.state.PreKeyStore;
 import org.whispersystems.libaxolotl.state.SessionRecord;
-import org.whispersystems.libaxolotl.state.SessionStore;
 import org.whispersystems.libaxolotl.state.SignedPreKeyRecord;
 import org.whispersystems.libaxolotl.state.SignedPreKeyStore;
 
 import java.util.List;
+import java.util.Map;
 
-public class TextSecureAxolotlStore implements AxolotlStore {
+public class TextSecureAxolotlStore implements AxolotlStore, BatchSessionStore {
 
   private final PreKeyStore       preKeyStore;
   private final SignedPreKeyStore signedPreKeyStore;
   private final IdentityKeyStore  identityKeyStore;
-  private final SessionStore      sessionStore;
+  private final BatchSessionStore sessionStore;
 
   public TextSecureAxolotlStore(Context context, MasterSecret masterSecret) {
-    this.preKeyStore       = new TextSecurePreKeyStore(context, masterSecret);
-    this.signedPreKeyStore = new TextSecurePreKeyStore(context, masterSecret);
+    this.preKeyStore       = AxolotlStoreFactory.createPreKeyStore(context, masterSecret);
+    this.signedPreKeyStore = AxolotlStoreFactory.createSignedPreKeyStore(context, masterSecret);
     this.identityKeyStore  = new TextSecureIdentityKeyStore(context, masterSecret);
-    this.sessionStore      = new TextSecureSessionStore(context, masterSecret);
+    this.sessionStore      = AxolotlStoreFactory.createSessionStore(context, masterSecret);
   }
 
   @Override
@@ -86,6 +87,11 @@ public class TextSecureAxolotlStore implements AxolotlStore {
     sessionStore.storeSession(recipientId, deviceId, record);
   }
 
+  @Override
+  public void storeSessions(long recipientId, Map<Integer, SessionRecord> records) {
+    sessionStore.storeSessions(recipientId, records);
+  }
+
   @Override
   public boolean containsSession(long recipientId, int deviceId) {
     return sessionStore.containsSession(recipientId, deviceId);
@@ -0,0 +1,176 @@
+package com.securecomcode.messaging.crypto.storage;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.securecomcode.messaging.crypto.MasterCipher;
+import com.securecomcode.messaging.crypto.MasterSecret;
+import org.whispersystems.libaxolotl.InvalidMessageException;
+import org.whispersystems.libaxolotl.groups.state.SenderKeyRecord;
+import org.whispersystems.textsecure.api.crypto.GroupSenderKeyStore;
+import com.securecomcode.messaging.util.Conversions;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class TextSecureSenderKeyStore implements GroupSenderKeyStore {
+
+  public  static final String SENDER_KEY_DIRECTORY   = "sender_keys";
+  public  static final String DISTRIBUTION_DIRECTORY = "sender_key_distributions";
+
+  private static final int    CURRENT_VERSION_MARKER = 1;
+  private static final Object FILE_LOCK              = new Object();
+  private static final String TAG                    = TextSecureSenderKeyStore.class.getSimpleName();
+
+  private final Context      context;
+  private final MasterSecret masterSecret;
+
+  public TextSecureSenderKeyStore(Context context, MasterSecret masterSecret) {
+    this.context      = context.getApplicationContext();
+    this.masterSecret = masterSecret;
+  }
+
+  @Override
+  public SenderKeyRecord loadSenderKey(String senderKeyId) {
+    synchronized (FILE_LOCK) {
+      try {
+        return new SenderKeyRecord(loadSerializedRecord(getSenderKeyFile(senderKeyId)));
+      } catch (FileNotFoundException e) {
+        return new SenderKeyRecord();
+      } catch (IOException | InvalidMessageException e) {
+        Log.w(TAG, e);
+        return new SenderKeyRecord();
+      }
+    }
+  }
+
+  @Override
+  public void storeSenderKey(String senderKeyId, SenderKeyRecord record) {
+    synchronized (FILE_LOCK) {
+      try {
+        storeSerializedRecord(getSenderKeyFile(senderKeyId), record.serialize());
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  @Override
+  public Set<String> loadDistributedDevices(String senderKeyId) {
+    synchronized (FILE_LOCK) {
+      try {
+        String devices = new String(loadSerializedRecord(getDistributionFile(senderKeyId)), "UTF-8");
+
+        if (devices.isEmpty()) return new HashSet<>();
+        else                   return new HashSet<>(Arrays.asList(devices.split("\n")));
+      } catch (FileNotFoundException e) {
+        return new HashSet<>();
+      } catch (IOException | InvalidMessageException e) {
+        Log.w(TAG, e);
+        return new HashSet<>();
+      }
+    }
+  }
+
+  @Override
+  public void storeDistributedDevices(String senderKeyId, Set<String> devices) {
+    synchronized (FILE_LOCK) {
+      try {
+        StringBuilder serialized = new StringBuilder();
+
+        for (String device : devices) {
+          if (serialized.length() > 0) serialized.append('\n');
+          serialized.append(device);
+        }
+
+        storeSerializedRecord(getDistributionFile(senderKeyId), serialized.toString().getBytes("UTF-8"));
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  private byte[] loadSerializedRecord(File recordFile)
+      throws IOException, InvalidMessageException
+  {
+    MasterCipher    masterCipher  = new MasterCipher(masterSecret);
+    FileInputStream fin           = new FileInputStream(recordFile);
+
+    try {
+      int recordVersion = readInteger(fin);
+
+      if (recordVersion != CURRENT_VERSION_MARKER) {
+        throw new AssertionError("Invalid version: " + recordVersion);
+      }
+
+      return masterCipher.decryptBytes(readBlob(fin));
+    } finally {
+      fin.close();
+    }
+  }
+
+  private void storeSerializedRecord(File file, byte[] serialized) throws IOException {
+    MasterCipher     masterCipher = new MasterCipher(masterSecret);
+    RandomAccessFile recordFile   = new RandomAccessFile(file, "rw");
+    FileChannel      out          = recordFile.getChannel();
+
+    out.position(0);
+    writeInteger(CURRENT_VERSION_MARKER, out);
+    writeBlob(masterCipher.encryptBytes(serialized), out);
+    out.truncate(out.position());
+    recordFile.close();
+  }
+
+  private File getSenderKeyFile(String senderKeyId) {
+    return new File(getRecordsDirectory(SENDER_KEY_DIRECTORY), senderKeyId);
+  }
+
+  private File getDistributionFile(String senderKeyId) {
+    return new File(getRecordsDirectory(DISTRIBUTION_DIRECTORY), senderKeyId);
+  }
+
+  private File getRecordsDirectory(String directoryName) {
+    File directory = new File(context.getFilesDir(), directoryName);
+
+    if (!directory.exists()) {
+      if (!directory.mkdirs()) {
+        Log.w(TAG, "Sender key directory creation failed!");
+      }
+    }
+
+    return directory;
+  }
+
+  private byte[] readBlob(FileInputStream in) throws IOException {
+    int length       = readInteger(in);
+    byte[] blobBytes = new byte[length];
+
+    in.read(blobBytes, 0, blobBytes.length);
+    return blobBytes;
+  }
+
+  private void writeBlob(byte[] blobBytes, FileChannel out) throws IOException {
+    writeInteger(blobBytes.length, out);
+    out.write(ByteBuffer.wrap(blobBytes));
+  }
+
+  private int readInteger(FileInputStream in) throws IOException {
+    byte[] integer = new byte[4];
+    in.read(integer, 0, integer.length);
+    return Conversions.byteArrayToInt(integer);
+  }
+
+  private void writeInteger(int value, FileChannel out) throws IOException {
+    byte[] valueBytes = Conversions.intToByteArray(value);
+    out.write(ByteBuffer.wrap(valueBytes));
+  }
+
+}
@@ -6,9 +6,10 @@ import android.util.Log;
 import com.securecomcode.messaging.crypto.MasterCipher;
 import com.securecomcode.messaging.crypto.MasterSecret;
 import org.whispersystems.libaxolotl.InvalidMessageException;
+import org.whispersystems.libaxolotl.SessionLock;
+import org.whispersystems.libaxolotl.state.BatchSessionStore;
 import org.whispersystems.libaxolotl.state.SessionRecord;
 import org.whispersystems.libaxolotl.state.SessionState;
-import org.whispersystems.libaxolotl.state.SessionStore;
 import org.whispersystems.textsecure.api.push.PushAddress;
 import com.securecomcode.messaging.util.Conversions;
 
@@ -18,20 +19,28 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static org.whispersystems.libaxolotl.state.StorageProtos.SessionStructure;
 
-public class TextSecureSessionStore implements SessionStore {
+public class TextSecureSessionStore implements BatchSessionStore {
 
   private static final String TAG                   = TextSecureSessionStore.class.getSimpleName();
-  private static final String SESSIONS_DIRECTORY_V2 = "sessions-v2";
-  private static final Object FILE_LOCK             = new Object();
+  public  static final String SESSIONS_DIRECTORY_V2 = "sessions-v2";
 
   private static final int SINGLE_STATE_VERSION   = 1;
   private static final int ARCHIVE_STATES_VERSION = 2;
-  private static final int CURRENT_VERSION        = 2;
+  private static final int METADATA_VERSION       = 3;
+  private static final int CURRENT_VERSION        = 3;
+
+  private static final int SENDER_CHAIN_FLAG = 1;
+  private static final int CACHE_SIZE        = 100;
+
+  private static final SessionCache cache = new SessionCache(CACHE_SIZE);
 
   private final Context      context;
   private final MasterSecret masterSecret;
@@ -41,67 +50,166 @@ public class TextSecureSessionStore implements SessionStore {
     this.masterSecret = masterSecret;
   }
 
+  /**
+   * Drop every cached session, so that no decrypted session state is left in memory once
+   * the master secret has been cleared.
+   */
+  public static void clearCache() {
+    cache.clear();
+  }
+
   @Override
   public SessionRecord loadSession(long recipientId, int deviceId) {
-    synchronized (FILE_LOCK) {
-      try {
-        MasterCipher cipher = new MasterCipher(masterSecret);
-        FileInputStream in     = new FileInputStream(getSessionFile(recipientId, deviceId));
+    try {
+      return loadSessionRecord(recipientId, deviceId);
+    } catch (InvalidMessageException | IOException e) {
+      Log.w(TAG, "No existing session information found.");
+      return new SessionRecord();
+    }
+  }
 
-        int versionMarker  = readInteger(in);
+  /**
+   * Like {@link #loadSession(long, int)}, but a session that can't be read is an error
+   * rather than a fresh record.
+   */
+  SessionRecord loadSessionRecord(long recipientId, int deviceId)
+      throws InvalidMessageException, IOException
+  {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
+      String name   = getSessionName(recipientId, deviceId);
+      byte[] cached = cache.get(name);
+
+      if (cached != null) {
+        return new SessionRecord(cached);
+      }
 
-        if (versionMarker > CURRENT_VERSION) {
-          throw new AssertionError("Unknown version: " + versionMarker);
-        }
+      MasterCipher    cipher = new MasterCipher(masterSecret);
+      FileInputStream in     = new FileInputStream(getSessionFile(recipientId, deviceId));
 
-        byte[] serialized = cipher.decryptBytes(readBlob(in));
-        in.close();
-
-        if (versionMarker == SINGLE_STATE_VERSION) {
-          SessionStructure sessionStructure = SessionStructure.parseFrom(serialized);
-          SessionState     sessionState     = new SessionState(sessionStructure);
-          return new SessionRecord(sessionState);
-        } else if (versionMarker == ARCHIVE_STATES_VERSION) {
-          return new SessionRecord(serialized);
-        } else {
-          throw new AssertionError("Unknown version: " + versionMarker);
-        }
-      } catch (InvalidMessageException | IOException e) {
-        Log.w(TAG, "No existing session information found.");
-        return new SessionRecord();
+      int versionMarker  = readInteger(in);
+
+      if (versionMarker > CURRENT_VERSION) {
+        throw new AssertionError("Unknown version: " + versionMarker);
+      }
+
+      if (versionMarker >= METADATA_VERSION) {
+        readInteger(in); // Flags, only needed by containsSession()
+      }
+
+      byte[] serialized = cipher.decryptBytes(readBlob(in));
+      in.close();
+
+      SessionRecord record;
+
+      if (versionMarker == SINGLE_STATE_VERSION) {
+        SessionStructure sessionStructure = SessionStructure.parseFrom(serialized);
+        SessionState     sessionState     = new SessionState(sessionStructure);
+        record = new SessionRecord(sessionState);
+        serialized = record.serialize();
+      } else if (versionMarker == ARCHIVE_STATES_VERSION || versionMarker == METADATA_VERSION) {
+        record = new SessionRecord(serialized);
+      } else {
+        throw new AssertionError("Unknown version: " + versionMarker);
       }
+
+      cache.put(name, serialized, record.getSessionState().hasSenderChain());
+      return record;
     }
   }
 
   @Override
   public void storeSession(long recipientId, int deviceId, SessionRecord record) {
-    synchronized (FILE_LOCK) {
+    storeSession(new MasterCipher(masterSecret), recipientId, deviceId, record);
+  }
+
+  /**
+   * Each session is still its own file, so the records aren't written atomically, but they
+   * share one {@link MasterCipher}.  The caller is expected to hold the lock of every session.
+   */
+  @Override
+  public void storeSessions(long recipientId, Map<Integer, SessionRecord> records) {
+    MasterCipher masterCipher = new MasterCipher(masterSecret);
+
+    for (Map.Entry<Integer, SessionRecord> record : records.entrySet()) {
+      storeSession(masterCipher, recipientId, record.getKey(), record.getValue());
+    }
+  }
+
+  private void storeSession(MasterCipher masterCipher, long recipientId, int deviceId, SessionRecord record) {
+    synchronized (SessionLock.get(recipientId, deviceId)) {
       try {
-        MasterCipher     masterCipher = new MasterCipher(masterSecret);
-        RandomAccessFile sessionFile  = new RandomAccessFile(getSessionFile(recipientId, deviceId), "rw");
-        FileChannel      out          = sessionFile.getChannel();
+        RandomAccessFile sessionFile    = new RandomAccessFile(getSessionFile(recipientId, deviceId), "rw");
+        FileChannel      out            = sessionFile.getChannel();
+        byte[]           serialized     = record.serialize();
+        boolean          hasSenderChain = record.getSessionState().hasSenderChain();
 
         out.position(0);
         writeInteger(CURRENT_VERSION, out);
-        writeBlob(masterCipher.encryptBytes(record.serialize()), out);
+        writeInteger(hasSenderChain ? SENDER_CHAIN_FLAG : 0, out);
+        writeBlob(masterCipher.encryptBytes(serialized), out);
         out.truncate(out.position());
 
         sessionFile.close();
+
+        cache.put(getSessionName(recipientId, deviceId), serialized, hasSenderChain);
+
+        if (deviceId != PushAddress.DEFAULT_DEVICE_ID) {
+          cache.addSubDevice(recipientId, deviceId);
+        }
       } catch (IOException e) {
         throw new AssertionError(e);
       }
     }
   }
 
+  /**
+   * Answered from the session index where possible, and otherwise from the unencrypted
+   * flags at the head of the session file, so that the session itself doesn't have to be
+   * decrypted.  Only sessions written before the flags were added need to be loaded.
+   */
   @Override
   public boolean containsSession(long recipientId, int deviceId) {
-    return getSessionFile(recipientId, deviceId).exists() &&
-        loadSession(recipientId, deviceId).getSessionState().hasSenderChain();
+    String  name    = getSessionName(recipientId, deviceId);
+    Boolean indexed = cache.hasSenderChain(name);
+
+    if (indexed != null) {
+      return indexed;
+    }
+
+    synchronized (SessionLock.get(recipientId, deviceId)) {
+      File sessionFile = getSessionFile(recipientId, deviceId);
+
+      if (!sessionFile.exists()) {
+        return false;
+      }
+
+      try {
+        FileInputStream in = new FileInputStream(sessionFile);
+
+        try {
+          if (readInteger(in) >= METADATA_VERSION) {
+            boolean hasSenderChain = (readInteger(in) & SENDER_CHAIN_FLAG) != 0;
+            cache.setHasSenderChain(name, hasSenderChain);
+            return hasSenderChain;
+          }
+        } finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        Log.w(TAG, e);
+      }
+
+      return loadSession(recipientId, deviceId).getSessionState().hasSenderChain();
+    }
   }
 
   @Override
   public void deleteSession(long recipientId, int deviceId) {
-    getSessionFile(recipientId, deviceId).delete();
+    synchronized (SessionLock.get(recipientId, deviceId)) {
+      cache.remove(getSessionName(recipientId, deviceId));
+      getSessionFile(recipientId, deviceId).delete();
+      cache.removeSubDevice(recipientId, deviceId);
+    }
   }
 
   @Override
@@ -115,21 +223,42 @@ public class TextSecureSessionStore implements SessionStore {
     }
   }
 
+  /**
+   * Answered from an index of every recipient's sub-devices, which is built from one listing
+   * of the session directory and then kept up to date as sessions are stored and deleted, so
+   * the cost doesn't grow with the number of sessions.
+   */
   @Override
   public List<Integer> getSubDeviceSessions(long recipientId) {
-    List<Integer> results  = new LinkedList<>();
-    File          parent   = getSessionDirectory();
-    String[]      children = parent.list();
+    synchronized (cache) {
+      if (!cache.hasDeviceIndex()) {
+        cache.setDeviceIndex(readDeviceIndex());
+      }
+
+      return cache.getSubDevices(recipientId);
+    }
+  }
+
+  private Map<Long, Set<Integer>> readDeviceIndex() {
+    Map<Long, Set<Integer>> results  = new HashMap<>();
+    String[]                children = getSessionDirectory().list();
 
     if (children == null) return results;
 
     for (String child : children) {
       try {
-        String[] parts              = child.split("[.]", 2);
-        long     sessionRecipientId = Long.parseLong(parts[0]);
+        String[] parts = child.split("[.]", 2);
+
+        if (parts.length > 1) {
+          long         recipientId = Long.parseLong(parts[0]);
+          Set<Integer> devices     = results.get(recipientId);
+
+          if (devices == null) {
+            devices = new TreeSet<>();
+            results.put(recipientId, devices);
+          }
 
-        if (sessionRecipientId == recipientId && parts.length > 1) {
-          results.add(Integer.parseInt(parts[1]));
+          devices.add(Integer.parseInt(parts[1]));
         }
       } catch (NumberFormatException e) {
         Log.w("SessionRecordV2", e);
@@ -57,7 +57,8 @@ public class DatabaseFactory {
   private static final int INTRODUCED_GROUP_DATABASE_VERSION = 11;
   private static final int INTRODUCED_PUSH_FIX_VERSION       = 12;
   private static final int INTRODUCED_DELIVERY_RECEIPTS      = 13;
-  private static final int DATABASE_VERSION                  = 13;
+  private static final int INTRODUCED_DOWNLOAD_CHECKPOINTS   = 14;
+  private static final int DATABASE_VERSION                  = 14;
 
 
   private static final String DATABASE_NAME    = "messages.db";
@@ -713,6 +714,12 @@ public class DatabaseFactory {
         db.execSQL("CREATE INDEX IF NOT EXISTS mms_date_sent_index ON mms (date);");
       }
 
+      if (oldVersion < INTRODUCED_DOWNLOAD_CHECKPOINTS) {
+        db.execSQL("ALTER TABLE part ADD COLUMN download_offset INTEGER;");
+        db.execSQL("ALTER TABLE part ADD COLUMN download_length INTEGER;");
+        db.execSQL("ALTER TABLE part ADD COLUMN download_validator TEXT;");
+      }
+
       db.setTransactionSuccessful();
       db.endTransaction();
     }
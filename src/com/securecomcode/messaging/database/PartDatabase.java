@@ -28,6 +28,7 @@ import android.util.Pair;
 
 import com.securecomcode.messaging.providers.PartProvider;
 import com.securecomcode.messaging.util.Util;
+import org.whispersystems.textsecure.api.push.DownloadCheckpoint;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -63,6 +64,9 @@ public class PartDatabase extends Database {
   private static final String ENCRYPTED               = "encrypted";
   private static final String DATA                    = "_data";
   private static final String PENDING_PUSH_ATTACHMENT = "pending_push";
+  private static final String DOWNLOAD_OFFSET         = "download_offset";
+  private static final String DOWNLOAD_LENGTH         = "download_length";
+  private static final String DOWNLOAD_VALIDATOR      = "download_validator";
 
   public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + ID + " INTEGER PRIMARY KEY, "              +
     MMS_ID + " INTEGER, " + SEQUENCE + " INTEGER DEFAULT 0, "                       +
@@ -70,7 +74,9 @@ public class PartDatabase extends Database {
     CONTENT_DISPOSITION + " TEXT, " + FILENAME + " TEXT, " + CONTENT_ID + " TEXT, " +
     CONTENT_LOCATION + " TEXT, " + CONTENT_TYPE_START + " INTEGER, "                +
     CONTENT_TYPE_TYPE + " TEXT, " + ENCRYPTED + " INTEGER, " +
-    PENDING_PUSH_ATTACHMENT + " INTEGER, "+ DATA + " TEXT);";
+    PENDING_PUSH_ATTACHMENT + " INTEGER, "+ DATA + " TEXT, "                        +
+    DOWNLOAD_OFFSET + " INTEGER, " + DOWNLOAD_LENGTH + " INTEGER, "                 +
+    DOWNLOAD_VALIDATOR + " TEXT);";
 
   public static final String[] CREATE_INDEXS = {
     "CREATE INDEX IF NOT EXISTS part_mms_id_index ON " + TABLE_NAME + " (" + MMS_ID + ");",
@@ -320,6 +326,8 @@ public class PartDatabase extends Database {
       values.put(DATA, partData.getAbsolutePath());
     }
 
+    clearDownloadCheckpoint(partId, values);
+
     database.update(TABLE_NAME, values, ID_WHERE, new String[] {partId+""});
     notifyConversationListeners(DatabaseFactory.getMmsDatabase(context).getThreadIdForMessage(messageId));
   }
@@ -335,11 +343,70 @@ public class PartDatabase extends Database {
     ContentValues values = getContentValuesForPart(part);
 
     values.put(DATA, (String)null);
+    clearDownloadCheckpoint(partId, values);
 
     database.update(TABLE_NAME, values, ID_WHERE, new String[] {partId+""});
     notifyConversationListeners(DatabaseFactory.getMmsDatabase(context).getThreadIdForMessage(messageId));
   }
 
+  /**
+   * @return The file a push part is downloaded to before it's decrypted into place.  It's
+   *         kept between attempts, along with a {@link DownloadCheckpoint}, so that an
+   *         interrupted download can be resumed.
+   */
+  public File getDownloadFile(long partId) {
+    return new File(context.getDir("parts", Context.MODE_PRIVATE), "download-" + partId + ".tmp");
+  }
+
+  public DownloadCheckpoint getDownloadCheckpoint(long partId) {
+    SQLiteDatabase database = databaseHelper.getReadableDatabase();
+    Cursor         cursor   = null;
+
+    try {
+      cursor = database.query(TABLE_NAME, new String[] {DOWNLOAD_OFFSET, DOWNLOAD_LENGTH, DOWNLOAD_VALIDATOR},
+                              ID_WHERE, new String[] {partId+""}, null, null, null);
+
+      if (cursor == null || !cursor.moveToFirst() || cursor.isNull(0)) {
+        return null;
+      }
+
+      return new DownloadCheckpoint(cursor.getLong(0),
+                                    cursor.isNull(1) ? -1 : cursor.getLong(1),
+                                    cursor.getString(2));
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+  }
+
+  public void updateDownloadCheckpoint(long partId, DownloadCheckpoint checkpoint) {
+    SQLiteDatabase database = databaseHelper.getWritableDatabase();
+    ContentValues  values   = new ContentValues(3);
+
+    values.put(DOWNLOAD_OFFSET, checkpoint.getOffset());
+    values.put(DOWNLOAD_LENGTH, checkpoint.getLength());
+    values.put(DOWNLOAD_VALIDATOR, checkpoint.getValidator());
+
+    database.update(TABLE_NAME, values, ID_WHERE, new String[] {partId+""});
+  }
+
+  public void clearDownloadCheckpoint(long partId) {
+    SQLiteDatabase database = databaseHelper.getWritableDatabase();
+    ContentValues  values   = new ContentValues(3);
+
+    clearDownloadCheckpoint(partId, values);
+
+    database.update(TABLE_NAME, values, ID_WHERE, new String[] {partId+""});
+  }
+
+  private void clearDownloadCheckpoint(long partId, ContentValues values) {
+    values.putNull(DOWNLOAD_OFFSET);
+    values.putNull(DOWNLOAD_LENGTH);
+    values.putNull(DOWNLOAD_VALIDATOR);
+
+    getDownloadFile(partId).delete();
+  }
+
   public PduPart getPart(long partId, boolean includeData) {
     SQLiteDatabase database = databaseHelper.getReadableDatabase();
     Cursor cursor           = null;
@@ -406,13 +473,15 @@ public class PartDatabase extends Database {
     Cursor cursor           = null;
 
     try {
-      cursor = database.query(TABLE_NAME, new String[] {DATA}, MMS_ID + " = ?", new String[] {mmsId+""}, null, null, null);
+      cursor = database.query(TABLE_NAME, new String[] {DATA, ID}, MMS_ID + " = ?", new String[] {mmsId+""}, null, null, null);
 
       while (cursor != null && cursor.moveToNext()) {
         String data = cursor.getString(0);
         if (!TextUtils.isEmpty(data)) {
           new File(cursor.getString(0)).delete();
         }
+
+        getDownloadFile(cursor.getLong(1)).delete();
       }
     } finally {
       if (cursor != null)
@@ -14,13 +14,18 @@ import com.securecomcode.messaging.jobs.requirements.MasterSecretRequirement;
 import com.securecomcode.messaging.util.Base64;
 import com.securecomcode.messaging.util.Util;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.libaxolotl.InvalidMessageException;
 import org.whispersystems.textsecure.api.TextSecureMessageReceiver;
 import org.whispersystems.textsecure.api.messages.TextSecureAttachmentPointer;
+import org.whispersystems.textsecure.api.push.DownloadCheckpoint;
 import org.whispersystems.textsecure.api.push.exceptions.NonSuccessfulResponseCodeException;
 import org.whispersystems.textsecure.api.push.exceptions.PushNetworkException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -33,22 +38,48 @@ import ws.com.google.android.mms.pdu.PduPart;
 
 public class AttachmentDownloadJob extends MasterSecretJob implements InjectableType {
 
+  private static final long serialVersionUID = 7328578321292588853L;
+
   private static final String TAG = AttachmentDownloadJob.class.getSimpleName();
 
   @Inject transient TextSecureMessageReceiver messageReceiver;
 
   private final long messageId;
 
+  public static final JobSchema<AttachmentDownloadJob> SCHEMA = new JobSchema<AttachmentDownloadJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(AttachmentDownloadJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+    }
+
+    @Override
+    public AttachmentDownloadJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new AttachmentDownloadJob(parameters, in.readLong());
+    }
+  };
+
   public AttachmentDownloadJob(Context context, long messageId) {
     super(context, JobParameters.newBuilder()
                                 .withRequirement(new MasterSecretRequirement(context))
                                 .withRequirement(new NetworkRequirement(context))
                                 .withPersistence()
+                                .withBackoff(1000, 300000)
+                                .withPriority(JobPriority.LOW)
                                 .create());
 
     this.messageId = messageId;
   }
 
+  private AttachmentDownloadJob(JobParameters parameters, long messageId) {
+    super(null, parameters);
+    this.messageId = messageId;
+  }
+
   @Override
   public void onAdded() {}
 
@@ -61,6 +92,8 @@ public class AttachmentDownloadJob extends MasterSecretJob implements Injectable
     List<Pair<Long, PduPart>> parts = database.getParts(messageId, false);
 
     for (Pair<Long, PduPart> partPair : parts) {
+      if (!partPair.second.isPendingPush()) continue;
+
       retrievePart(masterSecret, partPair.second, messageId, partPair.first);
       Log.w(TAG, "Got part: " + partPair.first);
     }
@@ -72,7 +105,9 @@ public class AttachmentDownloadJob extends MasterSecretJob implements Injectable
     List<Pair<Long, PduPart>> parts    = database.getParts(messageId, false);
 
     for (Pair<Long, PduPart> partPair : parts) {
-      markFailed(messageId, partPair.second, partPair.first);
+      if (partPair.second.isPendingPush()) {
+        markFailed(messageId, partPair.second, partPair.first);
+      }
     }
   }
 
@@ -83,25 +118,45 @@ public class AttachmentDownloadJob extends MasterSecretJob implements Injectable
     return false;
   }
 
-  private void retrievePart(MasterSecret masterSecret, PduPart part, long messageId, long partId)
+  /**
+   * Download a part, resuming from its last checkpoint if an earlier attempt was cut off.
+   * The partial download and its checkpoint are only kept for a {@link PushNetworkException},
+   * which is retried, and are cleared once the part is either stored or marked as failed.
+   * Only the length of a partial download can be checked before resuming it, so a resumed
+   * download that fails its MAC is started over once from scratch before giving up on it.
+   */
+  private void retrievePart(MasterSecret masterSecret, PduPart part, long messageId, final long partId)
       throws IOException
   {
-    EncryptingPartDatabase    database       = DatabaseFactory.getEncryptingPartDatabase(context, masterSecret);
-    File                      attachmentFile = null;
+    final EncryptingPartDatabase database       = DatabaseFactory.getEncryptingPartDatabase(context, masterSecret);
+    File                         attachmentFile = database.getDownloadFile(partId);
+    DownloadCheckpoint           checkpoint     = database.getDownloadCheckpoint(partId);
+
+    DownloadCheckpoint.Listener listener = new DownloadCheckpoint.Listener() {
+      @Override
+      public void onCheckpoint(DownloadCheckpoint checkpoint) {
+        database.updateDownloadCheckpoint(partId, checkpoint);
+      }
+    };
 
     try {
-      attachmentFile = createTempFile();
+      TextSecureAttachmentPointer pointer = createAttachmentPointer(masterSecret, part);
+      InputStream                 attachment;
 
-      TextSecureAttachmentPointer pointer    = createAttachmentPointer(masterSecret, part);
-      InputStream                 attachment = messageReceiver.retrieveAttachment(pointer, attachmentFile);
+      try {
+        attachment = messageReceiver.retrieveAttachment(pointer, attachmentFile, checkpoint, listener);
+      } catch (InvalidMessageException e) {
+        if (checkpoint == null) throw e;
+
+        Log.w(TAG, "Resumed download failed its MAC, starting over: " + partId);
+        database.clearDownloadCheckpoint(partId);
+        attachment = messageReceiver.retrieveAttachment(pointer, attachmentFile, null, listener);
+      }
 
       database.updateDownloadedPart(messageId, partId, part, attachment);
     } catch (InvalidPartException | NonSuccessfulResponseCodeException | InvalidMessageException | MmsException e) {
       Log.w(TAG, e);
       markFailed(messageId, part, partId);
-    } finally {
-      if (attachmentFile != null)
-        attachmentFile.delete();
     }
   }
 
@@ -125,17 +180,6 @@ public class AttachmentDownloadJob extends MasterSecretJob implements Injectable
     }
   }
 
-  private File createTempFile() throws InvalidPartException {
-    try {
-      File file = File.createTempFile("push-attachment", "tmp");
-      file.deleteOnExit();
-
-      return file;
-    } catch (IOException e) {
-      throw new InvalidPartException(e);
-    }
-  }
-
   private void markFailed(long messageId, PduPart part, long partId) {
     try {
       PartDatabase database = DatabaseFactory.getPartDatabase(context);
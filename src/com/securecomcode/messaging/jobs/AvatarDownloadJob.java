@@ -19,32 +19,63 @@ import com.securecomcode.messaging.util.BitmapUtil;
 import com.securecomcode.messaging.util.GroupUtil;
 import com.securecomcode.messaging.util.TextSecurePreferences;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
+import org.whispersystems.jobqueue.persistence.SchemaJobSerializer;
 import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.libaxolotl.InvalidMessageException;
 import org.whispersystems.textsecure.api.crypto.AttachmentCipherInputStream;
 import org.whispersystems.textsecure.internal.push.PushServiceSocket;
 import org.whispersystems.textsecure.api.push.exceptions.NonSuccessfulResponseCodeException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
 public class AvatarDownloadJob extends MasterSecretJob {
 
+  private static final long serialVersionUID = 8890047975375613254L;
+
   private static final String TAG = AvatarDownloadJob.class.getSimpleName();
 
   private final byte[] groupId;
 
+  public static final JobSchema<AvatarDownloadJob> SCHEMA = new JobSchema<AvatarDownloadJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(AvatarDownloadJob job, DataOutput out) throws IOException {
+      SchemaJobSerializer.writeBytes(out, job.groupId);
+    }
+
+    @Override
+    public AvatarDownloadJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new AvatarDownloadJob(parameters, SchemaJobSerializer.readBytes(in));
+    }
+  };
+
   public AvatarDownloadJob(Context context, byte[] groupId) {
     super(context, JobParameters.newBuilder()
                                 .withRequirement(new MasterSecretRequirement(context))
                                 .withRequirement(new NetworkRequirement(context))
                                 .withPersistence()
+                                .withBackoff(1000, 300000)
+                                .withPriority(JobPriority.LOW)
                                 .create());
 
     this.groupId = groupId;
   }
 
+  private AvatarDownloadJob(JobParameters parameters, byte[] groupId) {
+    super(null, parameters);
+    this.groupId = groupId;
+  }
+
   @Override
   public void onAdded() {}
 
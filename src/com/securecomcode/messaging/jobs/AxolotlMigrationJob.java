@@ -0,0 +1,40 @@
+package com.securecomcode.messaging.jobs;
+
+import android.content.Context;
+
+import com.securecomcode.messaging.crypto.MasterSecret;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
+import com.securecomcode.messaging.jobs.requirements.MasterSecretRequirement;
+import org.whispersystems.jobqueue.JobParameters;
+
+/**
+ * Finishes moving sessions and prekeys out of their files and into the database, for when
+ * the database was enabled but its migration never finished.
+ */
+public class AxolotlMigrationJob extends MasterSecretJob {
+
+  private static final long serialVersionUID = 1L;
+
+  public AxolotlMigrationJob(Context context) {
+    super(context, JobParameters.newBuilder()
+                                .withGroupId(AxolotlMigrationJob.class.getSimpleName())
+                                .withRequirement(new MasterSecretRequirement(context))
+                                .create());
+  }
+
+  @Override
+  public void onAdded() {}
+
+  @Override
+  public void onRun(MasterSecret masterSecret) {
+    AxolotlStoreFactory.migrate(context, masterSecret);
+  }
+
+  @Override
+  public void onCanceled() {}
+
+  @Override
+  public boolean onShouldRetryThrowable(Exception exception) {
+    return false;
+  }
+}
@@ -28,6 +28,8 @@ import static com.securecomcode.messaging.dependencies.AxolotlStorageModule.Sign
 
 public class CleanPreKeysJob extends MasterSecretJob implements InjectableType {
 
+  private static final long serialVersionUID = 5733226668594509280L;
+
   private static final String TAG = CleanPreKeysJob.class.getSimpleName();
 
   private static final int ARCHIVE_AGE_DAYS = 15;
@@ -40,6 +42,7 @@ public class CleanPreKeysJob extends MasterSecretJob implements InjectableType {
                                 .withGroupId(CleanPreKeysJob.class.getSimpleName())
                                 .withRequirement(new MasterSecretRequirement(context))
                                 .withRetryCount(5)
+                                .withBackoff(1000, 300000)
                                 .create());
   }
 
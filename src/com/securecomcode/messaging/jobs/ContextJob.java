@@ -8,6 +8,8 @@ import org.whispersystems.jobqueue.dependencies.ContextDependent;
 
 public abstract class ContextJob extends Job implements ContextDependent {
 
+  private static final long serialVersionUID = -4286705105022807442L;
+
   protected transient Context context;
 
   protected ContextJob(Context context, JobParameters parameters) {
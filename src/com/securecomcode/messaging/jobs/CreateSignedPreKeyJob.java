@@ -11,31 +11,56 @@ import com.securecomcode.messaging.util.ParcelUtil;
 import com.securecomcode.messaging.util.TextSecurePreferences;
 import org.whispersystems.jobqueue.EncryptionKeys;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.libaxolotl.IdentityKeyPair;
 import org.whispersystems.libaxolotl.state.SignedPreKeyRecord;
 import org.whispersystems.textsecure.api.TextSecureAccountManager;
 import org.whispersystems.textsecure.api.push.exceptions.PushNetworkException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 import javax.inject.Inject;
 
 public class CreateSignedPreKeyJob extends ContextJob implements InjectableType {
 
+  private static final long serialVersionUID = 1638326379553217352L;
+
   private static final String TAG = CreateSignedPreKeyJob.class.getSimpleName();
 
   @Inject transient TextSecureAccountManager accountManager;
 
+  public static final JobSchema<CreateSignedPreKeyJob> SCHEMA = new JobSchema<CreateSignedPreKeyJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(CreateSignedPreKeyJob job, DataOutput out) throws IOException {}
+
+    @Override
+    public CreateSignedPreKeyJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new CreateSignedPreKeyJob(parameters);
+    }
+  };
+
   public CreateSignedPreKeyJob(Context context, MasterSecret masterSecret) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence()
                                 .withRequirement(new NetworkRequirement(context))
                                 .withEncryption(new EncryptionKeys(ParcelUtil.serialize(masterSecret)))
                                 .withGroupId(CreateSignedPreKeyJob.class.getSimpleName())
+                                .withBackoff(1000, 300000)
                                 .create());
   }
 
+  private CreateSignedPreKeyJob(JobParameters parameters) {
+    super(null, parameters);
+  }
+
   @Override
   public void onAdded() {}
 
@@ -0,0 +1,93 @@
+package com.securecomcode.messaging.jobs;
+
+import org.whispersystems.textsecure.api.push.DeliveryReceipt;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks the receipts of every {@link DeliveryReceiptJob} that's been added but hasn't run
+ * yet, per relay, so that the first of them to run can send the others along with its own.
+ *
+ * Nothing here needs to survive a restart, since each receipt is still held by its own
+ * persistent job.  A job whose receipt has already gone out in another job's batch just
+ * finds it marked as sent, and finishes without a request of its own.
+ */
+class DeliveryReceiptCoalescer {
+
+  private final Map<String, Set<DeliveryReceipt>> pending = new HashMap<>();
+  private final Map<String, Set<DeliveryReceipt>> sent    = new HashMap<>();
+
+  synchronized void add(String relay, DeliveryReceipt receipt) {
+    getReceipts(pending, relay).add(receipt);
+  }
+
+  /**
+   * Claim a job's receipt for sending, along with as many other pending receipts from the
+   * same relay as will fit in a batch.
+   *
+   * @return The receipts to send, with the job's own first, or an empty list if it has
+   *         already been sent in another job's batch.
+   */
+  synchronized List<DeliveryReceipt> claim(String relay, DeliveryReceipt receipt, int maxBatchSize) {
+    List<DeliveryReceipt> batch = new LinkedList<>();
+
+    if (getReceipts(sent, relay).remove(receipt)) {
+      return batch;
+    }
+
+    Set<DeliveryReceipt> relayPending = getReceipts(pending, relay);
+    relayPending.remove(receipt);
+    batch.add(receipt);
+
+    Iterator<DeliveryReceipt> iterator = relayPending.iterator();
+
+    while (iterator.hasNext() && batch.size() < maxBatchSize) {
+      batch.add(iterator.next());
+      iterator.remove();
+    }
+
+    return batch;
+  }
+
+  /**
+   * Mark the other receipts of a claimed batch as sent, so that their own jobs don't send
+   * them again.
+   */
+  synchronized void onSent(String relay, List<DeliveryReceipt> batch) {
+    Set<DeliveryReceipt> relaySent = getReceipts(sent, relay);
+    relaySent.addAll(batch.subList(1, batch.size()));
+  }
+
+  /**
+   * Put the other receipts of a claimed batch that didn't get sent back, so that they can be
+   * claimed again, and mark the ones that did as sent.
+   */
+  synchronized void onFailed(String relay, List<DeliveryReceipt> batch, Collection<DeliveryReceipt> sentReceipts) {
+    Set<DeliveryReceipt> relayPending = getReceipts(pending, relay);
+    Set<DeliveryReceipt> relaySent    = getReceipts(sent, relay);
+
+    for (DeliveryReceipt receipt : batch.subList(1, batch.size())) {
+      if (sentReceipts.contains(receipt)) relaySent.add(receipt);
+      else                                relayPending.add(receipt);
+    }
+  }
+
+  private Set<DeliveryReceipt> getReceipts(Map<String, Set<DeliveryReceipt>> receipts, String relay) {
+    String               key    = relay == null ? "" : relay;
+    Set<DeliveryReceipt> result = receipts.get(key);
+
+    if (result == null) {
+      result = new LinkedHashSet<>();
+      receipts.put(key, result);
+    }
+
+    return result;
+  }
+}
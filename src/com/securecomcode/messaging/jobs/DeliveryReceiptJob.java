@@ -5,13 +5,22 @@ import android.util.Log;
 
 import com.securecomcode.messaging.dependencies.InjectableType;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
+import org.whispersystems.jobqueue.persistence.SchemaJobSerializer;
 import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.textsecure.api.TextSecureMessageSender;
+import org.whispersystems.textsecure.api.push.DeliveryReceipt;
 import org.whispersystems.textsecure.api.push.PushAddress;
 import org.whispersystems.textsecure.api.push.exceptions.NonSuccessfulResponseCodeException;
 import org.whispersystems.textsecure.api.push.exceptions.PushNetworkException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -19,36 +28,117 @@ import static com.securecomcode.messaging.dependencies.TextSecureCommunicationMo
 
 public class DeliveryReceiptJob extends ContextJob implements InjectableType {
 
+  private static final long serialVersionUID = 1676473295416184584L;
+
   private static final String TAG = DeliveryReceiptJob.class.getSimpleName();
 
+  private static final long COALESCE_WINDOW_MILLIS = 2000;
+  private static final int  MAX_BATCH_SIZE         = 100;
+
+  private static final DeliveryReceiptCoalescer coalescer = new DeliveryReceiptCoalescer();
+
   @Inject transient TextSecureMessageSenderFactory messageSenderFactory;
 
   private final String destination;
   private final long   timestamp;
   private final String relay;
 
+  public static final JobSchema<DeliveryReceiptJob> SCHEMA = new JobSchema<DeliveryReceiptJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(DeliveryReceiptJob job, DataOutput out) throws IOException {
+      SchemaJobSerializer.writeString(out, job.destination);
+      out.writeLong(job.timestamp);
+      SchemaJobSerializer.writeString(out, job.relay);
+    }
+
+    @Override
+    public DeliveryReceiptJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new DeliveryReceiptJob(parameters,
+                                    SchemaJobSerializer.readString(in),
+                                    in.readLong(),
+                                    SchemaJobSerializer.readString(in));
+    }
+  };
+
   public DeliveryReceiptJob(Context context, String destination, long timestamp, String relay) {
     super(context, JobParameters.newBuilder()
                                 .withRequirement(new NetworkRequirement(context))
                                 .withPersistence()
                                 .withRetryCount(50)
+                                .withBackoff(1000, 300000)
+                                .withPriority(JobPriority.HIGH)
+                                .withGroupId(getGroupId(relay))
                                 .create());
 
     this.destination = destination;
     this.timestamp   = timestamp;
     this.relay       = relay;
+
+    setNextRunTime(System.currentTimeMillis() + COALESCE_WINDOW_MILLIS);
+  }
+
+  private DeliveryReceiptJob(JobParameters parameters, String destination, long timestamp, String relay) {
+    super(null, parameters);
+    this.destination = destination;
+    this.timestamp   = timestamp;
+    this.relay       = relay;
   }
 
   @Override
-  public void onAdded() {}
+  public void onAdded() {
+    coalescer.add(relay, new DeliveryReceipt(destination, timestamp));
+  }
 
+  /**
+   * Send this job's receipt, along with those of any other receipt jobs for the same relay
+   * that are still waiting.  Receipt jobs for a relay share a group, so they run one at a
+   * time, and each waits out a short window after being added for others to join it.
+   *
+   * If sending fails partway through, only the receipts that didn't go out are put back, and
+   * the job only fails if its own receipt is one of them.
+   */
   @Override
   public void onRun() throws IOException {
-    Log.w("DeliveryReceiptJob", "Sending delivery receipt...");
-    TextSecureMessageSender messageSender = messageSenderFactory.create(null);
-    PushAddress             pushAddress   = new PushAddress(-1, destination, 1, relay);
-
-    messageSender.sendDeliveryReceipt(pushAddress, timestamp);
+    DeliveryReceipt       receipt = new DeliveryReceipt(destination, timestamp);
+    List<DeliveryReceipt> batch   = coalescer.claim(relay, receipt, MAX_BATCH_SIZE);
+
+    if (batch.isEmpty()) {
+      Log.w(TAG, "Delivery receipt already sent in a batch.");
+      return;
+    }
+
+    Log.w(TAG, "Sending " + batch.size() + " delivery receipts...");
+    TextSecureMessageSender    messageSender = messageSenderFactory.create(null);
+    final Set<DeliveryReceipt> sent          = new HashSet<>();
+
+    try {
+      if (batch.size() == 1) {
+        messageSender.sendDeliveryReceipt(new PushAddress(-1, destination, 1, relay), timestamp);
+      } else {
+        messageSender.sendDeliveryReceipts(batch, relay, new TextSecureMessageSender.ReceiptListener() {
+          @Override
+          public void onReceiptSent(DeliveryReceipt sentReceipt) {
+            sent.add(sentReceipt);
+          }
+        });
+      }
+
+      coalescer.onSent(relay, batch);
+    } catch (IOException e) {
+      coalescer.onFailed(relay, batch, sent);
+
+      if (sent.contains(receipt)) {
+        Log.w(TAG, "Sent " + sent.size() + " of " + batch.size() + " delivery receipts before failing", e);
+        return;
+      }
+
+      throw e;
+    }
   }
 
   @Override
@@ -64,4 +154,8 @@ public class DeliveryReceiptJob extends ContextJob implements InjectableType {
 
     return false;
   }
+
+  private static String getGroupId(String relay) {
+    return DeliveryReceiptJob.class.getSimpleName() + (relay == null ? "" : ":" + relay);
+  }
 }
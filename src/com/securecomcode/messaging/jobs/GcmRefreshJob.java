@@ -18,12 +18,17 @@ import org.whispersystems.textsecure.api.push.exceptions.NonSuccessfulResponseCo
 
 public class GcmRefreshJob extends ContextJob {
 
+  private static final long serialVersionUID = 3976031260333940217L;
+
   private static final String TAG = GcmRefreshJob.class.getSimpleName();
 
   public static final String REGISTRATION_ID = "225505072490";
 
   public GcmRefreshJob(Context context) {
-    super(context, JobParameters.newBuilder().withRequirement(new NetworkRequirement(context)).create());
+    super(context, JobParameters.newBuilder()
+                                .withRequirement(new NetworkRequirement(context))
+                                .withBackoff(1000, 300000)
+                                .create());
   }
 
   @Override
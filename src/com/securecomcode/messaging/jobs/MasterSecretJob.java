@@ -8,6 +8,8 @@ import org.whispersystems.jobqueue.JobParameters;
 
 public abstract class MasterSecretJob extends ContextJob {
 
+  private static final long serialVersionUID = 1433726758814824185L;
+
   public MasterSecretJob(Context context, JobParameters parameters) {
     super(context, parameters);
   }
@@ -24,6 +24,8 @@ import com.securecomcode.messaging.notifications.MessageNotifier;
 import com.securecomcode.messaging.protocol.WirePrefix;
 import com.securecomcode.messaging.service.KeyCachingService;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.libaxolotl.DuplicateMessageException;
 import org.whispersystems.libaxolotl.InvalidMessageException;
@@ -31,6 +33,8 @@ import org.whispersystems.libaxolotl.LegacyMessageException;
 import org.whispersystems.libaxolotl.NoSessionException;
 import org.whispersystems.libaxolotl.util.guava.Optional;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 import ws.com.google.android.mms.InvalidHeaderValueException;
@@ -46,18 +50,43 @@ import static com.securecomcode.messaging.mms.MmsConnection.Apn;
 
 public class MmsDownloadJob extends MasterSecretJob {
 
+  private static final long serialVersionUID = -6452291858064939017L;
+
   private static final String TAG = MmsDownloadJob.class.getSimpleName();
 
   private final long    messageId;
   private final long    threadId;
   private final boolean automatic;
 
+  public static final JobSchema<MmsDownloadJob> SCHEMA = new JobSchema<MmsDownloadJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(MmsDownloadJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+      out.writeLong(job.threadId);
+      out.writeBoolean(job.automatic);
+    }
+
+    @Override
+    public MmsDownloadJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new MmsDownloadJob(parameters,
+                                in.readLong(),
+                                in.readLong(),
+                                in.readBoolean());
+    }
+  };
+
   public MmsDownloadJob(Context context, long messageId, long threadId, boolean automatic) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence()
                                 .withRequirement(new MasterSecretRequirement(context))
                                 .withRequirement(new NetworkRequirement(context))
                                 .withGroupId("mms-operation")
+                                .withPriority(JobPriority.LOW)
                                 .create());
 
     this.messageId = messageId;
@@ -65,6 +94,13 @@ public class MmsDownloadJob extends MasterSecretJob {
     this.automatic = automatic;
   }
 
+  private MmsDownloadJob(JobParameters parameters, long messageId, long threadId, boolean automatic) {
+    super(null, parameters);
+    this.messageId = messageId;
+    this.threadId  = threadId;
+    this.automatic = automatic;
+  }
+
   @Override
   public void onAdded() {
     if (automatic && KeyCachingService.getMasterSecret(context) == null) {
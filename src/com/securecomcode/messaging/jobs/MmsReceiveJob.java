@@ -8,6 +8,12 @@ import com.securecomcode.messaging.ApplicationContext;
 import com.securecomcode.messaging.database.DatabaseFactory;
 import com.securecomcode.messaging.database.MmsDatabase;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.persistence.JobSchema;
+import org.whispersystems.jobqueue.persistence.SchemaJobSerializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 import ws.com.google.android.mms.pdu.GenericPdu;
 import ws.com.google.android.mms.pdu.NotificationInd;
@@ -16,10 +22,29 @@ import ws.com.google.android.mms.pdu.PduParser;
 
 public class MmsReceiveJob extends ContextJob {
 
+  private static final long serialVersionUID = -4450105239298036008L;
+
   private static final String TAG = MmsReceiveJob.class.getSimpleName();
 
   private final byte[] data;
 
+  public static final JobSchema<MmsReceiveJob> SCHEMA = new JobSchema<MmsReceiveJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(MmsReceiveJob job, DataOutput out) throws IOException {
+      SchemaJobSerializer.writeBytes(out, job.data);
+    }
+
+    @Override
+    public MmsReceiveJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new MmsReceiveJob(parameters, SchemaJobSerializer.readBytes(in));
+    }
+  };
+
   public MmsReceiveJob(Context context, byte[] data) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence().create());
@@ -27,6 +52,11 @@ public class MmsReceiveJob extends ContextJob {
     this.data = data;
   }
 
+  private MmsReceiveJob(JobParameters parameters, byte[] data) {
+    super(null, parameters);
+    this.data = data;
+  }
+
   @Override
   public void onAdded() {
 
@@ -41,9 +41,12 @@ import com.securecomcode.messaging.transport.UndeliverableMessageException;
 import com.securecomcode.messaging.util.Hex;
 import com.securecomcode.messaging.util.NumberUtil;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.libaxolotl.NoSessionException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -56,10 +59,29 @@ import ws.com.google.android.mms.pdu.SendReq;
 
 public class MmsSendJob extends MasterSecretJob {
 
+  private static final long serialVersionUID = 3866556996951195939L;
+
   private static final String TAG = MmsSendJob.class.getSimpleName();
 
   private final long messageId;
 
+  public static final JobSchema<MmsSendJob> SCHEMA = new JobSchema<MmsSendJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(MmsSendJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+    }
+
+    @Override
+    public MmsSendJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new MmsSendJob(parameters, in.readLong());
+    }
+  };
+
   public MmsSendJob(Context context, long messageId) {
     super(context, JobParameters.newBuilder()
                                 .withGroupId("mms-operation")
@@ -71,6 +93,11 @@ public class MmsSendJob extends MasterSecretJob {
     this.messageId = messageId;
   }
 
+  private MmsSendJob(JobParameters parameters, long messageId) {
+    super(null, parameters);
+    this.messageId = messageId;
+  }
+
   @Override
   public void onAdded() {
 
@@ -8,7 +8,8 @@ import com.securecomcode.messaging.ApplicationContext;
 import com.securecomcode.messaging.crypto.MasterSecret;
 import com.securecomcode.messaging.crypto.SecurityEvent;
 import com.securecomcode.messaging.crypto.storage.TextSecureAxolotlStore;
-import com.securecomcode.messaging.crypto.storage.TextSecureSessionStore;
+import com.securecomcode.messaging.crypto.storage.TextSecureSenderKeyStore;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.database.DatabaseFactory;
 import com.securecomcode.messaging.database.EncryptingSmsDatabase;
 import com.securecomcode.messaging.database.MmsDatabase;
@@ -29,6 +30,8 @@ import com.securecomcode.messaging.sms.IncomingTextMessage;
 import com.securecomcode.messaging.util.Base64;
 import com.securecomcode.messaging.util.TextSecurePreferences;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.libaxolotl.DuplicateMessageException;
 import org.whispersystems.libaxolotl.InvalidKeyException;
 import org.whispersystems.libaxolotl.InvalidKeyIdException;
@@ -37,6 +40,7 @@ import org.whispersystems.libaxolotl.InvalidVersionException;
 import org.whispersystems.libaxolotl.LegacyMessageException;
 import org.whispersystems.libaxolotl.NoSessionException;
 import org.whispersystems.libaxolotl.UntrustedIdentityException;
+import org.whispersystems.libaxolotl.groups.state.SenderKeyStore;
 import org.whispersystems.libaxolotl.state.AxolotlStore;
 import org.whispersystems.libaxolotl.state.SessionStore;
 import org.whispersystems.libaxolotl.util.guava.Optional;
@@ -45,22 +49,52 @@ import org.whispersystems.textsecure.api.messages.TextSecureGroup;
 import org.whispersystems.textsecure.api.messages.TextSecureMessage;
 import org.whispersystems.textsecure.api.crypto.TextSecureCipher;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import ws.com.google.android.mms.MmsException;
 
 public class PushDecryptJob extends MasterSecretJob {
 
+  private static final long serialVersionUID = -8017640334826474980L;
+
   public static final String TAG = PushDecryptJob.class.getSimpleName();
 
   private final long messageId;
 
+  public static final JobSchema<PushDecryptJob> SCHEMA = new JobSchema<PushDecryptJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(PushDecryptJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+    }
+
+    @Override
+    public PushDecryptJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new PushDecryptJob(parameters, in.readLong());
+    }
+  };
+
   public PushDecryptJob(Context context, long messageId) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence()
                                 .withRequirement(new MasterSecretRequirement(context))
+                                .withPriority(JobPriority.HIGH)
+                                .withCpuBound()
                                 .create());
     this.messageId = messageId;
   }
 
+  private PushDecryptJob(JobParameters parameters, long messageId) {
+    super(null, parameters);
+    this.messageId = messageId;
+  }
+
   @Override
   public void onAdded() {
     if (KeyCachingService.getMasterSecret(context) == null) {
@@ -93,7 +127,8 @@ public class PushDecryptJob extends MasterSecretJob {
       long             recipientId  = recipients.getPrimaryRecipient().getRecipientId();
       int              deviceId     = envelope.getSourceDevice();
       AxolotlStore     axolotlStore = new TextSecureAxolotlStore(context, masterSecret);
-      TextSecureCipher cipher       = new TextSecureCipher(axolotlStore, recipientId, deviceId);
+      SenderKeyStore   senderKeys   = new TextSecureSenderKeyStore(context, masterSecret);
+      TextSecureCipher cipher       = new TextSecureCipher(axolotlStore, Optional.of(senderKeys), recipientId, deviceId);
 
       TextSecureMessage message = cipher.decrypt(envelope);
 
@@ -138,7 +173,7 @@ public class PushDecryptJob extends MasterSecretJob {
     EncryptingSmsDatabase     database                  = DatabaseFactory.getEncryptingSmsDatabase(context);
     Pair<Long, Long>          messageAndThreadId        = database.insertMessageInbox(masterSecret, incomingEndSessionMessage);
 
-    SessionStore sessionStore = new TextSecureSessionStore(context, masterSecret);
+    SessionStore sessionStore = AxolotlStoreFactory.createSessionStore(context, masterSecret);
     sessionStore.deleteAllSessions(recipientId);
 
     SecurityEvent.broadcastSecurityUpdateEvent(context, messageAndThreadId.second);
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.util.Log;
 
 import com.securecomcode.messaging.crypto.MasterSecret;
+import com.securecomcode.messaging.crypto.storage.TextSecureSenderKeyStore;
 import com.securecomcode.messaging.database.DatabaseFactory;
 import com.securecomcode.messaging.database.MmsDatabase;
 import com.securecomcode.messaging.database.MmsSmsColumns;
@@ -17,7 +18,11 @@ import com.securecomcode.messaging.recipients.Recipients;
 import com.securecomcode.messaging.sms.IncomingIdentityUpdateMessage;
 import com.securecomcode.messaging.util.Base64;
 import com.securecomcode.messaging.util.GroupUtil;
+import com.securecomcode.messaging.util.TextSecurePreferences;
+import org.whispersystems.libaxolotl.util.guava.Optional;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.textsecure.api.TextSecureMessageSender;
 import org.whispersystems.textsecure.api.crypto.UntrustedIdentityException;
@@ -29,6 +34,8 @@ import org.whispersystems.textsecure.internal.push.PushMessageProtos;
 import org.whispersystems.textsecure.api.push.exceptions.EncapsulatedExceptions;
 import org.whispersystems.textsecure.api.util.InvalidNumberException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
@@ -42,12 +49,31 @@ import static com.securecomcode.messaging.dependencies.TextSecureCommunicationMo
 
 public class PushGroupSendJob extends PushSendJob implements InjectableType {
 
+  private static final long serialVersionUID = 3952986987680916670L;
+
   private static final String TAG = PushGroupSendJob.class.getSimpleName();
 
   @Inject transient TextSecureMessageSenderFactory messageSenderFactory;
 
   private final long messageId;
 
+  public static final JobSchema<PushGroupSendJob> SCHEMA = new JobSchema<PushGroupSendJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(PushGroupSendJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+    }
+
+    @Override
+    public PushGroupSendJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new PushGroupSendJob(parameters, in.readLong());
+    }
+  };
+
   public PushGroupSendJob(Context context, long messageId, String destination) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence()
@@ -55,11 +81,18 @@ public class PushGroupSendJob extends PushSendJob implements InjectableType {
                                 .withRequirement(new MasterSecretRequirement(context))
                                 .withRequirement(new NetworkRequirement(context))
                                 .withRetryCount(5)
+                                .withBackoff(1000, 60000)
+                                .withPriority(JobPriority.HIGH)
                                 .create());
 
     this.messageId = messageId;
   }
 
+  private PushGroupSendJob(JobParameters parameters, long messageId) {
+    super(null, parameters);
+    this.messageId = messageId;
+  }
+
   @Override
   public void onAdded() {
 
@@ -135,7 +168,12 @@ public class PushGroupSendJob extends PushSendJob implements InjectableType {
       TextSecureGroup   group        = new TextSecureGroup(groupId);
       TextSecureMessage groupMessage = new TextSecureMessage(message.getSentTimestamp(), group, attachments, body);
 
-      messageSender.sendMessage(addresses, groupMessage);
+      if (TextSecurePreferences.isSenderKeyGroupsEnabled(context)) {
+        messageSender.sendGroupMessage(new TextSecureSenderKeyStore(context, masterSecret), addresses,
+                                       groupMessage, Optional.<TextSecureMessageSender.ProgressListener>absent());
+      } else {
+        messageSender.sendMessage(addresses, groupMessage);
+      }
     }
   }
 
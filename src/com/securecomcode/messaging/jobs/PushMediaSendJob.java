@@ -36,15 +36,20 @@ import com.securecomcode.messaging.sms.IncomingIdentityUpdateMessage;
 import com.securecomcode.messaging.transport.InsecureFallbackApprovalException;
 import com.securecomcode.messaging.transport.RetryLaterException;
 import com.securecomcode.messaging.transport.SecureFallbackApprovalException;
+import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.libaxolotl.state.AxolotlStore;
 import org.whispersystems.textsecure.api.TextSecureMessageSender;
 import org.whispersystems.textsecure.api.crypto.UntrustedIdentityException;
 import org.whispersystems.textsecure.api.messages.TextSecureAttachment;
+import org.whispersystems.textsecure.api.messages.TextSecureAttachmentStream.ProgressListener;
 import org.whispersystems.textsecure.api.messages.TextSecureMessage;
 import org.whispersystems.textsecure.api.push.PushAddress;
 import org.whispersystems.textsecure.api.push.exceptions.UnregisteredUserException;
 import org.whispersystems.textsecure.api.util.InvalidNumberException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.List;
 
@@ -57,17 +62,41 @@ import static com.securecomcode.messaging.dependencies.TextSecureCommunicationMo
 
 public class PushMediaSendJob extends PushSendJob implements InjectableType {
 
+  private static final long serialVersionUID = -9121449478634421093L;
+
   private static final String TAG = PushMediaSendJob.class.getSimpleName();
 
   @Inject transient TextSecureMessageSenderFactory messageSenderFactory;
 
   private final long messageId;
 
+  public static final JobSchema<PushMediaSendJob> SCHEMA = new JobSchema<PushMediaSendJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(PushMediaSendJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+    }
+
+    @Override
+    public PushMediaSendJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new PushMediaSendJob(parameters, in.readLong());
+    }
+  };
+
   public PushMediaSendJob(Context context, long messageId, String destination) {
     super(context, constructParameters(context, destination));
     this.messageId = messageId;
   }
 
+  private PushMediaSendJob(JobParameters parameters, long messageId) {
+    super(null, parameters);
+    this.messageId = messageId;
+  }
+
   @Override
   public void onAdded() {
 
@@ -126,7 +155,7 @@ public class PushMediaSendJob extends PushSendJob implements InjectableType {
     try {
       Recipients                 recipients   = RecipientFactory.getRecipientsFromString(context, destination, false);
       PushAddress                address      = getPushAddress(recipients.getPrimaryRecipient());
-      List<TextSecureAttachment> attachments  = getAttachments(message);
+      List<TextSecureAttachment> attachments  = getAttachments(message, new UploadProgressListener(messageId));
       String                     body         = PartParser.getMessageText(message.getBody());
       TextSecureMessage          mediaMessage = new TextSecureMessage(message.getSentTimestamp(), attachments, body);
 
@@ -165,5 +194,27 @@ public class PushMediaSendJob extends PushSendJob implements InjectableType {
     }
   }
 
+  /**
+   * Logs each tenth of an attachment's upload, so that a slow or stalled upload shows up.
+   */
+  private static class UploadProgressListener implements ProgressListener {
+
+    private final long messageId;
+
+    private long reportedTenths = -1;
+
+    UploadProgressListener(long messageId) {
+      this.messageId = messageId;
+    }
 
+    @Override
+    public void onAttachmentProgress(long total, long progress) {
+      long tenths = total > 0 ? (progress * 10) / total : 10;
+
+      if (tenths != reportedTenths) {
+        reportedTenths = tenths;
+        Log.w(TAG, "Uploaded " + (tenths * 10) + "% of attachment for: " + messageId);
+      }
+    }
+  }
 }
@@ -8,28 +8,58 @@ import com.securecomcode.messaging.database.DatabaseFactory;
 import com.securecomcode.messaging.util.TextSecurePreferences;
 import org.whispersystems.jobqueue.JobManager;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
+import org.whispersystems.jobqueue.persistence.SchemaJobSerializer;
 import org.whispersystems.libaxolotl.InvalidVersionException;
 import org.whispersystems.textsecure.api.messages.TextSecureEnvelope;
 import com.securecomcode.messaging.database.TextSecureDirectory;
 import com.securecomcode.messaging.database.NotInDirectoryException;
 import org.whispersystems.textsecure.api.push.ContactTokenDetails;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 public class PushReceiveJob extends ContextJob {
 
+  private static final long serialVersionUID = -7095028537773272754L;
+
   private static final String TAG = PushReceiveJob.class.getSimpleName();
 
   private final String data;
 
+  public static final JobSchema<PushReceiveJob> SCHEMA = new JobSchema<PushReceiveJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(PushReceiveJob job, DataOutput out) throws IOException {
+      SchemaJobSerializer.writeString(out, job.data);
+    }
+
+    @Override
+    public PushReceiveJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new PushReceiveJob(parameters, SchemaJobSerializer.readString(in));
+    }
+  };
+
   public PushReceiveJob(Context context, String data) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence()
+                                .withPriority(JobPriority.HIGH)
                                 .create());
 
     this.data = data;
   }
 
+  private PushReceiveJob(JobParameters parameters, String data) {
+    super(null, parameters);
+    this.data = data;
+  }
+
   @Override
   public void onAdded() {}
 
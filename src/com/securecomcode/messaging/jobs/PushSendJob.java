@@ -12,9 +12,11 @@ import com.securecomcode.messaging.util.GroupUtil;
 import com.securecomcode.messaging.util.TextSecurePreferences;
 import com.securecomcode.messaging.util.Util;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
 import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.textsecure.api.messages.TextSecureAttachment;
 import org.whispersystems.textsecure.api.messages.TextSecureAttachmentStream;
+import org.whispersystems.textsecure.api.messages.TextSecureAttachmentStream.ProgressListener;
 import com.securecomcode.messaging.database.TextSecureDirectory;
 import org.whispersystems.textsecure.api.push.PushAddress;
 import org.whispersystems.textsecure.api.util.InvalidNumberException;
@@ -28,6 +30,8 @@ import ws.com.google.android.mms.pdu.SendReq;
 
 public abstract class PushSendJob extends MasterSecretJob {
 
+  private static final long serialVersionUID = -3505802427681722190L;
+
   private static final String TAG = PushSendJob.class.getSimpleName();
 
   protected PushSendJob(Context context, JobParameters parameters) {
@@ -38,11 +42,13 @@ public abstract class PushSendJob extends MasterSecretJob {
     JobParameters.Builder builder = JobParameters.newBuilder();
     builder.withPersistence();
     builder.withGroupId(destination);
+    builder.withPriority(JobPriority.HIGH);
     builder.withRequirement(new MasterSecretRequirement(context));
 
     if (!isSmsFallbackSupported(context, destination)) {
       builder.withRequirement(new NetworkRequirement(context));
       builder.withRetryCount(5);
+      builder.withBackoff(1000, 60000);
     }
 
     return builder.create();
@@ -72,6 +78,13 @@ public abstract class PushSendJob extends MasterSecretJob {
   }
 
   protected List<TextSecureAttachment> getAttachments(SendReq message) {
+    return getAttachments(message, null);
+  }
+
+  /**
+   * @param listener Told how far along each attachment's upload is, or null.
+   */
+  protected List<TextSecureAttachment> getAttachments(SendReq message, ProgressListener listener) {
     List<TextSecureAttachment> attachments = new LinkedList<>();
 
     for (int i=0;i<message.getBody().getPartsNum();i++) {
@@ -83,7 +96,7 @@ public abstract class PushSendJob extends MasterSecretJob {
       {
         byte[] data = message.getBody().getPart(i).getData();
         Log.w(TAG, "Adding attachment...");
-        attachments.add(new TextSecureAttachmentStream(new ByteArrayInputStream(data), contentType, data.length));
+        attachments.add(new TextSecureAttachmentStream(new ByteArrayInputStream(data), contentType, data.length, listener));
       }
     }
 
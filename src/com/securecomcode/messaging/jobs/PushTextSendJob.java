@@ -18,6 +18,8 @@ import com.securecomcode.messaging.sms.IncomingIdentityUpdateMessage;
 import com.securecomcode.messaging.transport.InsecureFallbackApprovalException;
 import com.securecomcode.messaging.transport.RetryLaterException;
 import com.securecomcode.messaging.transport.SecureFallbackApprovalException;
+import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.libaxolotl.state.AxolotlStore;
 import org.whispersystems.textsecure.api.TextSecureMessageSender;
 import org.whispersystems.textsecure.api.crypto.UntrustedIdentityException;
@@ -26,6 +28,8 @@ import org.whispersystems.textsecure.api.push.PushAddress;
 import org.whispersystems.textsecure.api.push.exceptions.UnregisteredUserException;
 import org.whispersystems.textsecure.api.util.InvalidNumberException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 import javax.inject.Inject;
@@ -34,17 +38,41 @@ import static com.securecomcode.messaging.dependencies.TextSecureCommunicationMo
 
 public class PushTextSendJob extends PushSendJob implements InjectableType {
 
+  private static final long serialVersionUID = -8824934351922824424L;
+
   private static final String TAG = PushTextSendJob.class.getSimpleName();
 
   @Inject transient TextSecureMessageSenderFactory messageSenderFactory;
 
   private final long messageId;
 
+  public static final JobSchema<PushTextSendJob> SCHEMA = new JobSchema<PushTextSendJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(PushTextSendJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+    }
+
+    @Override
+    public PushTextSendJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new PushTextSendJob(parameters, in.readLong());
+    }
+  };
+
   public PushTextSendJob(Context context, long messageId, String destination) {
     super(context, constructParameters(context, destination));
     this.messageId = messageId;
   }
 
+  private PushTextSendJob(JobParameters parameters, long messageId) {
+    super(null, parameters);
+    this.messageId = messageId;
+  }
+
   @Override
   public void onAdded() {
 
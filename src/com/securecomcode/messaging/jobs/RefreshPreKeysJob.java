@@ -26,6 +26,8 @@ import javax.inject.Inject;
 
 public class RefreshPreKeysJob extends MasterSecretJob implements InjectableType {
 
+  private static final long serialVersionUID = -229687910395518619L;
+
   private static final String TAG = RefreshPreKeysJob.class.getSimpleName();
 
   private static final int PREKEY_MINIMUM = 10;
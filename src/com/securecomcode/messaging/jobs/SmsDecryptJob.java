@@ -26,6 +26,8 @@ import com.securecomcode.messaging.sms.MessageSender;
 import com.securecomcode.messaging.sms.OutgoingKeyExchangeMessage;
 import com.securecomcode.messaging.util.TextSecurePreferences;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.libaxolotl.DuplicateMessageException;
 import org.whispersystems.libaxolotl.InvalidMessageException;
 import org.whispersystems.libaxolotl.InvalidVersionException;
@@ -36,23 +38,51 @@ import org.whispersystems.libaxolotl.UntrustedIdentityException;
 import org.whispersystems.libaxolotl.util.guava.Optional;
 import org.whispersystems.textsecure.api.messages.TextSecureGroup;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 
 public class SmsDecryptJob extends MasterSecretJob {
 
+  private static final long serialVersionUID = 2524219593176987170L;
+
   private static final String TAG = SmsDecryptJob.class.getSimpleName();
 
   private final long messageId;
 
+  public static final JobSchema<SmsDecryptJob> SCHEMA = new JobSchema<SmsDecryptJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(SmsDecryptJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+    }
+
+    @Override
+    public SmsDecryptJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new SmsDecryptJob(parameters, in.readLong());
+    }
+  };
+
   public SmsDecryptJob(Context context, long messageId) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence()
                                 .withRequirement(new MasterSecretRequirement(context))
+                                .withPriority(JobPriority.HIGH)
+                                .withCpuBound()
                                 .create());
 
     this.messageId = messageId;
   }
 
+  private SmsDecryptJob(JobParameters parameters, long messageId) {
+    super(null, parameters);
+    this.messageId = messageId;
+  }
+
   @Override
   public void onAdded() {
     if (KeyCachingService.getMasterSecret(context) == null) {
@@ -15,27 +15,68 @@ import com.securecomcode.messaging.service.KeyCachingService;
 import com.securecomcode.messaging.sms.IncomingTextMessage;
 import com.securecomcode.messaging.sms.MultipartSmsMessageHandler;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.JobPriority;
+import org.whispersystems.jobqueue.persistence.JobSchema;
+import org.whispersystems.jobqueue.persistence.SchemaJobSerializer;
 import org.whispersystems.libaxolotl.util.guava.Optional;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
 public class SmsReceiveJob extends ContextJob {
 
+  private static final long serialVersionUID = -1518610957630885004L;
+
     private static final String TAG = SmsReceiveJob.class.getSimpleName();
 
     private static MultipartSmsMessageHandler multipartMessageHandler = new MultipartSmsMessageHandler();
 
     private final Object[] pdus;
 
+    public static final JobSchema<SmsReceiveJob> SCHEMA = new JobSchema<SmsReceiveJob>() {
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(SmsReceiveJob job, DataOutput out) throws IOException {
+            out.writeInt(job.pdus.length);
+
+            for (Object pdu : job.pdus) {
+                SchemaJobSerializer.writeBytes(out, (byte[])pdu);
+            }
+        }
+
+        @Override
+        public SmsReceiveJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+            Object[] pdus = new Object[in.readInt()];
+
+            for (int i=0;i<pdus.length;i++) {
+                pdus[i] = SchemaJobSerializer.readBytes(in);
+            }
+
+            return new SmsReceiveJob(parameters, pdus);
+        }
+    };
+
     public SmsReceiveJob(Context context, Object[] pdus) {
         super(context, JobParameters.newBuilder()
                 .withPersistence()
+                .withPriority(JobPriority.HIGH)
                 .create());
 
         this.pdus = pdus;
     }
 
+    private SmsReceiveJob(JobParameters parameters, Object[] pdus) {
+        super(null, parameters);
+        this.pdus = pdus;
+    }
+
     @Override
     public void onAdded() {}
 
@@ -44,16 +44,39 @@ import com.securecomcode.messaging.transport.UndeliverableMessageException;
 import com.securecomcode.messaging.util.NumberUtil;
 import com.securecomcode.messaging.util.TextSecurePreferences;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.persistence.JobSchema;
 import org.whispersystems.libaxolotl.NoSessionException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 
 public class SmsSendJob extends MasterSecretJob {
 
+  private static final long serialVersionUID = 8026017262639940612L;
+
   private static final String TAG = SmsSendJob.class.getSimpleName();
 
   private final long messageId;
 
+  public static final JobSchema<SmsSendJob> SCHEMA = new JobSchema<SmsSendJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(SmsSendJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+    }
+
+    @Override
+    public SmsSendJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new SmsSendJob(parameters, in.readLong());
+    }
+  };
+
   public SmsSendJob(Context context, long messageId, String name) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence()
@@ -65,6 +88,11 @@ public class SmsSendJob extends MasterSecretJob {
     this.messageId = messageId;
   }
 
+  private SmsSendJob(JobParameters parameters, long messageId) {
+    super(null, parameters);
+    this.messageId = messageId;
+  }
+
   @Override
   public void onAdded() {
 
@@ -8,7 +8,7 @@ import android.util.Log;
 import com.securecomcode.messaging.ApplicationContext;
 import com.securecomcode.messaging.crypto.MasterSecret;
 import com.securecomcode.messaging.crypto.SecurityEvent;
-import com.securecomcode.messaging.crypto.storage.TextSecureSessionStore;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.database.DatabaseFactory;
 import com.securecomcode.messaging.database.EncryptingSmsDatabase;
 import com.securecomcode.messaging.database.NoSuchMessageException;
@@ -17,16 +17,46 @@ import com.securecomcode.messaging.jobs.requirements.MasterSecretRequirement;
 import com.securecomcode.messaging.notifications.MessageNotifier;
 import com.securecomcode.messaging.service.SmsDeliveryListener;
 import org.whispersystems.jobqueue.JobParameters;
+import org.whispersystems.jobqueue.persistence.JobSchema;
+import org.whispersystems.jobqueue.persistence.SchemaJobSerializer;
 import org.whispersystems.libaxolotl.state.SessionStore;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class SmsSentJob extends MasterSecretJob {
 
+  private static final long serialVersionUID = -8131105720249546348L;
+
   private static final String TAG = SmsSentJob.class.getSimpleName();
 
   private final long   messageId;
   private final String action;
   private final int    result;
 
+  public static final JobSchema<SmsSentJob> SCHEMA = new JobSchema<SmsSentJob>() {
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(SmsSentJob job, DataOutput out) throws IOException {
+      out.writeLong(job.messageId);
+      SchemaJobSerializer.writeString(out, job.action);
+      out.writeInt(job.result);
+    }
+
+    @Override
+    public SmsSentJob read(JobParameters parameters, int version, DataInput in) throws IOException {
+      return new SmsSentJob(parameters,
+                            in.readLong(),
+                            SchemaJobSerializer.readString(in),
+                            in.readInt());
+    }
+  };
+
   public SmsSentJob(Context context, long messageId, String action, int result) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence()
@@ -38,6 +68,13 @@ public class SmsSentJob extends MasterSecretJob {
     this.result    = result;
   }
 
+  private SmsSentJob(JobParameters parameters, long messageId, String action, int result) {
+    super(null, parameters);
+    this.messageId = messageId;
+    this.action    = action;
+    this.result    = result;
+  }
+
   @Override
   public void onAdded() {
 
@@ -82,7 +119,7 @@ public class SmsSentJob extends MasterSecretJob {
 
           if (record != null && record.isEndSession()) {
             Log.w(TAG, "Ending session...");
-            SessionStore sessionStore = new TextSecureSessionStore(context, masterSecret);
+            SessionStore sessionStore = AxolotlStoreFactory.createSessionStore(context, masterSecret);
             sessionStore.deleteAllSessions(record.getIndividualRecipient().getRecipientId());
             SecurityEvent.broadcastSecurityUpdateEvent(context, record.getThreadId());
           }
@@ -2,21 +2,62 @@ package com.securecomcode.messaging.jobs.persistence;
 
 import com.securecomcode.messaging.crypto.MasterCipher;
 import com.securecomcode.messaging.crypto.MasterSecret;
+import com.securecomcode.messaging.jobs.AttachmentDownloadJob;
+import com.securecomcode.messaging.jobs.AvatarDownloadJob;
+import com.securecomcode.messaging.jobs.CreateSignedPreKeyJob;
+import com.securecomcode.messaging.jobs.DeliveryReceiptJob;
+import com.securecomcode.messaging.jobs.MmsDownloadJob;
+import com.securecomcode.messaging.jobs.MmsReceiveJob;
+import com.securecomcode.messaging.jobs.MmsSendJob;
+import com.securecomcode.messaging.jobs.PushDecryptJob;
+import com.securecomcode.messaging.jobs.PushGroupSendJob;
+import com.securecomcode.messaging.jobs.PushMediaSendJob;
+import com.securecomcode.messaging.jobs.PushReceiveJob;
+import com.securecomcode.messaging.jobs.PushTextSendJob;
+import com.securecomcode.messaging.jobs.SmsDecryptJob;
+import com.securecomcode.messaging.jobs.SmsReceiveJob;
+import com.securecomcode.messaging.jobs.SmsSendJob;
+import com.securecomcode.messaging.jobs.SmsSentJob;
+import com.securecomcode.messaging.jobs.requirements.MasterSecretRequirement;
+import com.securecomcode.messaging.jobs.requirements.ServiceRequirement;
 import com.securecomcode.messaging.util.ParcelUtil;
 import org.whispersystems.jobqueue.EncryptionKeys;
 import org.whispersystems.jobqueue.Job;
-import org.whispersystems.jobqueue.persistence.JavaJobSerializer;
-import org.whispersystems.jobqueue.persistence.JobSerializer;
+import org.whispersystems.jobqueue.persistence.BinaryJobSerializer;
+import org.whispersystems.jobqueue.persistence.SchemaJobSerializer;
+import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.libaxolotl.InvalidMessageException;
 
 import java.io.IOException;
 
-public class EncryptingJobSerializer implements JobSerializer {
+public class EncryptingJobSerializer implements BinaryJobSerializer {
 
-  private final JavaJobSerializer delegate;
+  private final SchemaJobSerializer delegate;
 
   public EncryptingJobSerializer() {
-    this.delegate = new JavaJobSerializer();
+    this.delegate = new SchemaJobSerializer();
+
+    // Type ids are persisted with every job, so they must never change or be reused.
+    this.delegate.registerRequirement(1, NetworkRequirement.class)
+                 .registerRequirement(2, MasterSecretRequirement.class)
+                 .registerRequirement(3, ServiceRequirement.class);
+
+    this.delegate.registerJob(1, PushDecryptJob.class, PushDecryptJob.SCHEMA)
+                 .registerJob(2, PushReceiveJob.class, PushReceiveJob.SCHEMA)
+                 .registerJob(3, DeliveryReceiptJob.class, DeliveryReceiptJob.SCHEMA)
+                 .registerJob(4, PushTextSendJob.class, PushTextSendJob.SCHEMA)
+                 .registerJob(5, PushMediaSendJob.class, PushMediaSendJob.SCHEMA)
+                 .registerJob(6, PushGroupSendJob.class, PushGroupSendJob.SCHEMA)
+                 .registerJob(7, AttachmentDownloadJob.class, AttachmentDownloadJob.SCHEMA)
+                 .registerJob(8, AvatarDownloadJob.class, AvatarDownloadJob.SCHEMA)
+                 .registerJob(9, SmsReceiveJob.class, SmsReceiveJob.SCHEMA)
+                 .registerJob(10, SmsDecryptJob.class, SmsDecryptJob.SCHEMA)
+                 .registerJob(11, SmsSendJob.class, SmsSendJob.SCHEMA)
+                 .registerJob(12, SmsSentJob.class, SmsSentJob.SCHEMA)
+                 .registerJob(13, MmsReceiveJob.class, MmsReceiveJob.SCHEMA)
+                 .registerJob(14, MmsDownloadJob.class, MmsDownloadJob.SCHEMA)
+                 .registerJob(15, MmsSendJob.class, MmsSendJob.SCHEMA)
+                 .registerJob(16, CreateSignedPreKeyJob.class, CreateSignedPreKeyJob.SCHEMA);
   }
 
   @Override
@@ -52,4 +93,38 @@ public class EncryptingJobSerializer implements JobSerializer {
       throw new IOException(e);
     }
   }
+
+  @Override
+  public byte[] serializeToBytes(Job job) throws IOException {
+    byte[] plaintext = delegate.serializeToBytes(job);
+
+    if (job.getEncryptionKeys() != null) {
+      MasterSecret masterSecret = ParcelUtil.deserialize(job.getEncryptionKeys().getEncoded(),
+                                                         MasterSecret.CREATOR);
+      MasterCipher masterCipher = new MasterCipher(masterSecret);
+
+      return masterCipher.encryptBytes(plaintext);
+    } else {
+      return plaintext;
+    }
+  }
+
+  @Override
+  public Job deserialize(EncryptionKeys keys, boolean encrypted, byte[] serialized) throws IOException {
+    try {
+      byte[] plaintext;
+
+      if (encrypted) {
+        MasterSecret masterSecret = ParcelUtil.deserialize(keys.getEncoded(), MasterSecret.CREATOR);
+        MasterCipher masterCipher = new MasterCipher(masterSecret);
+        plaintext = masterCipher.decryptBytes(serialized);
+      } else {
+        plaintext = serialized;
+      }
+
+      return delegate.deserialize(keys, encrypted, plaintext);
+    } catch (InvalidMessageException e) {
+      throw new IOException(e);
+    }
+  }
 }
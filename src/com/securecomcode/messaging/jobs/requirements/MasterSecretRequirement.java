@@ -8,12 +8,16 @@ import org.whispersystems.jobqueue.requirements.Requirement;
 
 public class MasterSecretRequirement implements Requirement, ContextDependent {
 
+  private static final long serialVersionUID = 5428382496746602845L;
+
   private transient Context context;
 
   public MasterSecretRequirement(Context context) {
     this.context = context;
   }
 
+  public MasterSecretRequirement() {}
+
   @Override
   public boolean isPresent() {
     return KeyCachingService.getMasterSecret(context) != null;
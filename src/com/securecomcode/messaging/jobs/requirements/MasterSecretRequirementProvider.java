@@ -20,7 +20,7 @@ public class MasterSecretRequirementProvider implements RequirementProvider {
       @Override
       public void onReceive(Context context, Intent intent) {
         if (listener != null) {
-          listener.onRequirementStatusChanged();
+          listener.onRequirementStatusChanged(MasterSecretRequirement.class);
         }
       }
     };
@@ -15,6 +15,8 @@ import org.whispersystems.jobqueue.requirements.Requirement;
 
 public class ServiceRequirement implements Requirement, ContextDependent {
 
+  private static final long serialVersionUID = -7923778926983585889L;
+
   private static final String TAG = ServiceRequirement.class.getSimpleName();
 
   private final transient ServiceRequirementProvider provider;
@@ -28,6 +30,10 @@ public class ServiceRequirement implements Requirement, ContextDependent {
                                                                   .getRequirementProvider("telephony-service");
   }
 
+  public ServiceRequirement() {
+    this.provider = null;
+  }
+
   @Override
   public void setContext(Context context) {
     this.context = context;
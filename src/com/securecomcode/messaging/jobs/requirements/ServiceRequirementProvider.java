@@ -46,7 +46,7 @@ public class ServiceRequirementProvider implements RequirementProvider {
     }
 
     if (requirementListener != null) {
-      requirementListener.onRequirementStatusChanged();
+      requirementListener.onRequirementStatusChanged(ServiceRequirement.class);
     }
   }
 
@@ -40,6 +40,7 @@ import com.securecomcode.messaging.RoutingActivity;
 import com.securecomcode.messaging.crypto.InvalidPassphraseException;
 import com.securecomcode.messaging.crypto.MasterSecret;
 import com.securecomcode.messaging.crypto.MasterSecretUtil;
+import com.securecomcode.messaging.crypto.storage.AxolotlStoreFactory;
 import com.securecomcode.messaging.notifications.MessageNotifier;
 import com.securecomcode.messaging.util.ParcelUtil;
 import com.securecomcode.messaging.util.TextSecurePreferences;
@@ -182,6 +183,7 @@ public class KeyCachingService extends Service {
 
   private void handleClearKey() {
     this.masterSecret = null;
+    AxolotlStoreFactory.clearCache();
     stopForeground(true);
 
     Intent intent = new Intent(CLEAR_KEY_EVENT);
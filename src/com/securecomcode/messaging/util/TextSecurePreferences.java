@@ -77,6 +77,41 @@ public class TextSecurePreferences {
   public static void setSignedPreKeyRegistered(Context context, boolean value) {
     setBooleanPreference(context, SIGNED_PREKEY_REGISTERED_PREF, value);
   }
+
+  private static final String SENDER_KEY_GROUPS_PREF = "pref_sender_key_groups";
+
+  public static boolean isSenderKeyGroupsEnabled(Context context) {
+    return getBooleanPreference(context, SENDER_KEY_GROUPS_PREF, false);
+  }
+
+  public static void setSenderKeyGroupsEnabled(Context context, boolean value) {
+    setBooleanPreference(context, SENDER_KEY_GROUPS_PREF, value);
+  }
+
+  private static final String AXOLOTL_DATABASE_PREF = "pref_axolotl_database";
+
+  public static boolean isAxolotlDatabaseEnabled(Context context) {
+    return getBooleanPreference(context, AXOLOTL_DATABASE_PREF, false);
+  }
+
+  /**
+   * There's no way to turn this back off, since sessions and prekeys are moved out of their
+   * files and into the database once it's enabled.
+   */
+  public static void enableAxolotlDatabase(Context context) {
+    setBooleanPreference(context, AXOLOTL_DATABASE_PREF, true);
+  }
+
+  private static final String AXOLOTL_FILES_MIGRATED_PREF = "pref_axolotl_files_migrated";
+
+  public static boolean isAxolotlFilesMigrated(Context context) {
+    return getBooleanPreference(context, AXOLOTL_FILES_MIGRATED_PREF, false);
+  }
+
+  public static void setAxolotlFilesMigrated(Context context) {
+    setBooleanPreference(context, AXOLOTL_FILES_MIGRATED_PREF, true);
+  }
+
   private static final String REG_OPTION_SELECTED = "reg_option_value";
   private static final String COUNTRY_CODE_SELECTED = "pref_country_selected";
   private static final String GCM_REGISTRATION_ID_PREF         = "pref_gcm_registration_id";